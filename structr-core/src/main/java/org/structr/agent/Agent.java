@@ -18,11 +18,10 @@
  */
 package org.structr.agent;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
 import static org.structr.agent.ReturnValue.Retry;
 import org.structr.core.Services;
 import org.structr.core.app.StructrApp;
@@ -35,16 +34,20 @@ public abstract class Agent<T> extends Thread implements StatusInfo {
 
 	public static final String AVERAGE_EXECUTION_TIME = "average_execution_time";
 	public static final String EXECUTION_STATUS       = "execution_status";
+
+	/**
+	 * @deprecated the task queues are unbounded and owned by the {@link AgentService}
+	 */
+	@Deprecated
 	public static final String MAX_QUEUE_SIZE         = "max_queue_size";
+
 	private static final Logger logger                = LoggerFactory.getLogger(Agent.class.getName());
+	private static final long IDLE_TIMEOUT            = 10000;
 
 	private final AtomicBoolean suspended      = new AtomicBoolean(false);
-	private final Queue<Task<T>> taskQueue     = new ConcurrentLinkedQueue<>();
 	private final AtomicBoolean acceptingTasks = new AtomicBoolean(true);
 	private AgentService agentService          = null;
 	private long averageExecutionTime          = 0;
-	private int maxAgents                      = 10;
-	private int maxQueueSize                   = 200;
 
 	/**
 	 * This method will be called by the AgentService
@@ -56,9 +59,9 @@ public abstract class Agent<T> extends Thread implements StatusInfo {
 	@Override
 	public final void run() {
 
-		agentService.notifyAgentStart(this);
+		final Class taskType = getSupportedTaskType();
 
-		do {
+		while (acceptingTasks.get()) {
 
 			while (suspended.get()) {
 
@@ -66,17 +69,22 @@ public abstract class Agent<T> extends Thread implements StatusInfo {
 
 			}
 
-			final Task<T> currentTask;
+			final QueuedTask queuedTask;
+
+			try {
 
-			synchronized (taskQueue) {
+				queuedTask = agentService.nextTask(taskType, IDLE_TIMEOUT);
 
-				currentTask = taskQueue.poll();
+			} catch (InterruptedException iex) {
 
+				break;
 			}
 
-			if (currentTask != null) {
+			if (queuedTask != null) {
 
-				ReturnValue ret = null;
+				final Task<T> currentTask = queuedTask.getTask();
+				final long startTime      = System.nanoTime();
+				ReturnValue ret           = null;
 
 				// only execute process if Service layer is ready
 				// (and not shutting down right now)
@@ -111,49 +119,49 @@ public abstract class Agent<T> extends Thread implements StatusInfo {
 
 				if (ret != null && Retry.equals(ret) && currentTask.getRetryCount() < 2) {
 
-					// wait some time
-					try { Thread.sleep(2000); } catch (InterruptedException ex) {}
+					agentService.retryTask(taskType, queuedTask);
 
-					synchronized (taskQueue) {
+				} else {
 
-						currentTask.incrementRetryCount();
-						taskQueue.add(currentTask);
-					}
+					agentService.taskFinished(taskType, queuedTask, ReturnValue.Success.equals(ret));
 				}
 
-				long endTime = System.nanoTime();
-
 				// calc. average execution time
-				averageExecutionTime += endTime;
+				averageExecutionTime += System.nanoTime() - startTime;
 				averageExecutionTime /= 2;
 
-			} else {
+			} else if (agentService.retire(this)) {
 
-				// queue is empty, quit.
+				// idle and no queued tasks, quit.
 				acceptingTasks.set(false);
 			}
-
-		} while (acceptingTasks.get());
+		}
 
 		// call beforeShutdown to allow agents to clean up
 		beforeShutdown();
 		agentService.notifyAgentStop(this);
 	}
 
+	/**
+	 * Hands the given task to the {@link AgentService}, which queues it
+	 * for all agents of its type.
+	 *
+	 * @param task
+	 * @return whether the task was accepted
+	 *
+	 * @deprecated use {@link AgentService#processTask(org.structr.agent.Task)}
+	 */
+	@Deprecated
 	public final boolean assignTask(final Task<T> task) {
 
-		// TODO: do type check here
-		if (canHandleMore() && acceptingTasks.get()) {
+		if (agentService != null && acceptingTasks.get()) {
 
-			synchronized (taskQueue) {
-
-				taskQueue.add(task);
-			}
+			agentService.processTask(task);
 
-			return (true);
+			return true;
 		}
 
-		return (false);
+		return false;
 	}
 
 	public final void killAgent() {
@@ -161,9 +169,6 @@ public abstract class Agent<T> extends Thread implements StatusInfo {
 		// stop accepting tasks
 		acceptingTasks.set(false);
 
-		// clear queue
-		taskQueue.clear();
-
 		// interrupt running process..
 		// not sure if this works... see Thread.interrupt()'s description!
 		// may not work if the processTask method itself catches the interrupt..
@@ -187,32 +192,16 @@ public abstract class Agent<T> extends Thread implements StatusInfo {
 		// override me
 	}
 
-	private boolean canHandleMore() {
-
-		int size = 0;
-
-		synchronized (taskQueue) {
-
-			// FIXME: size may not be a constant time operation! slow?
-			size = taskQueue.size();
-		}
-
-		// queue is empty, assume new agent
-		if (size == 0) {
-
-			return true;
-
-		}
-
-		return size < maxQueueSize;
-	}
-
 	public boolean createEnclosingTransaction() {
 		return true;
 	}
 
+	/**
+	 * @deprecated the task queues are unbounded and owned by the {@link AgentService}
+	 */
+	@Deprecated
 	public final int getMaxQueueSize() {
-		return maxQueueSize;
+		return Integer.MAX_VALUE;
 	}
 
 	public final long getAverageExecutionTime() {
@@ -226,8 +215,19 @@ public abstract class Agent<T> extends Thread implements StatusInfo {
 		this.agentService = service;
 	}
 
+	/**
+	 * @return the maximum number of agents for the task type of this agent
+	 *
+	 * @deprecated the limit is configured per task type, see {@link Settings#AgentThreads}
+	 */
+	@Deprecated
 	public int getMaxAgents() {
-		return maxAgents;
+
+		if (agentService != null) {
+			return agentService.getMaxAgents(getSupportedTaskType());
+		}
+
+		return Math.max(1, Settings.AgentThreads.getValue());
 	}
 
 	// ----- interface StatusInfo -----
@@ -18,19 +18,30 @@
  */
 package org.structr.agent;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Queue;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Setting;
+import org.structr.api.config.Settings;
 import org.structr.api.service.Command;
 import org.structr.api.service.RunnableService;
 import org.structr.api.service.StructrServices;
@@ -40,18 +51,28 @@ import org.structr.schema.ConfigurationProvider;
 /**
  * The agent service main class.
  *
+ * Tasks are queued per task type in priority order and are processed by
+ * a pool of agents for each type. Agents are started when tasks arrive,
+ * up to the configured number of threads for the task type, and stop
+ * after being idle for a while. Pending {@link PersistentTask}s are
+ * written to a journal so that they survive a restart.
+ *
  *
  */
 public class AgentService extends Thread implements RunnableService {
 
-	private static final Logger logger = LoggerFactory.getLogger(AgentService.class.getName());
+	private static final Logger logger       = LoggerFactory.getLogger(AgentService.class.getName());
+	private static final long RETRY_DELAY    = 2000;
+	private static final String JOURNAL_FILE = "tasks.journal";
 
-	private final int maxAgents                          = 10;    // TODO: make configurable
-	private final Map<String, List<Agent>> runningAgents = new ConcurrentHashMap<>(10, 0.9f, 8);
-	private final Map<String, Class> agentClassCache     = new ConcurrentHashMap<>(10, 0.9f, 8);
-	private final Queue<Task> taskQueue                  = new ConcurrentLinkedQueue<>();
-	private Set<Class> supportedCommands                 = null;
-	private boolean run                                  = false;
+	private final Map<String, TaskTypeQueue> queues  = new ConcurrentHashMap<>(10, 0.9f, 8);
+	private final Map<String, Class> agentClassCache = new ConcurrentHashMap<>(10, 0.9f, 8);
+	private final AtomicLong sequence                = new AtomicLong(0L);
+	private List<TaskJournal.Entry> restoredTasks    = null;
+	private ScheduledExecutorService retryExecutor   = null;
+	private TaskJournal journal                      = null;
+	private Set<Class> supportedCommands             = null;
+	private volatile boolean run                     = false;
 
 	public AgentService() {
 
@@ -62,48 +83,75 @@ public class AgentService extends Thread implements RunnableService {
 		super.setDaemon(true);
 	}
 
-	public void processTask(Task task) {
+	public void processTask(final Task task) {
 
-		synchronized (taskQueue) {
+		final boolean journaled = journal != null && task instanceof PersistentTask;
+		final long id           = sequence.incrementAndGet();
 
-			taskQueue.add(task);
-			logger.debug("Task {} added to task queue", task);
+		if (journaled) {
+			journal.added(id, (PersistentTask)task);
 		}
+
+		enqueue(new QueuedTask(task, id, journaled));
+
+		logger.debug("Task {} added to task queue", task);
 	}
 
+	/**
+	 * Queues the tasks restored from the journal as soon as the service
+	 * layer is ready.
+	 */
 	@Override
 	public void run() {
 
 		logger.info("AgentService started");
 
-		while (run) {
+		while (run && !Services.getInstance().isInitialized()) {
+
+			try { Thread.sleep(100); } catch (InterruptedException iex) {}
+		}
+
+		if (run && restoredTasks != null) {
+
+			for (final TaskJournal.Entry entry : restoredTasks) {
+
+				try {
+
+					final Task task = (Task)Class.forName(entry.getClassName()).getConstructor(String.class).newInstance(entry.getState());
+
+					enqueue(new QueuedTask(task, entry.getSequence(), true));
 
-			Task nextTask = taskQueue.poll();
-			if (nextTask != null) {
+				} catch (Throwable t) {
 
-				assignNextAgentForTask(nextTask);
+					logger.warn("Unable to restore task {} from journal: {}", entry.getClassName(), t.getMessage());
+
+					journal.done(entry.getSequence());
+				}
+			}
+
+			if (!restoredTasks.isEmpty()) {
+				logger.info("Restored {} pending tasks from journal", restoredTasks.size());
 			}
 
-			// let others act
-			try { Thread.sleep(10); } catch(Throwable ignore) {}
+			restoredTasks = null;
 		}
 	}
 
+	/**
+	 * @param agent
+	 *
+	 * @deprecated agents are started by the AgentService, which registers them itself
+	 */
+	@Deprecated
 	public void notifyAgentStart(Agent agent) {
-
-		List<Agent> agents = getRunningAgentsForTask(agent.getSupportedTaskType());
-
-		synchronized (agents) {
-			agents.add(agent);
-		}
 	}
 
 	public void notifyAgentStop(Agent agent) {
 
-		List<Agent> agents = getRunningAgentsForTask(agent.getSupportedTaskType());
+		final TaskTypeQueue queue = getQueue(agent.getSupportedTaskType());
 
-		synchronized (agents) {
-			agents.remove(agent);
+		synchronized (queue) {
+			queue.workers.remove(agent);
 		}
 	}
 
@@ -125,6 +173,31 @@ public class AgentService extends Thread implements RunnableService {
 
 	@Override
 	public boolean initialize(final StructrServices services) throws ClassNotFoundException, InstantiationException, IllegalAccessException {
+
+		retryExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+
+			final Thread thread = new Thread(r, "AgentServiceRetry");
+			thread.setDaemon(true);
+
+			return thread;
+		});
+
+		if (Settings.AgentJournalEnabled.getValue()) {
+
+			try {
+
+				journal       = new TaskJournal(Paths.get(Settings.getFullSettingPath(Settings.AgentJournalPath), JOURNAL_FILE));
+				restoredTasks = journal.open();
+
+				sequence.set(journal.getMaxSequence());
+
+			} catch (IOException ioex) {
+
+				logger.warn("Unable to open task journal, pending tasks will not be persisted: {}", ioex.getMessage());
+				journal = null;
+			}
+		}
+
 		return true;
 	}
 
@@ -132,7 +205,16 @@ public class AgentService extends Thread implements RunnableService {
 	public void initialized() {}
 
 	@Override
-	public void shutdown() {}
+	public void shutdown() {
+
+		if (retryExecutor != null) {
+			retryExecutor.shutdownNow();
+		}
+
+		if (journal != null) {
+			journal.close();
+		}
+	}
 
 	@Override
 	public void startService() throws Exception {
@@ -143,7 +225,18 @@ public class AgentService extends Thread implements RunnableService {
 
 	@Override
 	public void stopService() {
+
 		run = false;
+
+		for (final TaskTypeQueue queue : queues.values()) {
+
+			synchronized (queue) {
+
+				for (final Agent agent : queue.workers) {
+					agent.killAgent();
+				}
+			}
+		}
 	}
 
 	@Override
@@ -151,53 +244,212 @@ public class AgentService extends Thread implements RunnableService {
 		return true;
 	}
 
-	private void assignNextAgentForTask(Task nextTask) {
+	/**
+	 * Returns the current queue of remaining tasks.
+	 * @return tasks
+	 */
+	public Collection<Task> getTaskQueue() {
 
-		Class taskClass    = nextTask.getClass();
-		List<Agent> agents = getRunningAgentsForTask(taskClass);
+		final List<Task> tasks = new LinkedList<>();
 
-		// need to synchronize on agents
-		synchronized (agents) {
+		for (final TaskTypeQueue queue : queues.values()) {
 
-			// find next free agent (agents should be sorted by load, so one
-			// of the first should do..
-			for (Agent agent : agents) {
+			for (final QueuedTask queuedTask : queue.queue) {
+				tasks.add(queuedTask.getTask());
+			}
+		}
 
-				if (agent.assignTask(nextTask)) {
+		return tasks;
+	}
 
-					// ok, task is assigned
-					logger.debug("Task assigned to agent {}", agent.getName());
+	/**
+	 * Returns the current collection of running agents.
+	 * @return agents
+	 */
+	public Map<String, List<Agent>> getRunningAgents() {
 
-					return;
-				}
+		final Map<String, List<Agent>> runningAgents = new LinkedHashMap<>();
+
+		for (final Entry<String, TaskTypeQueue> entry : queues.entrySet()) {
+
+			final TaskTypeQueue queue = entry.getValue();
+
+			synchronized (queue) {
+				runningAgents.put(entry.getKey(), new LinkedList<>(queue.workers));
 			}
 		}
 
-		// FIXME: find better solution for hard limit here!
-		if (agents.size() < maxAgents) {
+		return runningAgents;
+	}
 
-			// if we get here, task was not assigned to any agent, need to
-			// create a new one.
-			Agent agent = createAgent(nextTask);
+	/**
+	 * Returns queue depth, wait times and throughput per task type.
+	 *
+	 * @return a map of task type names to statistics
+	 */
+	public Map<String, Object> getStatistics() {
 
-			if ((agent != null) && agent.assignTask(nextTask)) {
-				agent.start();
-			} else {
+		final Map<String, Object> statistics = new TreeMap<>();
+
+		for (final Entry<String, TaskTypeQueue> entry : queues.entrySet()) {
+			statistics.put(entry.getKey(), entry.getValue().getStatistics());
+		}
+
+		if (journal != null) {
+			statistics.put("journal", Collections.singletonMap("pending", journal.size()));
+		}
+
+		return statistics;
+	}
+
+	@Override
+	public boolean isRunning() {
+		return (this.run);
+	}
+
+	@Override
+	public boolean isVital() {
+		return false;
+	}
+
+	// ----- interface Feature -----
+	@Override
+	public String getModuleName() {
+		return "agents";
+	}
+
+	// ----- package-private methods -----
+	/**
+	 * Waits for the next task of the given type.
+	 *
+	 * @param taskType
+	 * @param timeout the maximum time to wait in milliseconds
+	 * @return the next task or null if no task arrived within the timeout
+	 * @throws InterruptedException
+	 */
+	QueuedTask nextTask(final Class taskType, final long timeout) throws InterruptedException {
+
+		final TaskTypeQueue queue  = getQueue(taskType);
+		final QueuedTask next      = queue.queue.poll(timeout, TimeUnit.MILLISECONDS);
+
+		if (next != null) {
+
+			final long waitTime = System.nanoTime() - next.getQueuedAt();
+
+			queue.busy.incrementAndGet();
+			queue.waitTime.add(waitTime);
+			queue.maxWaitTime.accumulateAndGet(waitTime, Math::max);
+			queue.dequeued.increment();
+		}
+
+		return next;
+	}
+
+	void taskFinished(final Class taskType, final QueuedTask task, final boolean success) {
+
+		final TaskTypeQueue queue = getQueue(taskType);
+
+		queue.busy.decrementAndGet();
+
+		if (success) {
+
+			queue.completed.increment();
 
-				// re-add task..
-				synchronized (taskQueue) {
-					taskQueue.add(nextTask);
-				}
-			}
 		} else {
 
-			logger.debug("Overall agents limit reached, re-queueing task");
+			queue.failed.increment();
+		}
+
+		if (task.isJournaled() && journal != null) {
+			journal.done(task.getSequence());
+		}
+	}
+
+	void retryTask(final Class taskType, final QueuedTask task) {
+
+		final TaskTypeQueue queue = getQueue(taskType);
+
+		queue.busy.decrementAndGet();
+		queue.retried.increment();
 
-			// re-add task..
-			synchronized (taskQueue) {
-				taskQueue.add(nextTask);
+		task.getTask().incrementRetryCount();
+
+		if (!retryExecutor.isShutdown()) {
+
+			retryExecutor.schedule(() -> {
+
+				task.requeued();
+				enqueue(task);
+
+			}, RETRY_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Removes the given idle agent from the pool unless there are queued
+	 * tasks for it.
+	 *
+	 * @param agent
+	 * @return whether the agent can stop
+	 */
+	boolean retire(final Agent agent) {
+
+		final TaskTypeQueue queue = getQueue(agent.getSupportedTaskType());
+
+		synchronized (queue) {
+
+			if (run && !queue.queue.isEmpty()) {
+				return false;
 			}
+
+			queue.workers.remove(agent);
 		}
+
+		return true;
+	}
+
+	int getMaxAgents(final Class taskType) {
+		return getQueue(taskType).getMaxThreads();
+	}
+
+	// ----- private methods -----
+	private void enqueue(final QueuedTask task) {
+
+		final Class taskType      = task.getTask().getClass();
+		final TaskTypeQueue queue = getQueue(taskType);
+
+		synchronized (queue) {
+
+			queue.queue.add(task);
+			queue.enqueued.increment();
+
+			// start another agent if the pool is not large enough to process the queued tasks
+			final int idle = queue.workers.size() - queue.busy.get();
+
+			if (queue.queue.size() > idle && queue.workers.size() < queue.getMaxThreads()) {
+
+				final Agent agent = createAgent(task.getTask());
+				if (agent != null) {
+
+					queue.workers.add(agent);
+					agent.start();
+
+				} else if (queue.workers.isEmpty()) {
+
+					queue.queue.remove(task);
+
+					logger.warn("No agent found for task type {}, discarding task", taskType.getName());
+
+					if (task.isJournaled() && journal != null) {
+						journal.done(task.getSequence());
+					}
+				}
+			}
+		}
+	}
+
+	private TaskTypeQueue getQueue(final Class taskType) {
+		return queues.computeIfAbsent(taskType.getName(), k -> new TaskTypeQueue(taskType));
 	}
 
 	/**
@@ -274,50 +526,66 @@ public class AgentService extends Thread implements RunnableService {
 		return (agent);
 	}
 
-	/**
-	 * Returns the current queue of remaining tasks.
-	 * @return tasks
-	 */
-	public Collection<Task> getTaskQueue() {
-		return (taskQueue);
-	}
+	// ----- nested classes -----
+	private static class TaskTypeQueue {
+
+		private final PriorityBlockingQueue<QueuedTask> queue = new PriorityBlockingQueue<>();
+		private final List<Agent> workers                     = new LinkedList<>();
+		private final AtomicInteger busy                      = new AtomicInteger(0);
+		private final AtomicLong maxWaitTime                  = new AtomicLong(0L);
+		private final LongAdder waitTime                      = new LongAdder();
+		private final LongAdder enqueued                      = new LongAdder();
+		private final LongAdder dequeued                      = new LongAdder();
+		private final LongAdder completed                     = new LongAdder();
+		private final LongAdder failed                        = new LongAdder();
+		private final LongAdder retried                       = new LongAdder();
+		private final long createdAt                          = System.currentTimeMillis();
+		private Class taskType                                = null;
+
+		public TaskTypeQueue(final Class taskType) {
+			this.taskType = taskType;
+		}
 
-	/**
-	 * Returns the current collection of running agents.
-	 * @return agents
-	 */
-	public Map<String, List<Agent>> getRunningAgents() {
-		return (runningAgents);
-	}
+		/**
+		 * Returns the number of agents for this task type, configured with
+		 * application.agents.threads.[TaskType] or application.agents.threads.
+		 */
+		public int getMaxThreads() {
 
-	private List<Agent> getRunningAgentsForTask(Class taskClass) {
+			final Setting<?> setting = Settings.getSetting(Settings.AgentThreads.getKey(), taskType.getSimpleName());
+			if (setting != null && setting.getValue() != null) {
 
-		List<Agent> agents = runningAgents.get(taskClass.getName());
+				try {
 
-		if (agents == null) {
+					return Math.max(1, Integer.parseInt(setting.getValue().toString().trim()));
 
-			agents = Collections.synchronizedList(new LinkedList<>());
+				} catch (NumberFormatException nfex) {
+					logger.warn("Invalid number of agent threads for {}: {}", taskType.getSimpleName(), setting.getValue());
+				}
+			}
 
-			// Hashtable is synchronized
-			runningAgents.put(taskClass.getName(), agents);
+			return Math.max(1, Settings.AgentThreads.getValue());
 		}
 
-		return (agents);
-	}
-
-	@Override
-	public boolean isRunning() {
-		return (this.run);
-	}
-
-	@Override
-	public boolean isVital() {
-		return false;
-	}
-
-	// ----- interface Feature -----
-	@Override
-	public String getModuleName() {
-		return "agents";
+		public Map<String, Object> getStatistics() {
+
+			final Map<String, Object> statistics = new LinkedHashMap<>();
+			final long count                     = dequeued.sum();
+			final long seconds                   = Math.max(1L, (System.currentTimeMillis() - createdAt) / 1000L);
+
+			statistics.put("queued",          queue.size());
+			statistics.put("agents",          workers.size());
+			statistics.put("busy",            busy.get());
+			statistics.put("maxAgents",       getMaxThreads());
+			statistics.put("enqueued",        enqueued.sum());
+			statistics.put("completed",       completed.sum());
+			statistics.put("failed",          failed.sum());
+			statistics.put("retried",         retried.sum());
+			statistics.put("avgWaitTimeMs",   count > 0 ? TimeUnit.NANOSECONDS.toMillis(waitTime.sum() / count) : 0L);
+			statistics.put("maxWaitTimeMs",   TimeUnit.NANOSECONDS.toMillis(maxWaitTime.get()));
+			statistics.put("tasksPerSecond",  (double)completed.sum() / seconds);
+
+			return statistics;
+		}
 	}
 }
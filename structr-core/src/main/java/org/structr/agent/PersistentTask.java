@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.agent;
+
+/**
+ * A task that survives a restart. Pending persistent tasks are written
+ * to the task journal of the {@link AgentService} and are queued again
+ * when the service starts.
+ *
+ * Implementing classes must provide a public constructor that takes the
+ * string returned by {@link #getPersistentState()} as its only argument.
+ */
+public interface PersistentTask<T> extends Task<T> {
+
+	/**
+	 * Returns the state of this task that is needed to re-create it.
+	 *
+	 * @return the state of this task
+	 */
+	String getPersistentState();
+}
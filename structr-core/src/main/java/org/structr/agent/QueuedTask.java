@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.agent;
+
+/**
+ * A task in the queue of the {@link AgentService}, ordered by priority
+ * and by the order of submission.
+ */
+class QueuedTask implements Comparable<QueuedTask> {
+
+	private Task task          = null;
+	private long sequence      = 0L;
+	private boolean journaled  = false;
+	private long queuedAt      = 0L;
+
+	QueuedTask(final Task task, final long sequence, final boolean journaled) {
+
+		this.task      = task;
+		this.sequence  = sequence;
+		this.journaled = journaled;
+		this.queuedAt  = System.nanoTime();
+	}
+
+	public Task getTask() {
+		return task;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public boolean isJournaled() {
+		return journaled;
+	}
+
+	public long getQueuedAt() {
+		return queuedAt;
+	}
+
+	public void requeued() {
+		this.queuedAt = System.nanoTime();
+	}
+
+	@Override
+	public int compareTo(final QueuedTask other) {
+
+		final int priority = Integer.compare(other.task.priority(), task.priority());
+		if (priority != 0) {
+
+			return priority;
+		}
+
+		return Long.compare(sequence, other.sequence);
+	}
+}
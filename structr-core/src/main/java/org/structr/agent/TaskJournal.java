@@ -0,0 +1,261 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.agent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of the pending {@link PersistentTask}s of the
+ * {@link AgentService}.
+ *
+ * Every submitted task is appended as an entry, every finished task as
+ * a completion marker. On startup, the entries without a completion
+ * marker are read back and the journal is rewritten to contain only
+ * those. While running, the journal is rewritten the same way whenever
+ * it has grown beyond a threshold and most of its records belong to
+ * finished tasks, so its size stays proportional to the number of
+ * pending tasks.
+ */
+class TaskJournal {
+
+	private static final Logger logger        = LoggerFactory.getLogger(TaskJournal.class.getName());
+	private static final byte ADDED           = 'A';
+	private static final byte DONE            = 'D';
+	private static final int COMPACTION_LIMIT = 10000;
+
+	private final Map<Long, Entry> pending = new LinkedHashMap<>();
+	private DataOutputStream out           = null;
+	private Path file                      = null;
+	private long maxSequence               = 0L;
+	private int records                    = 0;
+
+	TaskJournal(final Path file) {
+		this.file = file;
+	}
+
+	/**
+	 * Reads the journal, rewrites it to contain only the pending entries
+	 * and opens it for appending.
+	 *
+	 * @return the pending entries in the order of submission
+	 * @throws IOException
+	 */
+	public synchronized List<Entry> open() throws IOException {
+
+		Files.createDirectories(file.getParent());
+
+		if (Files.exists(file)) {
+
+			try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+
+				while (true) {
+
+					final byte type     = in.readByte();
+					final long sequence = in.readLong();
+
+					if (type == ADDED) {
+
+						final int priority     = in.readInt();
+						final String className = in.readUTF();
+						final String state     = in.readUTF();
+
+						pending.put(sequence, new Entry(sequence, priority, className, state));
+
+					} else if (type == DONE) {
+
+						pending.remove(sequence);
+
+					} else {
+
+						logger.warn("Task journal {} is corrupt, ignoring remaining entries", file);
+						break;
+					}
+
+					maxSequence = Math.max(maxSequence, sequence);
+				}
+
+			} catch (EOFException eof) {
+				// end of journal, the last entry may be incomplete
+			}
+		}
+
+		rewrite();
+
+		return new ArrayList<>(pending.values());
+	}
+
+	public synchronized void close() {
+
+		if (out != null) {
+
+			try {
+
+				out.close();
+
+			} catch (IOException ioex) {
+				logger.warn("Unable to close task journal {}: {}", file, ioex.getMessage());
+			}
+
+			out = null;
+		}
+	}
+
+	public synchronized long getMaxSequence() {
+		return maxSequence;
+	}
+
+	public synchronized void added(final long sequence, final PersistentTask task) {
+
+		final String state = task.getPersistentState();
+		final Entry entry  = new Entry(sequence, task.priority(), task.getClass().getName(), state != null ? state : "");
+
+		pending.put(sequence, entry);
+
+		if (out != null) {
+
+			try {
+
+				out.writeByte(ADDED);
+				out.writeLong(sequence);
+				out.writeInt(entry.priority);
+				out.writeUTF(entry.className);
+				out.writeUTF(entry.state);
+				out.flush();
+
+				records++;
+
+			} catch (IOException ioex) {
+				logger.warn("Unable to write to task journal {}: {}", file, ioex.getMessage());
+			}
+		}
+	}
+
+	public synchronized void done(final long sequence) {
+
+		if (pending.remove(sequence) != null && out != null) {
+
+			try {
+
+				out.writeByte(DONE);
+				out.writeLong(sequence);
+				out.flush();
+
+				records++;
+
+				// more than half of the records belong to finished tasks
+				if (records > COMPACTION_LIMIT && records > pending.size() * 2) {
+					rewrite();
+				}
+
+			} catch (IOException ioex) {
+
+				if (out == null) {
+					logger.error("Unable to reopen task journal {}, pending tasks will not survive a restart: {}", file, ioex.getMessage());
+				} else {
+					logger.warn("Unable to write to task journal {}: {}", file, ioex.getMessage());
+				}
+			}
+		}
+	}
+
+	public synchronized int size() {
+		return pending.size();
+	}
+
+	// ----- private methods -----
+	private void rewrite() throws IOException {
+
+		final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+		try (final DataOutputStream tmpOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+
+			for (final Entry entry : pending.values()) {
+
+				tmpOut.writeByte(ADDED);
+				tmpOut.writeLong(entry.sequence);
+				tmpOut.writeInt(entry.priority);
+				tmpOut.writeUTF(entry.className);
+				tmpOut.writeUTF(entry.state);
+			}
+
+		} catch (IOException ioex) {
+
+			// the current journal is still intact and open, keep appending to it
+			Files.deleteIfExists(tmp);
+			throw ioex;
+		}
+
+		close();
+
+		try {
+
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			records = pending.size();
+
+		} finally {
+
+			// reopen the journal in any case, either the compacted or the previous one
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile(), true)));
+		}
+	}
+
+	// ----- nested classes -----
+	static class Entry {
+
+		private long sequence    = 0L;
+		private int priority     = 0;
+		private String className = null;
+		private String state     = null;
+
+		Entry(final long sequence, final int priority, final String className, final String state) {
+
+			this.sequence  = sequence;
+			this.priority  = priority;
+			this.className = className;
+			this.state     = state;
+		}
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		public String getClassName() {
+			return className;
+		}
+
+		public String getState() {
+			return state;
+		}
+	}
+}
@@ -22,125 +22,218 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.structr.api.config.Settings;
 import org.structr.api.graph.Node;
 import org.structr.api.graph.PropertyContainer;
 import org.structr.api.graph.Relationship;
+import org.structr.api.util.Cachable;
+import org.structr.api.util.FixedSizeCache;
 import org.structr.core.graph.NodeInterface;
 
 /**
+ * Caches permission resolution masks for pairs of nodes, together with
+ * the UUIDs and relationship types of the path they were resolved on.
  *
+ * Entries are indexed by UUID and relationship type so that an
+ * invalidation only touches the affected entries. The number of
+ * entries is limited, the least recently used entries are evicted.
+ *
+ * Every invalidation increments a generation counter. Callers read the
+ * generation before they start to resolve a path and pass it to put and
+ * update, so that a path that was resolved while an invalidation was
+ * running is not stored, or is removed again if the invalidation
+ * happened while the entry was published.
  */
 public class AccessPathCache {
 
-	private static final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
-	private static final Set<String> allRelTypes       = new HashSet<>();
-	private static final Set<String> allUuids          = new HashSet<>();
+	private static final FixedSizeCache<String, CacheEntry> cache      = new FixedSizeCache<>(Settings.AccessPathCacheSize.getValue());
+	private static final Map<String, Set<CacheEntry>> entriesByUuid    = new ConcurrentHashMap<>();
+	private static final Map<String, Set<CacheEntry>> entriesByRelType = new ConcurrentHashMap<>();
+	private static final LongAdder invalidations                       = new LongAdder();
+	private static final AtomicLong generation                         = new AtomicLong();
 
 	public static PermissionResolutionMask get(final NodeInterface startNode, final NodeInterface endNode) {
 
-		final String cacheKey  = cacheKey(startNode, endNode);
-		final CacheEntry entry = cache.get(cacheKey);
-
+		final CacheEntry entry = cache.get(cacheKey(startNode, endNode));
 		if (entry != null) {
+
 			return entry.mask;
 		}
 
 		return null;
 	}
 
-	public static void put(final NodeInterface startNode, final NodeInterface endNode, final PermissionResolutionMask mask) {
+	public static long getGeneration() {
+		return generation.get();
+	}
+
+	public static void put(final NodeInterface startNode, final NodeInterface endNode, final PermissionResolutionMask mask, final long expectedGeneration) {
 
-		final CacheEntry entry = getOrCreateCacheEntry(startNode, endNode);
+		final CacheEntry entry = getOrCreateCacheEntry(startNode, endNode, expectedGeneration);
+		if (entry != null) {
 
-		// remember UUIDs
-		allUuids.add(startNode.getUuid());
-		allUuids.add(endNode.getUuid());
+			addUuid(entry, startNode.getUuid());
+			addUuid(entry, endNode.getUuid());
 
-		entry.mask = mask;
-	}
+			entry.mask = mask;
 
-	public static void update(final NodeInterface startNode, final NodeInterface endNode, final Node node) {
+			discardIfInvalidated(entry, expectedGeneration);
+		}
+	}
 
-		final CacheEntry entry = getOrCreateCacheEntry(startNode, endNode);
-		final String uuid      = getUuid(node);
+	public static void update(final NodeInterface startNode, final NodeInterface endNode, final Node node, final long expectedGeneration) {
 
+		final String uuid = getUuid(node);
 		if (uuid != null) {
 
-			entry.uuids.add(uuid);
-			allUuids.add(uuid);
+			final CacheEntry entry = getOrCreateCacheEntry(startNode, endNode, expectedGeneration);
+			if (entry != null) {
+
+				addUuid(entry, uuid);
+
+				discardIfInvalidated(entry, expectedGeneration);
+			}
 		}
 	}
 
-	public static void update(final NodeInterface startNode, final NodeInterface endNode, final Relationship rel) {
-
-		final CacheEntry entry = getOrCreateCacheEntry(startNode, endNode);
-		final String uuid      = getUuid(rel);
+	public static void update(final NodeInterface startNode, final NodeInterface endNode, final Relationship rel, final long expectedGeneration) {
 
+		final String uuid = getUuid(rel);
 		if (uuid != null) {
 
-			final String relType   = rel.getType().name();
+			final CacheEntry entry = getOrCreateCacheEntry(startNode, endNode, expectedGeneration);
+			if (entry != null) {
+
+				final String relType = rel.getType().name();
 
-			entry.uuids.add(uuid);
-			allUuids.add(uuid);
+				addUuid(entry, uuid);
+				addEntry(entriesByRelType, relType, entry);
 
-			entry.relTypes.add(relType);
-			allRelTypes.add(relType);
+				entry.relTypes.add(relType);
 
+				discardIfInvalidated(entry, expectedGeneration);
+			}
 		}
 	}
 
 	public static void invalidateForId(final String uuid) {
 
-		if (allUuids.contains(uuid)) {
-
-			for (final CacheEntry entry : cache.values()) {
+		if (uuid != null) {
 
-				if (entry.uuids.contains(uuid)) {
-					cache.remove(entry.key);
-				}
-			}
+			generation.incrementAndGet();
 
-			allUuids.remove(uuid);
+			invalidate(entriesByUuid.remove(uuid));
 		}
 	}
 
 	public static void invalidateForRelType(final String relType) {
 
-		if (allRelTypes.contains(relType)) {
+		if (relType != null) {
 
-			for (final CacheEntry entry : cache.values()) {
-
-				if (entry.relTypes.contains(relType)) {
-					cache.remove(entry.key);
-				}
-			}
+			generation.incrementAndGet();
 
-			allRelTypes.remove(relType);
+			invalidate(entriesByRelType.remove(relType));
 		}
 	}
 
 	public static void invalidate() {
 
-		allRelTypes.clear();
-		allUuids.clear();
+		generation.incrementAndGet();
+
 		cache.clear();
+		entriesByUuid.clear();
+		entriesByRelType.clear();
+
+		invalidations.increment();
+	}
+
+	public static int size() {
+		return cache.size();
+	}
+
+	public static long getHitCount() {
+		return cache.getHitCount();
+	}
+
+	public static long getMissCount() {
+		return cache.getMissCount();
+	}
+
+	public static long getEvictionCount() {
+		return cache.getEvictionCount();
+	}
+
+	public static long getInvalidationCount() {
+		return invalidations.sum();
 	}
 
 	// ----- private methods -----
-	private static CacheEntry getOrCreateCacheEntry(final NodeInterface startNode, final NodeInterface endNode) {
+	private static void invalidate(final Set<CacheEntry> entries) {
 
-		final String cacheKey = cacheKey(startNode, endNode);
-		CacheEntry entry      = cache.get(cacheKey);
+		if (entries != null) {
 
-		if (entry == null) {
+			for (final CacheEntry entry : entries) {
 
-			entry = new CacheEntry();
-			entry.key = cacheKey;
+				cache.remove(entry.key);
+				entry.unregister();
+			}
+
+			invalidations.increment();
+		}
+	}
+
+	private static CacheEntry getOrCreateCacheEntry(final NodeInterface startNode, final NodeInterface endNode, final long expectedGeneration) {
+
+		// the path was resolved before an invalidation and may be stale
+		if (generation.get() != expectedGeneration) {
+			return null;
+		}
+
+		// atomic, so that concurrent updates of the same path can not create two entries
+		return cache.computeIfAbsent(cacheKey(startNode, endNode), CacheEntry::new);
+	}
+
+	private static void discardIfInvalidated(final CacheEntry entry, final long expectedGeneration) {
 
-			cache.put(cacheKey, entry);
+		// an invalidation that ran while the entry was published may have missed it
+		if (generation.get() != expectedGeneration) {
+
+			cache.remove(entry.key);
+			entry.unregister();
 		}
+	}
+
+	private static void addUuid(final CacheEntry entry, final String uuid) {
+
+		// register entry before the dependency is recorded so that
+		// a concurrent invalidation can not miss it
+		addEntry(entriesByUuid, uuid, entry);
+		entry.uuids.add(uuid);
+	}
+
+	private static void addEntry(final Map<String, Set<CacheEntry>> index, final String key, final CacheEntry entry) {
 
-		return entry;
+		// atomic, so that a concurrent removal of an empty set can not drop the entry
+		index.compute(key, (k, entries) -> {
+
+			final Set<CacheEntry> set = entries != null ? entries : new HashSet<>();
+
+			set.add(entry);
+
+			return set;
+		});
+	}
+
+	private static void removeEntry(final Map<String, Set<CacheEntry>> index, final String key, final CacheEntry entry) {
+
+		index.computeIfPresent(key, (k, entries) -> {
+
+			entries.remove(entry);
+
+			return entries.isEmpty() ? null : entries;
+		});
 	}
 
 	private static String cacheKey(final NodeInterface startNode, final NodeInterface endNode) {
@@ -157,11 +250,36 @@ public class AccessPathCache {
 	}
 
 	// ----- nested classes -----
-	private static class CacheEntry {
+	/**
+	 * The indexes reference entries rather than keys, so that removing an
+	 * evicted entry from the indexes can not affect a newer entry that
+	 * has been stored under the same key in the meantime.
+	 */
+	private static class CacheEntry implements Cachable {
+
+		protected final Set<String> uuids                = ConcurrentHashMap.newKeySet();
+		protected final Set<String> relTypes             = ConcurrentHashMap.newKeySet();
+		protected volatile PermissionResolutionMask mask = null;
+		protected String key                             = null;
+
+		public CacheEntry(final String key) {
+			this.key = key;
+		}
+
+		@Override
+		public void onRemoveFromCache() {
+			unregister();
+		}
+
+		private void unregister() {
 
-		protected Set<String> uuids             = new HashSet<>();
-		protected Set<String> relTypes          = new HashSet<>();
-		protected PermissionResolutionMask mask = null;
-		protected String key                    = null;
+			for (final String uuid : uuids) {
+				removeEntry(entriesByUuid, uuid, this);
+			}
+
+			for (final String relType : relTypes) {
+				removeEntry(entriesByRelType, relType, this);
+			}
+		}
 	}
 }
@@ -18,10 +18,13 @@
  */
 package org.structr.common;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.Result;
 
@@ -119,6 +122,122 @@ public class PagingHelper {
 
 	}
 
+	/**
+	 * Return the page of the result that follows the element the given
+	 * cursor points to. The cursor contains the UUID of the last element
+	 * of the previous page, so paging is stable when elements are added
+	 * or removed in front of the current position. If that element does
+	 * not exist any more, the offset stored in the cursor is used. An
+	 * empty cursor denotes the first page.
+	 *
+	 * @param result
+	 * @param pageSize
+	 * @param cursor
+	 * @return subResult
+	 * @throws FrameworkException
+	 */
+	public static Result subResult(final Result result, final int pageSize, final String cursor) throws FrameworkException {
+
+		if (result == null || pageSize <= 0) {
+
+			return result;
+		}
+
+		final List<? extends GraphObject> list = result.getResults();
+		final int size                         = list.size();
+		int fromIndex                          = 0;
+
+		if (cursor != null && !cursor.isEmpty()) {
+
+			final String[] parts = decodeCursor(cursor);
+			final String uuid    = parts[1];
+
+			fromIndex = Math.min(size, Integer.parseInt(parts[0]));
+
+			// fast path: the element is still at the same position
+			if (fromIndex == 0 || !uuid.equals(list.get(fromIndex - 1).getUuid())) {
+
+				for (int i=0; i<size; i++) {
+
+					if (uuid.equals(list.get(i).getUuid())) {
+
+						fromIndex = i + 1;
+						break;
+					}
+				}
+			}
+		}
+
+		final int toIndex       = fromIndex + Math.min(pageSize, size - fromIndex);
+		final Result subResult  = new Result(list.subList(fromIndex, toIndex), size, result.isCollection(), result.isPrimitiveArray());
+
+		if (pageSize < Integer.MAX_VALUE) {
+
+			subResult.setPageSize(pageSize);
+		}
+
+		if (toIndex > fromIndex && toIndex < size) {
+
+			subResult.setNextCursor(getCursor(list.get(toIndex - 1), toIndex));
+		}
+
+		return subResult;
+	}
+
+	/**
+	 * Return the page of a result that was fetched after the element the
+	 * given cursor points to, with one additional element to determine
+	 * whether there is a next page.
+	 *
+	 * @param result
+	 * @param pageSize
+	 * @param cursor
+	 * @return subResult
+	 * @throws FrameworkException
+	 */
+	public static Result cursorResult(final Result result, final int pageSize, final String cursor) throws FrameworkException {
+
+		final List<? extends GraphObject> list = result.getResults();
+		final int size                         = list.size();
+		final int toIndex                      = Math.min(pageSize, size);
+		final Result subResult                 = new Result(list.subList(0, toIndex), null, result.isCollection(), result.isPrimitiveArray());
+		int offset                             = 0;
+
+		if (cursor != null && !cursor.isEmpty()) {
+			offset = Integer.parseInt(decodeCursor(cursor)[0]);
+		}
+
+		if (pageSize < Integer.MAX_VALUE) {
+
+			subResult.setPageSize(pageSize);
+		}
+
+		if (toIndex > 0 && toIndex < size) {
+
+			subResult.setNextCursor(getCursor(list.get(toIndex - 1), offset + toIndex));
+		}
+
+		return subResult;
+	}
+
+	/**
+	 * Return the UUID of the element the given cursor points to, or null
+	 * if the cursor is empty.
+	 *
+	 * @param cursor
+	 * @return uuid or null
+	 * @throws FrameworkException
+	 */
+	public static String getCursorUuid(final String cursor) throws FrameworkException {
+
+		if (cursor != null && !cursor.isEmpty()) {
+
+			return decodeCursor(cursor)[1];
+		}
+
+		return null;
+	}
+
 	public static Result addPagingParameter(Result result, int pageSize, int page) {
 
 		if (pageSize > 0 && pageSize < Integer.MAX_VALUE) {
@@ -133,6 +252,11 @@ public class PagingHelper {
 			result.setPage(page);
 			result.setPageSize(pageSize);
 
+			// allow clients to continue with cursor-based paging
+			if (page > 0 && page < pageCount && !result.isEmpty()) {
+
+				result.setNextCursor(getCursor(result.get(result.size() - 1), page * pageSize));
+			}
 		}
 
 		return result;
@@ -141,6 +265,40 @@ public class PagingHelper {
 
 	//~--- get methods ----------------------------------------------------
 
+	/**
+	 * Creates an opaque cursor that points to the position after the
+	 * given element.
+	 *
+	 * @param obj the last element of the current page
+	 * @param offset the offset of the next page
+	 * @return cursor
+	 */
+	public static String getCursor(final GraphObject obj, final int offset) {
+
+		final String value = offset + ":" + obj.getUuid();
+
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String[] decodeCursor(final String cursor) throws FrameworkException {
+
+		try {
+
+			final String value   = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+			final String[] parts = value.split(":", 2);
+
+			if (parts.length == 2 && Integer.parseInt(parts[0]) >= 0) {
+
+				return parts;
+			}
+
+		} catch (IllegalArgumentException iex) {
+			// NumberFormatException is an IllegalArgumentException
+		}
+
+		throw new FrameworkException(400, "Invalid cursor " + cursor);
+	}
+
 	private static int getPageCount(int resultCount, int pageSize) {
 
 		return (int) Math.rint(Math.ceil((double) resultCount / (double) pageSize));
@@ -0,0 +1,431 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.structr.api.NotFoundException;
+import org.structr.api.config.Settings;
+import org.structr.api.util.Cachable;
+import org.structr.api.util.FixedSizeCache;
+import org.structr.core.entity.Group;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.TransactionCommand;
+
+/**
+ * Caches the results of the domain permission resolution in
+ * AbstractNode.isGranted for (node, principal) pairs. The four
+ * permissions are stored in a single int with two bits each,
+ * one that indicates whether the result is known and one for the
+ * result itself.
+ *
+ * Entries are indexed by node and principal so that changes of
+ * security relationships, ownership and group membership only
+ * invalidate the results of the affected principals.
+ *
+ * Invalidations inside a transaction are collected and applied after
+ * the transaction has been committed, otherwise a concurrent request
+ * could store the old results again before the commit. Until then, the
+ * modifying transaction itself neither reads nor populates the cache.
+ *
+ * Every invalidation increments a generation counter. Callers read the
+ * generation before they start resolving and pass it to put(), so that
+ * a result computed from data that has been invalidated in the meantime
+ * is not stored.
+ */
+public class PermissionResolutionCache {
+
+	private static final String AFTER_COMMIT_KEY                       = PermissionResolutionCache.class.getName();
+	private static final FixedSizeCache<CacheKey, CacheEntry> cache = new FixedSizeCache<>(Settings.ResolutionCacheSize.getValue());
+	private static final Map<Long, Set<CacheEntry>> entriesByNode      = new ConcurrentHashMap<>();
+	private static final Map<Long, Set<CacheEntry>> entriesByPrincipal = new ConcurrentHashMap<>();
+	private static final LongAdder invalidations                       = new LongAdder();
+	private static final AtomicLong generation                         = new AtomicLong();
+
+	public static Boolean get(final long nodeId, final long principalId, final Permission permission) {
+
+		if (hasPendingInvalidation()) {
+			return null;
+		}
+
+		final CacheEntry entry = cache.get(new CacheKey(nodeId, principalId));
+		if (entry != null) {
+
+			final int shift = shift(permission);
+			final int bits  = entry.bits.get();
+
+			if ((bits & (1 << shift)) != 0) {
+
+				return (bits & (2 << shift)) != 0;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the current generation, to be read before the resolution
+	 * of the results that are passed to put() starts.
+	 *
+	 * @return the generation
+	 */
+	public static long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Stores the given result if there has been no invalidation since
+	 * the given generation was read. A positive result is never
+	 * overwritten by a negative one.
+	 *
+	 * @param nodeId
+	 * @param principalId
+	 * @param permission
+	 * @param value
+	 * @param expectedGeneration the generation read before the result was resolved
+	 */
+	public static void put(final long nodeId, final long principalId, final Permission permission, final boolean value, final long expectedGeneration) {
+
+		// results of uncommitted modifications must not become visible to other transactions
+		if (hasPendingInvalidation() || generation.get() != expectedGeneration) {
+			return;
+		}
+
+		final CacheEntry entry = cache.computeIfAbsent(new CacheKey(nodeId, principalId), key -> {
+
+			final CacheEntry newEntry = new CacheEntry(key);
+
+			// register entry before it becomes visible so that
+			// an invalidation can not miss it
+			addEntry(entriesByNode, nodeId, newEntry);
+			addEntry(entriesByPrincipal, principalId, newEntry);
+
+			return newEntry;
+		});
+
+		final int shift = shift(permission);
+		final int known = 1 << shift;
+		final int mask  = value ? known | (2 << shift) : known;
+
+		int bits = entry.bits.get();
+		while ((bits & (2 << shift)) == 0 && !entry.bits.compareAndSet(bits, (bits & ~(3 << shift)) | mask)) {
+			bits = entry.bits.get();
+		}
+
+		// an invalidation that started after the first check may have missed
+		// the entry, so it must be discarded (invalidations increment the
+		// generation before they remove entries)
+		if (generation.get() != expectedGeneration) {
+
+			cache.remove(entry.key);
+			entry.onRemoveFromCache();
+		}
+	}
+
+	public static void invalidateNode(final long nodeId) {
+
+		final PendingInvalidation pending = getPendingInvalidation();
+		if (pending != null) {
+
+			pending.nodeIds.add(nodeId);
+
+		} else {
+
+			removeNode(nodeId);
+		}
+	}
+
+	/**
+	 * Invalidates all results of the given principal and of all principals
+	 * that inherit its permissions via group membership.
+	 *
+	 * @param principal
+	 */
+	public static void invalidatePrincipal(final Principal principal) {
+		invalidatePrincipal(principal, new HashSet<>());
+	}
+
+	/**
+	 * Invalidates the results of the principal with the given ID only,
+	 * without following group membership.
+	 *
+	 * @param principalId
+	 */
+	public static void invalidatePrincipal(final long principalId) {
+
+		final PendingInvalidation pending = getPendingInvalidation();
+		if (pending != null) {
+
+			pending.principalIds.add(principalId);
+
+		} else {
+
+			removePrincipal(principalId);
+		}
+	}
+
+	/**
+	 * Invalidates all results, after the commit of the current transaction
+	 * if there is one.
+	 */
+	public static void invalidateAll() {
+
+		final PendingInvalidation pending = getPendingInvalidation();
+		if (pending != null) {
+
+			pending.clear = true;
+
+		} else {
+
+			clear();
+		}
+	}
+
+	public static void clear() {
+
+		generation.incrementAndGet();
+
+		cache.clear();
+		entriesByNode.clear();
+		entriesByPrincipal.clear();
+
+		invalidations.increment();
+	}
+
+	public static int size() {
+		return cache.size();
+	}
+
+	public static long getHitCount() {
+		return cache.getHitCount();
+	}
+
+	public static long getMissCount() {
+		return cache.getMissCount();
+	}
+
+	public static long getInvalidationCount() {
+		return invalidations.sum();
+	}
+
+	// ----- private methods -----
+	private static void removeNode(final long nodeId) {
+
+		// also for nodes without entries, a result for them may be being resolved
+		generation.incrementAndGet();
+
+		final Set<CacheEntry> entries = entriesByNode.remove(nodeId);
+		if (entries != null) {
+
+			for (final CacheEntry entry : entries) {
+
+				cache.remove(entry.key);
+				removeEntry(entriesByPrincipal, entry.key.principalId, entry);
+			}
+
+			invalidations.increment();
+		}
+	}
+
+	private static void removePrincipal(final long principalId) {
+
+		generation.incrementAndGet();
+
+		final Set<CacheEntry> entries = entriesByPrincipal.remove(principalId);
+		if (entries != null) {
+
+			for (final CacheEntry entry : entries) {
+
+				cache.remove(entry.key);
+				removeEntry(entriesByNode, entry.key.nodeId, entry);
+			}
+
+			invalidations.increment();
+		}
+	}
+
+	private static boolean hasPendingInvalidation() {
+		return TransactionCommand.getAfterCommitAction(AFTER_COMMIT_KEY) != null;
+	}
+
+	/**
+	 * Returns the invalidations of the current transaction, or null if
+	 * there is no transaction and invalidations take effect immediately.
+	 */
+	private static PendingInvalidation getPendingInvalidation() {
+
+		if (!TransactionCommand.inTransaction()) {
+			return null;
+		}
+
+		PendingInvalidation pending = (PendingInvalidation)TransactionCommand.getAfterCommitAction(AFTER_COMMIT_KEY);
+		if (pending == null) {
+
+			pending = new PendingInvalidation();
+			TransactionCommand.afterCommit(AFTER_COMMIT_KEY, pending);
+		}
+
+		return pending;
+	}
+
+	private static void invalidatePrincipal(final Principal principal, final Set<Long> visited) {
+
+		if (principal != null && visited.add(principal.getId())) {
+
+			invalidatePrincipal(principal.getId());
+
+			if (principal instanceof Group) {
+
+				try {
+
+					for (final Principal member : ((Group)principal).getMembersAsSuperUser()) {
+						invalidatePrincipal(member, visited);
+					}
+
+				} catch (NotFoundException nfex) {
+
+					// members of a deleted group can not be determined any more
+					invalidateAll();
+				}
+			}
+		}
+	}
+
+	private static void addEntry(final Map<Long, Set<CacheEntry>> index, final long id, final CacheEntry entry) {
+
+		// atomic, so that a concurrent removal of an empty set can not drop the entry
+		index.compute(id, (k, entries) -> {
+
+			final Set<CacheEntry> set = entries != null ? entries : new HashSet<>();
+
+			set.add(entry);
+
+			return set;
+		});
+	}
+
+	private static void removeEntry(final Map<Long, Set<CacheEntry>> index, final long id, final CacheEntry entry) {
+
+		index.computeIfPresent(id, (k, entries) -> {
+
+			entries.remove(entry);
+
+			return entries.isEmpty() ? null : entries;
+		});
+	}
+
+	private static int shift(final Permission permission) {
+
+		if (Permission.read.equals(permission)) {
+			return 0;
+		}
+
+		if (Permission.write.equals(permission)) {
+			return 2;
+		}
+
+		if (Permission.delete.equals(permission)) {
+			return 4;
+		}
+
+		return 6;
+	}
+
+	// ----- nested classes -----
+	private static class PendingInvalidation implements Runnable {
+
+		private final Set<Long> nodeIds      = new HashSet<>();
+		private final Set<Long> principalIds = new HashSet<>();
+		private boolean clear                = false;
+
+		@Override
+		public void run() {
+
+			if (clear) {
+
+				clear();
+				return;
+			}
+
+			for (final Long nodeId : nodeIds) {
+				removeNode(nodeId);
+			}
+
+			for (final Long principalId : principalIds) {
+				removePrincipal(principalId);
+			}
+		}
+	}
+
+	private static class CacheKey {
+
+		private final long nodeId;
+		private final long principalId;
+
+		public CacheKey(final long nodeId, final long principalId) {
+			this.nodeId      = nodeId;
+			this.principalId = principalId;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(nodeId) * 31 + Long.hashCode(principalId);
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+
+			if (other instanceof CacheKey) {
+
+				final CacheKey key = (CacheKey)other;
+
+				return nodeId == key.nodeId && principalId == key.principalId;
+			}
+
+			return false;
+		}
+	}
+
+	/**
+	 * The indexes reference entries rather than keys, so that removing an
+	 * evicted entry from the indexes can not affect a newer entry that
+	 * has been stored under the same key in the meantime.
+	 */
+	private static class CacheEntry implements Cachable {
+
+		private final AtomicInteger bits = new AtomicInteger();
+		private CacheKey key             = null;
+
+		public CacheEntry(final CacheKey key) {
+			this.key = key;
+		}
+
+		@Override
+		public void onRemoveFromCache() {
+
+			removeEntry(entriesByNode, key.nodeId, this);
+			removeEntry(entriesByPrincipal, key.principalId, this);
+		}
+	}
+}
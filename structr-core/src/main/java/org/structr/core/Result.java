@@ -43,6 +43,7 @@ public class Result<T extends GraphObject> {
 	private String queryTime          = null;
 	private String sortOrder          = null;
 	private String sortKey            = null;
+	private String nextCursor         = null;
 
 	private Integer resultCount       	= null;
 	private Integer pageCount         	= null;
@@ -170,6 +171,14 @@ public class Result<T extends GraphObject> {
 		this.sortOrder = sortOrder;
 	}
 
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public void setNextCursor(final String nextCursor) {
+		this.nextCursor = nextCursor;
+	}
+
 	public Integer getPageSize() {
 		return pageSize;
 	}
@@ -47,6 +47,7 @@ public interface Query<T extends GraphObject> extends Iterable<T> {
 	public Query<T> order(final boolean descending);
 	public Query<T> pageSize(final int pageSize);
 	public Query<T> page(final int page);
+	public Query<T> startAfter(final GraphObject obj);
 	public Query<T> publicOnly();
 	public Query<T> includeDeletedAndHidden();
 	public Query<T> publicOnly(final boolean publicOnly);
@@ -25,7 +25,6 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.GregorianCalendar;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -42,6 +41,7 @@ import org.apache.chemistry.opencmis.commons.enums.PropertyType;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.NotFoundException;
 import org.structr.api.Predicate;
 import org.structr.api.config.Settings;
 import org.structr.api.graph.Direction;
@@ -66,6 +66,7 @@ import org.structr.common.GraphObjectComparator;
 import org.structr.common.IdSorter;
 import org.structr.common.Permission;
 import org.structr.common.PermissionPropagation;
+import org.structr.common.PermissionResolutionCache;
 import org.structr.common.PermissionResolutionMask;
 import org.structr.common.PropertyView;
 import org.structr.common.SecurityContext;
@@ -109,7 +110,6 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 	private static final int permissionResolutionMaxLevel                                                 = Settings.ResolutionDepth.getValue();
 	private static final Logger logger                                                                    = LoggerFactory.getLogger(AbstractNode.class.getName());
 	private static final FixedSizeCache<String, Object> relationshipTemplateInstanceCache                 = new FixedSizeCache<>(1000);
-	private static final Map<Long, Map<Long, PermissionResolutionResult>> globalPermissionResolutionCache = new HashMap<>();
 
 	public static final View defaultView = new View(AbstractNode.class, PropertyView.Public, id, type);
 
@@ -679,6 +679,14 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 		return new IterableAdapter<>(template.getSource().getRawSource(SecurityContext.getSuperUserInstance(), dbNode, null), factory);
 	}
 
+	protected final <A extends NodeInterface, B extends NodeInterface, S extends Source, R extends Relation<A, B, S, ManyEndpoint<B>>> Iterable<R> getOutgoingRelationshipsAsSuperUser(final Class<R> type) {
+
+		final RelationshipFactory<R> factory = new RelationshipFactory<>(SecurityContext.getSuperUserInstance());
+		final R template = getRelationshipForType(type);
+
+		return new IterableAdapter<>(template.getTarget().getRawSource(SecurityContext.getSuperUserInstance(), dbNode, null), factory);
+	}
+
 	protected final <A extends NodeInterface, B extends NodeInterface, T extends Target, R extends Relation<A, B, ManyStartpoint<A>, T>> R getOutgoingRelationshipAsSuperUser(final Class<R> type) {
 
 		final RelationshipFactory<R> factory = new RelationshipFactory<>(SecurityContext.getSuperUserInstance());
@@ -798,7 +806,7 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 
 		final boolean doLog = securityContext.hasParameter("logPermissionResolution");
 
-		return isGranted(permission, accessingUser, new PermissionResolutionMask(), 0, new AlreadyTraversed(), true, doLog);
+		return isGranted(permission, accessingUser, new PermissionResolutionMask(), 0, new AlreadyTraversed(PermissionResolutionCache.getGeneration()), true, doLog);
 	}
 
 	private boolean isGranted(final Permission permission, final Principal accessingUser, final PermissionResolutionMask mask, final int level, final AlreadyTraversed alreadyTraversed, final boolean resolvePermissions, final boolean doLog) {
@@ -878,7 +886,7 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 							if (Boolean.TRUE.equals(value)) {
 
 								// do backtracking
-								backtrack(info, accessingUser.getId(), permission, true, 0, doLog);
+								backtrack(info, accessingUser.getId(), permission, true, 0, alreadyTraversed.generation, doLog);
 
 								return true;
 							}
@@ -888,7 +896,7 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 							if (info.node.hasEffectivePermissions(info, accessingUser, permission, mask, level, alreadyTraversed, bfsNodes, doLog)) {
 
 								// do backtracking
-								backtrack(info, accessingUser.getId(), permission, true, 0, doLog);
+								backtrack(info, accessingUser.getId(), permission, true, 0, alreadyTraversed.generation, doLog);
 
 								return true;
 							}
@@ -898,7 +906,7 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 				} while (!bfsNodes.isEmpty());
 
 				// do backtracking
-				backtrack(root, accessingUser.getId(), permission, false, 0, doLog);
+				backtrack(root, accessingUser.getId(), permission, false, 0, alreadyTraversed.generation, doLog);
 			}
 
 			// Last: recursively check possible parent principals
@@ -913,7 +921,7 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 		return false;
 	}
 
-	private void backtrack(final BFSInfo info, final long principalId, final Permission permission, final boolean value, final int level, final boolean doLog) {
+	private void backtrack(final BFSInfo info, final long principalId, final Permission permission, final boolean value, final int level, final long generation, final boolean doLog) {
 
 		if (doLog) {
 
@@ -932,12 +940,12 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 			System.out.print(info.node.getType() + " (" + info.node.getUuid() + ") --> ");
 		}
 
-		info.node.storePermissionResolutionResult(principalId, permission, value);
+		info.node.storePermissionResolutionResult(principalId, permission, value, generation);
 
 		// go to parent(s)
 		if (info.parent != null) {
 
-			backtrack(info.parent, principalId, permission, value, level+1, doLog);
+			backtrack(info.parent, principalId, permission, value, level+1, generation, doLog);
 		}
 
 		if (doLog && level == 0) {
@@ -983,7 +991,7 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 
 							if (otherNode.isGranted(permission, principal, mask, level+1, alreadyTraversed, false, doLog)) {
 
-								otherNode.storePermissionResolutionResult(principal.getId(), permission, true);
+								otherNode.storePermissionResolutionResult(principal.getId(), permission, true, alreadyTraversed.generation);
 
 								// break early
 								return true;
@@ -1125,67 +1133,56 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 	}
 
 	private Boolean getPermissionResolutionResult(final long principalId, final Permission permission) {
+		return PermissionResolutionCache.get(getId(), principalId, permission);
+	}
 
-		Map<Long, PermissionResolutionResult> permissionResolutionCache = globalPermissionResolutionCache.get(getId());
-		if (permissionResolutionCache == null) {
-
-			permissionResolutionCache = new HashMap<>();
-			globalPermissionResolutionCache.put(getId(), permissionResolutionCache);
-		}
-
-		PermissionResolutionResult result = permissionResolutionCache.get(principalId);
-		if (result != null) {
-
-			if (permission.equals(Permission.read)) {
-				return result.read;
-			}
+	private void storePermissionResolutionResult(final long principalId, final Permission permission, final boolean value, final long generation) {
+		PermissionResolutionCache.put(getId(), principalId, permission, value, generation);
+	}
 
-			if (permission.equals(Permission.write)) {
-				return result.write;
-			}
+	/**
+	 * Indicates whether permissions can be propagated to or from nodes of
+	 * this type, i.e. whether permission resolution results of other nodes
+	 * can depend on this node.
+	 *
+	 * @return whether this node can be part of a permission propagation path
+	 */
+	private boolean isPermissionPropagationTarget() {
 
-			if (permission.equals(Permission.delete)) {
-				return result.delete;
-			}
+		for (final Class<Relation> propagatingType : SchemaRelationshipNode.getPropagatingRelationshipTypes()) {
 
-			if (permission.equals(Permission.accessControl)) {
-				return result.accessControl;
+			if (!Direction.BOTH.equals(getRelationshipForType(propagatingType).getDirectionForType(entityType))) {
+				return true;
 			}
 		}
 
-		return null;
+		return false;
 	}
 
-	private void storePermissionResolutionResult(final long principalId, final Permission permission, final boolean value) {
+	/**
+	 * Called on both ends of an OWNS or SECURITY relationship that has been
+	 * created or removed. Such a change only affects the results for the
+	 * target node and, via permission propagation, the results of the
+	 * principal at the start of the relationship (and its members).
+	 */
+	private void invalidatePermissionResolutionCacheForEndpoint() {
 
-		Map<Long, PermissionResolutionResult> permissionResolutionCache = globalPermissionResolutionCache.get(getId());
-		if (permissionResolutionCache == null) {
+		PermissionResolutionCache.invalidateNode(getId());
 
-			permissionResolutionCache = new HashMap<>();
-			globalPermissionResolutionCache.put(getId(), permissionResolutionCache);
+		if (this instanceof Principal) {
+			PermissionResolutionCache.invalidatePrincipal((Principal)this);
 		}
+	}
 
-		PermissionResolutionResult result = permissionResolutionCache.get(principalId);
-		if (result == null) {
-
-			result = new PermissionResolutionResult();
-			permissionResolutionCache.put(principalId, result);
-		}
+	private void invalidatePermissionResolutionCache() {
 
-		if (permission.equals(Permission.read) && (result.read == null || result.read == false)) {
-			result.read = value;
-		}
+		if (isPermissionPropagationTarget()) {
 
-		if (permission.equals(Permission.write) && (result.write == null || result.write == false)) {
-			result.write = value;
-		}
+			invalidatePermissionPropagation(this);
 
-		if (permission.equals(Permission.delete) && (result.delete == null || result.delete == false)) {
-			result.delete = value;
-		}
+		} else {
 
-		if (permission.equals(Permission.accessControl) && (result.accessControl == null || result.accessControl == false)) {
-			result.accessControl = value;
+			PermissionResolutionCache.invalidateNode(getId());
 		}
 	}
 
@@ -1227,13 +1224,27 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 
 	@Override
 	public boolean onModification(SecurityContext securityContext, ErrorBuffer errorBuffer, final ModificationQueue modificationQueue) throws FrameworkException {
-		clearPermissionResolutionCache();
+
+		// only the visibility flags and the type are relevant for permission resolution
+		if (modificationQueue.isPropertyModified(this, visibleToPublicUsers) || modificationQueue.isPropertyModified(this, visibleToAuthenticatedUsers) || modificationQueue.isPropertyModified(this, type)) {
+			invalidatePermissionResolutionCache();
+		}
+
 		return true;
 	}
 
 	@Override
 	public boolean onDeletion(SecurityContext securityContext, ErrorBuffer errorBuffer, PropertyMap properties) throws FrameworkException {
-		clearPermissionResolutionCache();
+
+		// nodes connected via permission propagation and the members of
+		// a group have already been invalidated when the relationships
+		// of this node were deleted
+		PermissionResolutionCache.invalidateNode(getId());
+
+		if (this instanceof Principal) {
+			PermissionResolutionCache.invalidatePrincipal(getId());
+		}
+
 		return true;
 	}
 
@@ -1251,22 +1262,20 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 
 	@Override
 	public void ownerModified(SecurityContext securityContext) {
-		clearPermissionResolutionCache();
+		invalidatePermissionResolutionCacheForEndpoint();
 	}
 
 	@Override
 	public void securityModified(SecurityContext securityContext) {
-		clearPermissionResolutionCache();
+		invalidatePermissionResolutionCacheForEndpoint();
 	}
 
 	@Override
 	public void locationModified(SecurityContext securityContext) {
-		clearPermissionResolutionCache();
 	}
 
 	@Override
 	public void propagatedModification(SecurityContext securityContext) {
-		clearPermissionResolutionCache();
 	}
 
 	@Override
@@ -1522,7 +1531,62 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 	}
 
 	public static void clearPermissionResolutionCache() {
-		globalPermissionResolutionCache.clear();
+		PermissionResolutionCache.clear();
+	}
+
+	/**
+	 * Invalidates the cached permission resolution results of the given
+	 * nodes and of all nodes that are connected to them via permission
+	 * propagation, because those can inherit permissions from each other.
+	 * If more nodes are affected than the cache can hold, the cache is
+	 * cleared instead.
+	 *
+	 * @param nodes
+	 */
+	public static void invalidatePermissionPropagation(final NodeInterface... nodes) {
+
+		final int maxNodes               = Settings.ResolutionCacheSize.getValue();
+		final Queue<NodeInterface> queue = new LinkedList<>();
+		final Set<Long> visited          = new HashSet<>();
+
+		for (final NodeInterface node : nodes) {
+
+			if (node != null) {
+				queue.add(node);
+			}
+		}
+
+		while (!queue.isEmpty()) {
+
+			final NodeInterface node = queue.poll();
+
+			if (visited.add(node.getId())) {
+
+				if (visited.size() > maxNodes) {
+
+					PermissionResolutionCache.invalidateAll();
+					return;
+				}
+
+				PermissionResolutionCache.invalidateNode(node.getId());
+
+				try {
+
+					for (final AbstractRelationship rel : node.getRelationshipsAsSuperUser()) {
+
+						if (rel instanceof PermissionPropagation) {
+							queue.add(rel.getOtherNodeAsSuperUser(node));
+						}
+					}
+
+				} catch (NotFoundException nfex) {
+
+					// the neighbours of a deleted node can not be determined any more
+					PermissionResolutionCache.invalidateAll();
+					return;
+				}
+			}
+		}
 	}
 
 	public static <A extends NodeInterface, B extends NodeInterface, R extends Relation<A, B, ?, ?>> R getRelationshipForType(final Class<R> type) {
@@ -2047,6 +2111,11 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 	private static class AlreadyTraversed {
 
 		private Map<String, Set<Long>> sets = new LinkedHashMap<>();
+		private long generation             = 0L;
+
+		public AlreadyTraversed(final long generation) {
+			this.generation = generation;
+		}
 
 		public boolean contains(final String key, final Long id) {
 
@@ -2088,12 +2157,4 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 			}
 		}
 	}
-
-	private static class PermissionResolutionResult {
-
-		Boolean read          = false;
-		Boolean write         = false;
-		Boolean delete        = false;
-		Boolean accessControl = false;
-	}
 }
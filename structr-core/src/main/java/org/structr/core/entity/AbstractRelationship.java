@@ -37,6 +37,7 @@ import org.structr.api.graph.RelationshipType;
 import org.structr.api.index.Index;
 import org.structr.cmis.CMISInfo;
 import org.structr.common.GraphObjectComparator;
+import org.structr.common.PermissionPropagation;
 import org.structr.common.PropertyView;
 import org.structr.common.SecurityContext;
 import org.structr.common.ValidationHelper;
@@ -137,6 +138,10 @@ public abstract class AbstractRelationship<S extends NodeInterface, T extends No
 
 	@Override
 	public void onRelationshipCreation() {
+
+		if (this instanceof PermissionPropagation) {
+			AbstractNode.invalidatePermissionPropagation(getSourceNodeAsSuperUser(), getTargetNodeAsSuperUser());
+		}
 	}
 
 	@Override
@@ -174,6 +179,10 @@ public abstract class AbstractRelationship<S extends NodeInterface, T extends No
 
 	@Override
 	public void onRelationshipDeletion() {
+
+		if (this instanceof PermissionPropagation) {
+			AbstractNode.invalidatePermissionPropagation(getSourceNodeAsSuperUser(), getTargetNodeAsSuperUser());
+		}
 	}
 
 	@Override
@@ -483,6 +492,11 @@ public abstract class AbstractRelationship<S extends NodeInterface, T extends No
 
 	@Override
 	public boolean onModification(SecurityContext securityContext, ErrorBuffer errorBuffer, final ModificationQueue modificationQueue) throws FrameworkException {
+
+		if (this instanceof PermissionPropagation) {
+			AbstractNode.invalidatePermissionPropagation(getSourceNodeAsSuperUser(), getTargetNodeAsSuperUser());
+		}
+
 		return isValid(errorBuffer);
 	}
 
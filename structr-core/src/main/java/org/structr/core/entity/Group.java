@@ -74,6 +74,17 @@ public class Group extends AbstractUser implements Principal {
 		return principals;
 	}
 
+	public List<Principal> getMembersAsSuperUser() {
+
+		final List<Principal> principals = new LinkedList<>();
+		for (final Groups groups : getOutgoingRelationshipsAsSuperUser(Groups.class)) {
+
+			principals.add(groups.getTargetNode());
+		}
+
+		return principals;
+	}
+
 	@Override
 	public boolean shouldSkipSecurityRelationships() {
 		return false;
@@ -25,6 +25,7 @@ import java.util.LinkedHashSet;
 import java.util.Set;
 import org.structr.api.graph.Relationship;
 import org.structr.common.Permission;
+import org.structr.common.PermissionResolutionCache;
 import org.structr.common.PropertyView;
 import org.structr.common.SecurityContext;
 import org.structr.common.SecurityDelegate;
@@ -81,10 +82,12 @@ public class Security extends ManyToMany<Principal, NodeInterface> {
 	}
 
 	public void setAllowed(final Set<String> allowed) {
+		invalidatePermissionResolutionCache();
 		SecurityDelegate.setAllowed(this, Security.allowed, allowed);
 	}
 
 	public void setAllowed(final Permission... allowed) {
+		invalidatePermissionResolutionCache();
 		SecurityDelegate.setAllowed(this, Security.allowed, allowed);
 	}
 
@@ -93,10 +96,12 @@ public class Security extends ManyToMany<Principal, NodeInterface> {
 	}
 
 	public void addPermission(final Permission permission) {
+		invalidatePermissionResolutionCache();
 		SecurityDelegate.addPermission(this, Security.allowed, permission);
 	}
 
 	public void removePermission(final Permission permission) {
+		invalidatePermissionResolutionCache();
 		SecurityDelegate.removePermission(this, Security.allowed, permission);
 	}
 
@@ -130,4 +135,19 @@ public class Security extends ManyToMany<Principal, NodeInterface> {
 	public boolean isInternal() {
 		return true;
 	}
+
+	// ----- private methods -----
+	private void invalidatePermissionResolutionCache() {
+
+		final Principal principal = getSourceNodeAsSuperUser();
+		final NodeInterface node  = getTargetNodeAsSuperUser();
+
+		if (principal != null) {
+			PermissionResolutionCache.invalidatePrincipal(principal);
+		}
+
+		if (node != null) {
+			PermissionResolutionCache.invalidateNode(node.getId());
+		}
+	}
 }
@@ -18,6 +18,7 @@
  */
 package org.structr.core.entity.relationship;
 
+import org.structr.common.PermissionResolutionCache;
 import org.structr.core.entity.Group;
 import org.structr.core.entity.ManyToMany;
 import org.structr.core.entity.Principal;
@@ -47,4 +48,28 @@ public class Groups extends ManyToMany<Group, Principal> {
 	public boolean isInternal() {
 		return true;
 	}
+
+	@Override
+	public void onRelationshipCreation() {
+
+		super.onRelationshipCreation();
+		invalidatePermissionResolutionCache();
+	}
+
+	@Override
+	public void onRelationshipDeletion() {
+
+		super.onRelationshipDeletion();
+		invalidatePermissionResolutionCache();
+	}
+
+	// ----- private methods -----
+	private void invalidatePermissionResolutionCache() {
+
+		final Principal member = getTargetNodeAsSuperUser();
+		if (member != null) {
+
+			PermissionResolutionCache.invalidatePrincipal(member);
+		}
+	}
 }
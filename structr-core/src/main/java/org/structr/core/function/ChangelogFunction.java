@@ -22,6 +22,7 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -38,6 +39,7 @@ import org.structr.core.GraphObjectMap;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.ChangelogStore;
 import org.structr.core.property.EndNodeProperty;
 import org.structr.core.property.Property;
 import org.structr.core.property.StringProperty;
@@ -83,44 +85,61 @@ public class ChangelogFunction extends Function<Object, Object> {
 
 			if (sources[0] instanceof GraphObject) {
 
-				final String changelog = ((GraphObject) sources[0]).getProperty(GraphObject.structrChangeLog);
+				final GraphObject obj                 = (GraphObject) sources[0];
+				final ChangelogFilter changelogFilter = new ChangelogFilter();
+				final List list                       = new ArrayList();
 
-				if (changelog != null && !("".equals(changelog))) {
+				if (sources.length >= 3 && sources[2] != null) {
 
-					final ChangelogFilter changelogFilter = new ChangelogFilter();
+					if (sources[2] instanceof NativeObject) {
 
-					if (sources.length >= 3 && sources[2] != null) {
+						changelogFilter.processJavaScriptConfigurationObject((NativeObject) sources[2]);
 
-						if (sources[2] instanceof NativeObject) {
+					} else {
 
-							changelogFilter.processJavaScriptConfigurationObject((NativeObject) sources[2]);
+						final int maxLength = sources.length;
 
-						} else {
+						for (int i = 2; (i + 2) <= maxLength; i += 2) {
 
-							final int maxLength = sources.length;
+							if (sources[i] != null && sources[i+1] != null) {
+								changelogFilter.addFilterEntry(sources[i].toString(), sources[i+1]);
+							}
 
-							for (int i = 2; (i + 2) <= maxLength; i += 2) {
+						}
 
-								if (sources[i] != null && sources[i+1] != null) {
-									changelogFilter.addFilterEntry(sources[i].toString(), sources[i+1]);
-								}
+						if (maxLength % 2 == 1 && sources[maxLength-1] != null) {
+							logger.warn("Ignoring dangling filterKey: {}", sources[maxLength-1]);
+						}
+					}
+				}
 
-							}
+				if (sources.length >= 2 && Boolean.TRUE.equals(sources[1])) {
+					changelogFilter.setResolveTargets(true);
+				}
 
-							if (maxLength % 2 == 1 && sources[maxLength-1] != null) {
-								logger.warn("Ignoring dangling filterKey: {}", sources[maxLength-1]);
-							}
+				// changelog entries that were stored in the object itself
+				final String changelog = obj.getProperty(GraphObject.structrChangeLog);
+
+				if (changelog != null && !("".equals(changelog))) {
+
+					list.addAll(changelogFilter.getFilteredChangelog(changelog));
+				}
+
+				if (Settings.ChangelogFileStore.getValue()) {
+
+					try {
+
+						for (final String record : ChangelogStore.getInstance().read(obj.getUuid(), changelogFilter.getTimeFrom())) {
+
+							list.addAll(changelogFilter.getFilteredChangelog(record));
 						}
-					}
 
-					if (sources.length >= 2 && Boolean.TRUE.equals(sources[1])) {
-						changelogFilter.setResolveTargets(true);
+					} catch (IOException ioex) {
+						logger.warn("Unable to read changelog of {}: {}", obj.getUuid(), ioex.getMessage());
 					}
-
-					return changelogFilter.getFilteredChangelog(changelog);
 				}
 
-				return new ArrayList();
+				return list;
 
 			} else {
 
@@ -250,6 +269,10 @@ public class ChangelogFunction extends Function<Object, Object> {
 			_resolveTargets = resolve;
 		}
 
+		public long getTimeFrom () {
+			return _filterTimeFrom != null ? _filterTimeFrom : 0L;
+		}
+
 		public List getFilteredChangelog (final String changelog) throws FrameworkException {
 
 			final List list = new ArrayList();
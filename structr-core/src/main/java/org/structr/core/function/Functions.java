@@ -29,6 +29,8 @@ import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
 import org.apache.commons.lang3.StringUtils;
+import org.structr.api.config.Settings;
+import org.structr.api.util.FixedSizeCache;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.error.UnlicensedException;
 import org.structr.core.GraphObject;
@@ -61,6 +63,7 @@ import org.structr.schema.action.Function;
 public class Functions {
 
 	private static final Map<String, Function<Object, Object>> functions = new LinkedHashMap<>();
+	private static final FixedSizeCache<String, Expression> expressions  = new FixedSizeCache<>(Settings.ExpressionCacheSize.getValue());
 	public static final String NULL_STRING                               = "___NULL___";
 
 	public static void put(final boolean licensed, final int edition, final String name, final Function<Object, Object> function) {
@@ -73,6 +76,9 @@ public class Functions {
 
 			functions.put(name, new UnlicensedFunction(name, edition));
 		}
+
+		// cached expressions may contain a value expression for the name
+		expressions.clear();
 	}
 
 	public static Set<String> getNames() {
@@ -88,6 +94,25 @@ public class Functions {
 	}
 
 	public static Object evaluate(final ActionContext actionContext, final GraphObject entity, final String expression) throws FrameworkException, UnlicensedException {
+		return parse(expression).evaluate(actionContext, entity);
+	}
+
+	/**
+	 * Returns the expression tree for the given source. Expression trees
+	 * are cached by their source text and must not be modified during
+	 * evaluation, so that they can be shared between threads.
+	 *
+	 * @param expression
+	 * @return the root of the expression tree
+	 * @throws FrameworkException
+	 */
+	public static Expression parse(final String expression) throws FrameworkException {
+
+		final Expression cached = expressions.get(expression);
+		if (cached != null) {
+
+			return cached;
+		}
 
 		final String expressionWithoutNewlines = expression.replace('\n', ' ').replace('\r', ' ');
 		final StreamTokenizer tokenizer = new StreamTokenizer(new StringReader(expressionWithoutNewlines));
@@ -214,7 +239,9 @@ public class Functions {
 			throw new FrameworkException(422, "Invalid expression: mismatched closing bracket after " + lastToken);
 		}
 
-		return root.evaluate(actionContext, entity);
+		expressions.put(expression, root);
+
+		return root;
 	}
 
 	public static String cleanString(final Object input) {
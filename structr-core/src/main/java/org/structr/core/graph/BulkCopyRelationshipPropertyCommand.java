@@ -60,8 +60,10 @@ public class BulkCopyRelationshipPropertyCommand extends NodeServiceCommand impl
 
 		if(graphDb != null) {
 
-			final Iterator<AbstractRelationship> relIterator = Iterables.map(relFactory, graphDb.getAllRelationships()).iterator();
-			final long count = bulkGraphOperation(securityContext, relIterator, 1000, "CopyRelationshipProperties", new BulkGraphOperation<AbstractRelationship>() {
+			final Iterator<AbstractRelationship> relIterator             = Iterables.map(relFactory, graphDb.getAllRelationships()).iterator();
+			final BulkGraphPartitioner<AbstractRelationship> partitioner = BulkGraphPartitioner.relationships(null, relFactory);
+
+			final long count = bulkGraphOperation(securityContext, relIterator, partitioner, 1000, "CopyRelationshipProperties", new BulkGraphOperation<AbstractRelationship>() {
 
 				@Override
 				public void handleGraphObject(SecurityContext securityContext, AbstractRelationship rel) {
@@ -93,6 +95,11 @@ public class BulkCopyRelationshipPropertyCommand extends NodeServiceCommand impl
 				public void handleTransactionFailure(SecurityContext securityContext, Throwable t) {
 					logger.warn("Unable to copy relationship properties: {}", t.getMessage() );
 				}
+
+				@Override
+				public boolean isParallelizable() {
+					return true;
+				}
 			});
 
 			logger.info("Finished setting properties on {} nodes", count);
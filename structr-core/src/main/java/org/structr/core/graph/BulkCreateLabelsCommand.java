@@ -22,6 +22,7 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
 import org.structr.api.DatabaseService;
+import org.structr.api.graph.Node;
 import org.structr.api.util.Iterables;
 import org.structr.common.SecurityContext;
 import org.structr.common.StructrAndSpatialPredicate;
@@ -54,7 +55,10 @@ public class BulkCreateLabelsCommand extends NodeServiceCommand implements Maint
 			info("Starting creation of labels for all nodes of type {}", entityType);
 		}
 
-		final long count = bulkGraphOperation(securityContext, nodeIterator, 10000, "CreateLabels", new BulkGraphOperation<AbstractNode>() {
+		final StructrAndSpatialPredicate filter              = new StructrAndSpatialPredicate(true, false, false);
+		final BulkGraphPartitioner<AbstractNode> partitioner = BulkGraphPartitioner.nodes((Node node) -> filter.accept(node) && (entityType == null || entityType.equals(node.getProperty("type"))), nodeFactory);
+
+		final long count = bulkGraphOperation(securityContext, nodeIterator, partitioner, 10000, "CreateLabels", new BulkGraphOperation<AbstractNode>() {
 
 			@Override
 			public void handleGraphObject(SecurityContext securityContext, AbstractNode node) {
@@ -71,6 +75,11 @@ public class BulkCreateLabelsCommand extends NodeServiceCommand implements Maint
 			public void handleTransactionFailure(SecurityContext securityContext, Throwable t) {
 				warn("Unable to create labels for node: {}", t.getMessage());
 			}
+
+			@Override
+			public boolean isParallelizable() {
+				return true;
+			}
 		});
 
 		info("Done with creating labels on {} nodes", count);
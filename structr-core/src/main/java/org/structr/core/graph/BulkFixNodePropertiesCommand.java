@@ -23,6 +23,7 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.DatabaseService;
+import org.structr.api.graph.Label;
 import org.structr.api.graph.Node;
 import org.structr.api.util.Iterables;
 import org.structr.common.PropertyView;
@@ -62,7 +63,9 @@ public class BulkFixNodePropertiesCommand extends NodeServiceCommand implements
 
 				logger.info("Trying to fix properties of all {} nodes", type.getSimpleName() );
 
-				long nodeCount = bulkGraphOperation(securityContext, nodeIterator, 100, "FixNodeProperties", new BulkGraphOperation<AbstractNode>() {
+				final BulkGraphPartitioner<AbstractNode> partitioner = BulkGraphPartitioner.nodes((Node node) -> hasLabel(node, entityTypeName), factory);
+
+				long nodeCount = bulkGraphOperation(securityContext, nodeIterator, partitioner, 100, "FixNodeProperties", new BulkGraphOperation<AbstractNode>() {
 
 					private void fixProperty(AbstractNode node, Property propertyToFix) {
 
@@ -137,6 +140,11 @@ public class BulkFixNodePropertiesCommand extends NodeServiceCommand implements
 							}
 						}
 					}
+
+					@Override
+					public boolean isParallelizable() {
+						return true;
+					}
 				});
 
 				logger.info("Fixed {} nodes", nodeCount);
@@ -157,4 +165,17 @@ public class BulkFixNodePropertiesCommand extends NodeServiceCommand implements
 	public boolean requiresFlushingOfCaches() {
 		return false;
 	}
+
+	// ----- private methods -----
+	private boolean hasLabel(final Node node, final String name) {
+
+		for (final Label label : node.getLabels()) {
+
+			if (name.equals(label.name())) {
+				return true;
+			}
+		}
+
+		return false;
+	}
 }
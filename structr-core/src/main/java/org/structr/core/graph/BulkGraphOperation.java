@@ -58,4 +58,15 @@ public abstract class BulkGraphOperation<T> {
 	public boolean doNotifications() {
 		return false;
 	}
+
+	/**
+	 * Indicates whether this operation can be executed in parallel, i.e.
+	 * whether the objects can be processed independently of each other
+	 * in concurrent transactions.
+	 *
+	 * @return whether this operation can be executed in parallel
+	 */
+	public boolean isParallelizable() {
+		return false;
+	}
 }
@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.structr.api.DatabaseService;
+import org.structr.api.NativeResult;
+import org.structr.api.Predicate;
+import org.structr.api.graph.Node;
+import org.structr.api.graph.Relationship;
+
+/**
+ * Partitions the objects of a parallel bulk graph operation by ranges of
+ * their internal database ids. Each range is loaded by the worker that
+ * processes it, in the worker's own transaction, so a range can be loaded
+ * again when its transaction has to be retried.
+ *
+ *
+ */
+public abstract class BulkGraphPartitioner<T> {
+
+	/**
+	 * Returns the highest internal id of the objects to partition.
+	 *
+	 * @param db
+	 * @return the highest id, or -1 if there are no objects
+	 */
+	public abstract long getMaxId(final DatabaseService db);
+
+	/**
+	 * Returns the objects with internal ids in the given range.
+	 *
+	 * @param db
+	 * @param fromId the first id of the range
+	 * @param toId the first id after the range
+	 * @return the objects of the range
+	 */
+	public abstract Iterable<T> getObjects(final DatabaseService db, final long fromId, final long toId);
+
+	/**
+	 * Partitions the nodes that are accepted by the given filter.
+	 *
+	 * @param <T>
+	 * @param filter the filter, or null for all nodes
+	 * @param factory the function that creates the objects to process, may return null to skip a node
+	 * @return the partitioner
+	 */
+	public static <T> BulkGraphPartitioner<T> nodes(final Predicate<Node> filter, final Function<Node, T> factory) {
+
+		return new BulkGraphPartitioner<T>() {
+
+			@Override
+			public long getMaxId(final DatabaseService db) {
+				return queryMaxId(db, "MATCH (n) RETURN max(id(n)) AS maxId");
+			}
+
+			@Override
+			public Iterable<T> getObjects(final DatabaseService db, final long fromId, final long toId) {
+
+				final long[] ids = new long[(int)(toId - fromId)];
+
+				for (int i=0; i<ids.length; i++) {
+					ids[i] = fromId + i;
+				}
+
+				return filterAndMap(db.getNodesByIds(ids).iterator(), filter, factory);
+			}
+		};
+	}
+
+	/**
+	 * Partitions the relationships that are accepted by the given filter.
+	 *
+	 * @param <T>
+	 * @param filter the filter, or null for all relationships
+	 * @param factory the function that creates the objects to process, may return null to skip a relationship
+	 * @return the partitioner
+	 */
+	public static <T> BulkGraphPartitioner<T> relationships(final Predicate<Relationship> filter, final Function<Relationship, T> factory) {
+
+		return new BulkGraphPartitioner<T>() {
+
+			@Override
+			public long getMaxId(final DatabaseService db) {
+				return queryMaxId(db, "MATCH ()-[r]->() RETURN max(id(r)) AS maxId");
+			}
+
+			@Override
+			public Iterable<T> getObjects(final DatabaseService db, final long fromId, final long toId) {
+
+				final Map<String, Object> parameters = new HashMap<>();
+
+				parameters.put("fromId", fromId);
+				parameters.put("toId",   toId - 1);
+
+				// one id lookup per id of the range, a range condition on id(r) would scan all relationships
+				try (final NativeResult<Relationship> result = db.execute("UNWIND range({fromId}, {toId}) AS id MATCH ()-[r]->() WHERE id(r) = id RETURN r", parameters)) {
+
+					return filterAndMap(result.columnAs("r"), filter, factory);
+				}
+			}
+		};
+	}
+
+	// ----- private methods -----
+	private static long queryMaxId(final DatabaseService db, final String query) {
+
+		try (final NativeResult result = db.execute(query)) {
+
+			if (result.hasNext()) {
+
+				final Object maxId = result.next().get("maxId");
+				if (maxId instanceof Number) {
+
+					return ((Number)maxId).longValue();
+				}
+			}
+		}
+
+		return -1L;
+	}
+
+	private static <S, T> List<T> filterAndMap(final Iterator<S> source, final Predicate<S> filter, final Function<S, T> factory) {
+
+		if (!source.hasNext()) {
+			return Collections.emptyList();
+		}
+
+		final List<T> objects = new ArrayList<>();
+
+		while (source.hasNext()) {
+
+			final S obj = source.next();
+
+			if (filter == null || filter.accept(obj)) {
+
+				final T mapped = factory.apply(obj);
+				if (mapped != null) {
+
+					objects.add(mapped);
+				}
+			}
+		}
+
+		return objects;
+	}
+}
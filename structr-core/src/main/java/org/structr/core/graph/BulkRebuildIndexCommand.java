@@ -24,6 +24,8 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.DatabaseService;
+import org.structr.api.graph.Node;
+import org.structr.api.graph.Relationship;
 import org.structr.api.util.Iterables;
 import org.structr.common.SecurityContext;
 import org.structr.common.StructrAndSpatialPredicate;
@@ -98,7 +100,10 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 			info("Starting (re-)indexing all nodes of type {}", entityType);
 		}
 
-		long count = bulkGraphOperation(securityContext, nodeIterator, 1000, "RebuildNodeIndex", new BulkGraphOperation<AbstractNode>() {
+		final StructrAndSpatialPredicate filter              = new StructrAndSpatialPredicate(true, false, false);
+		final BulkGraphPartitioner<AbstractNode> partitioner = BulkGraphPartitioner.nodes((Node node) -> filter.accept(node) && (entityType == null || entityType.equals(node.getProperty("type"))), nodeFactory);
+
+		long count = bulkGraphOperation(securityContext, nodeIterator, partitioner, 1000, "RebuildNodeIndex", new BulkGraphOperation<AbstractNode>() {
 
 			@Override
 			public void handleGraphObject(SecurityContext securityContext, AbstractNode node) {
@@ -114,6 +119,11 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 			public void handleTransactionFailure(SecurityContext securityContext, Throwable t) {
 				logger.warn("Unable to index node: {}", t.getMessage());
 			}
+
+			@Override
+			public boolean isParallelizable() {
+				return true;
+			}
 		});
 
 		info("Done with (re-)indexing {} nodes", count);
@@ -135,7 +145,10 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 
 		}
 
-		long count = bulkGraphOperation(securityContext, relIterator, 1000, "RebuildRelIndex", new BulkGraphOperation<AbstractRelationship>() {
+		final StructrAndSpatialPredicate filter                      = new StructrAndSpatialPredicate(true, false, false);
+		final BulkGraphPartitioner<AbstractRelationship> partitioner = BulkGraphPartitioner.relationships((Relationship rel) -> filter.accept(rel) && (relType == null || relType.equals(rel.getType().name())), relFactory);
+
+		long count = bulkGraphOperation(securityContext, relIterator, partitioner, 1000, "RebuildRelIndex", new BulkGraphOperation<AbstractRelationship>() {
 
 			@Override
 			public void handleGraphObject(SecurityContext securityContext, AbstractRelationship rel) {
@@ -151,6 +164,11 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 			public void handleTransactionFailure(SecurityContext securityContext, Throwable t) {
 				logger.warn("Unable to index relationship: {}", t.getMessage());
 			}
+
+			@Override
+			public boolean isParallelizable() {
+				return true;
+			}
 		});
 
 		info("Done with (re-)indexing {} relationships", count);
@@ -55,8 +55,9 @@ public class BulkSetRelationshipPropertiesCommand extends NodeServiceCommand imp
 
 		if (graphDb != null) {
 
-			Iterator<AbstractRelationship> relIterator = null;
-			final String typeName                      = "type";
+			BulkGraphPartitioner<AbstractRelationship> partitioner = null;
+			Iterator<AbstractRelationship> relIterator             = null;
+			final String typeName                                  = "type";
 
 			if (properties.containsKey(typeName)) {
 
@@ -66,9 +67,10 @@ public class BulkSetRelationshipPropertiesCommand extends NodeServiceCommand imp
 			} else {
 
 				relIterator = Iterables.map(relationshipFactory, graphDb.getAllRelationships()).iterator();
+				partitioner = BulkGraphPartitioner.relationships(null, relationshipFactory);
 			}
 
-			final long count = bulkGraphOperation(securityContext, relIterator, 1000, "SetRelationshipProperties", new BulkGraphOperation<AbstractRelationship>() {
+			final long count = bulkGraphOperation(securityContext, relIterator, partitioner, 1000, "SetRelationshipProperties", new BulkGraphOperation<AbstractRelationship>() {
 
 				@Override
 				public void handleGraphObject(SecurityContext securityContext, AbstractRelationship rel) {
@@ -106,6 +108,11 @@ public class BulkSetRelationshipPropertiesCommand extends NodeServiceCommand imp
 				public void handleTransactionFailure(SecurityContext securityContext, Throwable t) {
 					logger.warn("Unable to set relationship properties: {}", t.getMessage() );
 				}
+
+				@Override
+				public boolean isParallelizable() {
+					return true;
+				}
 			});
 
 			logger.info("Finished setting properties on {} relationships", count);
@@ -23,6 +23,9 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.DatabaseService;
+import org.structr.api.Predicate;
+import org.structr.api.graph.Node;
+import org.structr.api.graph.Relationship;
 import org.structr.api.util.Iterables;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
@@ -76,7 +79,10 @@ public class BulkSetUuidCommand extends NodeServiceCommand implements Maintenanc
 				info("Start setting UUID on nodes of type {}", new Object[] { nodeType });
 			}
 
-			final long count = bulkGraphOperation(securityContext, nodeIterator, 1000, "SetNodeUuid", new BulkGraphOperation<AbstractNode>() {
+			final Predicate<Node> filter                         = Boolean.TRUE.equals(allNodes) ? null : node -> nodeType.equals(node.getProperty("type"));
+			final BulkGraphPartitioner<AbstractNode> partitioner = BulkGraphPartitioner.nodes(filter, nodeFactory);
+
+			final long count = bulkGraphOperation(securityContext, nodeIterator, partitioner, 1000, "SetNodeUuid", new BulkGraphOperation<AbstractNode>() {
 
 				@Override
 				public void handleGraphObject(final SecurityContext securityContext, final AbstractNode node) {
@@ -112,6 +118,11 @@ public class BulkSetUuidCommand extends NodeServiceCommand implements Maintenanc
 				public boolean doValidation() {
 					return false;
 				}
+
+				@Override
+				public boolean isParallelizable() {
+					return true;
+				}
 			});
 
 			info("Done with setting UUID on {} nodes", count);
@@ -136,7 +147,10 @@ public class BulkSetUuidCommand extends NodeServiceCommand implements Maintenanc
 				info("Start setting UUID on rels of type {}", new Object[] { relType });
 			}
 
-			final long count = bulkGraphOperation(securityContext, relIterator, 1000, "SetRelationshipUuid", new BulkGraphOperation<AbstractRelationship>() {
+			final Predicate<Relationship> filter                         = Boolean.TRUE.equals(allRels) ? null : rel -> relType.equals(rel.getType().name());
+			final BulkGraphPartitioner<AbstractRelationship> partitioner = BulkGraphPartitioner.relationships(filter, relFactory);
+
+			final long count = bulkGraphOperation(securityContext, relIterator, partitioner, 1000, "SetRelationshipUuid", new BulkGraphOperation<AbstractRelationship>() {
 
 				@Override
 				public void handleGraphObject(SecurityContext securityContext, AbstractRelationship rel) {
@@ -169,6 +183,11 @@ public class BulkSetUuidCommand extends NodeServiceCommand implements Maintenanc
 				public boolean doValidation() {
 					return false;
 				}
+
+				@Override
+				public boolean isParallelizable() {
+					return true;
+				}
 			});
 
 			info("Done with setting UUID on {} relationships", count);
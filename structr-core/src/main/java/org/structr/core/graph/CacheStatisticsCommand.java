@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.structr.common.AccessPathCache;
+import org.structr.common.PermissionResolutionCache;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.StructrApp;
+import org.structr.core.parser.ValueCache;
+import org.structr.core.script.Scripting;
+
+/**
+ * Maintenance command that collects size, hit and miss counts of the
+ * internal caches and returns them as the result of the command.
+ */
+public class CacheStatisticsCommand extends NodeServiceCommand implements MaintenanceCommand {
+
+	private static final Map<String, Supplier<Map<String, Object>>> moduleStatistics = new ConcurrentHashMap<>();
+
+	private final Map<String, Object> statistics = new LinkedHashMap<>();
+
+	@Override
+	public void execute(final Map<String, Object> attributes) throws FrameworkException {
+
+		final Map<String, Object> permissions = new LinkedHashMap<>();
+		final Map<String, Object> accessPaths = new LinkedHashMap<>();
+		final Map<String, Object> values      = new LinkedHashMap<>();
+
+		permissions.put("size",          PermissionResolutionCache.size());
+		permissions.put("hits",          PermissionResolutionCache.getHitCount());
+		permissions.put("misses",        PermissionResolutionCache.getMissCount());
+		permissions.put("invalidations", PermissionResolutionCache.getInvalidationCount());
+
+		accessPaths.put("size",          AccessPathCache.size());
+		accessPaths.put("hits",          AccessPathCache.getHitCount());
+		accessPaths.put("misses",        AccessPathCache.getMissCount());
+		accessPaths.put("evictions",     AccessPathCache.getEvictionCount());
+		accessPaths.put("invalidations", AccessPathCache.getInvalidationCount());
+
+		values.put("size",     ValueCache.size());
+		values.put("weight",   ValueCache.getWeight());
+		values.put("prefixes", ValueCache.getStatistics());
+
+		statistics.clear();
+		statistics.put("scripts",     Scripting.getCacheStatistics());
+		statistics.put("permissions", permissions);
+		statistics.put("accessPaths", accessPaths);
+		statistics.put("values",      values);
+		statistics.put("queries",     StructrApp.getInstance().getDatabaseService().getQueryCacheStatistics());
+
+		for (final Map.Entry<String, Supplier<Map<String, Object>>> entry : moduleStatistics.entrySet()) {
+			statistics.put(entry.getKey(), entry.getValue().get());
+		}
+	}
+
+	/**
+	 * Registers a callback that returns the statistics of a cache of a
+	 * module which is not known to this command.
+	 *
+	 * @param name
+	 * @param supplier
+	 */
+	public static void registerStatistics(final String name, final Supplier<Map<String, Object>> supplier) {
+		moduleStatistics.put(name, supplier);
+	}
+
+	@Override
+	public Object getCommandResult() {
+		return statistics;
+	}
+
+	@Override
+	public boolean requiresEnclosingTransaction() {
+		return false;
+	}
+
+	@Override
+	public boolean requiresFlushingOfCaches() {
+		return false;
+	}
+}
@@ -0,0 +1,1040 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+import org.structr.api.util.FixedSizeCache;
+
+/**
+ * Append-only storage for the changelog of graph objects.
+ *
+ * The changelog entries of a transaction are appended to one of a fixed
+ * number of segment files, selected by the hash of the object's UUID.
+ * Each segment has an index file with a fixed-width entry (hash of the
+ * UUID, commit time, offset and the position of the previous entry with
+ * the same hash) for every record, so the changelog of an object can be
+ * read without scanning the segment, and records older than a given time
+ * can be skipped without reading them. A table file per segment maps each
+ * UUID hash to its most recent index entry (open addressing, linear
+ * probing), so reading or removing the changelog of an object follows
+ * the chain of index entries of that object instead of scanning the
+ * index. Only a bounded cache of the table is held in memory. The table
+ * is derived from the index: it records how many index entries it
+ * covers, and it is updated or rebuilt from the index when it is behind,
+ * ahead or missing.
+ *
+ * When an object is deleted, the index entries of its records are marked
+ * as removed. A segment is compacted when it contains more removed than
+ * live records. The compacted segment, index and table are written to
+ * temporary files and moved into place, the table last and the index
+ * before it, after the old table was deleted, so a compaction that was
+ * interrupted by a crash is either completed or discarded on open.
+ *
+ * Records that were written to the segment but not to the index (e.g.
+ * after a crash) are re-indexed when a segment is opened, incomplete
+ * records at the end of a file are discarded.
+ */
+public class ChangelogStore {
+
+	private static final Logger logger          = LoggerFactory.getLogger(ChangelogStore.class.getName());
+	private static final String SEGMENT_SUFFIX  = ".log";
+	private static final String INDEX_SUFFIX    = ".idx";
+	private static final String TABLE_SUFFIX    = ".tbl";
+	private static final String TMP_SUFFIX      = ".tmp";
+	private static final int BUCKET_COUNT       = 64;
+	private static final int ENTRY_SIZE         = 32;
+	private static final int COMPACTION_MINIMUM = 1000;
+	private static final int TABLE_HEADER_SIZE  = 24;
+	private static final int TABLE_SLOT_SIZE    = 16;
+	private static final int TABLE_MIN_CAPACITY = 1024;
+	private static final int TABLE_CACHE_SIZE   = 1024;
+	private static final int BATCH_SIZE         = 4096;
+	private static final long REMOVED           = Long.MIN_VALUE;
+	private static ChangelogStore instance      = null;
+
+	private final Bucket[] buckets = new Bucket[BUCKET_COUNT];
+	private Path directory         = null;
+
+	private ChangelogStore(final Path directory) throws IOException {
+
+		this.directory = directory;
+
+		Files.createDirectories(directory);
+
+		for (int i=0; i<BUCKET_COUNT; i++) {
+			buckets[i] = new Bucket(i);
+		}
+	}
+
+	/**
+	 * Returns the store in the configured changelog directory.
+	 *
+	 * @return the store
+	 * @throws IOException
+	 */
+	public static synchronized ChangelogStore getInstance() throws IOException {
+
+		final Path configuredDirectory = Paths.get(Settings.getFullSettingPath(Settings.ChangelogPath)).toAbsolutePath();
+
+		if (instance == null || !instance.directory.equals(configuredDirectory)) {
+
+			if (instance != null) {
+				instance.close();
+			}
+
+			instance = new ChangelogStore(configuredDirectory);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Appends the given changelog entries to the changelog of the object
+	 * with the given UUID.
+	 *
+	 * @param uuid
+	 * @param changelog
+	 * @throws IOException
+	 */
+	public void append(final String uuid, final String changelog) throws IOException {
+		getBucket(uuid).append(uuid, System.currentTimeMillis(), changelog);
+	}
+
+	/**
+	 * Returns the changelog records of the object with the given UUID,
+	 * oldest first. Records that were committed before the given time
+	 * are skipped. The records are read lazily.
+	 *
+	 * @param uuid
+	 * @param from
+	 * @return the changelog records
+	 * @throws IOException
+	 */
+	public Iterable<String> read(final String uuid, final long from) throws IOException {
+
+		final Bucket bucket = getBucket(uuid);
+		final Lookup lookup = bucket.find(uuid, from);
+
+		if (lookup.offsets.length == 0) {
+			return Collections.emptyList();
+		}
+
+		return () -> new RecordIterator(bucket, uuid, from, lookup);
+	}
+
+	/**
+	 * Removes the changelog of the object with the given UUID.
+	 *
+	 * @param uuid
+	 * @throws IOException
+	 */
+	public void remove(final String uuid) throws IOException {
+		remove(Collections.singletonList(uuid));
+	}
+
+	/**
+	 * Removes the changelogs of the objects with the given UUIDs. Each
+	 * segment is checked for compaction once, after all of its objects
+	 * are removed.
+	 *
+	 * @param uuids
+	 * @throws IOException
+	 */
+	public void remove(final Collection<String> uuids) throws IOException {
+
+		final Map<Bucket, List<String>> uuidsByBucket = new LinkedHashMap<>();
+
+		for (final String uuid : uuids) {
+			uuidsByBucket.computeIfAbsent(getBucket(uuid), k -> new ArrayList<>()).add(uuid);
+		}
+
+		for (final Entry<Bucket, List<String>> entry : uuidsByBucket.entrySet()) {
+			entry.getKey().remove(entry.getValue());
+		}
+	}
+
+	public synchronized void close() {
+
+		for (final Bucket bucket : buckets) {
+			bucket.close();
+		}
+	}
+
+	// ----- private methods -----
+	private Bucket getBucket(final String uuid) {
+		return buckets[(uuid.hashCode() & Integer.MAX_VALUE) % BUCKET_COUNT];
+	}
+
+	private static long hash(final String uuid) {
+		return ByteBuffer.wrap(DigestUtils.md5(uuid)).getLong();
+	}
+
+	private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+
+		long current = position;
+
+		while (buffer.hasRemaining()) {
+			current += channel.write(buffer, current);
+		}
+	}
+
+	private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+
+		long current = position;
+
+		while (buffer.hasRemaining()) {
+
+			final int count = channel.read(buffer, current);
+			if (count < 0) {
+				throw new EOFException();
+			}
+
+			current += count;
+		}
+	}
+
+	// ----- nested classes -----
+	private class Bucket {
+
+		private FileChannel segmentChannel = null;
+		private FileChannel indexChannel   = null;
+		private HeadTable table            = null;
+		private boolean closed             = false;
+		private long segmentSize           = 0L;
+		private long generation            = 0L;
+		private long indexSize             = 0L;
+		private int removed                = 0;
+		private int number                 = 0;
+
+		public Bucket(final int number) {
+			this.number = number;
+		}
+
+		public synchronized void append(final String uuid, final long time, final String changelog) throws IOException {
+
+			open();
+
+			final byte[] uuidBytes  = uuid.getBytes(StandardCharsets.UTF_8);
+			final byte[] data       = changelog.getBytes(StandardCharsets.UTF_8);
+			final ByteBuffer record = ByteBuffer.allocate(2 + uuidBytes.length + 8 + 4 + data.length);
+			final long offset       = segmentSize;
+
+			record.putShort((short)uuidBytes.length);
+			record.put(uuidBytes);
+			record.putLong(time);
+			record.putInt(data.length);
+			record.put(data);
+			record.flip();
+
+			// write the record before the index entry so the index never points to missing data
+			writeFully(segmentChannel, record, offset);
+			writeIndexEntry(hash(uuid), time, offset);
+
+			segmentSize += record.limit();
+		}
+
+		/**
+		 * Returns the offsets of the live records of the given object that
+		 * were committed at or after the given time, oldest first.
+		 */
+		public synchronized Lookup find(final String uuid, final long from) throws IOException {
+
+			open();
+
+			final long hash        = hash(uuid);
+			final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+			long[] offsets         = new long[4];
+			long position          = table.get(hash);
+			int size               = 0;
+
+			// the chain starts at the most recent entry
+			while (position >= 0) {
+
+				entry.clear();
+				readFully(indexChannel, entry, position * ENTRY_SIZE);
+
+				final long time   = entry.getLong(8);
+				final long offset = entry.getLong(16);
+
+				if (time >= from && (offset & REMOVED) == 0) {
+
+					if (size == offsets.length) {
+						offsets = Arrays.copyOf(offsets, size * 2);
+					}
+
+					offsets[size++] = offset;
+				}
+
+				position = entry.getLong(24);
+			}
+
+			// oldest first
+			for (int i=0; i<size / 2; i++) {
+
+				final long tmp        = offsets[i];
+				offsets[i]            = offsets[size - i - 1];
+				offsets[size - i - 1] = tmp;
+			}
+
+			return new Lookup(Arrays.copyOf(offsets, size), generation);
+		}
+
+		public synchronized long getGeneration() {
+			return generation;
+		}
+
+		/**
+		 * Returns the record at the given offset, or null if it belongs to
+		 * a different object with the same hash.
+		 */
+		public synchronized String readRecord(final String uuid, final long offset) throws IOException {
+
+			open();
+
+			final ByteBuffer header = ByteBuffer.allocate(2);
+
+			readFully(segmentChannel, header, offset);
+
+			final int uuidLength  = header.getShort(0);
+			final ByteBuffer meta = ByteBuffer.allocate(uuidLength + 12);
+
+			readFully(segmentChannel, meta, offset + 2);
+
+			if (!uuid.equals(new String(meta.array(), 0, uuidLength, StandardCharsets.UTF_8))) {
+				return null;
+			}
+
+			final ByteBuffer data = ByteBuffer.allocate(meta.getInt(uuidLength + 8));
+
+			readFully(segmentChannel, data, offset + 2 + uuidLength + 12);
+
+			return new String(data.array(), StandardCharsets.UTF_8);
+		}
+
+		public synchronized void remove(final Collection<String> uuids) throws IOException {
+
+			open();
+
+			final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+
+			for (final String uuid : uuids) {
+
+				long position = table.get(hash(uuid));
+
+				while (position >= 0) {
+
+					entry.clear();
+					readFully(indexChannel, entry, position * ENTRY_SIZE);
+
+					final long offset = entry.getLong(16);
+
+					// keep the entries of other objects with the same hash
+					if ((offset & REMOVED) == 0 && uuid.equals(readUuid(offset))) {
+
+						final ByteBuffer marker = ByteBuffer.allocate(8);
+
+						marker.putLong(offset | REMOVED);
+						marker.flip();
+
+						writeFully(indexChannel, marker, position * ENTRY_SIZE + 16);
+
+						removed++;
+					}
+
+					position = entry.getLong(24);
+				}
+			}
+
+			if (removed > COMPACTION_MINIMUM && removed > (indexSize / ENTRY_SIZE) - removed) {
+				compact();
+			}
+		}
+
+		public synchronized void close() {
+
+			closeChannels();
+
+			closed = true;
+		}
+
+		// ----- private methods -----
+		private void open() throws IOException {
+
+			if (closed) {
+				throw new IOException("Changelog store is closed");
+			}
+
+			if (segmentChannel != null) {
+				return;
+			}
+
+			recoverCompaction();
+
+			segmentChannel = FileChannel.open(getSegmentFile(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			indexChannel   = FileChannel.open(getIndexFile(),   StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			table          = new HeadTable(getTableFile());
+			segmentSize    = segmentChannel.size();
+
+			table.open();
+
+			loadIndex();
+			updateTable();
+			indexUnindexedRecords();
+		}
+
+		private void closeChannels() {
+
+			try {
+
+				if (segmentChannel != null) {
+					segmentChannel.close();
+				}
+
+				if (indexChannel != null) {
+					indexChannel.close();
+				}
+
+				if (table != null) {
+					table.close();
+				}
+
+			} catch (IOException ioex) {
+				logger.warn("Unable to close changelog segment {}: {}", number, ioex.getMessage());
+			}
+
+			segmentChannel = null;
+			indexChannel   = null;
+			table          = null;
+		}
+
+		private Path getSegmentFile() {
+			return directory.resolve(String.format("%02d", number) + SEGMENT_SUFFIX);
+		}
+
+		private Path getIndexFile() {
+			return directory.resolve(String.format("%02d", number) + INDEX_SUFFIX);
+		}
+
+		private Path getTableFile() {
+			return directory.resolve(String.format("%02d", number) + TABLE_SUFFIX);
+		}
+
+		private Path getTmpFile(final Path file) {
+			return directory.resolve(file.getFileName() + TMP_SUFFIX);
+		}
+
+		/**
+		 * Completes or discards a compaction that was interrupted. The new
+		 * segment is moved into place before the new index, so a remaining
+		 * temporary segment means that the old files are still valid, and a
+		 * remaining temporary index belongs to the new segment. A remaining
+		 * temporary table is discarded, the table is rebuilt from the index
+		 * if it is missing.
+		 */
+		private void recoverCompaction() throws IOException {
+
+			final Path segmentTmp = getTmpFile(getSegmentFile());
+			final Path indexTmp   = getTmpFile(getIndexFile());
+
+			Files.deleteIfExists(getTmpFile(getTableFile()));
+
+			if (Files.exists(segmentTmp)) {
+
+				Files.delete(segmentTmp);
+				Files.deleteIfExists(indexTmp);
+
+			} else if (Files.exists(indexTmp)) {
+
+				logger.info("Completing interrupted compaction of changelog segment {}", number);
+
+				Files.move(indexTmp, getIndexFile(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+		}
+
+		private void loadIndex() throws IOException {
+
+			// discard an incomplete entry at the end of the index
+			long validSize = (indexChannel.size() / ENTRY_SIZE) * ENTRY_SIZE;
+
+			// discard entries that point to records which were never written completely
+			while (validSize > 0 && (readIndexOffset(validSize - ENTRY_SIZE) & ~REMOVED) >= segmentSize) {
+				validSize -= ENTRY_SIZE;
+			}
+
+			indexChannel.truncate(validSize);
+			indexSize = validSize;
+			removed   = 0;
+
+			if (indexSize > 0) {
+
+				final MappedByteBuffer buffer = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexSize);
+
+				for (long i=0; i<indexSize / ENTRY_SIZE; i++) {
+
+					if ((buffer.getLong((int)(i * ENTRY_SIZE) + 16) & REMOVED) != 0) {
+						removed++;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Adds the index entries that are not yet in the table, or rebuilds
+		 * the table if it covers more entries than the index contains.
+		 */
+		private void updateTable() throws IOException {
+
+			final long entries = indexSize / ENTRY_SIZE;
+
+			if (table.getCovered() > entries) {
+
+				logger.info("Rebuilding changelog table of segment {}", number);
+
+				table.clear();
+			}
+
+			final ByteBuffer batch = ByteBuffer.allocate(BATCH_SIZE * ENTRY_SIZE);
+			long position          = table.getCovered();
+
+			while (position < entries) {
+
+				final int count = (int)Math.min(BATCH_SIZE, entries - position);
+
+				batch.clear();
+				batch.limit(count * ENTRY_SIZE);
+
+				readFully(indexChannel, batch, position * ENTRY_SIZE);
+
+				for (int i=0; i<count; i++) {
+					table.put(batch.getLong(i * ENTRY_SIZE), position + i);
+				}
+
+				position += count;
+			}
+
+			table.setCovered(entries);
+		}
+
+		private void indexUnindexedRecords() throws IOException {
+
+			// continue after the last indexed record
+			long position = indexSize > 0 ? skipRecord(readIndexOffset(indexSize - ENTRY_SIZE) & ~REMOVED) : 0L;
+
+			while (position + 2 <= segmentSize) {
+
+				final ByteBuffer header = ByteBuffer.allocate(2);
+				readFully(segmentChannel, header, position);
+
+				final int uuidLength  = header.getShort(0);
+				final ByteBuffer meta = ByteBuffer.allocate(uuidLength + 12);
+
+				if (position + 2 + meta.capacity() > segmentSize) {
+					break;
+				}
+
+				readFully(segmentChannel, meta, position + 2);
+
+				final long end = position + 2 + uuidLength + 12 + meta.getInt(uuidLength + 8);
+				if (end > segmentSize) {
+					break;
+				}
+
+				final String uuid = new String(meta.array(), 0, uuidLength, StandardCharsets.UTF_8);
+
+				writeIndexEntry(hash(uuid), meta.getLong(uuidLength), position);
+
+				position = end;
+			}
+
+			if (position < segmentSize) {
+
+				logger.warn("Discarding incomplete record at the end of changelog segment {}", number);
+
+				segmentChannel.truncate(position);
+				segmentSize = position;
+			}
+		}
+
+		/**
+		 * Rewrites the segment, the index and the table without the removed
+		 * records.
+		 */
+		private void compact() throws IOException {
+
+			final Path segmentTmp = getTmpFile(getSegmentFile());
+			final Path indexTmp   = getTmpFile(getIndexFile());
+			final Path tableTmp   = getTmpFile(getTableFile());
+			final HeadTable heads = new HeadTable(tableTmp);
+
+			Files.deleteIfExists(tableTmp);
+
+			try (final FileChannel newSegment = FileChannel.open(segmentTmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+			     final FileChannel newIndex   = FileChannel.open(indexTmp,   StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+				final long entries = indexSize / ENTRY_SIZE;
+				long newIndexSize  = 0L;
+				long newOffset     = 0L;
+
+				heads.open();
+
+				for (long i=0; i<entries; i++) {
+
+					final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+
+					readFully(indexChannel, entry, i * ENTRY_SIZE);
+
+					final long hash   = entry.getLong(0);
+					final long offset = entry.getLong(16);
+
+					if ((offset & REMOVED) == 0) {
+
+						final ByteBuffer record = ByteBuffer.allocate((int)(skipRecord(offset) - offset));
+						final long position     = newIndexSize / ENTRY_SIZE;
+
+						readFully(segmentChannel, record, offset);
+						record.flip();
+
+						writeFully(newSegment, record, newOffset);
+
+						entry.putLong(16, newOffset);
+						entry.putLong(24, heads.get(hash));
+						entry.rewind();
+
+						writeFully(newIndex, entry, newIndexSize);
+
+						heads.put(hash, position);
+
+						newIndexSize += ENTRY_SIZE;
+						newOffset    += record.limit();
+					}
+				}
+
+				heads.setCovered(newIndexSize / ENTRY_SIZE);
+				heads.force();
+
+				newSegment.force(true);
+				newIndex.force(true);
+
+			} finally {
+
+				heads.close();
+			}
+
+			closeChannels();
+
+			// the old table must not be used with the new index, see recoverCompaction()
+			Files.deleteIfExists(getTableFile());
+
+			// the index is moved after the segment, see recoverCompaction()
+			Files.move(segmentTmp, getSegmentFile(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			Files.move(indexTmp,   getIndexFile(),   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			Files.move(tableTmp,   getTableFile(),   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			// the offsets of running lookups are no longer valid
+			generation++;
+
+			open();
+		}
+
+		private void writeIndexEntry(final long hash, final long time, final long offset) throws IOException {
+
+			final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+			final long position    = indexSize / ENTRY_SIZE;
+
+			entry.putLong(hash);
+			entry.putLong(time);
+			entry.putLong(offset);
+			entry.putLong(table.get(hash));
+			entry.flip();
+
+			// the table is updated after the index, see updateTable()
+			writeFully(indexChannel, entry, indexSize);
+
+			indexSize += ENTRY_SIZE;
+
+			table.put(hash, position);
+			table.setCovered(position + 1);
+		}
+
+		private long readIndexOffset(final long position) throws IOException {
+
+			final ByteBuffer offset = ByteBuffer.allocate(8);
+
+			readFully(indexChannel, offset, position + 16);
+
+			return offset.getLong(0);
+		}
+
+		private String readUuid(final long offset) throws IOException {
+
+			final ByteBuffer header = ByteBuffer.allocate(2);
+			readFully(segmentChannel, header, offset);
+
+			final ByteBuffer uuid = ByteBuffer.allocate(header.getShort(0));
+			readFully(segmentChannel, uuid, offset + 2);
+
+			return new String(uuid.array(), StandardCharsets.UTF_8);
+		}
+
+		private long skipRecord(final long offset) throws IOException {
+
+			final ByteBuffer header = ByteBuffer.allocate(2);
+			readFully(segmentChannel, header, offset);
+
+			final int uuidLength    = header.getShort(0);
+			final ByteBuffer length = ByteBuffer.allocate(4);
+
+			readFully(segmentChannel, length, offset + 2 + uuidLength + 8);
+
+			return offset + 2 + uuidLength + 12 + length.getInt(0);
+		}
+	}
+
+	/**
+	 * On-disk hash table that maps UUID hashes to the position of their
+	 * most recent index entry, with open addressing and linear probing.
+	 * The header contains the capacity, the number of used slots and the
+	 * number of index entries the table covers. Each slot contains the
+	 * hash and the position + 1, so that an empty slot is all zeros. The
+	 * table is kept at most half full and grows by rewriting it into a
+	 * temporary file with twice the capacity.
+	 */
+	private static class HeadTable {
+
+		private final FixedSizeCache<Long, Long> cache = new FixedSizeCache<>(TABLE_CACHE_SIZE);
+		private FileChannel channel                    = null;
+		private Path file                              = null;
+		private long capacity                          = 0L;
+		private long covered                           = 0L;
+		private long used                              = 0L;
+
+		public HeadTable(final Path file) {
+			this.file = file;
+		}
+
+		public void open() throws IOException {
+
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+			if (channel.size() >= TABLE_HEADER_SIZE) {
+
+				final ByteBuffer header = ByteBuffer.allocate(TABLE_HEADER_SIZE);
+
+				readFully(channel, header, 0L);
+
+				capacity = header.getLong(0);
+				used     = header.getLong(8);
+				covered  = header.getLong(16);
+
+				// a table with an invalid size is rebuilt from the index
+				if (capacity >= TABLE_MIN_CAPACITY && Long.bitCount(capacity) == 1 && channel.size() == TABLE_HEADER_SIZE + capacity * TABLE_SLOT_SIZE) {
+					return;
+				}
+			}
+
+			init(TABLE_MIN_CAPACITY);
+		}
+
+		public void close() throws IOException {
+
+			if (channel != null) {
+
+				channel.close();
+				channel = null;
+			}
+		}
+
+		public void force() throws IOException {
+			channel.force(true);
+		}
+
+		public void clear() throws IOException {
+			init(TABLE_MIN_CAPACITY);
+		}
+
+		public long getCovered() {
+			return covered;
+		}
+
+		public void setCovered(final long covered) throws IOException {
+
+			this.covered = covered;
+
+			writeHeader();
+		}
+
+		/**
+		 * Returns the position of the most recent index entry for the given
+		 * hash, or -1 if there is none.
+		 */
+		public long get(final long hash) throws IOException {
+
+			final Long cached = cache.get(hash);
+			if (cached != null) {
+
+				return cached;
+			}
+
+			final ByteBuffer slot = ByteBuffer.allocate(TABLE_SLOT_SIZE);
+
+			probe(hash, slot);
+
+			final long position = slot.getLong(8) - 1;
+
+			cache.put(hash, position);
+
+			return position;
+		}
+
+		public void put(final long hash, final long position) throws IOException {
+
+			if ((used + 1) * 2 > capacity) {
+				grow();
+			}
+
+			final ByteBuffer slot = ByteBuffer.allocate(TABLE_SLOT_SIZE);
+			final long index      = probe(hash, slot);
+
+			if (slot.getLong(8) == 0L) {
+
+				used++;
+				writeHeader();
+			}
+
+			slot.clear();
+			slot.putLong(hash);
+			slot.putLong(position + 1);
+			slot.flip();
+
+			writeFully(channel, slot, TABLE_HEADER_SIZE + index * TABLE_SLOT_SIZE);
+
+			cache.put(hash, position);
+		}
+
+		// ----- private methods -----
+		/**
+		 * Returns the index of the slot of the given hash, or of the empty
+		 * slot where it would be stored, and reads the slot into the buffer.
+		 */
+		private long probe(final long hash, final ByteBuffer slot) throws IOException {
+
+			long index = hash & (capacity - 1);
+
+			while (true) {
+
+				slot.clear();
+				readFully(channel, slot, TABLE_HEADER_SIZE + index * TABLE_SLOT_SIZE);
+
+				if (slot.getLong(8) == 0L || slot.getLong(0) == hash) {
+					return index;
+				}
+
+				index = (index + 1) & (capacity - 1);
+			}
+		}
+
+		private void grow() throws IOException {
+
+			final Path tmp         = file.resolveSibling(file.getFileName() + TMP_SUFFIX);
+			final HeadTable grown  = new HeadTable(tmp);
+			final ByteBuffer batch = ByteBuffer.allocate(BATCH_SIZE * TABLE_SLOT_SIZE);
+
+			Files.deleteIfExists(tmp);
+
+			try {
+
+				grown.open();
+				grown.init(capacity * 2);
+
+				for (long index=0; index<capacity; index += BATCH_SIZE) {
+
+					final int count = (int)Math.min(BATCH_SIZE, capacity - index);
+
+					batch.clear();
+					batch.limit(count * TABLE_SLOT_SIZE);
+
+					readFully(channel, batch, TABLE_HEADER_SIZE + index * TABLE_SLOT_SIZE);
+
+					for (int i=0; i<count; i++) {
+
+						final long position = batch.getLong(i * TABLE_SLOT_SIZE + 8);
+						if (position != 0L) {
+
+							grown.put(batch.getLong(i * TABLE_SLOT_SIZE), position - 1);
+						}
+					}
+				}
+
+				grown.setCovered(covered);
+				grown.force();
+
+			} finally {
+
+				grown.close();
+			}
+
+			close();
+
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			// the cached positions are still valid
+			open();
+		}
+
+		private void init(final long newCapacity) throws IOException {
+
+			final ByteBuffer zeros = ByteBuffer.allocate(BATCH_SIZE * TABLE_SLOT_SIZE);
+			final long size        = TABLE_HEADER_SIZE + newCapacity * TABLE_SLOT_SIZE;
+
+			channel.truncate(0L);
+
+			for (long position=TABLE_HEADER_SIZE; position<size; position += zeros.capacity()) {
+
+				zeros.clear();
+				zeros.limit((int)Math.min(zeros.capacity(), size - position));
+
+				writeFully(channel, zeros, position);
+			}
+
+			capacity = newCapacity;
+			covered  = 0L;
+			used     = 0L;
+
+			writeHeader();
+
+			cache.clear();
+		}
+
+		private void writeHeader() throws IOException {
+
+			final ByteBuffer header = ByteBuffer.allocate(TABLE_HEADER_SIZE);
+
+			header.putLong(capacity);
+			header.putLong(used);
+			header.putLong(covered);
+			header.flip();
+
+			writeFully(channel, header, 0L);
+		}
+	}
+
+	/**
+	 * The offsets of the records of a single object.
+	 */
+	private static class Lookup {
+
+		private long[] offsets  = null;
+		private long generation = 0L;
+
+		public Lookup(final long[] offsets, final long generation) {
+
+			this.offsets    = offsets;
+			this.generation = generation;
+		}
+	}
+
+	private static class RecordIterator implements Iterator<String> {
+
+		private Bucket bucket  = null;
+		private Lookup lookup  = null;
+		private String uuid    = null;
+		private String next    = null;
+		private long from      = 0L;
+		private int position   = 0;
+		private int returned   = 0;
+
+		public RecordIterator(final Bucket bucket, final String uuid, final long from, final Lookup lookup) {
+
+			this.bucket = bucket;
+			this.uuid   = uuid;
+			this.from   = from;
+			this.lookup = lookup;
+		}
+
+		@Override
+		public boolean hasNext() {
+
+			try {
+
+				// lock the bucket so that it can not be compacted between the check and the read
+				synchronized (bucket) {
+
+					while (next == null && position < lookup.offsets.length) {
+
+						if (lookup.generation != bucket.getGeneration()) {
+
+							// the segment was compacted, the records are still in the same order
+							lookup   = bucket.find(uuid, from);
+							position = returned;
+
+							continue;
+						}
+
+						// skip records of other objects with the same hash
+						next = bucket.readRecord(uuid, lookup.offsets[position++]);
+					}
+				}
+
+			} catch (IOException ioex) {
+				throw new IllegalStateException("Unable to read changelog record", ioex);
+			}
+
+			return next != null;
+		}
+
+		@Override
+		public String next() {
+
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			final String record = next;
+
+			next = null;
+			returned++;
+
+			return record;
+		}
+	}
+}
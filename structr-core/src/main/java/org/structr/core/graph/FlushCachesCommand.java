@@ -19,21 +19,26 @@
 package org.structr.core.graph;
 
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.bolt.wrapper.NodeWrapper;
 import org.structr.bolt.wrapper.RelationshipWrapper;
 import org.structr.common.AccessPathCache;
+import org.structr.common.PermissionResolutionCache;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
+import org.structr.core.parser.ValueCache;
 
 //~--- classes ----------------------------------------------------------------
 
 public class FlushCachesCommand extends NodeServiceCommand implements MaintenanceCommand {
 
-	private static final Logger logger = LoggerFactory.getLogger(FlushCachesCommand.class.getName());
+	private static final Logger logger               = LoggerFactory.getLogger(FlushCachesCommand.class.getName());
+	private static final List<Runnable> moduleCaches = new CopyOnWriteArrayList<>();
 
 	@Override
 	public void execute(Map<String, Object> attributes) throws FrameworkException {
@@ -49,11 +54,27 @@ public class FlushCachesCommand extends NodeServiceCommand implements Maintenanc
 		NodeWrapper.clearCache();
 		RelationshipWrapper.clearCache();
 		AccessPathCache.invalidate();
+		PermissionResolutionCache.clear();
+		ValueCache.clear();
 
 		App app = StructrApp.getInstance();
 
 		app.invalidateCache();
 		app.getDatabaseService().invalidateQueryCache();
+
+		for (final Runnable cache : moduleCaches) {
+			cache.run();
+		}
+	}
+
+	/**
+	 * Registers a callback that clears a cache of a module which is not
+	 * known to this command.
+	 *
+	 * @param flush
+	 */
+	public static void registerCache(final Runnable flush) {
+		moduleCaches.add(flush);
 	}
 
 	@Override
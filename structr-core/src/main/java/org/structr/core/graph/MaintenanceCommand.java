@@ -41,4 +41,8 @@ public interface MaintenanceCommand {
 		return customHeaders;
 	}
 
+	default public Object getCommandResult() {
+		return null;
+	}
+
 }
@@ -19,10 +19,12 @@
 package org.structr.core.graph;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -54,14 +56,15 @@ public class ModificationQueue {
 	private final ConcurrentSkipListMap<String, GraphObjectModificationState> modifications = new ConcurrentSkipListMap<>();
 	private final Collection<ModificationEvent> modificationEvents                          = new ArrayDeque<>(1000);
 	private final Map<String, TransactionPostProcess> postProcesses                         = new LinkedHashMap<>();
+	private final Map<String, Runnable> afterCommitActions                                  = new LinkedHashMap<>();
 	private final Set<String> alreadyPropagated                                             = new LinkedHashSet<>();
 	private final Set<String> synchronizationKeys                                           = new TreeSet<>();
 
 	/**
-	 * Returns a set containing the different entity types of
-	 * nodes modified in this queue.
+	 * Returns the sorted set of commit lock keys of the uniqueness-validated
+	 * properties modified in this queue.
 	 *
-	 * @return the types
+	 * @return the synchronization keys
 	 */
 	public Set<String> getSynchronizationKeys() {
 		return synchronizationKeys;
@@ -143,6 +146,25 @@ public class ModificationQueue {
 		return true;
 	}
 
+	/**
+	 * Runs the actions that were registered to be run after the commit
+	 * of this transaction, exactly once.
+	 */
+	public void doAfterCommit() {
+
+		for (final Runnable action : afterCommitActions.values()) {
+
+			try {
+				action.run();
+
+			} catch (Throwable t) {
+				logger.warn("Unable to run after commit action: {}", t.getMessage());
+			}
+		}
+
+		afterCommitActions.clear();
+	}
+
 	public void doOuterCallbacks(final SecurityContext securityContext) {
 
 		long t0 = System.currentTimeMillis();
@@ -160,7 +182,7 @@ public class ModificationQueue {
 
 	public void updateChangelog() {
 
-		if (Settings.ChangelogEnabled.getValue() && !modificationEvents.isEmpty()) {
+		if (Settings.ChangelogEnabled.getValue() && !Settings.ChangelogFileStore.getValue() && !modificationEvents.isEmpty()) {
 
 			for (final ModificationEvent ev: modificationEvents) {
 
@@ -170,8 +192,8 @@ public class ModificationQueue {
 						final GraphObject obj = ev.getGraphObject();
 						if (obj != null) {
 
-							final String existingLog = obj.getProperty(GraphObject.structrChangeLog);
 							final String newLog      = ev.getChangeLog();
+							final String existingLog = obj.getProperty(GraphObject.structrChangeLog);
 							final String newValue    = existingLog != null ? existingLog + newLog : newLog;
 
 							obj.unlockSystemPropertiesOnce();
@@ -186,6 +208,52 @@ public class ModificationQueue {
 		}
 	}
 
+	/**
+	 * Writes the changelog of this queue to the changelog store. This
+	 * must be called exactly once after the transaction was committed,
+	 * the store is not transactional.
+	 */
+	public void updateChangelogStore() {
+
+		if (Settings.ChangelogEnabled.getValue() && Settings.ChangelogFileStore.getValue() && !modificationEvents.isEmpty()) {
+
+			final List<String> deleted = new ArrayList<>();
+
+			for (final ModificationEvent ev: modificationEvents) {
+
+				if (!ev.isDeleted()) {
+
+					final String newLog = ev.getChangeLog();
+
+					if (newLog != null && !newLog.isEmpty()) {
+
+						try {
+							ChangelogStore.getInstance().append(ev.getUuid(), newLog);
+
+						} catch (Throwable t) {
+							logger.warn("", t);
+						}
+					}
+
+				} else {
+
+					// the changelog of a deleted object is removed along with it
+					deleted.add(ev.getUuid());
+				}
+			}
+
+			if (!deleted.isEmpty()) {
+
+				try {
+					ChangelogStore.getInstance().remove(deleted);
+
+				} catch (Throwable t) {
+					logger.warn("", t);
+				}
+			}
+		}
+	}
+
 	public void clear() {
 
 		// clear collections afterwards
@@ -240,8 +308,8 @@ public class ModificationQueue {
 	public void modify(final Principal user, final NodeInterface node, final PropertyKey key, final Object previousValue, final Object newValue) {
 		getState(node).modify(user, key, previousValue, newValue);
 
-		if (key != null&& key.requiresSynchronization()) {
-			synchronizationKeys.add(key.getSynchronizationKey());
+		if (key != null && key.requiresSynchronization()) {
+			synchronizationKeys.add(getSynchronizationKey(key, newValue));
 		}
 	}
 
@@ -249,7 +317,7 @@ public class ModificationQueue {
 		getState(relationship).modify(user, key, previousValue, newValue);
 
 		if (key != null && key.requiresSynchronization()) {
-			synchronizationKeys.add(key.getSynchronizationKey());
+			synchronizationKeys.add(getSynchronizationKey(key, newValue));
 		}
 	}
 
@@ -313,6 +381,14 @@ public class ModificationQueue {
 		}
 	}
 
+	public void afterCommit(final String key, final Runnable action) {
+		afterCommitActions.putIfAbsent(key, action);
+	}
+
+	public Runnable getAfterCommitAction(final String key) {
+		return afterCommitActions.get(key);
+	}
+
 	public boolean isDeleted(final Node node) {
 
 		final GraphObjectModificationState state = modifications.get("N" + node.getId());
@@ -408,6 +484,19 @@ public class ModificationQueue {
 	}
 
 	// ----- private methods -----
+	private String getSynchronizationKey(final PropertyKey key, final Object value) {
+
+		// a unique value can only collide with an equal value written by
+		// another transaction, so we lock on (type, property, value stripe)
+		if (key.isUnique() && !key.isCompound()) {
+
+			return MultiSemaphore.getStripedKey(key.getSynchronizationKey(), value);
+		}
+
+		// compound uniqueness depends on other properties of the entity
+		return key.getSynchronizationKey();
+	}
+
 	private void modifyEndNodes(final Principal user, final NodeInterface startNode, final NodeInterface endNode, final RelationshipType relType) {
 
 		// only modify if nodes are accessible
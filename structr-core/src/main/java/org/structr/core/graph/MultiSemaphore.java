@@ -18,65 +18,180 @@
  */
 package org.structr.core.graph;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * A set of named semaphores that protect the validation and commit phase
+ * of transactions.
  *
+ * Keys are acquired in the iteration order of the given set, so callers
+ * must pass a sorted set to avoid deadlocks. Since all callers use the
+ * same order, no global monitor is needed and transactions with disjoint
+ * keys can commit in parallel.
  */
 public class MultiSemaphore {
 
 	private static final Logger logger = LoggerFactory.getLogger(MultiSemaphore.class.getName());
 
-	private final Map<String, Semaphore> semaphoreMap = new ConcurrentHashMap<>();
+	public static final char STRIPE_SEPARATOR = '#';
+	public static final int NUM_STRIPES       = 1024;
 
-	public synchronized void acquire(final Set<String> types) throws InterruptedException {
+	private final Map<String, KeyStatistics> statistics = new ConcurrentHashMap<>();
+	private final Map<String, Semaphore> semaphoreMap   = new ConcurrentHashMap<>();
 
-		if (types != null && !types.isEmpty()) {
+	public void acquire(final Set<String> keys) throws InterruptedException {
 
-			for (Semaphore semaphore : getSemaphores(types)) {
-				semaphore.acquire();
+		if (keys != null && !keys.isEmpty()) {
+
+			final Set<String> acquired = new LinkedHashSet<>();
+
+			try {
+
+				for (final String key : keys) {
+
+					if (key != null) {
+
+						acquire(key);
+						acquired.add(key);
+					}
+				}
+
+			} catch (InterruptedException iex) {
+
+				// do not keep the keys we already own
+				release(acquired);
+				throw iex;
 			}
 		}
 	}
 
-	public void release(final Set<String> types) {
+	public void release(final Set<String> keys) {
+
+		if (keys != null && !keys.isEmpty()) {
 
-		if (types != null && !types.isEmpty()) {
+			for (final String key : keys) {
 
-			for (Semaphore semaphore : getSemaphores(types)) {
-				semaphore.release();
+				if (key != null) {
+
+					getSemaphore(key).release();
+				}
 			}
 		}
 	}
 
-	private Set<Semaphore> getSemaphores(final Set<String> types) {
+	/**
+	 * Returns a map of statistics per synchronization key, aggregated over
+	 * all stripes of the key.
+	 *
+	 * @return a map of key => statistics
+	 */
+	public Map<String, Object> getStatistics() {
 
-		Set<Semaphore> semaphores = new LinkedHashSet<>();
+		final Map<String, Object> result = new TreeMap<>();
 
-		if (types != null) {
+		for (final Map.Entry<String, KeyStatistics> entry : statistics.entrySet()) {
 
-			for (String type : types) {
+			result.put(entry.getKey(), entry.getValue().toMap());
+		}
 
-				if (type != null) {
+		return result;
+	}
 
-					Semaphore semaphore = semaphoreMap.get(type);
-					if (semaphore == null) {
+	/**
+	 * Returns the lock key for the given synchronization key and value.
+	 * Values are hashed into a fixed number of stripes, so only writers
+	 * of equal values (and of values that share a stripe) contend.
+	 *
+	 * @param key the synchronization key
+	 * @param value the value
+	 *
+	 * @return the striped lock key
+	 */
+	public static String getStripedKey(final String key, final Object value) {
+
+		final int hash = value instanceof Object[] ? Arrays.hashCode((Object[])value) : Objects.hashCode(value);
+
+		return key + STRIPE_SEPARATOR + ((hash & Integer.MAX_VALUE) % NUM_STRIPES);
+	}
 
-						semaphore = new Semaphore(1, true);
-						semaphoreMap.put(type, semaphore);
-					}
+	// ----- private methods -----
+	private void acquire(final String key) throws InterruptedException {
+
+		final KeyStatistics stats = getStatistics(key);
+		final Semaphore semaphore = getSemaphore(key);
+
+		stats.acquisitions.increment();
+
+		if (!semaphore.tryAcquire()) {
+
+			final long t0 = System.nanoTime();
+
+			stats.contentions.increment();
 
-					semaphores.add(semaphore);
+			try {
+
+				semaphore.acquire();
+
+			} finally {
+
+				final long waitTime = System.nanoTime() - t0;
+
+				stats.waitTime.add(waitTime);
+				stats.maxWaitTime.accumulateAndGet(waitTime, Math::max);
+
+				if (logger.isDebugEnabled()) {
+					logger.debug("Waited {} ms for commit lock {}", TimeUnit.NANOSECONDS.toMillis(waitTime), key);
 				}
 			}
 		}
+	}
+
+	private Semaphore getSemaphore(final String key) {
+		return semaphoreMap.computeIfAbsent(key, k -> new Semaphore(1, true));
+	}
+
+	private KeyStatistics getStatistics(final String key) {
+
+		final int pos = key.indexOf(STRIPE_SEPARATOR);
+		if (pos >= 0) {
 
-		return semaphores;
+			return statistics.computeIfAbsent(key.substring(0, pos), k -> new KeyStatistics());
+		}
+
+		return statistics.computeIfAbsent(key, k -> new KeyStatistics());
+	}
+
+	// ----- nested classes -----
+	private static class KeyStatistics {
+
+		private final LongAdder acquisitions = new LongAdder();
+		private final LongAdder contentions  = new LongAdder();
+		private final LongAdder waitTime     = new LongAdder();
+		private final AtomicLong maxWaitTime = new AtomicLong();
+
+		public Map<String, Object> toMap() {
+
+			final Map<String, Object> map = new LinkedHashMap<>();
+
+			map.put("acquisitions",  acquisitions.sum());
+			map.put("contentions",   contentions.sum());
+			map.put("waitTimeMs",    TimeUnit.NANOSECONDS.toMillis(waitTime.sum()));
+			map.put("maxWaitTimeMs", TimeUnit.NANOSECONDS.toMillis(maxWaitTime.get()));
+
+			return map;
+		}
 	}
 }
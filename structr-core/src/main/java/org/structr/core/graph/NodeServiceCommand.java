@@ -22,11 +22,17 @@ import java.io.IOException;
 import java.util.Iterator;
 import java.util.UUID;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.Predicate;
+import org.structr.api.RetryException;
+import org.structr.api.config.Settings;
 import org.structr.api.service.Command;
 import org.structr.common.Filter;
 import org.structr.common.SecurityContext;
@@ -44,6 +50,7 @@ public abstract class NodeServiceCommand extends Command {
 
 	private static final Logger logger                        = LoggerFactory.getLogger(NodeServiceCommand.class.getName());
 	private static final ArrayBlockingQueue<String> uuidQueue = new ArrayBlockingQueue<>(100000);
+	private static final int MAX_RETRIES                      = 5;
 
 	protected SecurityContext securityContext = null;
 	private Writable logWritable              = null;
@@ -136,6 +143,140 @@ public abstract class NodeServiceCommand extends Command {
 		return objectCount;
 	}
 
+	/**
+	 * Executes the given operation on all objects of the given iterator.
+	 *
+	 * Operations that are parallelizable are distributed over a pool of
+	 * worker threads instead, see {@link BulkGraphOperation#isParallelizable()}.
+	 * The workers load the objects from the given partitioner, which must
+	 * provide the same objects as the iterator.
+	 *
+	 * @param <T>
+	 * @param securityContext
+	 * @param iterator the iterator that provides the objects to operate on sequentially
+	 * @param partitioner the partitioner that provides the objects to operate on in parallel, or null
+	 * @param commitCount
+	 * @param description
+	 * @param operation the operation to execute
+	 * @return the number of objects processed
+	 */
+	public <T> long bulkGraphOperation(final SecurityContext securityContext, final Iterator<T> iterator, final BulkGraphPartitioner<T> partitioner, final long commitCount, final String description, final BulkGraphOperation<T> operation) {
+
+		// workers cannot see the changes of an enclosing transaction, and
+		// the condition depends on the order of the objects
+		final int threads = Settings.BulkWorkerThreads.getValue();
+		if (threads > 1 && partitioner != null && operation.isParallelizable() && operation.getCondition() == null && !TransactionCommand.inTransaction()) {
+
+			return parallelBulkGraphOperation(securityContext, partitioner, commitCount, description, operation, threads);
+		}
+
+		return bulkGraphOperation(securityContext, iterator, commitCount, description, operation, true);
+	}
+
+	/**
+	 * Executes the given operation on all objects of the given partitioner,
+	 * using the given number of worker threads. The internal id space is
+	 * split into ranges of commitCount ids, each of which is loaded and
+	 * processed in a separate transaction by one of the workers.
+	 * Transactions that fail with a {@link RetryException} are retried
+	 * with a fresh copy of their range. Ranges that cannot be committed
+	 * are reported to the operation's transaction failure handler and are
+	 * not counted.
+	 *
+	 * @param <T>
+	 * @param securityContext
+	 * @param partitioner the partitioner that provides the objects to operate on
+	 * @param commitCount
+	 * @param description
+	 * @param operation the operation to execute
+	 * @param threads the number of worker threads
+	 * @return the number of objects processed
+	 */
+	public <T> long parallelBulkGraphOperation(final SecurityContext securityContext, final BulkGraphPartitioner<T> partitioner, final long commitCount, final String description, final BulkGraphOperation<T> operation, final int threads) {
+
+		final ExecutorService executor  = Executors.newFixedThreadPool(threads, r -> {
+
+			final Thread thread = new Thread(r, "BulkGraphOperation " + description);
+			thread.setDaemon(true);
+
+			return thread;
+		});
+
+		final App app              = StructrApp.getInstance(securityContext);
+		final Semaphore permits    = new Semaphore(threads * 2);
+		final AtomicLong processed = new AtomicLong();
+		final AtomicLong failed    = new AtomicLong();
+		final long t0              = System.currentTimeMillis();
+		long maxId                 = -1L;
+
+		try (final Tx tx = app.tx(false, false, false)) {
+
+			maxId = partitioner.getMaxId(app.getDatabaseService());
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			operation.handleTransactionFailure(securityContext, t);
+		}
+
+		try {
+
+			for (long fromId=0; fromId<=maxId; fromId += commitCount) {
+
+				final long from = fromId;
+				final long to   = Math.min(fromId + commitCount, maxId + 1);
+
+				// limit the number of ranges waiting for a worker
+				permits.acquire();
+
+				executor.submit(() -> {
+
+					try {
+
+						final long count = processPartition(securityContext, app, partitioner, from, to, operation);
+						if (count >= 0) {
+
+							final long total = processed.addAndGet(count);
+
+							if (description != null && count > 0) {
+								progress(description, total, t0);
+							}
+
+						} else {
+
+							failed.incrementAndGet();
+						}
+
+					} finally {
+
+						// the pool thread must not carry the interrupt over to the next range
+						Thread.interrupted();
+
+						permits.release();
+					}
+				});
+			}
+
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+		} catch (InterruptedException iex) {
+
+			warn("{}: interrupted after {} objects", description, processed.get());
+			executor.shutdownNow();
+
+			// let the caller see the interruption
+			Thread.currentThread().interrupt();
+		}
+
+		if (failed.get() > 0) {
+			warn("{}: {} partitions failed", description, failed.get());
+		}
+
+		return processed.get();
+	}
+
 	/**
 	 * Executes the given transaction until the stop condition evaluates to
 	 * <b>true</b>.
@@ -191,6 +332,13 @@ public abstract class NodeServiceCommand extends Command {
 	}
 
 	// ----- protected methods -----
+	protected synchronized void progress(final String description, final long count, final long t0) {
+
+		final long duration = Math.max(1L, System.currentTimeMillis() - t0);
+
+		info("{}: {} objects processed, {} objects/s", description, count, (count * 1000L) / duration);
+	}
+
 	protected void info(final String msg, final Object... data) {
 
 		logger.info(msg, data);
@@ -232,6 +380,77 @@ public abstract class NodeServiceCommand extends Command {
 		}
 	}
 
+	// ----- private methods -----
+	/**
+	 * Loads and processes the objects of the given id range in a single
+	 * transaction.
+	 *
+	 * @return the number of objects processed, or -1 if the range could not be committed
+	 */
+	private <T> long processPartition(final SecurityContext securityContext, final App app, final BulkGraphPartitioner<T> partitioner, final long fromId, final long toId, final BulkGraphOperation<T> operation) {
+
+		int attempt = 0;
+
+		while (true) {
+
+			long count = 0L;
+
+			try (final Tx tx = app.tx(operation.doValidation(), operation.doCallbacks(), operation.doNotifications())) {
+
+				for (final T obj : partitioner.getObjects(app.getDatabaseService(), fromId, toId)) {
+
+					try {
+
+						operation.handleGraphObject(securityContext, obj);
+
+					} catch (RetryException rex) {
+
+						throw rex;
+
+					} catch (Throwable t) {
+
+						operation.handleThrowable(securityContext, t, obj);
+					}
+
+					count++;
+				}
+
+				tx.success();
+
+			} catch (RetryException rex) {
+
+				if (++attempt < MAX_RETRIES) {
+
+					logger.info("Transient failure in bulk graph operation, retrying ({}/{}): {}", attempt, MAX_RETRIES, rex.getMessage());
+
+					try {
+
+						Thread.sleep(attempt * 100L);
+						continue;
+
+					} catch (InterruptedException iex) {
+
+						// the range was not committed, report it with the interrupt flag set
+						Thread.currentThread().interrupt();
+						rex.addSuppressed(iex);
+					}
+				}
+
+				operation.handleTransactionFailure(securityContext, rex);
+
+				return -1L;
+
+			} catch (Throwable t) {
+
+				operation.handleTransactionFailure(securityContext, t);
+
+				return -1L;
+			}
+
+			return count;
+		}
+	}
+
 	// create uuid producer that fills the queue
 	static {
 
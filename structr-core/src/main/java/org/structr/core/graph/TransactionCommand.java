@@ -23,6 +23,7 @@ import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.DatabaseService;
@@ -52,6 +53,7 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 	private static final ThreadLocal<ErrorBuffer> buffers               = new ThreadLocal<>();
 	private static final ThreadLocal<TransactionCommand> currentCommand = new ThreadLocal<>();
 	private static final ThreadLocal<TransactionReference> transactions = new ThreadLocal<>();
+	private static final ThreadLocal<Set<String>> lockedKeys            = new ThreadLocal<>();
 	private static final MultiSemaphore                    semaphore    = new MultiSemaphore();
 
 	public TransactionCommand beginTx() throws FrameworkException {
@@ -108,15 +110,18 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 				throw new FrameworkException(422, "Unable to commit transaction, validation failed", errorBuffer);
 			}
 
-			// 2. fetch all types of entities modified in this tx
-			Set<String> synchronizationKeys = modificationQueue.getSynchronizationKeys();
+			// 2. fetch the lock keys of all uniqueness-validated values modified in this tx,
+			//    copied because post-processing may still add keys to the queue
+			final Set<String> synchronizationKeys = new TreeSet<>(modificationQueue.getSynchronizationKeys());
 
 			// we need to protect the validation and indexing part of every transaction
 			// from being entered multiple times in the presence of validators
-			// 3. acquire semaphores for each modified type
+			// 3. acquire semaphores for each key, in sorted order
 			try { semaphore.acquire(synchronizationKeys); } catch (InterruptedException iex) { return; }
 
-			// do validation under the protection of the semaphores for each type
+			lockedKeys.set(synchronizationKeys);
+
+			// do validation under the protection of the semaphores for each key
 			if (doValidation && !modificationQueue.doValidation(securityContext, errorBuffer, doValidation)) {
 
 				tx.failure();
@@ -152,9 +157,10 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 
 				modificationQueue = queues.get();
 
-				final Set<String> synchronizationKeys = modificationQueue.getSynchronizationKeys();
+				final Set<String> synchronizationKeys = lockedKeys.get();
 
 				// cleanup
+				lockedKeys.remove();
 				queues.remove();
 				buffers.remove();
 				currentCommand.remove();
@@ -401,6 +407,16 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 
 	}
 
+	/**
+	 * Returns contention and wait time statistics of the commit locks,
+	 * aggregated per synchronization key.
+	 *
+	 * @return a map of key => statistics
+	 */
+	public static Map<String, Object> getCommitLockStatistics() {
+		return semaphore.getStatistics();
+	}
+
 	public static boolean inTransaction() {
 		return currentCommand.get() != null;
 	}
@@ -477,6 +493,57 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 
 	}
 
+	/**
+	 * Registers an action that is run after the current transaction has
+	 * been committed. The action is discarded if the transaction fails,
+	 * and only the first action for a given key is registered.
+	 *
+	 * @param key
+	 * @param action
+	 */
+	public static void afterCommit(final String key, final Runnable action) {
+
+		TransactionCommand command = currentCommand.get();
+		if (command != null) {
+
+			ModificationQueue modificationQueue = command.getModificationQueue();
+			if (modificationQueue != null) {
+
+				modificationQueue.afterCommit(key, action);
+
+			} else {
+
+				logger.error("Got empty changeSet from command!");
+			}
+
+		} else {
+
+			logger.error("Trying to register after commit action while outside of transaction!");
+		}
+	}
+
+	/**
+	 * Returns the action with the given key that is run after the current
+	 * transaction has been committed, or null if there is none.
+	 *
+	 * @param key
+	 * @return the action or null
+	 */
+	public static Runnable getAfterCommitAction(final String key) {
+
+		TransactionCommand command = currentCommand.get();
+		if (command != null) {
+
+			ModificationQueue modificationQueue = command.getModificationQueue();
+			if (modificationQueue != null) {
+
+				return modificationQueue.getAfterCommitAction(key);
+			}
+		}
+
+		return null;
+	}
+
 	// ----- private methods -----
 	private ModificationQueue getModificationQueue() {
 		return queues.get();
@@ -76,8 +76,18 @@ public class Tx implements AutoCloseable {
 
 		final ModificationQueue modificationQueue = cmd.finishTx();
 
+		// run regardless of callbacks and notifications, the transaction is committed now
+		if (success && modificationQueue != null) {
+			modificationQueue.doAfterCommit();
+		}
+
 		if (success && guard.compareAndSet(false, true)) {
 
+			// outside of the retry loop so that records are not written twice
+			if (doCallbacks && modificationQueue != null) {
+				modificationQueue.updateChangelogStore();
+			}
+
 			boolean retry  = true;
 			while (retry) {
 
@@ -35,6 +35,9 @@ public class SearchAttributeGroup extends SearchAttribute implements GroupQuery
 
 	private List<SearchAttribute> searchItems = new LinkedList<>();
 	private SearchAttributeGroup parent       = null;
+	private Object seekValue                  = null;
+	private Long seekId                       = null;
+	private int fetchSize                     = 0;
 
 	public SearchAttributeGroup(final Occurrence occur) {
 		this(null, occur);
@@ -83,6 +86,23 @@ public class SearchAttributeGroup extends SearchAttribute implements GroupQuery
 		searchItems.add(searchAttribute);
 	}
 
+	/**
+	 * Lets the result of this group start after the element with the
+	 * given raw sort value and internal id.
+	 *
+	 * @param value the raw value of the sort key, may be null
+	 * @param id the internal id of the element
+	 */
+	public void seek(final Object value, final long id) {
+
+		this.seekValue = value;
+		this.seekId    = id;
+	}
+
+	public void setFetchSize(final int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
 	@Override
 	public boolean isExactMatch() {
 
@@ -151,6 +171,21 @@ public class SearchAttributeGroup extends SearchAttribute implements GroupQuery
 		return GroupQuery.class;
 	}
 
+	@Override
+	public Long getSeekId() {
+		return seekId;
+	}
+
+	@Override
+	public Object getSeekValue() {
+		return seekValue;
+	}
+
+	@Override
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
 	@Override
 	public List<QueryPredicate> getQueryPredicates() {
 
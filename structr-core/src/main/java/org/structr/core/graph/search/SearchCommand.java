@@ -20,12 +20,15 @@ package org.structr.core.graph.search;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.Predicate;
@@ -66,6 +69,7 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 
 	private static final Map<String, Set<String>> subtypeMapForType = new LinkedHashMap<>();
 	private static final Set<String> baseTypes                      = new LinkedHashSet<>();
+	private static final List<Consumer<Set<String>>> typeListeners  = new CopyOnWriteArrayList<>();
 
 	public static final String LAT_LON_SEARCH_KEYWORD     = "latlon";
 	public static final String LOCATION_SEARCH_KEYWORD    = "location";
@@ -94,6 +98,7 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 	private boolean doNotSort                    = false;
 	private int pageSize                         = Integer.MAX_VALUE;
 	private int page                             = 1;
+	private GraphObject startAfter               = null;
 
 	public abstract Factory<S, T> getFactory(final SecurityContext securityContext, final boolean includeDeletedAndHidden, final boolean publicOnly, final int pageSize, final int page);
 	public abstract boolean isRelationshipSearch();
@@ -101,6 +106,22 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 
 	private Result<T> doSearch() throws FrameworkException {
 
+		if (!typeListeners.isEmpty() && !isRelationshipSearch()) {
+
+			final Set<String> types = new LinkedHashSet<>();
+
+			collectTypes(rootGroup, types);
+
+			// a query without a type can return nodes of any type
+			if (types.isEmpty()) {
+				types.add(AbstractNode.class.getSimpleName());
+			}
+
+			for (final Consumer<Set<String>> listener : typeListeners) {
+				listener.accept(types);
+			}
+		}
+
 		if (page == 0 || pageSize <= 0) {
 
 			return Result.EMPTY_RESULT;
@@ -204,6 +225,23 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 				rootGroup.sortDescending(sortDescending);
 			}
 
+			// continue after the given element in the database (keyset pagination)
+			if (startAfter != null) {
+
+				// the position of the cursor is only defined in a sorted result
+				if (sortKey == null || doNotSort) {
+					throw new FrameworkException(400, "Cannot continue after an element in an unsorted result, sort key is missing.");
+				}
+
+				final PropertyContainer container = startAfter.getPropertyContainer();
+
+				rootGroup.seek(container.getProperty(sortKey.dbName()), container.getId());
+
+				if (pageSize < Integer.MAX_VALUE) {
+					rootGroup.setFetchSize(pageSize);
+				}
+			}
+
 			final Index<S> index = getIndex();
 			if (index != null) {
 
@@ -260,7 +298,22 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 			}
 
 			// sort list
-			Collections.sort(finalResult, new GraphObjectComparator(sortKey, sortDescending));
+			Comparator<GraphObject> comparator = new GraphObjectComparator(sortKey, sortDescending);
+			if (startAfter != null) {
+
+				// internal id as tie-breaker, elements with equal sort values must not be skipped
+				comparator = comparator.thenComparingLong(obj -> obj.getPropertyContainer().getId());
+			}
+
+			Collections.sort(finalResult, comparator);
+
+			if (startAfter != null) {
+
+				// return paged final result after the given element
+				final List<GraphObject> remaining = finalResult.subList(getStartIndex(finalResult, comparator), finalResult.size());
+
+				return new Result(PagingHelper.subList(remaining, pageSize, page), resultCount, true, false);
+			}
 
 			// return paged final result
 			return new Result(PagingHelper.subList(finalResult, pageSize, page), resultCount, true, false);
@@ -272,6 +325,29 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 		}
 	}
 
+	private int getStartIndex(final List<GraphObject> sortedResult, final Comparator<GraphObject> comparator) {
+
+		final String uuid = startAfter.getUuid();
+		final int size    = sortedResult.size();
+
+		for (int i=0; i<size; i++) {
+
+			if (uuid.equals(sortedResult.get(i).getUuid())) {
+				return i + 1;
+			}
+		}
+
+		// element is not part of the result (any more), continue with the first element that follows it
+		for (int i=0; i<size; i++) {
+
+			if (comparator.compare(sortedResult.get(i), startAfter) > 0) {
+				return i;
+			}
+		}
+
+		return size;
+	}
+
 	private Set<GraphObject> mergeSources(List<SourceSearchAttribute> sources) {
 
 		final Set<GraphObject> mergedResult = new LinkedHashSet<>();
@@ -398,6 +474,12 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 		return this;
 	}
 
+	@Override
+	public org.structr.core.app.Query<T> startAfter(final GraphObject obj) {
+		this.startAfter = obj;
+		return this;
+	}
+
 	@Override
 	public org.structr.core.app.Query<T> publicOnly() {
 		this.publicOnly = true;
@@ -689,6 +771,17 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 	}
 
 	// ----- static methods -----
+	/**
+	 * Registers a listener that is notified of the node types each node
+	 * query asks for, before the query is executed, so that a cache can
+	 * depend on the types of a query even if its result is empty.
+	 *
+	 * @param listener
+	 */
+	public static void registerTypeListener(final Consumer<Set<String>> listener) {
+		typeListeners.add(listener);
+	}
+
 	public static synchronized void clearInheritanceMap() {
 		subtypeMapForType.clear();
 	}
@@ -783,6 +876,21 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 	}
 
 	// ----- private methods ----
+	private void collectTypes(final SearchAttributeGroup group, final Set<String> types) {
+
+		for (final SearchAttribute attr : group.getSearchAttributes()) {
+
+			if (attr instanceof TypeSearchAttribute) {
+
+				types.add((String)attr.getValue());
+
+			} else if (attr instanceof SearchAttributeGroup) {
+
+				collectTypes((SearchAttributeGroup)attr, types);
+			}
+		}
+	}
+
 	private void assertPropertyIsIndexed(final PropertyKey key) {
 
 		if (key != null && !key.isIndexed() && key instanceof AbstractPrimitiveProperty) {
@@ -36,10 +36,11 @@ public class BatchExpression extends Expression {
 
 	public static final String ERROR_MESSAGE_SLICE = "Usage: ${batch(statement, batchSize)}. Example: ${batch(delete(find('User')), 1000)}";
 
-	private Expression batchExpression = null;
-	private Expression sizeExpression  = null;
-	private boolean background         = false;
-	private int batchSize              = -1;
+	// the batch size is stored per thread since expression trees are shared
+	private final ThreadLocal<Integer> batchSize = new ThreadLocal<>();
+	private Expression batchExpression           = null;
+	private Expression sizeExpression            = null;
+	private boolean background                   = false;
 
 	public BatchExpression() {
 		super("batch");
@@ -75,8 +76,7 @@ public class BatchExpression extends Expression {
 		final Object value = sizeExpression.evaluate(ctx, entity);
 		if (value != null && value instanceof Number) {
 
-			// store batch size for children to use
-			this.batchSize = ((Number)value).intValue();
+			final int size = ((Number)value).intValue();
 
 			// initialize holders to store results from worker thread (must be final)
 			final StaticValue<FrameworkException> exception = new StaticValue<>(null);
@@ -85,10 +85,17 @@ public class BatchExpression extends Expression {
 			final Thread workerThread = new Thread(() -> {
 
 				try {
+
+					// store batch size for children to use
+					batchSize.set(size);
+
 					result.set(null, batchExpression.evaluate(ctx, entity));
 
 				} catch (FrameworkException fex) {
 					exception.set(null, fex);
+
+				} finally {
+					batchSize.remove();
 				}
 
 			});
@@ -122,6 +129,13 @@ public class BatchExpression extends Expression {
 
 	@Override
 	public int getBatchSize() {
-		return batchSize;
+
+		final Integer size = batchSize.get();
+		if (size != null) {
+
+			return size;
+		}
+
+		return -1;
 	}
 }
@@ -18,12 +18,15 @@
  */
 package org.structr.core.parser;
 
-import java.util.Random;
 import org.apache.commons.lang3.StringUtils;
+import org.structr.api.config.Settings;
+import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.error.UnlicensedException;
 import org.structr.core.GraphObject;
-import org.structr.core.Services;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.Tx;
 import org.structr.schema.action.ActionContext;
 
 /**
@@ -103,59 +106,57 @@ public class CacheExpression extends Expression {
 
 		final long timeout = ((Number)timeoutValue).longValue();
 
-		// get or create new cached value
-		final Services services = Services.getInstance();
-		CachedValue cachedValue = (CachedValue)services.getAttribute(key);
-		if (cachedValue == null) {
+		// the value expression is only evaluated on a miss or by the single caller that refreshes an expired value
+		return ValueCache.get(key, timeout, () -> valueExpression.evaluate(ctx, entity), Settings.ValueCacheRefresh.getValue() ? getRefresher(ctx, entity) : null);
+	}
 
-			cachedValue = new CachedValue(timeout);
-			services.setAttribute(key, cachedValue);
+	@Override
+	public Object transform(final ActionContext ctx, final GraphObject entity, final Object source) throws FrameworkException {
+		return source;
+	}
 
-		} else {
+	// ----- private methods -----
+	/**
+	 * Returns a supplier that evaluates the value expression in a new
+	 * transaction on the refresh thread. The request's context, entity and
+	 * transaction may be gone by then, so the user is captured in a new
+	 * security context and the entity is looked up again by its uuid.
+	 */
+	private ValueCache.ValueSupplier getRefresher(final ActionContext ctx, final GraphObject entity) {
 
-			cachedValue.setTimeoutSeconds(timeout);
-		}
+		final SecurityContext securityContext = ctx.getSecurityContext();
+		if (securityContext == null) {
 
-		// refresh value from value expression (this is the only place the value expression is evaluated)
-		if (cachedValue.isExpired()) {
-			cachedValue.refresh(valueExpression.evaluate(ctx, entity));
+			return null;
 		}
 
-		return cachedValue.getValue();
-	}
+		final SecurityContext refreshContext = securityContext.isSuperUser() ? SecurityContext.getSuperUserInstance() : SecurityContext.getInstance(securityContext.getUser(false), securityContext.getAccessMode());
+		final Class type                     = entity != null ? entity.getClass() : null;
+		final String uuid                    = entity != null ? entity.getUuid() : null;
 
-	private static final class CachedValue {
+		return () -> {
 
-		private Random random       = new Random(System.currentTimeMillis());
-		private Object value        = null;
-		private long timeoutSeconds = 0L;
-		private long timeout        = 0L;
+			final App app = StructrApp.getInstance(refreshContext);
 
-		public CachedValue(final long timeoutSeconds) {
-			setTimeoutSeconds(timeoutSeconds);
-		}
+			try (final Tx tx = app.tx()) {
 
-		public final void setTimeoutSeconds(final long timeoutSeconds) {
-			this.timeoutSeconds = timeoutSeconds;
-		}
+				GraphObject current = null;
 
-		public final Object getValue() {
-			return value;
-		}
+				if (uuid != null) {
 
-		public final boolean isExpired() {
-			return System.currentTimeMillis() > timeout;
-		}
+					current = app.get(type, uuid);
+					if (current == null) {
 
-		public final void refresh(final Object value) {
+						throw new FrameworkException(404, "Entity with ID " + uuid + " not found");
+					}
+				}
 
-			this.timeout = System.currentTimeMillis() + ((timeoutSeconds + random.nextInt(10)) * 1000);
-			this.value   = value;
-		}
-	}
+				final Object value = valueExpression.evaluate(new ActionContext(refreshContext), current);
 
-	@Override
-	public Object transform(final ActionContext ctx, final GraphObject entity, final Object source) throws FrameworkException {
-		return source;
+				tx.success();
+
+				return value;
+			}
+		};
 	}
 }
@@ -0,0 +1,451 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.parser;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+import org.structr.common.error.FrameworkException;
+
+/**
+ * Bounded cache for the values of cache() expressions.
+ *
+ * Entries expire after their timeout and are evicted least recently used
+ * first when the total weight of all values exceeds the configured limit.
+ * An expired value is refreshed by exactly one caller while concurrent
+ * callers get the stale value. If a refresher is given, values that are
+ * close to expiry are refreshed asynchronously by the refresher.
+ *
+ * A value whose supplier asks for the same key again on the same thread
+ * while it is loaded for the first time is evaluated without the cache,
+ * waiting for the own load would never return.
+ */
+public class ValueCache {
+
+	private static final Logger logger                            = LoggerFactory.getLogger(ValueCache.class.getName());
+	private static final Map<String, CacheEntry> entries          = new ConcurrentHashMap<>();
+	private static final Map<String, PrefixStatistics> statistics = new ConcurrentHashMap<>();
+	private static final List<Consumer<String>> refreshListeners  = new CopyOnWriteArrayList<>();
+	private static final ThreadLocal<Set<String>> loadingKeys     = ThreadLocal.withInitial(HashSet::new);
+	private static final AtomicLong totalWeight                   = new AtomicLong();
+	private static final int MAX_PREFIXES                         = 1000;
+	private static final String OTHER_PREFIX                      = "(other)";
+	private static final double REFRESH_AHEAD_FACTOR              = 0.8;
+	private static ExecutorService refreshExecutor                = null;
+
+	/**
+	 * Supplies the value of a cache entry.
+	 */
+	public interface ValueSupplier {
+
+		Object get() throws FrameworkException;
+	}
+
+	/**
+	 * Returns the cached value for the given key, or the value of the given
+	 * supplier if there is no cached value yet.
+	 *
+	 * The refresher is called on a background thread, after the calling
+	 * request may have finished, so it must not use any request state and
+	 * has to open its own transaction.
+	 *
+	 * @param key the cache key
+	 * @param timeoutSeconds the time to live of the value
+	 * @param supplier the supplier of the value
+	 * @param refresher the supplier for asynchronous refreshes before the value expires, or null
+	 *
+	 * @return the cached value
+	 *
+	 * @throws FrameworkException
+	 */
+	public static Object get(final String key, final long timeoutSeconds, final ValueSupplier supplier, final ValueSupplier refresher) throws FrameworkException {
+
+		final PrefixStatistics stats = getStatistics(key);
+		final CacheEntry entry       = entries.computeIfAbsent(key, k -> new CacheEntry(k, stats));
+
+		entry.timeoutSeconds = timeoutSeconds;
+		entry.lastAccess     = System.currentTimeMillis();
+
+		if (!entry.loaded.isDone()) {
+
+			// first load, only the creator of the future evaluates the supplier
+			if (entry.loading.compareAndSet(false, true)) {
+
+				stats.misses.increment();
+
+				loadingKeys.get().add(key);
+
+				try {
+
+					entry.update(supplier.get());
+					entry.loaded.complete(null);
+
+				} catch (FrameworkException | RuntimeException ex) {
+
+					stats.errors.increment();
+
+					// remove the entry so the next caller tries again
+					entries.remove(key, entry);
+					entry.loaded.completeExceptionally(ex);
+
+					throw ex;
+
+				} finally {
+
+					loadingKeys.get().remove(key);
+				}
+
+				evictIfNecessary();
+
+				return entry.value;
+			}
+
+			// the key is loaded further up on this thread, do not wait for ourselves
+			if (loadingKeys.get().contains(key)) {
+
+				stats.misses.increment();
+
+				return supplier.get();
+			}
+
+			// wait for the concurrent first load
+			try {
+
+				entry.loaded.join();
+
+			} catch (CompletionException cex) {
+
+				if (cex.getCause() instanceof FrameworkException) {
+					throw (FrameworkException)cex.getCause();
+				}
+
+				if (cex.getCause() instanceof RuntimeException) {
+					throw (RuntimeException)cex.getCause();
+				}
+
+				throw cex;
+			}
+		}
+
+		final long now = System.currentTimeMillis();
+
+		if (now > entry.expires) {
+
+			// expired: one caller refreshes, all others get the stale value
+			if (entry.refreshing.compareAndSet(false, true)) {
+
+				stats.refreshes.increment();
+
+				try {
+
+					entry.update(supplier.get());
+
+				} catch (FrameworkException | RuntimeException ex) {
+
+					stats.errors.increment();
+					throw ex;
+
+				} finally {
+
+					entry.refreshing.set(false);
+				}
+
+				evictIfNecessary();
+
+			} else {
+
+				stats.staleHits.increment();
+			}
+
+		} else {
+
+			stats.hits.increment();
+
+			if (refresher != null && now > entry.refreshAt && entry.refreshing.compareAndSet(false, true)) {
+
+				stats.refreshes.increment();
+
+				getRefreshExecutor().submit(() -> {
+
+					try {
+
+						entry.update(refresher.get());
+
+						for (final Consumer<String> listener : refreshListeners) {
+							listener.accept(key);
+						}
+
+					} catch (Throwable t) {
+
+						stats.errors.increment();
+						logger.warn("Unable to refresh cached value for key {}: {}", key, t.getMessage());
+
+					} finally {
+
+						entry.refreshing.set(false);
+					}
+				});
+			}
+		}
+
+		return entry.value;
+	}
+
+	/**
+	 * Registers a listener that is notified with the key of every value
+	 * that was refreshed in the background.
+	 *
+	 * @param listener
+	 */
+	public static void addRefreshListener(final Consumer<String> listener) {
+		refreshListeners.add(listener);
+	}
+
+	public static void removeRefreshListener(final Consumer<String> listener) {
+		refreshListeners.remove(listener);
+	}
+
+	public static void clear() {
+
+		entries.clear();
+		totalWeight.set(0L);
+	}
+
+	public static int size() {
+		return entries.size();
+	}
+
+	public static long getWeight() {
+		return totalWeight.get();
+	}
+
+	/**
+	 * Returns the cache statistics, aggregated by key prefix. The prefix
+	 * of a key is the part before the first '.', ':', '/', '_' or '-'.
+	 *
+	 * @return a map of prefix => statistics
+	 */
+	public static Map<String, Object> getStatistics() {
+
+		final Map<String, Object> result = new TreeMap<>();
+
+		for (final Map.Entry<String, PrefixStatistics> entry : statistics.entrySet()) {
+
+			result.put(entry.getKey(), entry.getValue().toMap());
+		}
+
+		return result;
+	}
+
+	// ----- private methods -----
+	private static PrefixStatistics getStatistics(final String key) {
+
+		String prefix = getPrefix(key);
+
+		if (!statistics.containsKey(prefix) && statistics.size() >= MAX_PREFIXES) {
+			prefix = OTHER_PREFIX;
+		}
+
+		return statistics.computeIfAbsent(prefix, k -> new PrefixStatistics());
+	}
+
+	private static String getPrefix(final String key) {
+
+		for (int i=0; i<key.length(); i++) {
+
+			switch (key.charAt(i)) {
+
+				case '.':
+				case ':':
+				case '/':
+				case '_':
+				case '-':
+					return key.substring(0, i);
+			}
+		}
+
+		return key;
+	}
+
+	private static void evictIfNecessary() {
+
+		final long maxWeight = Settings.ValueCacheWeight.getValue();
+
+		if (totalWeight.get() > maxWeight) {
+
+			synchronized (ValueCache.class) {
+
+				if (totalWeight.get() > maxWeight) {
+
+					final List<CacheEntry> candidates = new ArrayList<>(entries.values());
+					final long targetWeight           = (maxWeight * 9) / 10;
+
+					// least recently used entries first
+					candidates.sort(Comparator.comparingLong(e -> e.lastAccess));
+
+					for (final CacheEntry entry : candidates) {
+
+						if (totalWeight.get() <= targetWeight) {
+							break;
+						}
+
+						if (entry.loaded.isDone() && entries.remove(entry.key, entry)) {
+
+							totalWeight.addAndGet(-entry.weight);
+							entry.stats.evictions.increment();
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static synchronized ExecutorService getRefreshExecutor() {
+
+		if (refreshExecutor == null) {
+
+			final ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+
+				final Thread thread = new Thread(r, "ValueCacheRefresh");
+				thread.setDaemon(true);
+
+				return thread;
+			});
+
+			executor.allowCoreThreadTimeOut(true);
+
+			refreshExecutor = executor;
+		}
+
+		return refreshExecutor;
+	}
+
+	/**
+	 * Estimates the memory footprint of the given value in characters.
+	 */
+	private static long weigh(final Object value) {
+
+		if (value instanceof CharSequence) {
+			return 16 + ((CharSequence)value).length();
+		}
+
+		if (value instanceof Collection) {
+			return 16 + 16L * ((Collection)value).size();
+		}
+
+		if (value instanceof Map) {
+			return 16 + 32L * ((Map)value).size();
+		}
+
+		if (value instanceof Object[]) {
+			return 16 + 16L * ((Object[])value).length;
+		}
+
+		if (value instanceof byte[]) {
+			return 16 + ((byte[])value).length / 2;
+		}
+
+		return 16;
+	}
+
+	// ----- nested classes -----
+	private static class CacheEntry {
+
+		private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+		private final AtomicBoolean refreshing       = new AtomicBoolean();
+		private final AtomicBoolean loading          = new AtomicBoolean();
+		private PrefixStatistics stats               = null;
+		private String key                           = null;
+		private volatile Object value                = null;
+		private volatile long timeoutSeconds         = 0L;
+		private volatile long lastAccess             = 0L;
+		private volatile long refreshAt              = 0L;
+		private volatile long expires                = 0L;
+		private volatile long weight                 = 0L;
+
+		public CacheEntry(final String key, final PrefixStatistics stats) {
+
+			this.stats = stats;
+			this.key   = key;
+		}
+
+		public void update(final Object value) {
+
+			final long now       = System.currentTimeMillis();
+			final long ttl       = timeoutSeconds * 1000L;
+			final long newWeight = weigh(value);
+
+			this.value     = value;
+			this.refreshAt = now + (long)(ttl * REFRESH_AHEAD_FACTOR);
+			this.expires   = now + ttl;
+
+			// evicted entries no longer count
+			if (entries.get(key) == this) {
+				totalWeight.addAndGet(newWeight - weight);
+			}
+
+			this.weight = newWeight;
+		}
+	}
+
+	private static class PrefixStatistics {
+
+		private final LongAdder hits      = new LongAdder();
+		private final LongAdder staleHits = new LongAdder();
+		private final LongAdder misses    = new LongAdder();
+		private final LongAdder refreshes = new LongAdder();
+		private final LongAdder evictions = new LongAdder();
+		private final LongAdder errors    = new LongAdder();
+
+		public Map<String, Object> toMap() {
+
+			final Map<String, Object> map = new LinkedHashMap<>();
+
+			map.put("hits",      hits.sum());
+			map.put("staleHits", staleHits.sum());
+			map.put("misses",    misses.sum());
+			map.put("refreshes",  refreshes.sum());
+			map.put("evictions", evictions.sum());
+			map.put("errors",    errors.sum());
+
+			return map;
+		}
+	}
+}
@@ -72,7 +72,7 @@ public class FunctionProperty<T> extends Property<T> {
 				// don't ignore predicate
 				actionContext.setPredicate(predicate);
 
-				return (T)Scripting.evaluate(actionContext, obj, "${".concat(readFunction).concat("}"), "getProperty(" + jsonName + ")");
+				return (T)Scripting.evaluate(actionContext, obj, Scripting.getExpression(readFunction), "getProperty(" + jsonName + ")");
 
 			} else {
 
@@ -137,7 +137,7 @@ public class FunctionProperty<T> extends Property<T> {
 
 			ctx.setConstant("value", value);
 
-			return (T)Scripting.evaluate(ctx, obj, "${".concat(writeFunction).concat("}"), "setProperty(" + jsonName + ")");
+			return (T)Scripting.evaluate(ctx, obj, Scripting.getExpression(writeFunction), "setProperty(" + jsonName + ")");
 
 		} catch (Throwable t) {
 
@@ -19,11 +19,16 @@
 package org.structr.core.script;
 
 import java.io.StringWriter;
-import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.script.Bindings;
@@ -31,7 +36,6 @@ import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
-import org.apache.commons.collections4.map.LRUMap;
 import org.apache.commons.lang3.StringUtils;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ContextFactory;
@@ -41,6 +45,8 @@ import org.mozilla.javascript.Undefined;
 import org.renjin.script.RenjinScriptEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+import org.structr.api.util.FixedSizeCache;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.error.UnlicensedException;
 import org.structr.core.GraphObject;
@@ -58,7 +64,17 @@ public class Scripting {
 
 	private static final Logger logger                       = LoggerFactory.getLogger(Scripting.class.getName());
 	private static final Pattern ScriptEngineExpression      = Pattern.compile("^\\$\\{(\\w+)\\{(.*)\\}\\}$", Pattern.DOTALL);
-	private static final Map<String, Script> compiledScripts = Collections.synchronizedMap(new LRUMap<>(10000));
+	private static final FixedSizeCache<String, Script> compiledScripts      = new FixedSizeCache<>(Settings.ScriptCacheSize.getValue());
+	private static final Map<String, CompletableFuture<Script>> pendingScripts = new ConcurrentHashMap<>();
+	private static final long[] compileTimeLimits                           = { 1L, 10L, 100L, 1000L };
+	private static final LongAdder[] compileTimes                           = new LongAdder[compileTimeLimits.length + 1];
+
+	static {
+
+		for (int i=0; i<compileTimes.length; i++) {
+			compileTimes[i] = new LongAdder();
+		}
+	}
 
 	public static String replaceVariables(final ActionContext actionContext, final GraphObject entity, final Object rawValue) throws FrameworkException {
 
@@ -136,6 +152,19 @@ public class Scripting {
 		return value;
 	}
 
+	/**
+	 * Returns the expression for the given script source as it is stored
+	 * in a schema method or function property. Evaluation and precompile
+	 * must use the same expression, since it determines the key of the
+	 * compiled script in the cache.
+	 *
+	 * @param source the script source
+	 * @return the expression
+	 */
+	public static String getExpression(final String source) {
+		return "${".concat(source.trim()).concat("}");
+	}
+
 	/**
 	 * Evaluate the given script according to the parsing conventions: ${} will try to evaluate
 	 * Structr script, ${{}} means Javascript, ${ENGINE{}} means calling a script interpreter for ENGINE
@@ -339,21 +368,149 @@ public class Scripting {
 		return buf.toString();
 	}
 
+	/**
+	 * Returns the compiled script for the given source, compiling it if
+	 * necessary. Compilation happens outside of any global lock, and
+	 * concurrent requests for the same source wait for a single compile
+	 * run instead of compiling the script themselves.
+	 *
+	 * @param context
+	 * @param source
+	 * @param sourceName
+	 * @param lineNo
+	 *
+	 * @return the compiled script
+	 */
 	public static Script compileOrGetCached(final Context context, final String source, final String sourceName, final int lineNo) {
 
-		synchronized (compiledScripts) {
+		final Script cached = compiledScripts.get(source);
+		if (cached != null) {
+
+			return cached;
+		}
+
+		final CompletableFuture<Script> future = new CompletableFuture<>();
+		final CompletableFuture<Script> other  = pendingScripts.putIfAbsent(source, future);
+
+		if (other != null) {
+
+			try {
+
+				return other.join();
 
-			Script script = compiledScripts.get(source);
-			if (script == null) {
+			} catch (CompletionException cex) {
 
-				script = context.compileString(source, sourceName, lineNo, null);
-				compiledScripts.put(source, script);
+				final Throwable cause = cex.getCause();
+				if (cause instanceof RuntimeException) {
+
+					throw (RuntimeException)cause;
+				}
+
+				throw cex;
 			}
+		}
+
+		try {
+
+			final long t0       = System.nanoTime();
+			final Script script = context.compileString(source, sourceName, lineNo, null);
+
+			recordCompileTime(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0));
+
+			compiledScripts.put(source, script);
+			future.complete(script);
 
 			return script;
+
+		} catch (RuntimeException rex) {
+
+			future.completeExceptionally(rex);
+			throw rex;
+
+		} finally {
+
+			pendingScripts.remove(source);
 		}
 	}
 
+	/**
+	 * Compiles the given expression and stores the result in the script
+	 * caches so the first evaluation does not have to. JavaScript sources
+	 * end up in the compiled script cache, StructrScript expressions in
+	 * the expression cache. Sources that cannot be compiled are ignored,
+	 * the error will be reported when the expression is evaluated.
+	 *
+	 * @param expression
+	 * @param methodName
+	 */
+	public static void precompile(final String expression, final String methodName) {
+
+		final String trimmed = expression.trim();
+
+		if (trimmed.startsWith("${{") && trimmed.endsWith("}}")) {
+
+			final String source            = embedInFunction(null, trimmed.substring(3, trimmed.length() - 2));
+			final Context scriptingContext = Scripting.setupJavascriptContext();
+
+			try {
+
+				// use the same settings as evaluateJavascript
+				scriptingContext.setLanguageVersion(Context.VERSION_1_2);
+				scriptingContext.setOptimizationLevel(9);
+				scriptingContext.setInstructionObserverThreshold(0);
+				scriptingContext.setGenerateObserverCount(false);
+				scriptingContext.setGeneratingDebug(true);
+
+				compileOrGetCached(scriptingContext, source, methodName + ", line ", 1);
+
+			} catch (Throwable t) {
+
+				logger.debug("Unable to precompile script {}: {}", methodName, t.getMessage());
+
+			} finally {
+
+				Scripting.destroyJavascriptContext();
+			}
+
+		} else if (trimmed.startsWith("${") && trimmed.endsWith("}") && !ScriptEngineExpression.matcher(trimmed).matches()) {
+
+			try {
+
+				Functions.parse(trimmed.substring(2, trimmed.length() - 1));
+
+			} catch (Throwable t) {
+
+				logger.debug("Unable to precompile expression {}: {}", methodName, t.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Returns hit and miss counts of the compiled script cache as well as
+	 * a histogram of the time spent compiling scripts.
+	 *
+	 * @return the statistics
+	 */
+	public static Map<String, Object> getCacheStatistics() {
+
+		final Map<String, Object> statistics = new LinkedHashMap<>();
+		final Map<String, Object> histogram  = new LinkedHashMap<>();
+
+		for (int i=0; i<compileTimeLimits.length; i++) {
+			histogram.put("< " + compileTimeLimits[i] + " ms", compileTimes[i].sum());
+		}
+
+		histogram.put(">= " + compileTimeLimits[compileTimeLimits.length - 1] + " ms", compileTimes[compileTimeLimits.length].sum());
+
+		statistics.put("size",         compiledScripts.size());
+		statistics.put("hits",         compiledScripts.getHitCount());
+		statistics.put("misses",       compiledScripts.getMissCount());
+		statistics.put("evictions",    compiledScripts.getEvictionCount());
+		statistics.put("compileTimes", histogram);
+
+		return statistics;
+	}
+
 	// this is only public to be testable :(
 	public static List<String> extractScripts(final String source) {
 
@@ -476,6 +633,20 @@ public class Scripting {
 		}
 	}
 
+	private static void recordCompileTime(final long millis) {
+
+		for (int i=0; i<compileTimeLimits.length; i++) {
+
+			if (millis < compileTimeLimits[i]) {
+
+				compileTimes[i].increment();
+				return;
+			}
+		}
+
+		compileTimes[compileTimeLimits.length].increment();
+	}
+
 	// ----- nested classes -----
 	private static class Tuple {
 
@@ -49,6 +49,7 @@ import org.structr.core.app.StructrApp;
 import org.structr.core.converter.PropertyConverter;
 import org.structr.core.function.Functions;
 import org.structr.core.function.GrantFunction;
+import org.structr.core.parser.ValueCache;
 import org.structr.core.property.EnumProperty;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
@@ -223,6 +224,40 @@ public class StructrScriptable extends ScriptableObject {
 
 		}
 
+		if ("cache".equals(name)) {
+
+			return new IdFunctionObject(new IdFunctionCall() {
+
+				@Override
+				public Object execIdCall(final IdFunctionObject info, final Context context, final Scriptable scope, final Scriptable thisObject, final Object[] parameters) {
+
+					if (parameters.length == 3 && parameters[0] != null && parameters[1] instanceof Number && parameters[2] instanceof org.mozilla.javascript.Function) {
+
+						final org.mozilla.javascript.Function valueFunction = (org.mozilla.javascript.Function)parameters[2];
+						final String key                                    = parameters[0].toString();
+						final long timeout                                  = ((Number)parameters[1]).longValue();
+
+						try {
+
+							// same cache as the cache() function, but never refreshed asynchronously
+							// because the Javascript context is bound to the current thread
+							return ValueCache.get(key, timeout, () -> unwrap(valueFunction.call(context, scope, thisObject, new Object[0])), null);
+
+						} catch (FrameworkException fex) {
+							exception = fex;
+						}
+
+					} else {
+
+						logger.warn("Incorrect usage of cache function. Usage: Structr.cache(key, timeout, function)");
+					}
+
+					return null;
+				}
+
+			}, null, 0, 0);
+		}
+
 		if ("batch".equals(name)) {
 
 			return new IdFunctionObject(new BatchFunctionCall(actionContext, this), null, 0, 0);
@@ -35,6 +35,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
 import org.structr.api.service.Command;
 import org.structr.api.service.InitializationCallback;
 import org.structr.api.service.Service;
@@ -47,12 +48,15 @@ import org.structr.core.Services;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.SchemaMethod;
 import org.structr.core.entity.SchemaNode;
+import org.structr.core.entity.SchemaProperty;
 import org.structr.core.entity.SchemaRelationshipNode;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.graph.Tx;
 import org.structr.core.graph.search.SearchCommand;
 import org.structr.core.property.PropertyKey;
+import org.structr.core.script.Scripting;
 import org.structr.schema.compiler.NodeExtender;
 
 /**
@@ -193,6 +197,11 @@ public class SchemaService implements Service {
 							updateIndexConfiguration(removedClasses);
 						}
 
+						if (Settings.ScriptPrecompilation.getValue()) {
+
+							precompileScripts();
+						}
+
 						tx.success();
 					}
 
@@ -298,6 +307,34 @@ public class SchemaService implements Service {
 		}
 	}
 
+	private static void precompileScripts() throws FrameworkException {
+
+		final App app = StructrApp.getInstance();
+
+		for (final SchemaMethod method : app.nodeQuery(SchemaMethod.class).getAsList()) {
+
+			final String source = method.getProperty(SchemaMethod.source);
+			if (source != null && !Boolean.TRUE.equals(method.getProperty(SchemaMethod.isJava))) {
+
+				Scripting.precompile(Scripting.getExpression(source), method.getName());
+			}
+		}
+
+		for (final SchemaProperty property : app.nodeQuery(SchemaProperty.class).getAsList()) {
+
+			final String readFunction  = property.getProperty(SchemaProperty.readFunction);
+			final String writeFunction = property.getProperty(SchemaProperty.writeFunction);
+
+			if (readFunction != null) {
+				Scripting.precompile(Scripting.getExpression(readFunction), "getProperty(" + property.getName() + ")");
+			}
+
+			if (writeFunction != null) {
+				Scripting.precompile(Scripting.getExpression(writeFunction), "setProperty(" + property.getName() + ")");
+			}
+		}
+	}
+
 	private static int recursiveGetHierarchyLevel(final Map<String, SchemaNode> map, final Set<String> alreadyCalculated, final SchemaNode schemaNode, final int depth) {
 
 		// stop at level 20
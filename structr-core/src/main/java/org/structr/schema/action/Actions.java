@@ -154,7 +154,7 @@ public class Actions {
 					final String source = method.getProperty(SchemaMethod.source);
 					if (source != null) {
 
-						return Actions.execute(securityContext, null, "${" + source + "}", parameters, method.getName());
+						return Actions.execute(securityContext, null, Scripting.getExpression(source), parameters, method.getName());
 
 					} else {
 
@@ -20,19 +20,23 @@ package org.structr.schema.compiler;
 
 import java.io.IOException;
 import java.security.SecureClassLoader;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.tools.FileObject;
 import javax.tools.ForwardingJavaFileManager;
 import javax.tools.JavaFileObject;
 import javax.tools.JavaFileObject.Kind;
 import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
 
 /**
  *
  *
  */
-public class ClassFileManager extends ForwardingJavaFileManager {
+public class ClassFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
 
 	/**
 	 * Instance of JavaClassObject that will store the compiled byte code of
@@ -40,6 +44,18 @@ public class ClassFileManager extends ForwardingJavaFileManager {
 	 */
 	private final Map<String, JavaClassObject> objects = new LinkedHashMap<>();
 
+	/**
+	 * Classes that were loaded from the cache in the current compilation
+	 * run. They are provided to the compiler on the class path so that
+	 * the sources that are compiled can reference them.
+	 */
+	private final Map<String, JavaClassObject> precompiled = new LinkedHashMap<>();
+
+	/**
+	 * Classes that were compiled in the current compilation run.
+	 */
+	private final Map<String, JavaClassObject> compiled = new LinkedHashMap<>();
+
 	/**
 	 * Will initialize the manager with the specified standard java file
 	 * manager
@@ -92,9 +108,109 @@ public class ClassFileManager extends ForwardingJavaFileManager {
 	public JavaFileObject getJavaFileForOutput(final Location location, final String className, final Kind kind, final FileObject sibling) throws IOException {
 		
 		JavaClassObject obj = new JavaClassObject(className, kind);
-		
+
+		if (sibling instanceof CharSequenceJavaFileObject) {
+			obj.setSourceClassName(((CharSequenceJavaFileObject)sibling).getClassName());
+		}
+
 		objects.put(className, obj);
-		
+		compiled.put(className, obj);
+
 		return obj;
 	}
+
+	/**
+	 * Adds the cached precompiled classes to the class path of the compiler.
+	 *
+	 * @param location
+	 * @param packageName
+	 * @param kinds
+	 * @param recurse
+	 * @return the file objects in the given package
+	 * @throws IOException
+	 */
+	@Override
+	public Iterable<JavaFileObject> list(final Location location, final String packageName, final Set<Kind> kinds, final boolean recurse) throws IOException {
+
+		final Iterable<JavaFileObject> files = super.list(location, packageName, kinds, recurse);
+
+		if (StandardLocation.CLASS_PATH.equals(location) && kinds.contains(Kind.CLASS) && !precompiled.isEmpty()) {
+
+			final List<JavaFileObject> result = new ArrayList<>();
+
+			for (final JavaClassObject obj : precompiled.values()) {
+
+				final String objPackage = obj.getPackageName();
+
+				if (objPackage.equals(packageName) || (recurse && objPackage.startsWith(packageName + "."))) {
+					result.add(obj);
+				}
+			}
+
+			if (!result.isEmpty()) {
+
+				for (final JavaFileObject file : files) {
+					result.add(file);
+				}
+
+				return result;
+			}
+		}
+
+		return files;
+	}
+
+	@Override
+	public String inferBinaryName(final Location location, final JavaFileObject file) {
+
+		if (file instanceof JavaClassObject) {
+			return ((JavaClassObject)file).getBinaryName();
+		}
+
+		return super.inferBinaryName(location, file);
+	}
+
+	/**
+	 * Starts a new compilation run.
+	 */
+	public void reset() {
+
+		precompiled.clear();
+		compiled.clear();
+	}
+
+	/**
+	 * Registers the byte code of a class that does not need to be compiled.
+	 *
+	 * @param className the full name of the class
+	 * @param bytes the byte code
+	 */
+	public void addPrecompiledClass(final String className, final byte[] bytes) {
+
+		final JavaClassObject obj = new JavaClassObject(className, bytes);
+
+		objects.put(className, obj);
+		precompiled.put(className, obj);
+	}
+
+	/**
+	 * Returns the byte code of all classes that were compiled from the
+	 * source with the given name in the current compilation run.
+	 *
+	 * @param sourceClassName
+	 * @return a map of full class names to byte code
+	 */
+	public Map<String, byte[]> getCompiledClasses(final String sourceClassName) {
+
+		final Map<String, byte[]> result = new LinkedHashMap<>();
+
+		for (final JavaClassObject obj : compiled.values()) {
+
+			if (sourceClassName.equals(obj.getSourceClassName())) {
+				result.put(obj.getBinaryName(), obj.getBytes());
+			}
+		}
+
+		return result;
+	}
 }
\ No newline at end of file
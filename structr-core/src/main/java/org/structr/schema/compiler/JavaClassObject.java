@@ -18,8 +18,10 @@
  */
 package org.structr.schema.compiler;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import javax.tools.SimpleJavaFileObject;
@@ -38,6 +40,9 @@ public class JavaClassObject extends SimpleJavaFileObject {
 	protected final ByteArrayOutputStream bos =
 		new ByteArrayOutputStream();
 
+	private String binaryName      = null;
+	private String sourceClassName = null;
+
 	/**
 	 * Registers the compiled class object under URI containing the class
 	 * full name
@@ -48,6 +53,51 @@ public class JavaClassObject extends SimpleJavaFileObject {
 	public JavaClassObject(String name, Kind kind) {
 		super(URI.create("string:///" + name.replace('.', '/')
 			+ kind.extension), kind);
+
+		this.binaryName = name;
+	}
+
+	/**
+	 * Registers a class object with existing byte code, e.g. from the
+	 * schema class cache.
+	 *
+	 * @param name Full name of the class
+	 * @param bytes byte code of the class
+	 */
+	public JavaClassObject(final String name, final byte[] bytes) {
+
+		this(name, Kind.CLASS);
+
+		bos.write(bytes, 0, bytes.length);
+	}
+
+	public String getBinaryName() {
+		return binaryName;
+	}
+
+	public String getPackageName() {
+
+		final int pos = binaryName.lastIndexOf('.');
+		if (pos >= 0) {
+
+			return binaryName.substring(0, pos);
+		}
+
+		return "";
+	}
+
+	/**
+	 * Returns the name of the source file this class was compiled from,
+	 * or null if the class was not compiled in this run.
+	 *
+	 * @return the simple class name of the source
+	 */
+	public String getSourceClassName() {
+		return sourceClassName;
+	}
+
+	public void setSourceClassName(final String sourceClassName) {
+		this.sourceClassName = sourceClassName;
 	}
 
 	/**
@@ -69,4 +119,13 @@ public class JavaClassObject extends SimpleJavaFileObject {
 	public OutputStream openOutputStream() throws IOException {
 		return bos;
 	}
+
+	/**
+	 * Will provide the compiler with the byte code of a class that was
+	 * loaded from the cache and is not compiled again.
+	 */
+	@Override
+	public InputStream openInputStream() throws IOException {
+		return new ByteArrayInputStream(getBytes());
+	}
 }
\ No newline at end of file
@@ -27,6 +27,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.stream.Collectors;
@@ -60,13 +61,15 @@ public class NodeExtender {
 	private static final ClassLoader classLoader     = fileManager.getClassLoader(null);
 	private static final Map<String, Class> classes  = new TreeMap<>();
 
-	private List<JavaFileObject> jfiles  = null;
-	private Set<String> fqcns            = null;
-	private String initiatedBySessionId  = null;
+	private List<CharSequenceJavaFileObject> jfiles = null;
+	private Map<String, String> sources             = null;
+	private Set<String> fqcns                       = null;
+	private String initiatedBySessionId             = null;
 
 	public NodeExtender() {
 
 		jfiles      = new ArrayList<>();
+		sources     = new LinkedHashMap<>();
 		fqcns       = new LinkedHashSet<>();
 	}
 
@@ -89,6 +92,7 @@ public class NodeExtender {
 			final String packageName = JarConfigurationProvider.DYNAMIC_TYPES_PACKAGE;
 
 			jfiles.add(new CharSequenceJavaFileObject(className, content));
+			sources.put(className, content);
 			fqcns.add(packageName.concat(".".concat(className)));
 
 			if (Settings.LogSchemaOutput.getValue()) {
@@ -106,9 +110,45 @@ public class NodeExtender {
 
 		if (!jfiles.isEmpty()) {
 
-			logger.debug("Compiling {} dynamic entities...", jfiles.size());
+			final ClassFileManager classFileManager = (ClassFileManager)fileManager;
+			final SchemaClassCache cache            = Settings.SchemaCacheEnabled.getValue() ? new SchemaClassCache(sources) : null;
+			final List<JavaFileObject> toCompile    = new ArrayList<>();
+			Boolean success                         = true;
 
-			Boolean success = compiler.getTask(errorWriter, fileManager, new Listener(errorBuffer), null, null, jfiles).call();
+			classFileManager.reset();
+
+			// load unchanged classes from the cache
+			for (final CharSequenceJavaFileObject jfile : jfiles) {
+
+				final Map<String, byte[]> cached = cache != null ? cache.load(jfile.getClassName()) : null;
+				if (cached != null) {
+
+					for (final Entry<String, byte[]> entry : cached.entrySet()) {
+						classFileManager.addPrecompiledClass(entry.getKey(), entry.getValue());
+					}
+
+				} else {
+
+					toCompile.add(jfile);
+				}
+			}
+
+			if (!toCompile.isEmpty()) {
+
+				logger.debug("Compiling {} of {} dynamic entities...", toCompile.size(), jfiles.size());
+
+				success = compiler.getTask(errorWriter, fileManager, new Listener(errorBuffer), null, null, toCompile).call();
+
+				if (success && cache != null) {
+
+					for (final JavaFileObject jfile : toCompile) {
+
+						final String className = ((CharSequenceJavaFileObject)jfile).getClassName();
+
+						cache.store(className, classFileManager.getCompiledClasses(className));
+					}
+				}
+			}
 
 			if (success) {
 
@@ -143,7 +183,11 @@ public class NodeExtender {
 						classes.put(newType.getName(), newType);
 					}
 
-					logger.info("Successfully compiled {} dynamic entities: {}", new Object[] { jfiles.size(), jfiles.stream().map(f -> f.getName().replaceFirst("/", "")).collect(Collectors.joining(", ")) });
+					logger.info("Successfully compiled {} dynamic entities, {} loaded from cache: {}", new Object[] { toCompile.size(), jfiles.size() - toCompile.size(), toCompile.stream().map(f -> f.getName().replaceFirst("/", "")).collect(Collectors.joining(", ")) });
+
+					if (cache != null) {
+						cache.removeStaleEntries();
+					}
 
 					final Map<String, Object> data = new LinkedHashMap();
 					data.put("success", true);
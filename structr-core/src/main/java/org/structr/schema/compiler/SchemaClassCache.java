@@ -0,0 +1,323 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.schema.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+
+/**
+ * Content-addressed on-disk cache for the byte code of dynamic schema
+ * classes.
+ *
+ * Each compilation unit is stored under a key that is derived from its
+ * own source, the sources of all dynamic types it references directly
+ * or transitively, and a fingerprint of the JVM and the class path. A
+ * change to a type invalidates the entries of the type itself and of
+ * all types that depend on it, an update of Structr or of the JVM
+ * invalidates all entries.
+ *
+ *
+ */
+public class SchemaClassCache {
+
+	private static final Logger logger                 = LoggerFactory.getLogger(SchemaClassCache.class.getName());
+	private static final Pattern IdentifierPattern     = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*");
+	private static final Pattern EntryPattern          = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*-[0-9a-f]{64}(\\.classes|[0-9]*\\.tmp)");
+	private static final String FILE_SUFFIX            = ".classes";
+	private static final int FORMAT_VERSION            = 1;
+	private static String classPathFingerprint         = null;
+
+	private final Map<String, String> keys = new LinkedHashMap<>();
+	private Path directory                 = null;
+
+	/**
+	 * Creates a cache for the given set of compilation units.
+	 *
+	 * @param sources a map of simple class names to source code
+	 */
+	public SchemaClassCache(final Map<String, String> sources) {
+
+		this.directory = Paths.get(Settings.getFullSettingPath(Settings.SchemaCachePath));
+
+		calculateKeys(sources);
+	}
+
+	/**
+	 * Returns the cached byte code of the given compilation unit, or
+	 * null if the unit needs to be compiled.
+	 *
+	 * @param className the simple class name of the unit
+	 * @return a map of full class names to byte code, or null
+	 */
+	public Map<String, byte[]> load(final String className) {
+
+		final String key = keys.get(className);
+		if (key != null) {
+
+			final Path file = directory.resolve(key + FILE_SUFFIX);
+			if (Files.isRegularFile(file)) {
+
+				try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+
+					if (in.readInt() != FORMAT_VERSION) {
+						return null;
+					}
+
+					final Map<String, byte[]> classes = new LinkedHashMap<>();
+					final int count                   = in.readInt();
+
+					for (int i=0; i<count; i++) {
+
+						final String name  = in.readUTF();
+						final byte[] bytes = new byte[in.readInt()];
+
+						in.readFully(bytes);
+
+						classes.put(name, bytes);
+					}
+
+					return classes;
+
+				} catch (IOException ioex) {
+
+					logger.warn("Unable to read cached schema class {} from {}: {}", className, file, ioex.getMessage());
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Stores the byte code of the given compilation unit.
+	 *
+	 * @param className the simple class name of the unit
+	 * @param classes a map of full class names to byte code
+	 */
+	public void store(final String className, final Map<String, byte[]> classes) {
+
+		final String key = keys.get(className);
+		if (key != null && !classes.isEmpty()) {
+
+			try {
+
+				Files.createDirectories(directory);
+
+				// write to a temporary file first so that concurrent readers never see partial entries
+				final Path tmp  = Files.createTempFile(directory, key, ".tmp");
+				final Path file = directory.resolve(key + FILE_SUFFIX);
+
+				try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+
+					out.writeInt(FORMAT_VERSION);
+					out.writeInt(classes.size());
+
+					for (final Map.Entry<String, byte[]> entry : classes.entrySet()) {
+
+						final byte[] bytes = entry.getValue();
+
+						out.writeUTF(entry.getKey());
+						out.writeInt(bytes.length);
+						out.write(bytes);
+					}
+				}
+
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			} catch (IOException ioex) {
+
+				logger.warn("Unable to store schema class {} in cache: {}", className, ioex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Removes all entries that do not belong to the current schema. Only
+	 * files that were created by this cache are removed, everything else
+	 * in the cache directory is left untouched.
+	 */
+	public void removeStaleEntries() {
+
+		if (Files.isDirectory(directory)) {
+
+			final Set<String> current = new HashSet<>();
+
+			for (final String key : keys.values()) {
+				current.add(key + FILE_SUFFIX);
+			}
+
+			try (final DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+
+				for (final Path file : stream) {
+
+					final String name = file.getFileName().toString();
+
+					if (EntryPattern.matcher(name).matches() && !current.contains(name)) {
+
+						Files.deleteIfExists(file);
+					}
+				}
+
+			} catch (IOException ioex) {
+
+				logger.warn("Unable to remove stale entries from schema class cache: {}", ioex.getMessage());
+			}
+		}
+	}
+
+	// ----- private methods -----
+	private void calculateKeys(final Map<String, String> sources) {
+
+		final Map<String, Set<String>> dependencies = new LinkedHashMap<>();
+		final Map<String, String> sourceHashes      = new LinkedHashMap<>();
+
+		// collect the dynamic types that are referenced in each source
+		for (final Map.Entry<String, String> entry : sources.entrySet()) {
+
+			final Set<String> references = new HashSet<>();
+			final Matcher matcher        = IdentifierPattern.matcher(entry.getValue());
+
+			while (matcher.find()) {
+
+				final String identifier = matcher.group();
+
+				if (sources.containsKey(identifier) && !identifier.equals(entry.getKey())) {
+					references.add(identifier);
+				}
+			}
+
+			dependencies.put(entry.getKey(), references);
+			sourceHashes.put(entry.getKey(), DigestUtils.sha256Hex(entry.getValue()));
+		}
+
+		final String fingerprint = getClassPathFingerprint();
+
+		for (final String className : sources.keySet()) {
+
+			// the key of a unit covers the sources of all units it depends on
+			final Set<String> closure    = new TreeSet<>();
+			final Deque<String> queue    = new ArrayDeque<>();
+			final StringBuilder keyInput = new StringBuilder(fingerprint);
+
+			queue.add(className);
+
+			while (!queue.isEmpty()) {
+
+				final String current = queue.poll();
+
+				if (closure.add(current)) {
+					queue.addAll(dependencies.get(current));
+				}
+			}
+
+			for (final String dependency : closure) {
+				keyInput.append(":").append(dependency).append("=").append(sourceHashes.get(dependency));
+			}
+
+			keys.put(className, className + "-" + DigestUtils.sha256Hex(keyInput.toString()));
+		}
+	}
+
+	private static synchronized String getClassPathFingerprint() {
+
+		if (classPathFingerprint == null) {
+
+			final MessageDigest digest = DigestUtils.getSha256Digest();
+
+			DigestUtils.updateDigest(digest, System.getProperty("java.version"));
+
+			// hash the contents of the class path, size and modification time are not reliable enough
+			// (e.g. for jars that are re-extracted on deployment, or for classes that are rebuilt)
+			for (final String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+
+				final Path path = Paths.get(entry);
+
+				DigestUtils.updateDigest(digest, entry);
+
+				try {
+
+					if (Files.isDirectory(path)) {
+
+						final List<Path> files = new ArrayList<>();
+
+						try (final Stream<Path> stream = Files.walk(path)) {
+							stream.filter(Files::isRegularFile).forEach(files::add);
+						}
+
+						Collections.sort(files);
+
+						for (final Path file : files) {
+
+							DigestUtils.updateDigest(digest, path.relativize(file).toString());
+							updateDigest(digest, file);
+						}
+
+					} else if (Files.isRegularFile(path)) {
+
+						updateDigest(digest, path);
+					}
+
+				} catch (IOException ioex) {
+
+					logger.warn("Unable to read class path entry {}: {}", entry, ioex.getMessage());
+				}
+			}
+
+			classPathFingerprint = Hex.encodeHexString(digest.digest());
+		}
+
+		return classPathFingerprint;
+	}
+
+	private static void updateDigest(final MessageDigest digest, final Path file) throws IOException {
+
+		try (final InputStream in = Files.newInputStream(file)) {
+			DigestUtils.updateDigest(digest, in);
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.agent;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ *
+ */
+public class TaskJournalTest {
+
+	@Test
+	public void testRestartReplaysPendingTasks() throws IOException {
+
+		final Path file = Paths.get("/tmp/" + System.nanoTime() + "/tasks.journal");
+
+		final TaskJournal journal = new TaskJournal(file);
+
+		assertEquals("Invalid test prerequisite", 0, journal.open().size());
+
+		journal.added(1L, new TestTask("one"));
+		journal.added(2L, new TestTask("two"));
+		journal.added(3L, new TestTask("three"));
+		journal.done(2L);
+		journal.close();
+
+		// simulate a crash in the middle of writing an entry
+		try (final OutputStream out = Files.newOutputStream(file, StandardOpenOption.APPEND)) {
+			out.write(new byte[] { 'A', 0, 0, 0 });
+		}
+
+		final TaskJournal restarted = new TaskJournal(file);
+		final List<TaskJournal.Entry> entries = restarted.open();
+
+		assertEquals("Invalid number of pending tasks after restart", 2, entries.size());
+		assertEquals("Invalid pending task after restart", 1L, entries.get(0).getSequence());
+		assertEquals("Invalid pending task after restart", "one", entries.get(0).getState());
+		assertEquals("Invalid pending task after restart", TestTask.class.getName(), entries.get(0).getClassName());
+		assertEquals("Invalid pending task after restart", 3L, entries.get(1).getSequence());
+		assertEquals("Invalid pending task after restart", "three", entries.get(1).getState());
+		assertEquals("Invalid maximum sequence after restart", 3L, restarted.getMaxSequence());
+
+		// the journal must be usable after the incomplete entry was dropped
+		restarted.done(1L);
+		restarted.added(4L, new TestTask("four"));
+		restarted.close();
+
+		final List<TaskJournal.Entry> replayed = new TaskJournal(file).open();
+
+		assertEquals("Invalid number of pending tasks after second restart", 2, replayed.size());
+		assertEquals("Invalid pending task after second restart", 3L, replayed.get(0).getSequence());
+		assertEquals("Invalid pending task after second restart", 4L, replayed.get(1).getSequence());
+	}
+
+	@Test
+	public void testCompaction() throws IOException {
+
+		final Path file = Paths.get("/tmp/" + System.nanoTime() + "/tasks.journal");
+
+		final TaskJournal journal = new TaskJournal(file);
+		journal.open();
+
+		for (long i=1; i<=5001; i++) {
+
+			journal.added(i, new TestTask("task" + i));
+			journal.done(i);
+		}
+
+		// the journal is truncated when it runs empty after more than 10000 records
+		assertEquals("Task journal was not compacted", 0L, Files.size(file));
+
+		journal.added(5002L, new TestTask("last"));
+		journal.close();
+
+		final TaskJournal restarted = new TaskJournal(file);
+		final List<TaskJournal.Entry> entries = restarted.open();
+
+		assertEquals("Invalid number of pending tasks after compaction", 1, entries.size());
+		assertEquals("Invalid pending task after compaction", "last", entries.get(0).getState());
+		assertEquals("Invalid maximum sequence after compaction", 5002L, restarted.getMaxSequence());
+		assertEquals("Task journal was not rewritten on startup", 1 + 8 + 4 + 2 + TestTask.class.getName().length() + 2 + 4L, Files.size(file));
+	}
+
+	@Test
+	public void testCompactionWithPendingTasks() throws IOException {
+
+		final Path file = Paths.get("/tmp/" + System.nanoTime() + "/tasks.journal");
+
+		final TaskJournal journal = new TaskJournal(file);
+		journal.open();
+
+		// long-running tasks that stay pending
+		for (long i=1; i<=10; i++) {
+			journal.added(i, new TestTask("pending" + i));
+		}
+
+		for (long i=11; i<=6000; i++) {
+
+			journal.added(i, new TestTask("task" + i));
+			journal.done(i);
+		}
+
+		final long entrySize = 1 + 8 + 4 + 2 + TestTask.class.getName().length() + 2;
+
+		// the journal is rewritten when finished tasks dominate, not only when it runs empty
+		assertTrue("Task journal was not compacted", Files.size(file) < 2000 * entrySize);
+
+		journal.close();
+
+		final List<TaskJournal.Entry> entries = new TaskJournal(file).open();
+
+		assertEquals("Invalid number of pending tasks after compaction", 10, entries.size());
+		assertEquals("Invalid pending task after compaction", "pending1", entries.get(0).getState());
+		assertEquals("Invalid pending task after compaction", 10L, entries.get(9).getSequence());
+	}
+
+	// ----- nested classes -----
+	public static class TestTask extends AbstractTask<String> implements PersistentTask<String> {
+
+		private String state = null;
+
+		public TestTask(final String state) {
+
+			super("TestTask", null);
+
+			this.state = state;
+		}
+
+		@Override
+		public String getPersistentState() {
+			return state;
+		}
+	}
+}
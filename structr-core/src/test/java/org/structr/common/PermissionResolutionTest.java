@@ -26,11 +26,16 @@ import org.slf4j.LoggerFactory;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.Group;
 import org.structr.core.entity.ResourceAccess;
 import org.structr.core.entity.SchemaNode;
 import org.structr.core.entity.SchemaRelationshipNode;
 import org.structr.core.entity.SchemaRelationshipNode.Direction;
 import org.structr.core.entity.SchemaRelationshipNode.Propagation;
+import org.structr.core.entity.TenTenOneToOne;
+import org.structr.core.entity.TestOne;
+import org.structr.core.entity.TestTen;
 import org.structr.core.entity.TestUser;
 import org.structr.core.graph.NodeAttribute;
 import org.structr.core.graph.NodeInterface;
@@ -238,7 +243,318 @@ public class PermissionResolutionTest extends StructrTest {
 		}
 	}
 
+	@Test
+	public void test02PermissionResolutionCacheInvalidation() {
+
+		TestUser user1 = null;
+		Group group    = null;
+		TestOne test   = null;
+
+		try (final Tx tx = app.tx()) {
+
+			user1 = app.create(TestUser.class, "user1");
+			group = app.create(Group.class, "group");
+			test  = app.create(TestOne.class, "test");
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		final App userApp = StructrApp.getInstance(SecurityContext.getInstance(user1, AccessMode.Backend));
+
+		// populate the cache with a negative result
+		assertVisibility(userApp, "User1 should NOT be able to see the test object", false);
+
+		try (final Tx tx = app.tx()) {
+
+			test.grant(Permission.read, user1);
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		assertVisibility(userApp, "User1 should be able to see the test object after grant", true);
+
+		try (final Tx tx = app.tx()) {
+
+			test.revoke(Permission.read, user1);
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		assertVisibility(userApp, "User1 should NOT be able to see the test object after revoke", false);
+
+		try (final Tx tx = app.tx()) {
+
+			test.grant(Permission.read, group);
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		assertVisibility(userApp, "User1 should NOT be able to see the test object without group membership", false);
+
+		try (final Tx tx = app.tx()) {
+
+			group.addMember(user1);
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		assertVisibility(userApp, "User1 should be able to see the test object after joining the group", true);
+
+		try (final Tx tx = app.tx()) {
+
+			group.removeMember(user1);
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		assertVisibility(userApp, "User1 should NOT be able to see the test object after leaving the group", false);
+
+		try (final Tx tx = app.tx()) {
+
+			test.setProperty(AbstractNode.visibleToAuthenticatedUsers, true);
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		assertVisibility(userApp, "User1 should be able to see the test object after it was made visible", true);
+	}
+
+	@Test
+	public void test03PermissionPropagationCacheInvalidation() {
+
+		PropertyKey key  = null;
+		TestUser user1   = null;
+		Class type1      = null;
+		Class type2      = null;
+		NodeInterface i1 = null;
+		NodeInterface i2 = null;
+		NodeInterface i4 = null;
+
+		try (final Tx tx = app.tx()) {
+
+			user1 = app.create(TestUser.class, "user1");
+
+			final SchemaNode t1 = app.create(SchemaNode.class, "Type1");
+			final SchemaNode t2 = app.create(SchemaNode.class, "Type2");
+
+			app.create(SchemaRelationshipNode.class,
+				new NodeAttribute<>(SchemaRelationshipNode.sourceNode, t1),
+				new NodeAttribute<>(SchemaRelationshipNode.targetNode, t2),
+				new NodeAttribute<>(SchemaRelationshipNode.relationshipType, "RELATED"),
+				new NodeAttribute<>(SchemaRelationshipNode.sourceMultiplicity, "1"),
+				new NodeAttribute<>(SchemaRelationshipNode.targetMultiplicity, "1"),
+				new NodeAttribute<>(SchemaRelationshipNode.sourceJsonName, "source"),
+				new NodeAttribute<>(SchemaRelationshipNode.targetJsonName, "target"),
+				new NodeAttribute<>(SchemaRelationshipNode.permissionPropagation, Direction.Out),
+				new NodeAttribute<>(SchemaRelationshipNode.readPropagation, Propagation.Add)
+			);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			type1 = StructrApp.getConfiguration().getNodeEntityClass("Type1");
+			type2 = StructrApp.getConfiguration().getNodeEntityClass("Type2");
+			key   = StructrApp.getConfiguration().getPropertyKeyForJSONName(type1, "target");
+			i1    = app.create(type1, "instance1OfType1");
+			i2    = app.create(type2, "instance1OfType2");
+
+			final NodeInterface i3 = app.create(type1, "instance2OfType1");
+			i4                     = app.create(type2, "instance2OfType2");
+
+			i1.grant(Permission.read, user1);
+			i3.grant(Permission.read, user1);
+
+			// an unrelated pair of nodes whose results are cached as well
+			i3.setProperty(key, i4);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		final App userApp = StructrApp.getInstance(SecurityContext.getInstance(user1, AccessMode.Backend));
+
+		// populate the cache
+		assertVisibility(userApp, type2, "instance2OfType2", "User1 should be able to see the connected instance", true);
+		assertVisibility(userApp, type2, "instance1OfType2", "User1 should NOT be able to see the unconnected instance", false);
+
+		Assert.assertEquals("Result of permission propagation should be cached", Boolean.TRUE, PermissionResolutionCache.get(i4.getId(), user1.getId(), Permission.read));
+
+		try (final Tx tx = app.tx()) {
+
+			i1.setProperty(key, i2);
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		assertVisibility(userApp, type2, "instance1OfType2", "User1 should be able to see the connected instance", true);
+		Assert.assertEquals("Results of unrelated nodes should stay cached", Boolean.TRUE, PermissionResolutionCache.get(i4.getId(), user1.getId(), Permission.read));
+
+		try (final Tx tx = app.tx()) {
+
+			i1.setProperty(key, null);
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		assertVisibility(userApp, type2, "instance1OfType2", "User1 should NOT be able to see the disconnected instance", false);
+		Assert.assertEquals("Results of unrelated nodes should stay cached", Boolean.TRUE, PermissionResolutionCache.get(i4.getId(), user1.getId(), Permission.read));
+	}
+
+	@Test
+	public void test04AccessPathCacheInvalidation() {
+
+		try (final Tx tx = app.tx()) {
+
+			final TestTen a                      = app.create(TestTen.class, "a");
+			final TestTen b                      = app.create(TestTen.class, "b");
+			final TestTen c                      = app.create(TestTen.class, "c");
+			final TenTenOneToOne rel             = app.create(a, b, TenTenOneToOne.class);
+			final PermissionResolutionMask mask1 = new PermissionResolutionMask();
+			final PermissionResolutionMask mask2 = new PermissionResolutionMask();
+
+			AccessPathCache.invalidate();
+
+			long generation = AccessPathCache.getGeneration();
+
+			// path from a to b via rel, from a to c via b, and from b to c
+			AccessPathCache.put(a, b, mask1, generation);
+			AccessPathCache.update(a, b, rel.getRelationship(), generation);
+			AccessPathCache.put(a, c, mask1, generation);
+			AccessPathCache.update(a, c, b.getNode(), generation);
+			AccessPathCache.put(b, c, mask1, generation);
+
+			Assert.assertEquals("Invalid access path cache size", 3, AccessPathCache.size());
+			Assert.assertSame("Invalid access path cache entry", mask1, AccessPathCache.get(a, b));
+			Assert.assertNull("Invalid access path cache entry", AccessPathCache.get(b, a));
+
+			// storing a path again replaces the mask of the existing entry
+			AccessPathCache.put(a, b, mask2, generation);
+
+			Assert.assertEquals("Invalid access path cache size", 3, AccessPathCache.size());
+			Assert.assertSame("Invalid access path cache entry", mask2, AccessPathCache.get(a, b));
+
+			// a change of c invalidates all paths that end in c
+			AccessPathCache.invalidateForId(c.getUuid());
+
+			Assert.assertSame("Unrelated access path should stay cached", mask2, AccessPathCache.get(a, b));
+			Assert.assertNull("Access path should have been invalidated", AccessPathCache.get(a, c));
+			Assert.assertNull("Access path should have been invalidated", AccessPathCache.get(b, c));
+
+			// a path that was resolved before the invalidation is not stored
+			AccessPathCache.put(b, c, mask1, generation);
+
+			Assert.assertNull("Stale access path should not be cached", AccessPathCache.get(b, c));
+
+			generation = AccessPathCache.getGeneration();
+
+			AccessPathCache.put(a, c, mask1, generation);
+			AccessPathCache.update(a, c, b.getNode(), generation);
+
+			// a change of a relationship type invalidates all paths that contain it
+			AccessPathCache.invalidateForRelType(rel.getRelType().name());
+
+			Assert.assertNull("Access path should have been invalidated", AccessPathCache.get(a, b));
+			Assert.assertSame("Unrelated access path should stay cached", mask1, AccessPathCache.get(a, c));
+
+			// a change of an intermediate node invalidates the path
+			AccessPathCache.invalidateForId(b.getUuid());
+
+			Assert.assertNull("Access path should have been invalidated", AccessPathCache.get(a, c));
+			Assert.assertEquals("Invalid access path cache size", 0, AccessPathCache.size());
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	@Test
+	public void test05PermissionResolutionCacheGeneration() {
+
+		final long nodeId      = Long.MAX_VALUE - 1;
+		final long principalId = Long.MAX_VALUE - 2;
+
+		// a result that was resolved before an invalidation must not be stored
+		final long staleGeneration = PermissionResolutionCache.getGeneration();
+
+		PermissionResolutionCache.invalidateNode(nodeId);
+		PermissionResolutionCache.put(nodeId, principalId, Permission.read, true, staleGeneration);
+
+		Assert.assertNull("Result of a stale generation should not be cached", PermissionResolutionCache.get(nodeId, principalId, Permission.read));
+
+		PermissionResolutionCache.put(nodeId, principalId, Permission.read, true, PermissionResolutionCache.getGeneration());
+
+		Assert.assertEquals("Result of the current generation should be cached", Boolean.TRUE, PermissionResolutionCache.get(nodeId, principalId, Permission.read));
+	}
+
 	// ----- private methods -----
+	private void assertVisibility(final App userApp, final String message, final boolean visible) {
+
+		try (final Tx tx = userApp.tx()) {
+
+			Assert.assertEquals(message, visible, userApp.nodeQuery(TestOne.class).getFirst() != null);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	private void assertVisibility(final App userApp, final Class type, final String name, final String message, final boolean visible) {
+
+		try (final Tx tx = userApp.tx()) {
+
+			Assert.assertEquals(message, visible, userApp.nodeQuery(type).andName(name).getFirst() != null);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
 	public static void clearResourceAccess() {
 
 		final App app = StructrApp.getInstance();
@@ -18,7 +18,13 @@
  */
 package org.structr.common;
 
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
@@ -27,13 +33,18 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import org.apache.commons.lang3.StringUtils;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
 import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.GraphObjectMap;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
@@ -45,8 +56,11 @@ import org.structr.core.entity.TestFive;
 import org.structr.core.entity.TestOne;
 import org.structr.core.entity.TestSix;
 import org.structr.core.entity.TestUser;
+import org.structr.core.function.ChangelogFunction;
+import org.structr.core.graph.ChangelogStore;
 import org.structr.core.graph.NodeAttribute;
 import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.NodeServiceCommand;
 import org.structr.core.graph.Tx;
 import org.structr.core.property.IntProperty;
 import org.structr.core.property.StringProperty;
@@ -678,6 +692,192 @@ public class SystemTest extends StructrTest {
 		}
 	}
 
+	@Test
+	public void testChangelogStore() {
+
+		final boolean changelogEnabled = Settings.ChangelogEnabled.getValue();
+
+		Settings.ChangelogEnabled.setValue(true);
+		Settings.ChangelogFileStore.setValue(true);
+
+		try {
+
+			TestUser user = null;
+			TestOne test  = null;
+
+			try (final Tx tx = app.tx()) {
+
+				user = app.create(TestUser.class, "tester");
+				tx.success();
+			}
+
+			final SecurityContext userContext = SecurityContext.getInstance(user, AccessMode.Backend);
+			final App userApp                 = StructrApp.getInstance(userContext);
+
+			try (final Tx tx = userApp.tx()) {
+
+				test = userApp.create(TestOne.class, "test");
+				tx.success();
+			}
+
+			try (final Tx tx = userApp.tx()) {
+
+				test.setProperty(TestOne.aString, "first");
+				tx.success();
+			}
+
+			try (final Tx tx = userApp.tx()) {
+
+				test.setProperty(TestOne.aString, "second");
+				tx.success();
+			}
+
+			try (final Tx tx = userApp.tx()) {
+
+				final List changes = (List)new ChangelogFunction().apply(new ActionContext(userContext), test, new Object[] { test, false, "key", "aString" });
+
+				assertEquals("Changelog should contain two changes of aString", 2, changes.size());
+				assertEquals("Invalid changelog value", "\"first\"",  ((GraphObjectMap)changes.get(0)).getProperty(new StringProperty("val")));
+				assertEquals("Invalid changelog value", "\"second\"", ((GraphObjectMap)changes.get(1)).getProperty(new StringProperty("val")));
+
+				assertNull("Changelog should not be stored in the node", test.getProperty(GraphObject.structrChangeLog));
+
+				tx.success();
+			}
+
+			final String uuid = test.getUuid();
+
+			assertTrue("Changelog should be stored in the changelog store", ChangelogStore.getInstance().read(uuid, 0L).iterator().hasNext());
+
+			try (final Tx tx = userApp.tx()) {
+
+				userApp.delete(test);
+				tx.success();
+			}
+
+			assertFalse("Changelog of a deleted object should be removed", ChangelogStore.getInstance().read(uuid, 0L).iterator().hasNext());
+
+		} catch (FrameworkException | IOException ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception.");
+
+		} finally {
+
+			Settings.ChangelogEnabled.setValue(changelogEnabled);
+			Settings.ChangelogFileStore.setValue(false);
+		}
+	}
+
+	@Test
+	public void testChangelogStoreCompaction() {
+
+		try {
+
+			final ChangelogStore store = ChangelogStore.getInstance();
+			final String removed       = NodeServiceCommand.getNextUuid();
+			String kept                = NodeServiceCommand.getNextUuid();
+
+			// the store distributes the objects to buckets by the hash code of the UUID
+			while ((kept.hashCode() & Integer.MAX_VALUE) % 64 != (removed.hashCode() & Integer.MAX_VALUE) % 64) {
+				kept = NodeServiceCommand.getNextUuid();
+			}
+
+			for (int i=0; i<10; i++) {
+				store.append(kept, "kept" + i);
+			}
+
+			final Path segment = Paths.get(Settings.getFullSettingPath(Settings.ChangelogPath)).resolve(String.format("%02d.log", (kept.hashCode() & Integer.MAX_VALUE) % 64));
+			long removedSize   = 0L;
+
+			for (int i=0; i<1500; i++) {
+
+				final String record = "removed" + i;
+
+				store.append(removed, record);
+				removedSize += 2 + removed.length() + 12 + record.length();
+			}
+
+			final long size = Files.size(segment);
+
+			store.remove(removed);
+
+			assertFalse("Changelog of a removed object should be empty", store.read(removed, 0L).iterator().hasNext());
+
+			int count = 0;
+
+			for (final String record : store.read(kept, 0L)) {
+				assertEquals("Invalid changelog record after compaction", "kept" + count++, record);
+			}
+
+			assertEquals("Invalid number of changelog records after compaction", 10, count);
+
+			assertTrue("Changelog segment was not compacted", Files.size(segment) <= size - removedSize);
+
+		} catch (IOException ioex) {
+
+			logger.warn("", ioex);
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void testChangelogStoreTableRebuild() {
+
+		final String path = Settings.ChangelogPath.getValue();
+
+		try {
+
+			final List<String> uuids = new LinkedList<>();
+
+			// use a separate directory, switching the directory closes the store
+			Settings.ChangelogPath.setValue(path + "rebuild");
+
+			final Path directory = Paths.get(Settings.getFullSettingPath(Settings.ChangelogPath));
+
+			for (int i=0; i<100; i++) {
+
+				final String uuid = NodeServiceCommand.getNextUuid();
+
+				ChangelogStore.getInstance().append(uuid, "first" + i);
+				ChangelogStore.getInstance().append(uuid, "second" + i);
+
+				uuids.add(uuid);
+			}
+
+			Settings.ChangelogPath.setValue(path);
+			ChangelogStore.getInstance();
+
+			// the tables are rebuilt from the index files when the store is opened again
+			try (final DirectoryStream<Path> tables = Files.newDirectoryStream(directory, "*.tbl")) {
+
+				for (final Path table : tables) {
+					Files.delete(table);
+				}
+			}
+
+			Settings.ChangelogPath.setValue(path + "rebuild");
+
+			for (int i=0; i<100; i++) {
+
+				final Iterator<String> records = ChangelogStore.getInstance().read(uuids.get(i), 0L).iterator();
+
+				assertEquals("Invalid changelog record after table rebuild", "first" + i,  records.next());
+				assertEquals("Invalid changelog record after table rebuild", "second" + i, records.next());
+				assertFalse("Invalid number of changelog records after table rebuild", records.hasNext());
+			}
+
+		} catch (IOException ioex) {
+
+			logger.warn("", ioex);
+			fail("Unexpected exception.");
+
+		} finally {
+
+			Settings.ChangelogPath.setValue(path);
+		}
+	}
+
 	private static class TestRunner implements Runnable {
 
 		private boolean success = true;
@@ -0,0 +1,255 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.DatabaseService;
+import org.structr.api.RetryException;
+import org.structr.common.SecurityContext;
+import org.structr.common.StructrTest;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.TestOne;
+
+/**
+ * Tests the parallel execution of bulk graph operations.
+ */
+public class BulkGraphOperationTest extends StructrTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(BulkGraphOperationTest.class.getName());
+
+	@Test
+	public void testParallelBulkGraphOperation() {
+
+		final List<String> uuids     = createNodes(100);
+		final Set<String> threads    = ConcurrentHashMap.newKeySet();
+		final AtomicInteger failures = new AtomicInteger();
+
+		final long count = new TestCommand().parallelBulkGraphOperation(securityContext, partition(uuids), 10, "Test", new TestOperation() {
+
+			@Override
+			public void handleGraphObject(final SecurityContext securityContext, final String uuid) throws FrameworkException {
+
+				threads.add(Thread.currentThread().getName());
+				super.handleGraphObject(securityContext, uuid);
+			}
+
+			@Override
+			public void handleTransactionFailure(final SecurityContext securityContext, final Throwable t) {
+				failures.incrementAndGet();
+			}
+
+		}, 4);
+
+		assertEquals("Invalid number of processed objects", 100, count);
+		assertEquals("No transaction should fail", 0, failures.get());
+		assertEquals("All objects should be modified", 100, getProcessedCount());
+		assertFalse("Partitions should be processed by worker threads", threads.contains(Thread.currentThread().getName()));
+	}
+
+	@Test
+	public void testRetryAfterFailedCommit() {
+
+		final List<String> uuids     = createNodes(30);
+		final String failingUuid     = uuids.get(15);
+		final AtomicInteger attempts = new AtomicInteger();
+		final AtomicInteger failures = new AtomicInteger();
+
+		final long count = new TestCommand().parallelBulkGraphOperation(securityContext, partition(uuids), 10, "Test", new TestOperation() {
+
+			@Override
+			public void handleGraphObject(final SecurityContext securityContext, final String uuid) throws FrameworkException {
+
+				super.handleGraphObject(securityContext, uuid);
+
+				// fail the first commit of the partition that contains this object
+				if (failingUuid.equals(uuid) && attempts.incrementAndGet() == 1) {
+					throw new RetryException(new IllegalStateException("Deadlock"));
+				}
+			}
+
+			@Override
+			public void handleTransactionFailure(final SecurityContext securityContext, final Throwable t) {
+				failures.incrementAndGet();
+			}
+
+		}, 2);
+
+		assertEquals("Failed partition should be retried", 2, attempts.get());
+		assertEquals("Retried partition should not be reported as failed", 0, failures.get());
+		assertEquals("Invalid number of processed objects", 30, count);
+		assertEquals("All objects should be modified", 30, getProcessedCount());
+	}
+
+	@Test
+	public void testInterruptDuringRetry() {
+
+		final List<String> uuids                 = createNodes(30);
+		final String failingUuid                 = uuids.get(15);
+		final AtomicReference<Thread> worker     = new AtomicReference<>();
+		final AtomicBoolean interruptedOnFailure = new AtomicBoolean();
+		final AtomicBoolean interruptedLater     = new AtomicBoolean();
+		final AtomicInteger failures             = new AtomicInteger();
+		final CountDownLatch secondAttempt       = new CountDownLatch(2);
+
+		final Thread interrupter = new Thread(() -> {
+
+			try {
+
+				// interrupt the worker while it waits for the next attempt
+				if (secondAttempt.await(10, TimeUnit.SECONDS)) {
+
+					Thread.sleep(100);
+					worker.get().interrupt();
+				}
+
+			} catch (InterruptedException ignore) {}
+		});
+
+		interrupter.start();
+
+		final long count = new TestCommand().parallelBulkGraphOperation(securityContext, partition(uuids), 10, "Test", new TestOperation() {
+
+			@Override
+			public void handleGraphObject(final SecurityContext securityContext, final String uuid) throws FrameworkException {
+
+				super.handleGraphObject(securityContext, uuid);
+
+				// the next range runs on the same worker thread
+				if (failures.get() > 0 && Thread.currentThread().isInterrupted()) {
+					interruptedLater.set(true);
+				}
+
+				// the partition that contains this object never commits
+				if (failingUuid.equals(uuid)) {
+
+					worker.set(Thread.currentThread());
+					secondAttempt.countDown();
+
+					throw new RetryException(new IllegalStateException("Deadlock"));
+				}
+			}
+
+			@Override
+			public void handleTransactionFailure(final SecurityContext securityContext, final Throwable t) {
+
+				interruptedOnFailure.set(Thread.currentThread().isInterrupted());
+				failures.incrementAndGet();
+			}
+
+		}, 1);
+
+		try { interrupter.join(); } catch (InterruptedException ignore) {}
+
+		assertEquals("Interrupted partition should be reported as failed", 1, failures.get());
+		assertTrue("Interrupt flag should be restored", interruptedOnFailure.get());
+		assertFalse("Interrupt flag should be cleared before the worker processes the next range", interruptedLater.get());
+		assertEquals("Interrupted partition should not be counted", 20, count);
+		assertEquals("Interrupted partition should not be committed", 20, getProcessedCount());
+	}
+
+	// ----- private methods -----
+	private List<String> createNodes(final int number) {
+
+		final List<String> uuids = new ArrayList<>();
+
+		try (final Tx tx = app.tx()) {
+
+			for (final TestOne node : createTestNodes(TestOne.class, number)) {
+				uuids.add(node.getUuid());
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+
+		return uuids;
+	}
+
+	private BulkGraphPartitioner<String> partition(final List<String> uuids) {
+
+		// the position in the list serves as the id of an object
+		return new BulkGraphPartitioner<String>() {
+
+			@Override
+			public long getMaxId(final DatabaseService db) {
+				return uuids.size() - 1;
+			}
+
+			@Override
+			public Iterable<String> getObjects(final DatabaseService db, final long fromId, final long toId) {
+				return uuids.subList((int)fromId, (int)toId);
+			}
+		};
+	}
+
+	private int getProcessedCount() {
+
+		try (final Tx tx = app.tx()) {
+
+			return app.nodeQuery(TestOne.class).and(TestOne.aString, "processed").getAsList().size();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+
+		return 0;
+	}
+
+	// ----- nested classes -----
+	private static class TestCommand extends NodeServiceCommand {
+	}
+
+	private static class TestOperation extends BulkGraphOperation<String> {
+
+		@Override
+		public void handleGraphObject(final SecurityContext securityContext, final String uuid) throws FrameworkException {
+
+			final TestOne node = StructrApp.getInstance(securityContext).get(TestOne.class, uuid);
+
+			node.setProperty(TestOne.aString, "processed");
+		}
+
+		@Override
+		public boolean isParallelizable() {
+			return true;
+		}
+	}
+}
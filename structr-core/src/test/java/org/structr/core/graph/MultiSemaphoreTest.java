@@ -0,0 +1,260 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Tests the striped commit locks without a database.
+ */
+public class MultiSemaphoreTest {
+
+	@Test
+	public void testStripedKeys() {
+
+		assertEquals("Equal values must map to the same lock", MultiSemaphore.getStripedKey("Item.code", "value"), MultiSemaphore.getStripedKey("Item.code", "value"));
+		assertEquals("Equal array values must map to the same lock", MultiSemaphore.getStripedKey("Item.codes", new String[] { "a", "b" }), MultiSemaphore.getStripedKey("Item.codes", new String[] { "a", "b" }));
+		assertNotEquals("Different properties must not share a lock", MultiSemaphore.getStripedKey("Item.code", "value"), MultiSemaphore.getStripedKey("Item.name", "value"));
+		assertTrue("Striped key must start with the synchronization key", MultiSemaphore.getStripedKey("Item.code", null).startsWith("Item.code" + MultiSemaphore.STRIPE_SEPARATOR));
+	}
+
+	@Test
+	public void testDisjointValuesDoNotBlock() throws Exception {
+
+		final MultiSemaphore semaphore = new MultiSemaphore();
+		final String[] values          = getValuesInDistinctStripes("Item.code", 2);
+		final Set<String> first        = keys("Item.code", values[0]);
+		final Set<String> second       = keys("Item.code", values[1]);
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		try {
+
+			semaphore.acquire(first);
+
+			// a different value must be lockable while the first one is held
+			final Future<?> future = executor.submit(() -> {
+
+				semaphore.acquire(second);
+				semaphore.release(second);
+
+				return null;
+			});
+
+			future.get(5, TimeUnit.SECONDS);
+
+			semaphore.release(first);
+
+			assertEquals("Disjoint values must not contend", 0L, getStatistic(semaphore, "Item.code", "contentions"));
+			assertEquals("Invalid number of acquisitions", 2L, getStatistic(semaphore, "Item.code", "acquisitions"));
+
+		} finally {
+
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testEqualValuesSerialize() throws Exception {
+
+		final MultiSemaphore semaphore = new MultiSemaphore();
+		final Set<String> keys         = keys("Item.code", "value");
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		try {
+
+			semaphore.acquire(keys);
+
+			final Future<?> future = executor.submit(() -> {
+
+				semaphore.acquire(keys);
+				semaphore.release(keys);
+
+				return null;
+			});
+
+			try {
+
+				future.get(500, TimeUnit.MILLISECONDS);
+				fail("Equal values must not be locked by two transactions at the same time.");
+
+			} catch (TimeoutException expected) {}
+
+			semaphore.release(keys);
+
+			// the waiting thread must get the lock as soon as it is released
+			future.get(5, TimeUnit.SECONDS);
+
+			assertEquals("Equal values must contend", 1L, getStatistic(semaphore, "Item.code", "contentions"));
+
+		} finally {
+
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testConcurrentAcquisitionInSortedOrder() throws Exception {
+
+		final MultiSemaphore semaphore = new MultiSemaphore();
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		final int[] counter            = new int[1];
+
+		try {
+
+			final Future[] futures = new Future[8];
+
+			for (int i=0; i<futures.length; i++) {
+
+				// overlapping key sets, acquired in sorted order like TransactionCommand does
+				final Set<String> keys = new TreeSet<>(Arrays.asList(
+					MultiSemaphore.getStripedKey("Item.code", "value" + (i % 3)),
+					MultiSemaphore.getStripedKey("Item.code", "value" + ((i + 1) % 3))
+				));
+
+				futures[i] = executor.submit(() -> {
+
+					for (int j=0; j<1000; j++) {
+
+						semaphore.acquire(keys);
+
+						try {
+
+							// all key sets share a value with every other one,
+							// so this must never be entered concurrently
+							counter[0]++;
+
+						} finally {
+
+							semaphore.release(keys);
+						}
+					}
+
+					return null;
+				});
+			}
+
+			for (final Future future : futures) {
+				future.get(30, TimeUnit.SECONDS);
+			}
+
+			assertEquals("Lost update in critical section", 8000, counter[0]);
+
+		} finally {
+
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testInterruptReleasesAcquiredKeys() throws Exception {
+
+		final MultiSemaphore semaphore = new MultiSemaphore();
+		final String[] values          = getValuesInDistinctStripes("Item.code", 2);
+		final String firstKey          = MultiSemaphore.getStripedKey("Item.code", values[0]);
+		final String secondKey         = MultiSemaphore.getStripedKey("Item.code", values[1]);
+		final TreeSet<String> both     = new TreeSet<>(Arrays.asList(firstKey, secondKey));
+		final Set<String> last         = Collections.singleton(both.last());
+		final Set<String> head         = Collections.singleton(both.first());
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+		try {
+
+			// block the second key so the other thread waits while holding the first one
+			semaphore.acquire(last);
+
+			final Future<?> waiting = executor.submit(() -> {
+
+				semaphore.acquire(both);
+				return null;
+			});
+
+			Thread.sleep(200);
+			waiting.cancel(true);
+
+			try {
+
+				waiting.get(5, TimeUnit.SECONDS);
+
+			} catch (CancellationException | ExecutionException expected) {}
+
+			// the first key must be available again
+			final Future<?> future = executor.submit(() -> {
+
+				semaphore.acquire(head);
+				semaphore.release(head);
+
+				return null;
+			});
+
+			future.get(5, TimeUnit.SECONDS);
+
+			semaphore.release(last);
+
+		} finally {
+
+			executor.shutdownNow();
+		}
+	}
+
+	// ----- private methods -----
+	private Set<String> keys(final String key, final Object value) {
+		return new TreeSet<>(Collections.singleton(MultiSemaphore.getStripedKey(key, value)));
+	}
+
+	private String[] getValuesInDistinctStripes(final String key, final int count) {
+
+		final Set<String> stripes = new TreeSet<>();
+		final String[] values     = new String[count];
+		int found                 = 0;
+
+		for (int i=0; found<count; i++) {
+
+			final String value = "value" + i;
+
+			if (stripes.add(MultiSemaphore.getStripedKey(key, value))) {
+				values[found++] = value;
+			}
+		}
+
+		return values;
+	}
+
+	private long getStatistic(final MultiSemaphore semaphore, final String key, final String name) {
+
+		final Map<String, Object> statistics = (Map<String, Object>)semaphore.getStatistics().get(key);
+
+		return (Long)statistics.get(name);
+	}
+}
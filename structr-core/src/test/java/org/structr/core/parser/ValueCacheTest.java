@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.commons.lang3.StringUtils;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+import org.structr.api.config.Settings;
+
+/**
+ * Tests the value cache of the cache() function without a database.
+ */
+public class ValueCacheTest {
+
+	@Before
+	public void clearCache() {
+		ValueCache.clear();
+	}
+
+	@Test
+	public void testSingleFlightLoad() throws Exception {
+
+		final int threads                  = 8;
+		final AtomicInteger evaluated      = new AtomicInteger();
+		final CyclicBarrier barrier        = new CyclicBarrier(threads);
+		final ExecutorService executor     = Executors.newFixedThreadPool(threads);
+		final List<Future<Object>> futures = new ArrayList<>();
+
+		try {
+
+			for (int i=0; i<threads; i++) {
+
+				futures.add(executor.submit(() -> {
+
+					barrier.await(10, TimeUnit.SECONDS);
+
+					return ValueCache.get("singleflight.key", 60, () -> {
+
+						evaluated.incrementAndGet();
+
+						// slow value, so all callers arrive while it is loaded
+						sleep(200);
+
+						return "value";
+
+					}, null);
+				}));
+			}
+
+			for (final Future<Object> future : futures) {
+				assertEquals("All callers should get the loaded value", "value", future.get(10, TimeUnit.SECONDS));
+			}
+
+			assertEquals("Value should be evaluated exactly once", 1, evaluated.get());
+			assertEquals("Invalid number of misses", 1L, getStatistic("singleflight", "misses"));
+			assertEquals("Invalid number of hits", (long)threads - 1, getStatistic("singleflight", "hits"));
+
+		} finally {
+
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testFailedLoadIsRetried() throws Exception {
+
+		try {
+
+			ValueCache.get("failing.key", 60, () -> { throw new IllegalStateException("failure"); }, null);
+			fail("Exception of the supplier should be rethrown.");
+
+		} catch (IllegalStateException expected) {}
+
+		assertEquals("Failed load should not be cached", "value", ValueCache.get("failing.key", 60, () -> "value", null));
+		assertEquals("Invalid number of errors", 1L, getStatistic("failing", "errors"));
+	}
+
+	@Test
+	public void testReentrantLoad() throws Exception {
+
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		try {
+
+			// the supplier asks for its own key while it is loaded
+			final Future<Object> future = executor.submit(() -> ValueCache.get("reentrant.key", 60, () -> "outer:" + ValueCache.get("reentrant.key", 60, () -> "inner", null), null));
+
+			assertEquals("Nested load of the same key should be evaluated inline", "outer:inner", future.get(10, TimeUnit.SECONDS));
+			assertEquals("Outer value should be cached", "outer:inner", ValueCache.get("reentrant.key", 60, () -> "other", null));
+
+		} finally {
+
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testStaleWhileRefresh() throws Exception {
+
+		final CountDownLatch refreshStarted = new CountDownLatch(1);
+		final CountDownLatch releaseRefresh = new CountDownLatch(1);
+		final AtomicInteger evaluated       = new AtomicInteger();
+		final ExecutorService executor      = Executors.newSingleThreadExecutor();
+
+		try {
+
+			// a timeout of 0 seconds makes the value expire immediately
+			assertEquals("Invalid initial value", "v1", ValueCache.get("stale.key", 0, () -> "v1", null));
+
+			Thread.sleep(10);
+
+			final Future<Object> refresh = executor.submit(() -> ValueCache.get("stale.key", 0, () -> {
+
+				refreshStarted.countDown();
+
+				try { releaseRefresh.await(10, TimeUnit.SECONDS); } catch (InterruptedException ignore) {}
+
+				return "v2";
+
+			}, null));
+
+			assertTrue("Refresh should start", refreshStarted.await(10, TimeUnit.SECONDS));
+
+			// concurrent callers get the stale value and do not evaluate the supplier
+			for (int i=0; i<5; i++) {
+
+				assertEquals("Stale value should be returned during refresh", "v1", ValueCache.get("stale.key", 0, () -> {
+
+					evaluated.incrementAndGet();
+					return "v3";
+
+				}, null));
+			}
+
+			releaseRefresh.countDown();
+
+			assertEquals("Refreshing caller should get the new value", "v2", refresh.get(10, TimeUnit.SECONDS));
+			assertEquals("Supplier should only be evaluated by the refreshing caller", 0, evaluated.get());
+			assertEquals("Invalid number of stale hits", 5L, getStatistic("stale", "staleHits"));
+			assertEquals("Invalid number of refreshes", 1L, getStatistic("stale", "refreshes"));
+
+		} finally {
+
+			releaseRefresh.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testRefreshAhead() throws Exception {
+
+		final AtomicReference<Thread> refreshThread = new AtomicReference<>();
+
+		assertEquals("Invalid initial value", "v1", ValueCache.get("ahead.key", 1, () -> "v1", null));
+
+		// past 80% of the time to live, but not yet expired
+		Thread.sleep(850);
+
+		final Object value = ValueCache.get("ahead.key", 1, () -> "sync", () -> {
+
+			refreshThread.set(Thread.currentThread());
+			return "v2";
+		});
+
+		assertEquals("Current value should be returned while refreshing ahead", "v1", value);
+
+		Object refreshed = null;
+
+		for (int i=0; i<100 && !"v2".equals(refreshed); i++) {
+
+			Thread.sleep(10);
+
+			refreshed = ValueCache.get("ahead.key", 1, () -> "sync", null);
+		}
+
+		assertEquals("Value should be refreshed in the background", "v2", refreshed);
+		assertNotEquals("Refresh should not run on the calling thread", Thread.currentThread(), refreshThread.get());
+	}
+
+	@Test
+	public void testWeightBasedEviction() throws Exception {
+
+		final Integer maxWeight = Settings.ValueCacheWeight.getValue();
+
+		try {
+
+			Settings.ValueCacheWeight.setValue(1000);
+
+			// each value weighs 100
+			final String value = StringUtils.repeat("x", 84);
+
+			for (int i=0; i<20; i++) {
+
+				ValueCache.get("evict." + i, 60, () -> value, null);
+
+				assertTrue("Total weight should not exceed the limit", ValueCache.getWeight() <= 1000);
+
+				// distinct access times
+				Thread.sleep(2);
+			}
+
+			assertTrue("Entries should have been evicted", ValueCache.size() <= 10);
+			assertTrue("Invalid number of evictions", getStatistic("evict", "evictions") >= 10L);
+
+			final AtomicInteger evaluated = new AtomicInteger();
+
+			// most recently used entry is still there
+			ValueCache.get("evict.19", 60, () -> { evaluated.incrementAndGet(); return value; }, null);
+			assertEquals("Most recently used entry should not be evicted", 0, evaluated.get());
+
+			// least recently used entry is gone
+			ValueCache.get("evict.0", 60, () -> { evaluated.incrementAndGet(); return value; }, null);
+			assertEquals("Least recently used entry should be evicted", 1, evaluated.get());
+
+		} finally {
+
+			Settings.ValueCacheWeight.setValue(maxWeight);
+		}
+	}
+
+	// ----- private methods -----
+	private void sleep(final long millis) {
+		try { Thread.sleep(millis); } catch (InterruptedException ignore) {}
+	}
+
+	private long getStatistic(final String prefix, final String name) {
+
+		final Map<String, Object> statistics = (Map<String, Object>)ValueCache.getStatistics().get(prefix);
+
+		return (Long)statistics.get(name);
+	}
+}
@@ -30,15 +30,26 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import org.apache.commons.lang3.StringUtils;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import org.junit.Test;
 import org.slf4j.Logger;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
 import org.structr.common.AccessMode;
 import org.structr.common.SecurityContext;
 import org.structr.common.StructrTest;
@@ -67,13 +78,19 @@ import org.structr.core.entity.TestTwo;
 import org.structr.core.entity.TestUser;
 import org.structr.core.function.DateFormatFunction;
 import org.structr.core.function.FindFunction;
+import org.structr.core.function.Functions;
 import org.structr.core.function.NumberFormatFunction;
 import org.structr.core.function.ParseDateFunction;
 import org.structr.core.function.RoundFunction;
 import org.structr.core.function.ToDateFunction;
+import org.structr.core.graph.CacheStatisticsCommand;
 import org.structr.core.graph.NodeAttribute;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.graph.Tx;
+import org.structr.core.parser.BatchExpression;
+import org.structr.core.parser.ConstantExpression;
+import org.structr.core.parser.Expression;
+import org.structr.core.parser.ValueCache;
 import org.structr.core.property.EnumProperty;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
@@ -2461,4 +2478,267 @@ public class ScriptingTest extends StructrTest {
 			fail("Unexpected exception.");
 		}
 	}
+
+	@Test
+	public void testCacheFunction() {
+
+		try (final Tx tx = app.tx()) {
+
+			final ActionContext ctx = new ActionContext(securityContext, null);
+
+			assertEquals("Invalid cache() result", "value1", Scripting.replaceVariables(ctx, null, "${cache('test.cacheFunction', 60, 'value1')}"));
+			assertEquals("Cached value should not be re-evaluated before timeout", "value1", Scripting.replaceVariables(ctx, null, "${cache('test.cacheFunction', 60, 'value2')}"));
+
+			assertEquals("Invalid Structr.cache() result", "value1", Scripting.evaluate(ctx, null, "${{ return Structr.cache('test.cacheFunction', 60, function() { return 'value3'; }); }}", "test"));
+			assertEquals("Invalid Structr.cache() result", "value4", Scripting.evaluate(ctx, null, "${{ return Structr.cache('test.javascriptCache', 60, function() { return 'value4'; }); }}", "test"));
+
+			assertTrue("Cache statistics should be collected per key prefix", ValueCache.getStatistics().containsKey("test"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void testCacheFunctionRefreshAhead() {
+
+		final CountDownLatch refreshed  = new CountDownLatch(1);
+		final Consumer<String> listener = key -> {
+
+			if ("test.refreshAhead".equals(key)) {
+				refreshed.countDown();
+			}
+		};
+
+		Settings.ValueCacheRefresh.setValue(true);
+		ValueCache.addRefreshListener(listener);
+
+		try {
+
+			String uuid = null;
+
+			try (final Tx tx = app.tx()) {
+
+				final TestOne test      = createTestNode(TestOne.class, "before");
+				final ActionContext ctx = new ActionContext(securityContext, null);
+
+				uuid = test.getUuid();
+
+				assertEquals("Invalid cache() result", "before", Scripting.replaceVariables(ctx, test, "${cache('test.refreshAhead', 1, this.name)}"));
+
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				app.get(TestOne.class, uuid).setProperty(TestOne.name, "after");
+				tx.success();
+			}
+
+			// past 80% of the time to live, the refresh runs in the background
+			Thread.sleep(850);
+
+			try (final Tx tx = app.tx()) {
+
+				final TestOne test = app.get(TestOne.class, uuid);
+
+				assertEquals("Current value should be returned while refreshing ahead", "before", Scripting.replaceVariables(new ActionContext(securityContext, null), test, "${cache('test.refreshAhead', 1, this.name)}"));
+
+				tx.success();
+			}
+
+			assertTrue("Value should be refreshed in the background", refreshed.await(10, TimeUnit.SECONDS));
+
+			// the background refresh must look up the entity again in its own transaction
+			assertEquals("Refresh should evaluate the value expression with the current entity", "after", ValueCache.get("test.refreshAhead", 60, () -> "expired", null));
+
+		} catch (FrameworkException | InterruptedException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+
+		} finally {
+
+			Settings.ValueCacheRefresh.setValue(false);
+			ValueCache.removeRefreshListener(listener);
+		}
+	}
+
+	@Test
+	public void testExpressionCache() {
+
+		try (final Tx tx = app.tx()) {
+
+			final ActionContext ctx = new ActionContext(securityContext, null);
+			final TestOne a         = app.create(TestOne.class, "a");
+			final TestOne b         = app.create(TestOne.class, "b");
+
+			assertSame("Parsed expressions should be cached", Functions.parse("concat(this.name, '!')"), Functions.parse("concat(this.name, '!')"));
+
+			// cached expressions must not keep state between evaluations
+			assertEquals("Invalid result of cached expression", "a!", Functions.evaluate(ctx, a, "concat(this.name, '!')"));
+			assertEquals("Invalid result of cached expression", "b!", Functions.evaluate(ctx, b, "concat(this.name, '!')"));
+
+			// the batch size is only visible in the thread that evaluates the batched statement
+			final List<Integer> batchSizes = new LinkedList<>();
+			final BatchExpression batch    = new BatchExpression();
+
+			batch.add(new Expression("probe") {
+
+				@Override
+				public Object evaluate(final ActionContext ctx, final GraphObject entity) throws FrameworkException, UnlicensedException {
+
+					batchSizes.add(getBatchSize());
+					return null;
+				}
+
+				@Override
+				public Object transform(final ActionContext ctx, final GraphObject entity, final Object source) throws FrameworkException, UnlicensedException {
+					return source;
+				}
+			});
+
+			batch.add(new ConstantExpression(10));
+
+			batch.evaluate(ctx, null);
+			batch.evaluate(ctx, null);
+
+			assertEquals("Batch size should be visible to the batched statement", Arrays.asList(10, 10), batchSizes);
+			assertEquals("Batch size should not be visible outside of the batched statement", -1, batch.getBatchSize());
+
+			tx.success();
+
+		} catch(UnlicensedException|FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void testCompiledScriptCacheWarmup() {
+
+		try (final Tx tx = app.tx()) {
+
+			final ActionContext ctx          = new ActionContext(securityContext, null);
+			final String expression          = Scripting.getExpression("  { return 'warmup' + 1; }  ");
+			final Map<String, Object> before = Scripting.getCacheStatistics();
+
+			Scripting.precompile(expression, "testCompiledScriptCacheWarmup");
+
+			final Map<String, Object> warm = Scripting.getCacheStatistics();
+
+			assertEquals("Precompiling should compile the script once", getCompileCount(before) + 1, getCompileCount(warm));
+			assertEquals("Precompiling should store the script in the cache", (int)before.get("size") + 1, (int)warm.get("size"));
+
+			assertEquals("Invalid result of precompiled script", "warmup1", Scripting.evaluate(ctx, null, expression, "testCompiledScriptCacheWarmup"));
+			assertEquals("Invalid result of precompiled script", "warmup1", Scripting.evaluate(ctx, null, expression, "testCompiledScriptCacheWarmup"));
+
+			final Map<String, Object> after = Scripting.getCacheStatistics();
+
+			assertEquals("Evaluation of a precompiled script should not compile it again", getCompileCount(warm), getCompileCount(after));
+			assertEquals("Evaluation of a precompiled script should be a cache hit", (long)warm.get("hits") + 2, (long)after.get("hits"));
+			assertEquals("Evaluation of a precompiled script should not be a cache miss", (long)warm.get("misses"), (long)after.get("misses"));
+
+			tx.success();
+
+		} catch (UnlicensedException|FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void testConcurrentScriptCompilation() throws InterruptedException {
+
+		final String source              = "function main() { return 'concurrent' + 1; }";
+		final Map<String, Object> before = Scripting.getCacheStatistics();
+		final ExecutorService executor   = Executors.newFixedThreadPool(8);
+		final CountDownLatch start       = new CountDownLatch(1);
+		final Set<Script> scripts        = ConcurrentHashMap.newKeySet();
+
+		for (int i=0; i<8; i++) {
+
+			executor.submit(() -> {
+
+				final Context context = Scripting.setupJavascriptContext();
+
+				try {
+
+					start.await();
+					scripts.add(Scripting.compileOrGetCached(context, source, "testConcurrentScriptCompilation", 1));
+
+				} catch (InterruptedException iex) {
+
+					Thread.currentThread().interrupt();
+
+				} finally {
+
+					Scripting.destroyJavascriptContext();
+				}
+			});
+		}
+
+		start.countDown();
+		executor.shutdown();
+
+		assertTrue("Concurrent compilation did not finish", executor.awaitTermination(1, TimeUnit.MINUTES));
+
+		final Map<String, Object> after = Scripting.getCacheStatistics();
+
+		assertEquals("All threads should get the same compiled script", 1, scripts.size());
+		assertEquals("Concurrent requests for the same source should compile it only once", getCompileCount(before) + 1, getCompileCount(after));
+		assertEquals("Invalid script cache size", (int)before.get("size") + 1, (int)after.get("size"));
+	}
+
+	@Test
+	public void testCacheStatisticsCommand() {
+
+		try {
+
+			final CacheStatisticsCommand cmd = app.command(CacheStatisticsCommand.class);
+
+			cmd.execute(Collections.emptyMap());
+
+			final Map<String, Object> result  = (Map<String, Object>)cmd.getCommandResult();
+			final Map<String, Object> scripts = (Map<String, Object>)result.get("scripts");
+
+			assertNotNull("Cache statistics should contain the script cache", scripts);
+			assertNotNull("Cache statistics should contain the permission cache", result.get("permissions"));
+			assertNotNull("Cache statistics should contain the access path cache", result.get("accessPaths"));
+			assertNotNull("Cache statistics should contain the value cache", result.get("values"));
+			assertNotNull("Cache statistics should contain the query cache", result.get("queries"));
+
+			for (final String key : Arrays.asList("size", "hits", "misses", "evictions", "compileTimes")) {
+				assertTrue("Script cache statistics should contain " + key, scripts.containsKey(key));
+			}
+
+			// the histogram has one bucket per limit plus one for longer compile times
+			final Map<String, Object> histogram = (Map<String, Object>)scripts.get("compileTimes");
+
+			assertEquals("Invalid compile time histogram", Arrays.asList("< 1 ms", "< 10 ms", "< 100 ms", "< 1000 ms", ">= 1000 ms"), new LinkedList<>(histogram.keySet()));
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	// ----- private methods -----
+	private long getCompileCount(final Map<String, Object> statistics) {
+
+		long count = 0L;
+
+		for (final Object value : ((Map<String, Object>)statistics.get("compileTimes")).values()) {
+			count += (Long)value;
+		}
+
+		return count;
+	}
 }
@@ -20,6 +20,7 @@ package org.structr.schema;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
@@ -27,6 +28,7 @@ import java.util.Map;
 import java.util.Set;
 import org.apache.commons.lang.StringUtils;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -47,6 +49,7 @@ import org.structr.core.entity.SchemaRelationshipNode;
 import org.structr.core.entity.SchemaView;
 import org.structr.core.graph.NodeAttribute;
 import org.structr.core.graph.Tx;
+import org.structr.core.property.StringProperty;
 import org.structr.schema.action.Actions;
 import org.structr.schema.export.StructrSchema;
 import org.structr.schema.json.InvalidSchemaException;
@@ -565,6 +568,49 @@ public class SchemaTest extends StructrTest {
 		}
 	}
 
+	@Test
+	public void testSchemaClassCache() {
+
+		final File cacheDirectory = new File(Settings.getFullSettingPath(Settings.SchemaCachePath));
+
+		try (final Tx tx = app.tx()) {
+
+			app.create(SchemaNode.class,
+				new NodeAttribute<>(SchemaNode.name, "CacheTest"),
+				new NodeAttribute<>(new StringProperty("_aString"), "String")
+			);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		final String[] before = cacheDirectory.list((dir, name) -> name.startsWith("CacheTest-"));
+
+		assertNotNull("Schema class cache directory should exist", before);
+		assertEquals("Compiled type should be stored in the schema class cache", 1, before.length);
+
+		try (final Tx tx = app.tx()) {
+
+			final SchemaNode node = app.nodeQuery(SchemaNode.class).andName("CacheTest").getFirst();
+
+			node.setProperty(new StringProperty("_anInteger"), "Integer");
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		final String[] after = cacheDirectory.list((dir, name) -> name.startsWith("CacheTest-"));
+
+		assertEquals("Modified type should replace its schema class cache entry", 1, after.length);
+		assertNotEquals("Modified type should have a new schema class cache key", before[0], after[0]);
+	}
+
 	// ----- private methods -----
 	private void checkSchemaString(final String source) {
 
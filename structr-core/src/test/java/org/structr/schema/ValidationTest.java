@@ -18,13 +18,21 @@
  */
 package org.structr.schema;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
@@ -44,7 +52,9 @@ import org.structr.core.entity.SchemaRelationshipNode;
 import org.structr.core.entity.TestOne;
 import org.structr.core.entity.TestTwelve;
 import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.MultiSemaphore;
 import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.core.graph.Tx;
 import org.structr.core.property.EnumProperty;
 import org.structr.core.property.PropertyKey;
@@ -469,10 +479,96 @@ public class ValidationTest extends StructrTest {
 		// verify that only count entities have been created.
 		assertEquals("Invalid concurrent validation result", count, result.size());
 
+		// verify that the commit locks of the unique property are tracked
+		final Map<String, Object> lockStatistics = TransactionCommand.getCommitLockStatistics();
+		assertTrue("Missing commit lock statistics for unique property", lockStatistics.containsKey(name.getSynchronizationKey()));
 
 		executor.shutdownNow();
 	}
 
+	@Test
+	public void testConcurrentUniqueValueCommits() {
+
+		final int count = 8;
+
+		try (final Tx tx = app.tx()) {
+
+			app.create(SchemaNode.class,
+				new NodeAttribute(SchemaNode.name, "StripedItem"),
+				new NodeAttribute(new StringProperty("_code"), "String!")
+			);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+
+		final Class type = StructrApp.getConfiguration().getNodeEntityClass("StripedItem");
+		assertNotNull(type);
+
+		final PropertyKey code = StructrApp.getConfiguration().getPropertyKeyForJSONName(type, "code", false);
+		assertNotNull(code);
+
+		final String syncKey = code.getSynchronizationKey();
+
+		// pick values that map to different lock stripes
+		final Set<String> stripes = new HashSet<>();
+		final List<String> values = new ArrayList<>();
+
+		for (int i=0; values.size()<count; i++) {
+
+			final String value = "code" + i;
+
+			if (stripes.add(MultiSemaphore.getStripedKey(syncKey, value))) {
+				values.add(value);
+			}
+		}
+
+		// 1. disjoint values: all transactions commit, none of them waits for another one
+		final List<Throwable> errors = createConcurrently(type, code, values);
+
+		assertTrue("Disjoint unique values should commit without errors: " + errors, errors.isEmpty());
+		assertEquals("Disjoint unique values should not contend for the commit lock", 0L, getCommitLockStatistic(syncKey, "contentions"));
+
+		// 2. equal values: transactions serialize, exactly one of them wins
+		final List<Throwable> equalErrors = createConcurrently(type, code, Collections.nCopies(count, "duplicate"));
+
+		assertEquals("Equal unique values should produce exactly one success", count - 1, equalErrors.size());
+
+		for (final Throwable t : equalErrors) {
+
+			assertTrue("Unexpected exception " + t, t instanceof FrameworkException);
+
+			final FrameworkException fex  = (FrameworkException)t;
+			final List<ErrorToken> tokens = fex.getErrorBuffer().getErrorTokens();
+
+			assertEquals("Invalid uniqueness validation result", 422, fex.getStatus());
+			assertEquals("Invalid uniqueness validation result", 1, tokens.size());
+			assertEquals("Invalid uniqueness validation result", "code", tokens.get(0).getProperty());
+			assertEquals("Invalid uniqueness validation result", "already_taken", tokens.get(0).getToken());
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			for (final String value : values) {
+				assertEquals("Invalid concurrent validation result", 1, app.nodeQuery(type).and(code, value).getAsList().size());
+			}
+
+			assertEquals("Invalid concurrent validation result", 1, app.nodeQuery(type).and(code, "duplicate").getAsList().size());
+			assertEquals("Invalid concurrent validation result", count + 1, app.nodeQuery(type).getAsList().size());
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+	}
+
 	@Test
 	public void testConcurrentValidationWithInheritance() {
 
@@ -2082,4 +2178,58 @@ public class ValidationTest extends StructrTest {
 			fail("Unexpected exception.");
 		}
 	}
+
+	private List<Throwable> createConcurrently(final Class type, final PropertyKey key, final List<String> values) {
+
+		final ExecutorService executor = Executors.newFixedThreadPool(values.size());
+		final CyclicBarrier barrier     = new CyclicBarrier(values.size());
+		final List<Future<?>> futures   = new ArrayList<>();
+		final List<Throwable> errors    = new ArrayList<>();
+
+		for (final String value : values) {
+
+			futures.add(executor.submit(() -> {
+
+				try (final Tx tx = app.tx()) {
+
+					app.create(type, new NodeAttribute<>(key, value));
+
+					// let all transactions reach the commit at the same time
+					barrier.await(10, TimeUnit.SECONDS);
+
+					tx.success();
+				}
+
+				return null;
+			}));
+		}
+
+		for (final Future<?> future : futures) {
+
+			try {
+
+				future.get(30, TimeUnit.SECONDS);
+
+			} catch (ExecutionException eex) {
+
+				errors.add(eex.getCause());
+
+			} catch (Throwable t) {
+
+				errors.add(t);
+			}
+		}
+
+		executor.shutdownNow();
+
+		return errors;
+	}
+
+	private long getCommitLockStatistic(final String key, final String name) {
+
+		final Map<String, Object> statistics = (Map<String, Object>)TransactionCommand.getCommitLockStatistics().get(key);
+		assertNotNull("Missing commit lock statistics for " + key, statistics);
+
+		return (Long)statistics.get(name);
+	}
 }
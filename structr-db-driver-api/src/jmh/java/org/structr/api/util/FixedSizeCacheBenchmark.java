@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.api.util;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.collections4.map.LRUMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares FixedSizeCache with the previous implementation (a synchronized
+ * LRUMap) under contention. 64 threads access a cache of 10000 entries with
+ * 80% reads and 20% writes on a key space twice the size of the cache.
+ *
+ * Run with
+ *
+ * mvn -Pbenchmark -pl structr-db-driver-api test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.structr.api.util.FixedSizeCacheBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@Threads(64)
+public class FixedSizeCacheBenchmark {
+
+	private static final int CACHE_SIZE = 10000;
+
+	@Param({ "FixedSizeCache", "SynchronizedLRUMap" })
+	private String implementation = null;
+
+	private Cache<Integer, Integer> cache = null;
+
+	@Setup
+	public void setup() {
+
+		switch (implementation) {
+
+			case "FixedSizeCache":
+				final FixedSizeCache<Integer, Integer> fixedSizeCache = new FixedSizeCache<>(CACHE_SIZE);
+				cache = new Cache<Integer, Integer>() {
+
+					@Override
+					public Integer get(final Integer key) {
+						return fixedSizeCache.get(key);
+					}
+
+					@Override
+					public void put(final Integer key, final Integer value) {
+						fixedSizeCache.put(key, value);
+					}
+				};
+				break;
+
+			default:
+				cache = new SynchronizedLRUMap<>(CACHE_SIZE);
+				break;
+		}
+
+		for (int i=0; i<CACHE_SIZE; i++) {
+			cache.put(i, i);
+		}
+	}
+
+	@Benchmark
+	public Integer readWrite() {
+
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		final Integer key              = random.nextInt(CACHE_SIZE * 2);
+
+		if (random.nextInt(10) < 2) {
+
+			cache.put(key, key);
+			return key;
+		}
+
+		return cache.get(key);
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+
+		new Runner(new OptionsBuilder().include(FixedSizeCacheBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	// ----- nested classes -----
+	private interface Cache<K, V> {
+
+		V get(final K key);
+		void put(final K key, final V value);
+	}
+
+	/**
+	 * The previous implementation of FixedSizeCache.
+	 */
+	private static class SynchronizedLRUMap<K, V> implements Cache<K, V> {
+
+		private Map<K, V> cache  = null;
+
+		public SynchronizedLRUMap(final int maxSize) {
+			this.cache = Collections.synchronizedMap(new LRUMap<>(maxSize, true));
+		}
+
+		@Override
+		public synchronized void put(final K key, final V value) {
+			cache.put(key, value);
+		}
+
+		@Override
+		public synchronized V get(final K key) {
+			return cache.get(key);
+		}
+	}
+}
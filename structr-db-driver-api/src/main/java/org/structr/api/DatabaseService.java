@@ -18,11 +18,14 @@
  */
 package org.structr.api;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import org.structr.api.graph.Direction;
 import org.structr.api.graph.GraphProperties;
 import org.structr.api.graph.Node;
 import org.structr.api.graph.Relationship;
+import org.structr.api.graph.RelationshipType;
 import org.structr.api.index.Index;
 
 /**
@@ -47,6 +50,28 @@ public interface DatabaseService {
 	Node createNode(final Set<String> labels, final Map<String, Object> properties);
 
 	Node getNodeById(final long id);
+
+	/**
+	 * Returns the nodes with the given ids, in the order of the ids.
+	 * Nodes that do not exist are omitted from the result.
+	 *
+	 * @param ids
+	 *
+	 * @return the nodes
+	 */
+	List<Node> getNodesByIds(final long[] ids);
+
+	/**
+	 * Loads the relationships of the given type and direction of all the
+	 * given nodes at once, so that subsequent calls to getRelationships
+	 * on the individual nodes can be answered without a database query.
+	 *
+	 * @param nodes
+	 * @param direction
+	 * @param relationshipType
+	 */
+	void prefetchRelationships(final Iterable<Node> nodes, final Direction direction, final RelationshipType relationshipType);
+
 	Relationship getRelationshipById(final long id);
 
 	QueryResult<Node> getAllNodes();
@@ -68,4 +93,5 @@ public interface DatabaseService {
 	NativeResult execute(final String nativeQuery);
 
 	void invalidateQueryCache();
+	Map<String, Map<String, Object>> getQueryCacheStatistics();
 }
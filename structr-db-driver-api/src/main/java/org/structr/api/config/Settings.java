@@ -64,6 +64,11 @@ public class Settings {
 	public static final Setting<String> SnapshotsPath         = new StringSetting(generalGroup,   "Paths",       "snapshot.path",              "snapshots" + File.separator, "IMPORTANT: Path is relative to base.path");
 	public static final Setting<String> LayoutsPath           = new StringSetting(generalGroup,   "Paths",       "layouts.path",               "layouts" + File.separator, "IMPORTANT: Path is relative to base.path");
 	public static final Setting<String> WebDataPath           = new StringSetting(generalGroup,   "Paths",       "data.webapp.path",           "webapp-data" + File.separator, "IMPORTANT: Path is relative to base.path");
+	public static final Setting<String> SchemaCachePath       = new StringSetting(generalGroup,   "Paths",       "schema.cache.path",          "schema-cache" + File.separator, "IMPORTANT: Path is relative to base.path");
+	public static final Setting<String> AgentJournalPath      = new StringSetting(generalGroup,   "Paths",       "agents.journal.path",        "agents" + File.separator, "IMPORTANT: Path is relative to base.path");
+	public static final Setting<String> EventLogPath          = new StringSetting(generalGroup,   "Paths",       "eventlog.path",              "eventlog" + File.separator, "IMPORTANT: Path is relative to base.path");
+	public static final Setting<String> ChangelogPath         = new StringSetting(generalGroup,   "Paths",       "changelog.path",             "changelog" + File.separator, "IMPORTANT: Path is relative to base.path");
+	public static final Setting<String> SessionsPath          = new StringSetting(generalGroup,   "Paths",       "sessions.path",              "sessions" + File.separator, "IMPORTANT: Path is relative to base.path");
 	public static final Setting<Boolean> LogSchemaOutput      = new BooleanSetting(generalGroup,  "Logging",     "NodeExtender.log",           false);
 	public static final Setting<Boolean> RequestLogging       = new BooleanSetting(generalGroup,  "Logging",     "log.requests",               false);
 	public static final Setting<String> LogPrefix             = new StringSetting(generalGroup,   "Logging",     "log.prefix",                 "structr");
@@ -92,6 +97,8 @@ public class Settings {
 	public static final Setting<Boolean> HtmlIndentation      = new BooleanSetting(serverGroup, "HTTP Settings", "html.indentation",                true);
 	public static final Setting<Boolean> WsIndentation        = new BooleanSetting(serverGroup, "HTTP Settings", "ws.indentation",                  true);
 	public static final Setting<Integer> SessionTimeout       = new IntegerSetting(serverGroup, "HTTP Settings", "application.session.timeout",     1800);
+	public static final Setting<String> SessionStore          = new StringSetting(serverGroup,  "HTTP Settings", "application.session.store",       "graph");
+	public static final Setting<Integer> SessionFlushInterval = new IntegerSetting(serverGroup, "HTTP Settings", "application.session.store.flush", 5);
 
 	public static final Setting<String> AccessControlMaxAge           = new StringSetting(serverGroup, "CORS Settings", "access.control.max.age",           "3600");
 	public static final Setting<String> AccessControlAllowMethods     = new StringSetting(serverGroup, "CORS Settings", "access.control.allow.methods",     "");
@@ -115,13 +122,27 @@ public class Settings {
 	public static final Setting<Integer> NodeCacheSize         = new IntegerSetting(databaseGroup, "Caching",             "database.cache.node.size",         100000);
 	public static final Setting<Integer> UuidCacheSize         = new IntegerSetting(databaseGroup, "Caching",             "database.cache.uuid.size",         100000);
 	public static final Setting<Integer> QueryCacheSize        = new IntegerSetting(databaseGroup, "Caching",             "database.cache.query.size",        1000);
+	public static final Setting<Integer> QueryCacheMaxRows     = new IntegerSetting(databaseGroup, "Caching",             "database.cache.query.maxrows",     1000);
+	public static final Setting<Integer> BulkWorkerThreads     = new IntegerSetting(databaseGroup, "Maintenance",         "database.bulk.worker.threads",     1);
 	public static final Setting<Boolean> CypherDebugLogging    = new BooleanSetting(databaseGroup, "Debugging",           "log.cypher.debug",                 false);
 	public static final Setting<Boolean> SyncDebugging         = new BooleanSetting(databaseGroup, "Sync debugging",      "sync.debug",                       false);
 
 	// application settings
 	public static final Setting<Integer> ResolutionDepth      = new IntegerSetting(applicationGroup, "Security",   "application.security.resolution.depth",       5);
+	public static final Setting<Integer> ResolutionCacheSize  = new IntegerSetting(applicationGroup, "Security",   "application.security.resolution.cache.size",  100000);
+	public static final Setting<Integer> AccessPathCacheSize  = new IntegerSetting(applicationGroup, "Security",   "application.security.accesspath.cache.size",  100000);
 	public static final Setting<String> OwnerlessNodes        = new StringSetting(applicationGroup,  "Security",   "application.security.ownerless.nodes",        "read");
+	public static final Setting<Integer> ExpressionCacheSize  = new IntegerSetting(applicationGroup, "Scripting",  "application.scripting.expression.cache.size", 10000);
+	public static final Setting<Integer> ScriptCacheSize      = new IntegerSetting(applicationGroup, "Scripting",  "application.scripting.script.cache.size",     10000);
+	public static final Setting<Boolean> ScriptPrecompilation = new BooleanSetting(applicationGroup, "Scripting",  "application.scripting.precompile",            false);
+	public static final Setting<Integer> ValueCacheWeight     = new IntegerSetting(applicationGroup, "Scripting",  "application.scripting.cache.maxweight",       10000000);
+	public static final Setting<Boolean> ValueCacheRefresh    = new BooleanSetting(applicationGroup, "Scripting",  "application.scripting.cache.refreshahead",    false);
+	public static final Setting<Boolean> SchemaCacheEnabled   = new BooleanSetting(applicationGroup, "Schema",     "application.schema.cache.enabled",            true);
+	public static final Setting<Integer> AgentThreads         = new IntegerSetting(applicationGroup, "Agents",     "application.agents.threads",                  10);
+	public static final Setting<Boolean> AgentJournalEnabled  = new BooleanSetting(applicationGroup, "Agents",     "application.agents.journal.enabled",          true);
+	public static final Setting<Boolean> EventLogSegmentStore = new BooleanSetting(applicationGroup, "Event Log",  "application.eventlog.segmentstore",           false);
 	public static final Setting<Boolean> ChangelogEnabled     = new BooleanSetting(applicationGroup, "Changelog",  "application.changelog.enabled",               false);
+	public static final Setting<Boolean> ChangelogFileStore   = new BooleanSetting(applicationGroup, "Changelog",  "application.changelog.segmentstore",          false);
 	public static final Setting<Boolean> FilesystemEnabled    = new BooleanSetting(applicationGroup, "Filesystem", "application.filesystem.enabled",              false);
 	public static final Setting<Boolean> UniquePaths          = new BooleanSetting(applicationGroup, "Filesystem", "application.filesystem.unique.paths",         true);
 	public static final Setting<String> DefaultChecksums      = new StringSetting(applicationGroup,  "Filesystem", "application.filesystem.checksums.default",    "md5", "List of checksums to be calculated on file creation by default.");
@@ -181,6 +202,8 @@ public class Settings {
 	public static final Setting<Boolean> HtmlUserAutocreate       = new BooleanSetting(servletsGroup, "HtmlServlet", "HtmlServlet.user.autocreate",       true);
 	public static final Setting<String> HtmlResolveProperties     = new StringSetting(servletsGroup,  "HtmlServlet", "HtmlServlet.resolveProperties",     "AbstractNode.name");
 	public static final Setting<String> HtmlCustomResponseHeaders = new TextSetting(servletsGroup,    "HtmlServlet", "HtmlServlet.customResponseHeaders", "Strict-Transport-Security:max-age=60,X-Content-Type-Options:nosniff,X-Frame-Options:SAMEORIGIN,X-XSS-Protection:1;mode=block");
+	public static final Setting<Integer> HtmlRenderCacheSize      = new IntegerSetting(servletsGroup, "HtmlServlet", "HtmlServlet.rendercache.size",      1000);
+	public static final Setting<Boolean> HtmlPrecompressedFiles   = new BooleanSetting(servletsGroup, "HtmlServlet", "HtmlServlet.precompressedfiles",    false);
 
 	public static final Setting<String> WebsocketServletPath       = new StringSetting(servletsGroup,  "WebSocketServlet", "WebSocketServlet.path",              "/structr/ws/*");
 	public static final Setting<String> WebsocketServletClass      = new StringSetting(servletsGroup,  "WebSocketServlet", "WebSocketServlet.class",             "org.structr.websocket.servlet.WebSocketServlet");
@@ -191,6 +214,8 @@ public class Settings {
 	public static final Setting<Boolean> WebsocketUserAutologin    = new BooleanSetting(servletsGroup, "WebSocketServlet", "WebSocketServlet.user.autologin",    false);
 	public static final Setting<Boolean> WebsocketUserAutocreate   = new BooleanSetting(servletsGroup, "WebSocketServlet", "WebSocketServlet.user.autocreate",   false);
 	public static final Setting<Boolean> WebsocketFrontendAccess   = new BooleanSetting(servletsGroup, "WebSocketServlet", "WebSocketServlet.frontendAccess",    false);
+	public static final Setting<Integer> WebsocketBroadcastWindow  = new IntegerSetting(servletsGroup, "WebSocketServlet", "WebSocketServlet.broadcastwindow",   50);
+	public static final Setting<Integer> WebsocketClientQueueSize  = new IntegerSetting(servletsGroup, "WebSocketServlet", "WebSocketServlet.clientqueuesize",   1000);
 
 	public static final Setting<String> CsvServletPath       = new StringSetting(servletsGroup,  "CsvServlet", "CsvServlet.path",              "/structr/csv/*");
 	public static final Setting<String> CsvServletClass      = new StringSetting(servletsGroup,  "CsvServlet", "CsvServlet.class",             "org.structr.rest.servlet.CsvServlet");
@@ -39,4 +39,35 @@ public interface QueryPredicate {
 	String getSortKey();
 	SortType getSortType();
 	boolean sortDescending();
+
+	/**
+	 * The internal id of the element after which the result should start
+	 * (keyset pagination), or null if the result starts with the first
+	 * element.
+	 *
+	 * @return the internal id or null
+	 */
+	default Long getSeekId() {
+		return null;
+	}
+
+	/**
+	 * The raw value of the sort key of the element after which the result
+	 * should start, may be null.
+	 *
+	 * @return the sort value or null
+	 */
+	default Object getSeekValue() {
+		return null;
+	}
+
+	/**
+	 * The number of elements the caller is going to read, used by the
+	 * indexing system to limit the size of a page. Return 0 if unknown.
+	 *
+	 * @return the fetch size or 0
+	 */
+	default int getFetchSize() {
+		return 0;
+	}
 }
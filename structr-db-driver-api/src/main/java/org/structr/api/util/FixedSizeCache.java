@@ -18,9 +18,12 @@
  */
 package org.structr.api.util;
 
-import java.util.Collections;
-import java.util.Map;
-import org.apache.commons.collections4.map.LRUMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 /**
  * A map-like storage structure with a fixed maximum size that
@@ -28,57 +31,387 @@ import org.apache.commons.collections4.map.LRUMap;
  * a new entry causes the map to exceed the specified maximum
  * size.
  *
+ * The cache is divided into segments that each manage their own
+ * part of the entries, so threads accessing different keys do
+ * not contend for a single lock. Lookups never block: they are
+ * served from a ConcurrentHashMap, and the recency of an entry is
+ * only updated if the lock of its segment is free. The eviction
+ * order is therefore exact for uncontended access and approximates
+ * LRU under contention.
+ *
  * @param <K>
  * @param <V>
  */
 public class FixedSizeCache<K, V> {
 
-	private Map<K, V> cache  = null;
+	private static final int MAX_SEGMENTS     = 16;
+	private static final int MIN_SEGMENT_SIZE = 256;
+
+	private final LongAdder hits              = new LongAdder();
+	private final LongAdder misses            = new LongAdder();
+	private final LongAdder evictions         = new LongAdder();
+	private Segment<K, V>[] segments          = null;
+	private int mask                          = 0;
 
 	public FixedSizeCache(final int maxSize) {
-		this.cache   = Collections.synchronizedMap(new InvalidatingLRUMap<>(maxSize));
+
+		// small caches use a single segment to keep the eviction order exact
+		int count = 1;
+		while (count < MAX_SEGMENTS && maxSize / (count * 2) >= MIN_SEGMENT_SIZE) {
+			count *= 2;
+		}
+
+		this.segments = new Segment[count];
+		this.mask     = count - 1;
+
+		for (int i=0; i<count; i++) {
+
+			// distribute the remainder so that the capacities sum up to maxSize
+			segments[i] = new Segment<>(maxSize / count + (i < maxSize % count ? 1 : 0));
+		}
+	}
+
+	public void put(final K key, final V value) {
+
+		if (key != null) {
+
+			onEvicted(segmentFor(key).put(key, value));
+		}
+	}
+
+	/**
+	 * Returns the value for the given key, or atomically stores and
+	 * returns the value created by the given function if there is none.
+	 * The function is called with the lock of the segment held, so it
+	 * should be fast and must not access this cache.
+	 *
+	 * @param key
+	 * @param mappingFunction
+	 * @return the existing or the new value
+	 */
+	public V computeIfAbsent(final K key, final Function<? super K, ? extends V> mappingFunction) {
+
+		if (key != null) {
+
+			final List<V> evicted = new LinkedList<>();
+			final V value         = segmentFor(key).computeIfAbsent(key, mappingFunction, evicted);
+
+			onEvicted(evicted);
+
+			return value;
+		}
+
+		return null;
+	}
+
+	public V get(final K key) {
+
+		if (key != null) {
+
+			final Entry<K, V> entry = segmentFor(key).get(key);
+			if (entry != null) {
+
+				hits.increment();
+				return entry.value;
+			}
+		}
+
+		misses.increment();
+
+		return null;
+	}
+
+	public void remove(final K key) {
+
+		if (key != null) {
+			segmentFor(key).remove(key);
+		}
+	}
+
+	public void clear() {
+
+		for (final Segment<K, V> segment : segments) {
+			segment.clear();
+		}
+	}
+
+	public int size() {
+
+		int size = 0;
+
+		for (final Segment<K, V> segment : segments) {
+			size += segment.size();
+		}
+
+		return size;
+	}
+
+	public boolean isEmpty() {
+
+		for (final Segment<K, V> segment : segments) {
+
+			if (segment.size() > 0) {
+				return false;
+			}
+		}
+
+		return true;
 	}
 
-	public synchronized void put(final K key, final V value) {
-		cache.put(key, value);
+	public long getHitCount() {
+		return hits.sum();
 	}
 
-	public synchronized V get(final K key) {
-		return cache.get(key);
+	public long getMissCount() {
+		return misses.sum();
 	}
 
-	public synchronized void remove(final K key) {
-		cache.remove(key);
+	public long getEvictionCount() {
+		return evictions.sum();
 	}
 
-	public synchronized void clear() {
-		cache.clear();
+	// ----- private methods -----
+	private void onEvicted(final List<V> evicted) {
+
+		if (evicted != null) {
+
+			for (final V removed : evicted) {
+
+				evictions.increment();
+
+				if (removed instanceof Cachable) {
+					((Cachable)removed).onRemoveFromCache();
+				}
+			}
+		}
 	}
 
-	public synchronized int size() {
-		return cache.size();
+	private Segment<K, V> segmentFor(final K key) {
+
+		// spread the higher bits since the segment index uses the lower bits only
+		final int hash = key.hashCode();
+
+		return segments[(hash ^ (hash >>> 16)) & mask];
 	}
 
-	public synchronized boolean isEmpty() {
-		return cache.isEmpty();
+	// ----- nested classes -----
+	private static class Entry<K, V> {
+
+		private final K key;
+		private volatile V value     = null;
+		private Entry<K, V> previous = null;
+		private Entry<K, V> next     = null;
+		private boolean removed      = false;
+
+		public Entry(final K key, final V value) {
+			this.key   = key;
+			this.value = value;
+		}
 	}
 
-	private static class InvalidatingLRUMap<K, V> extends LRUMap<K, V> {
+	/**
+	 * One part of the cache with its own lock and LRU list. The list is
+	 * only modified when the lock is held, the map can be read without.
+	 */
+	private static class Segment<K, V> {
+
+		private final ConcurrentHashMap<K, Entry<K, V>> map = new ConcurrentHashMap<>();
+		private final ReentrantLock lock                    = new ReentrantLock();
+		private Entry<K, V> head                            = null;
+		private Entry<K, V> tail                            = null;
+		private int capacity                                = 0;
 
-		public InvalidatingLRUMap(final int maxSize) {
-			super(maxSize, true);
+		public Segment(final int capacity) {
+			this.capacity = Math.max(1, capacity);
 		}
 
-		@Override
-		protected boolean removeLRU(final LinkEntry<K, V> entry) {
+		public Entry<K, V> get(final K key) {
+
+			final Entry<K, V> entry = map.get(key);
+
+			// skip the recency update instead of waiting for the lock
+			if (entry != null && lock.tryLock()) {
+
+				try {
+
+					if (!entry.removed) {
+						moveToHead(entry);
+					}
+
+				} finally {
+
+					lock.unlock();
+				}
+			}
+
+			return entry;
+		}
 
-			final V value = entry.getValue();
-			if (value != null && value instanceof Cachable) {
+		public List<V> put(final K key, final V value) {
+
+			List<V> evicted = null;
+
+			lock.lock();
+			try {
+
+				Entry<K, V> entry = map.get(key);
+				if (entry != null) {
+
+					entry.value = value;
+					moveToHead(entry);
+
+				} else {
+
+					entry = new Entry<>(key, value);
+
+					map.put(key, entry);
+					addHead(entry);
+
+					evicted = evict(null);
+				}
+
+			} finally {
+
+				lock.unlock();
+			}
+
+			// callbacks are called by the caller after the lock is released
+			return evicted;
+		}
+
+		public V computeIfAbsent(final K key, final Function<? super K, ? extends V> mappingFunction, final List<V> evicted) {
+
+			lock.lock();
+			try {
+
+				Entry<K, V> entry = map.get(key);
+				if (entry != null) {
+
+					moveToHead(entry);
+
+				} else {
+
+					entry = new Entry<>(key, mappingFunction.apply(key));
+
+					map.put(key, entry);
+					addHead(entry);
+
+					evict(evicted);
+				}
+
+				return entry.value;
+
+			} finally {
+
+				lock.unlock();
+			}
+		}
+
+		public void remove(final K key) {
+
+			lock.lock();
+			try {
+
+				final Entry<K, V> entry = map.remove(key);
+				if (entry != null) {
+
+					unlink(entry);
+				}
+
+			} finally {
+
+				lock.unlock();
+			}
+		}
+
+		public void clear() {
+
+			lock.lock();
+			try {
+
+				for (Entry<K, V> entry = head; entry != null; entry = entry.next) {
+					entry.removed = true;
+				}
+
+				map.clear();
+
+				head = null;
+				tail = null;
+
+			} finally {
+
+				lock.unlock();
+			}
+		}
+
+		public int size() {
+			return map.size();
+		}
+
+		// ----- private methods -----
+		private List<V> evict(List<V> evicted) {
+
+			while (map.size() > capacity && tail != null) {
+
+				final Entry<K, V> eldest = tail;
+
+				map.remove(eldest.key);
+				unlink(eldest);
+
+				if (evicted == null) {
+					evicted = new LinkedList<>();
+				}
+
+				evicted.add(eldest.value);
+			}
+
+			return evicted;
+		}
+
+		private void addHead(final Entry<K, V> entry) {
+
+			entry.previous = null;
+			entry.next     = head;
+
+			if (head != null) {
+				head.previous = entry;
+			}
+
+			head = entry;
+
+			if (tail == null) {
+				tail = entry;
+			}
+		}
+
+		private void moveToHead(final Entry<K, V> entry) {
+
+			if (entry != head) {
+
+				unlink(entry);
+
+				entry.removed = false;
+				addHead(entry);
+			}
+		}
+
+		private void unlink(final Entry<K, V> entry) {
+
+			if (entry.previous != null) {
+				entry.previous.next = entry.next;
+			} else {
+				head = entry.next;
+			}
 
-				((Cachable)value).onRemoveFromCache();
+			if (entry.next != null) {
+				entry.next.previous = entry.previous;
+			} else {
+				tail = entry.previous;
 			}
 
-			return true;
+			entry.previous = null;
+			entry.next     = null;
+			entry.removed  = true;
 		}
 	}
 }
@@ -18,6 +18,10 @@
  */
 package org.structr.api.util;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Assert;
 
 /**
@@ -56,4 +60,169 @@ public class FixedSizeCacheTest {
 		}
 
 	}
+
+	@org.junit.Test
+	public void testEvictionCallbackAndStatistics() {
+
+		final FixedSizeCache<Long, TestCachable> test = new FixedSizeCache<>(10);
+		final AtomicInteger removed                   = new AtomicInteger();
+
+		for (int i=0; i<15; i++) {
+			test.put(Long.valueOf(i), new TestCachable(removed));
+		}
+
+		// access the first remaining entry so it is not evicted next
+		Assert.assertNotNull("Invalid FixedSizeCache contents", test.get(5L));
+		Assert.assertNull("Invalid FixedSizeCache contents", test.get(0L));
+
+		test.put(15L, new TestCachable(removed));
+
+		Assert.assertNotNull("Recently used entry was evicted", test.get(5L));
+		Assert.assertNull("Least recently used entry was not evicted", test.get(6L));
+
+		Assert.assertEquals("Invalid number of eviction callbacks", 6, removed.get());
+		Assert.assertEquals("Invalid eviction count", 6, test.getEvictionCount());
+		Assert.assertEquals("Invalid hit count", 2, test.getHitCount());
+		Assert.assertEquals("Invalid miss count", 2, test.getMissCount());
+
+		// explicit removal does not call the callback
+		test.remove(5L);
+		test.clear();
+
+		Assert.assertEquals("Invalid number of eviction callbacks", 6, removed.get());
+		Assert.assertTrue("FixedSizeCache not empty after clear", test.isEmpty());
+	}
+
+	@org.junit.Test
+	public void testComputeIfAbsent() {
+
+		final FixedSizeCache<Long, TestCachable> test = new FixedSizeCache<>(10);
+		final AtomicInteger removed                   = new AtomicInteger();
+		final AtomicInteger created                   = new AtomicInteger();
+
+		for (int i=0; i<10; i++) {
+
+			test.computeIfAbsent(Long.valueOf(i), key -> {
+
+				created.incrementAndGet();
+				return new TestCachable(removed);
+			});
+		}
+
+		Assert.assertEquals("Invalid number of created values", 10, created.get());
+		Assert.assertEquals("Invalid FixedSizeCache size", 10, test.size());
+
+		// existing values are returned without calling the function
+		final TestCachable existing = test.get(0L);
+		final TestCachable computed = test.computeIfAbsent(0L, key -> {
+
+			created.incrementAndGet();
+			return new TestCachable(removed);
+		});
+
+		Assert.assertSame("computeIfAbsent did not return the existing value", existing, computed);
+		Assert.assertEquals("Invalid number of created values", 10, created.get());
+
+		// a new value evicts the least recently used entry (1, since 0 was accessed)
+		final TestCachable newValue = new TestCachable(removed);
+
+		Assert.assertSame("computeIfAbsent did not return the new value", newValue, test.computeIfAbsent(10L, key -> newValue));
+		Assert.assertEquals("Invalid FixedSizeCache size", 10, test.size());
+		Assert.assertNotNull("Recently used entry was evicted", test.get(0L));
+		Assert.assertNull("Least recently used entry was not evicted", test.get(1L));
+		Assert.assertSame("Invalid FixedSizeCache contents", newValue, test.get(10L));
+
+		Assert.assertEquals("Invalid number of eviction callbacks", 1, removed.get());
+		Assert.assertEquals("Invalid eviction count", 1, test.getEvictionCount());
+
+		// null keys are ignored
+		Assert.assertNull("Invalid result for null key", test.computeIfAbsent(null, key -> new TestCachable(removed)));
+		Assert.assertEquals("Invalid FixedSizeCache size", 10, test.size());
+	}
+
+	@org.junit.Test
+	public void testConcurrentComputeIfAbsent() throws InterruptedException {
+
+		final FixedSizeCache<Integer, Integer> test = new FixedSizeCache<>(10000);
+		final ExecutorService executor              = Executors.newFixedThreadPool(8);
+		final AtomicInteger created                 = new AtomicInteger();
+		final AtomicInteger errors                  = new AtomicInteger();
+
+		for (int t=0; t<8; t++) {
+
+			executor.submit(() -> {
+
+				for (int i=0; i<5000; i++) {
+
+					final Integer key   = i;
+					final Integer value = test.computeIfAbsent(key, k -> {
+
+						created.incrementAndGet();
+						return k;
+					});
+
+					if (!key.equals(value)) {
+						errors.incrementAndGet();
+					}
+				}
+			});
+		}
+
+		executor.shutdown();
+
+		Assert.assertTrue("Concurrent access did not finish", executor.awaitTermination(1, TimeUnit.MINUTES));
+		Assert.assertEquals("Invalid computeIfAbsent result", 0, errors.get());
+		Assert.assertEquals("Value was created more than once per key", 5000, created.get());
+		Assert.assertEquals("Invalid FixedSizeCache size", 5000, test.size());
+	}
+
+	@org.junit.Test
+	public void testConcurrentAccess() throws InterruptedException {
+
+		final FixedSizeCache<Integer, Integer> test = new FixedSizeCache<>(10000);
+		final ExecutorService executor              = Executors.newFixedThreadPool(8);
+		final AtomicInteger errors                  = new AtomicInteger();
+
+		for (int t=0; t<8; t++) {
+
+			final int offset = t * 100000;
+
+			executor.submit(() -> {
+
+				for (int i=0; i<100000; i++) {
+
+					final Integer key = offset + (i % 20000);
+
+					test.put(key, key);
+
+					final Integer value = test.get(key);
+					if (value != null && !value.equals(key)) {
+
+						errors.incrementAndGet();
+					}
+				}
+			});
+		}
+
+		executor.shutdown();
+
+		Assert.assertTrue("Concurrent access did not finish", executor.awaitTermination(1, TimeUnit.MINUTES));
+		Assert.assertEquals("Invalid FixedSizeCache contents", 0, errors.get());
+		Assert.assertTrue("FixedSizeCache exceeds maximum size", test.size() <= 10000);
+	}
+
+	// ----- nested classes -----
+	private static class TestCachable implements Cachable {
+
+		private AtomicInteger removed = null;
+
+		public TestCachable(final AtomicInteger removed) {
+			this.removed = removed;
+		}
+
+		@Override
+		public void onRemoveFromCache() {
+			removed.incrementAndGet();
+		}
+	}
 }
@@ -492,7 +492,13 @@ public class CloudConnection<T> extends Thread implements TransactionSource {
 		logDebug("######################## OPENING TRANSACTION " + tx + " in thread " + Thread.currentThread(), null);
 	}
 
-	public void commitTransaction() {
+	/**
+	 * Marks the current transaction as successful, it is committed in
+	 * {@link #endTransaction()}.
+	 *
+	 * @return whether the transaction could be marked as successful
+	 */
+	public boolean commitTransaction() {
 
 		if (tx != null) {
 
@@ -502,6 +508,8 @@ public class CloudConnection<T> extends Thread implements TransactionSource {
 
 				tx.success();
 
+				return true;
+
 			} catch (Throwable t) {
 
 				// do not catch specific exception only, we need to be able to shut
@@ -513,9 +521,19 @@ public class CloudConnection<T> extends Thread implements TransactionSource {
 
 			System.out.println("NO TRANSACTION!");
 		}
+
+		return false;
 	}
 
-	public void endTransaction() {
+	/**
+	 * Closes the current transaction, which commits it if it was marked
+	 * as successful.
+	 *
+	 * @return false if closing the transaction failed
+	 */
+	public boolean endTransaction() {
+
+		boolean success = true;
 
 		if (tx != null) {
 
@@ -531,12 +549,16 @@ public class CloudConnection<T> extends Thread implements TransactionSource {
 				// down the connection gracefully, so we must make sure not to be
 				// interrupted here
 				logger.warn("", t);
+
+				success = false;
 			}
 
 			tx = null;
 		}
 
 		data.clear();
+
+		return success;
 	}
 
 	public Principal getUser(String userName) {
@@ -53,6 +53,14 @@ public class CloudService extends Thread implements RunnableService {
 	 */
 	public static final int PROTOCOL_VERSION  = 4;
 
+	/**
+	 * The version of the replication protocol, negotiated with a Handshake
+	 * message after authentication. Version 1 pipelines batches over a
+	 * persistent connection, slaves without the Handshake message get one
+	 * connection per batch.
+	 */
+	public static final int REPLICATION_VERSION = 1;
+
 	public static final int CHUNK_SIZE        = 65536;
 	public static final int BUFFER_SIZE       = CHUNK_SIZE * 4;
 	public static final int LIVE_PACKET_COUNT = 200;
@@ -157,9 +165,57 @@ public class CloudService extends Thread implements RunnableService {
 	public static <T> T doRemote(final SecurityContext securityContext, final CloudTransmission<T> transmission, final CloudHost host, final CloudListener listener) throws FrameworkException {
 
 		CloudConnection<T> client   = null;
-		int maxKeyLen               = 128;
 		T remoteResult              = null;
 
+		try {
+
+			client = connect(securityContext, host, listener);
+
+			// do transmission in an authenticated and encrypted context
+			remoteResult = transmission.doRemote(client);
+
+			// wait for server to close connection here..
+			client.waitForClose(2000);
+			client.close();
+
+			// notify listener
+			if (listener != null) {
+				listener.transmissionFinished();
+			}
+
+		} catch (IOException  ioex) {
+
+			logger.warn("", ioex);
+
+			throw new FrameworkException(504, "Unable to connect to remote server: " + ioex.getMessage());
+
+		} finally {
+
+			if (client != null) {
+				client.close();
+			}
+		}
+
+		return remoteResult;
+	}
+
+	/**
+	 * Opens an authenticated and encrypted connection to the given host
+	 * and starts a transaction on the remote end. The connection stays
+	 * open until it is closed by the caller.
+	 *
+	 * @param securityContext
+	 * @param host
+	 * @param listener
+	 * @return the connection
+	 * @throws FrameworkException
+	 * @throws IOException
+	 */
+	public static <T> CloudConnection<T> connect(final SecurityContext securityContext, final CloudHost host, final CloudListener listener) throws FrameworkException, IOException {
+
+		final CloudConnection<T> client = new CloudConnection(securityContext, new Socket(host.getHostName(), host.getPort()), listener);
+		int maxKeyLen                   = 128;
+
 		// obtain max. encryption key length
 		try {
 			maxKeyLen = Cipher.getMaxAllowedKeyLength(CloudService.STREAM_CIPHER);
@@ -169,7 +225,6 @@ public class CloudService extends Thread implements RunnableService {
 
 		try {
 
-			client = new CloudConnection(securityContext, new Socket(host.getHostName(), host.getPort()), listener);
 			client.start();
 
 			// notify listener
@@ -188,32 +243,13 @@ public class CloudService extends Thread implements RunnableService {
 
 			client.waitForAuthentication();
 
-			// do transmission in an authenticated and encrypted context
-			remoteResult = transmission.doRemote(client);
+		} catch (FrameworkException | IOException ex) {
 
-			// wait for server to close connection here..
-			client.waitForClose(2000);
 			client.close();
-
-			// notify listener
-			if (listener != null) {
-				listener.transmissionFinished();
-			}
-
-		} catch (IOException  ioex) {
-
-			logger.warn("", ioex);
-
-			throw new FrameworkException(504, "Unable to connect to remote server: " + ioex.getMessage());
-
-		} finally {
-
-			if (client != null) {
-				client.close();
-			}
+			throw ex;
 		}
 
-		return remoteResult;
+		return client;
 	}
 
 	public static byte[] trimToSize(final byte[] source, final int maxKeyLengthBits) {
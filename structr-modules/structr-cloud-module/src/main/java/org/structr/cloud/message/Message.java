@@ -35,8 +35,10 @@ import org.structr.api.graph.PropertyContainer;
 import org.structr.api.graph.Relationship;
 import org.structr.cloud.CloudConnection;
 import org.structr.cloud.CloudListener;
+import org.structr.cloud.sync.Commit;
 import org.structr.cloud.sync.Diff;
 import org.structr.cloud.sync.EndOfSync;
+import org.structr.cloud.sync.Handshake;
 import org.structr.cloud.sync.Ping;
 import org.structr.cloud.sync.ReplicationStatus;
 import org.structr.cloud.sync.Synchronize;
@@ -61,6 +63,7 @@ public abstract class Message<T> {
 		typeMap.put(AuthenticationRequest.class.getSimpleName(),     AuthenticationRequest.class);
 		typeMap.put(AuthenticationResponse.class.getSimpleName(),    AuthenticationResponse.class);
 		typeMap.put(Begin.class.getSimpleName(),                     Begin.class);
+		typeMap.put(Commit.class.getSimpleName(),                    Commit.class);
 		typeMap.put(Crypt.class.getSimpleName(),                     Crypt.class);
 		typeMap.put(Delete.class.getSimpleName(),                    Delete.class);
 		typeMap.put(Diff.class.getSimpleName(),                      Diff.class);
@@ -71,6 +74,7 @@ public abstract class Message<T> {
 		typeMap.put(FileNodeDataContainer.class.getSimpleName(),     FileNodeDataContainer.class);
 		typeMap.put(FileNodeEndChunk.class.getSimpleName(),          FileNodeEndChunk.class);
 		typeMap.put(Finish.class.getSimpleName(),                    Finish.class);
+		typeMap.put(Handshake.class.getSimpleName(),                 Handshake.class);
 		typeMap.put(ListSyncables.class.getSimpleName(),             ListSyncables.class);
 		typeMap.put(NodeDataContainer.class.getSimpleName(),         NodeDataContainer.class);
 		typeMap.put(Ping.class.getSimpleName(),                      Ping.class);
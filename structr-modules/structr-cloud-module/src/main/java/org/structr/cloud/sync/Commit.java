@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.cloud.sync;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.structr.cloud.CloudConnection;
+import org.structr.cloud.CloudListener;
+import org.structr.cloud.message.Message;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.SyncCommand;
+
+/**
+ * Commits the transactions that were received over a persistent
+ * replication connection and stores the last sync timestamp of the
+ * master afterwards. The message is sent back to the master as an
+ * acknowledgement, the connection stays open. If the transactions can not
+ * be committed, no acknowledgement is sent and the connection is closed.
+ *
+ *
+ */
+public class Commit extends Message<Commit> {
+
+	private String masterId = null;
+	private long sequence   = 0L;
+	private long lastSync   = 0L;
+
+	public Commit() {}
+
+	public Commit(final String masterId, final long sequence, final long lastSync) {
+
+		this.masterId = masterId;
+		this.sequence = sequence;
+		this.lastSync = lastSync;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public long getLastSync() {
+		return lastSync;
+	}
+
+	@Override
+	public void onRequest(CloudConnection serverConnection) throws IOException, FrameworkException {
+
+		final boolean success   = serverConnection.commitTransaction();
+		final boolean committed = serverConnection.endTransaction();
+
+		if (!success || !committed) {
+
+			// without an acknowledgement, the master sends the transactions
+			// again after reconnecting, and the following batches must not
+			// be committed before them
+			serverConnection.close();
+
+			throw new FrameworkException(500, "Unable to commit replicated transactions of master " + masterId + " up to sequence " + sequence);
+		}
+
+		serverConnection.beginTransaction();
+
+		// this is not an error, we want the sync time for the
+		// given MASTER, since a slave can have multiple masters
+		ReplicationPositions.set(masterId, lastSync);
+
+		serverConnection.send(this);
+	}
+
+	@Override
+	public void onResponse(CloudConnection clientConnection) throws IOException, FrameworkException {
+
+		// the master does not need a transaction while waiting for acknowledgements
+		clientConnection.endTransaction();
+
+		final CloudListener listener = clientConnection.getListener();
+		if (listener instanceof ReplicationListener) {
+
+			((ReplicationListener)listener).transactionsCommitted(sequence, lastSync);
+		}
+	}
+
+	@Override
+	public void afterSend(CloudConnection connection) {
+	}
+
+	@Override
+	protected void deserializeFrom(DataInputStream inputStream) throws IOException {
+
+		this.masterId = (String)SyncCommand.deserialize(inputStream);
+		this.sequence = (Long)SyncCommand.deserialize(inputStream);
+		this.lastSync = (Long)SyncCommand.deserialize(inputStream);
+	}
+
+	@Override
+	protected void serializeTo(DataOutputStream outputStream) throws IOException {
+
+		SyncCommand.serialize(outputStream, masterId);
+		SyncCommand.serialize(outputStream, sequence);
+		SyncCommand.serialize(outputStream, lastSync);
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.cloud.sync;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.structr.cloud.CloudConnection;
+import org.structr.cloud.CloudService;
+import org.structr.cloud.message.Message;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.SyncCommand;
+
+/**
+ * Negotiates the replication protocol version after authentication. The
+ * slave answers with the highest version that both ends support. Slaves
+ * that do not know this message close the connection, the master then
+ * falls back to one connection per batch.
+ *
+ *
+ */
+public class Handshake extends Message<Handshake> {
+
+	private int version = 0;
+
+	public Handshake() {}
+
+	public Handshake(final int version) {
+		this.version = version;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	@Override
+	public void onRequest(CloudConnection serverConnection) throws IOException, FrameworkException {
+
+		this.version = Math.min(version, CloudService.REPLICATION_VERSION);
+
+		serverConnection.send(this);
+	}
+
+	@Override
+	public void onResponse(CloudConnection clientConnection) throws IOException, FrameworkException {
+		clientConnection.setPayload(this);
+	}
+
+	@Override
+	public void afterSend(CloudConnection connection) {
+	}
+
+	@Override
+	protected void deserializeFrom(DataInputStream inputStream) throws IOException {
+		this.version = (Integer)SyncCommand.deserialize(inputStream);
+	}
+
+	@Override
+	protected void serializeTo(DataOutputStream outputStream) throws IOException {
+		SyncCommand.serialize(outputStream, version);
+	}
+}
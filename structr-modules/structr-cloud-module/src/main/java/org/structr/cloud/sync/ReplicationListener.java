@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.cloud.sync;
+
+import org.structr.cloud.CloudListener;
+
+/**
+ * Listener interface that is notified when a replication slave
+ * has committed the transactions sent over a persistent connection.
+ *
+ *
+ */
+public interface ReplicationListener extends CloudListener {
+
+	/**
+	 * Called when the remote end has committed all transactions
+	 * up to and including the given sequence number.
+	 *
+	 * @param sequence
+	 * @param timestamp
+	 */
+	public void transactionsCommitted(final long sequence, final long timestamp);
+}
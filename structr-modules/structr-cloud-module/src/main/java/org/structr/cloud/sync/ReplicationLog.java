@@ -0,0 +1,646 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.cloud.sync;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.core.GraphObject;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.property.PropertyKey;
+
+/**
+ * Durable log of the transactions that need to be replicated.
+ *
+ * Each committed transaction is appended to a journal file as a list of
+ * changes (UUID, kind of change and modified property keys), the data
+ * itself is read from the database when the transaction is transmitted.
+ * Every replication host has a cursor that points to the last transaction
+ * it has acknowledged. The cursors are stored in a separate file, so that
+ * replication resumes where it stopped after a restart. Transactions that
+ * were acknowledged by all hosts are removed from memory and, when the
+ * journal grows too large, from the journal file.
+ *
+ * Hosts without a cursor receive a full update transmission instead of the
+ * journaled transactions, so they do not keep transactions in the log. A
+ * host that falls behind by more than maxPending transactions loses its
+ * cursor and is resynchronized with a full update as well, so that a host
+ * that is unreachable for a long time cannot make the log grow without bounds.
+ */
+public class ReplicationLog {
+
+	private static final Logger logger       = LoggerFactory.getLogger(ReplicationLog.class.getName());
+	private static final String JOURNAL_FILE = "replication.log";
+	private static final String CURSOR_FILE  = "replication.cursors";
+	private static final long MAX_PENDING    = 100000L;
+	private static final byte NODE           = 'N';
+	private static final byte RELATIONSHIP   = 'R';
+	private static final byte DELETE         = 'D';
+
+	private final ConcurrentSkipListMap<Long, Entry> entries = new ConcurrentSkipListMap<>();
+	private final Map<String, Cursor> cursors               = new ConcurrentHashMap<>();
+	private final Map<String, Long> updates                 = new ConcurrentHashMap<>();
+	private final Set<String> hosts                         = ConcurrentHashMap.newKeySet();
+	private DataOutputStream out                            = null;
+	private Path journalFile                                = null;
+	private Path cursorFile                                 = null;
+	private long nextSequence                               = 1L;
+	private long lastTimestamp                              = 0L;
+	private long maxPending                                 = MAX_PENDING;
+	private long records                                    = 0L;
+
+	public ReplicationLog(final Path directory) throws IOException {
+		this(directory, MAX_PENDING);
+	}
+
+	public ReplicationLog(final Path directory, final long maxPending) throws IOException {
+
+		Files.createDirectories(directory);
+
+		this.journalFile = directory.resolve(JOURNAL_FILE);
+		this.cursorFile  = directory.resolve(CURSOR_FILE);
+		this.maxPending  = maxPending;
+
+		loadCursors();
+		replay();
+	}
+
+	/**
+	 * Appends the given transaction to the log.
+	 *
+	 * @param modificationEvents the modifications of the transaction
+	 * @return the new entry
+	 * @throws IOException
+	 */
+	public Entry append(final Collection<ModificationEvent> modificationEvents) throws IOException {
+
+		final List<Change> changes = new ArrayList<>();
+
+		for (final ModificationEvent event : modificationEvents) {
+
+			if (event.isDeleted()) {
+
+				final String id = event.getRemovedProperties().get(GraphObject.id);
+				if (id != null) {
+
+					changes.add(new Change(DELETE, id, null));
+				}
+
+			} else {
+
+				final Set<String> propertyKeys = new LinkedHashSet<>();
+
+				// collect all possibly modified property keys
+				mapPropertyKeysToStrings(propertyKeys, event.getNewProperties().keySet());
+				mapPropertyKeysToStrings(propertyKeys, event.getModifiedProperties().keySet());
+				mapPropertyKeysToStrings(propertyKeys, event.getRemovedProperties().keySet());
+
+				changes.add(new Change(event.isNode() ? NODE : RELATIONSHIP, event.getUuid(), propertyKeys));
+			}
+		}
+
+		return append(changes);
+	}
+
+	Entry append(final List<Change> changes) throws IOException {
+
+		synchronized (this) {
+
+			final Entry entry = new Entry(nextSequence++, System.currentTimeMillis(), changes);
+
+			if (out == null) {
+				out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(journalFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+			}
+
+			write(out, entry);
+			out.flush();
+
+			records++;
+			lastTimestamp = entry.timestamp;
+
+			entries.put(entry.sequence, entry);
+
+			// wake up waiting replicators
+			notifyAll();
+
+			// drop the cursors of hosts that fell too far behind
+			prune();
+
+			return entry;
+		}
+	}
+
+	/**
+	 * Returns up to maxCount entries after the given sequence number,
+	 * waiting at most timeout milliseconds if there are none.
+	 *
+	 * @param sequence the sequence number of the last entry that was read
+	 * @param maxCount
+	 * @param timeout
+	 * @return the entries
+	 * @throws InterruptedException
+	 */
+	public List<Entry> read(final long sequence, final int maxCount, final long timeout) throws InterruptedException {
+
+		synchronized (this) {
+
+			if (entries.higherKey(sequence) == null) {
+				wait(timeout);
+			}
+		}
+
+		final List<Entry> result = new ArrayList<>();
+
+		for (final Entry entry : entries.tailMap(sequence, false).values()) {
+
+			if (result.size() >= maxCount) {
+				break;
+			}
+
+			result.add(entry);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Registers a replication host, entries are kept until they were
+	 * acknowledged by all registered hosts.
+	 *
+	 * @param host
+	 */
+	public void registerHost(final String host) {
+		hosts.add(host);
+	}
+
+	public Cursor getCursor(final String host) {
+		return cursors.get(host);
+	}
+
+	/**
+	 * Moves the cursor of the given host to the given position.
+	 *
+	 * @param host
+	 * @param sequence
+	 * @param timestamp
+	 * @throws IOException
+	 */
+	public synchronized void acknowledge(final String host, final long sequence, final long timestamp) throws IOException {
+
+		cursors.put(host, new Cursor(sequence, timestamp));
+		updates.remove(host);
+
+		storeCursors();
+		prune();
+	}
+
+	/**
+	 * Moves the cursor of the given host forward to the given position,
+	 * unless the cursor was dropped in the meantime.
+	 *
+	 * @param host
+	 * @param sequence
+	 * @param timestamp
+	 * @return whether the cursor was moved
+	 * @throws IOException
+	 */
+	public synchronized boolean advance(final String host, final long sequence, final long timestamp) throws IOException {
+
+		final Cursor cursor = cursors.get(host);
+		if (cursor == null || cursor.isReset() || cursor.sequence >= sequence) {
+
+			return false;
+		}
+
+		acknowledge(host, sequence, timestamp);
+
+		return true;
+	}
+
+	/**
+	 * Marks the start of a full update transmission to the given host,
+	 * the transactions after the returned sequence number are kept until
+	 * the update is acknowledged or ended.
+	 *
+	 * @param host
+	 * @return the sequence number of the last transaction in the update
+	 */
+	public synchronized long beginUpdate(final String host) {
+
+		final long sequence = getHeadSequence();
+
+		updates.put(host, sequence);
+
+		return sequence;
+	}
+
+	public synchronized void endUpdate(final String host) {
+		updates.remove(host);
+	}
+
+	public synchronized long getHeadSequence() {
+		return nextSequence - 1;
+	}
+
+	public synchronized long getLastTimestamp() {
+		return lastTimestamp;
+	}
+
+	public int getPendingCount(final long sequence) {
+		return entries.tailMap(sequence, false).size();
+	}
+
+	public Entry getFirstPendingEntry(final long sequence) {
+
+		final Map.Entry<Long, Entry> entry = entries.higherEntry(sequence);
+		if (entry != null) {
+
+			return entry.getValue();
+		}
+
+		return null;
+	}
+
+	public synchronized void close() throws IOException {
+
+		if (out != null) {
+
+			out.close();
+			out = null;
+		}
+
+		// wake up waiting replicators
+		notifyAll();
+	}
+
+	// ----- private methods -----
+	private void prune() throws IOException {
+
+		final long head = getHeadSequence();
+		boolean dropped = false;
+		long minimum    = head;
+
+		for (final String host : hosts) {
+
+			final Cursor cursor = cursors.get(host);
+
+			// hosts without a cursor receive a full update
+			if (cursor != null && !cursor.isReset()) {
+
+				if (head - cursor.sequence > maxPending) {
+
+					logger.warn("Replication host {} is {} transactions behind, a full update is required", host, head - cursor.sequence);
+
+					cursors.put(host, new Cursor(0L, 0L));
+					dropped = true;
+
+				} else {
+
+					minimum = Math.min(minimum, cursor.sequence);
+				}
+			}
+		}
+
+		// keep the transactions that follow a running full update
+		for (final long sequence : updates.values()) {
+			minimum = Math.min(minimum, sequence);
+		}
+
+		if (hosts.isEmpty()) {
+			minimum = Math.max(0L, head - maxPending);
+		}
+
+		entries.headMap(minimum, true).clear();
+
+		if (dropped) {
+			storeCursors();
+		}
+
+		if (records > 1000 && records > 2 * entries.size()) {
+			compact();
+		}
+	}
+
+	private void compact() throws IOException {
+
+		final Path tmp = journalFile.resolveSibling(JOURNAL_FILE + ".tmp");
+
+		if (out != null) {
+
+			out.close();
+			out = null;
+		}
+
+		try (final DataOutputStream tmpOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+
+			for (final Entry entry : entries.values()) {
+				write(tmpOut, entry);
+			}
+		}
+
+		Files.move(tmp, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		records = entries.size();
+	}
+
+	private void replay() throws IOException {
+
+		if (!Files.exists(journalFile)) {
+			return;
+		}
+
+		long validSize = 0L;
+
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalFile)))) {
+
+			while (true) {
+
+				final Entry entry = read(in);
+
+				entries.put(entry.sequence, entry);
+
+				nextSequence  = entry.sequence + 1;
+				lastTimestamp = entry.timestamp;
+				validSize    += entry.size;
+
+				records++;
+			}
+
+		} catch (EOFException eof) {
+			// end of journal or incomplete entry
+		}
+
+		// discard incomplete entry at the end of the journal
+		if (Files.size(journalFile) > validSize) {
+			compact();
+		}
+	}
+
+	private void loadCursors() throws IOException {
+
+		if (!Files.exists(cursorFile)) {
+			return;
+		}
+
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cursorFile)))) {
+
+			final int count = in.readInt();
+
+			for (int i=0; i<count; i++) {
+
+				final String host    = in.readUTF();
+				final long sequence  = in.readLong();
+				final long timestamp = in.readLong();
+
+				cursors.put(host, new Cursor(sequence, timestamp));
+
+				nextSequence = Math.max(nextSequence, sequence + 1);
+			}
+
+		} catch (EOFException eof) {
+			// incomplete file, ignore
+		}
+	}
+
+	private void storeCursors() throws IOException {
+
+		final Path tmp = cursorFile.resolveSibling(CURSOR_FILE + ".tmp");
+
+		try (final DataOutputStream cursorOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+
+			cursorOut.writeInt(cursors.size());
+
+			for (final Map.Entry<String, Cursor> entry : cursors.entrySet()) {
+
+				cursorOut.writeUTF(entry.getKey());
+				cursorOut.writeLong(entry.getValue().sequence);
+				cursorOut.writeLong(entry.getValue().timestamp);
+			}
+		}
+
+		Files.move(tmp, cursorFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void write(final DataOutputStream out, final Entry entry) throws IOException {
+
+		out.writeLong(entry.sequence);
+		out.writeLong(entry.timestamp);
+		out.writeInt(entry.changes.size());
+
+		for (final Change change : entry.changes) {
+
+			out.writeByte(change.type);
+			out.writeUTF(change.uuid);
+
+			if (change.propertyKeys != null) {
+
+				out.writeInt(change.propertyKeys.size());
+
+				for (final String key : change.propertyKeys) {
+					out.writeUTF(key);
+				}
+
+			} else {
+
+				out.writeInt(-1);
+			}
+		}
+	}
+
+	private Entry read(final DataInputStream in) throws IOException {
+
+		final long sequence        = in.readLong();
+		final long timestamp       = in.readLong();
+		final int count            = in.readInt();
+		final List<Change> changes = new ArrayList<>(count);
+		long size                  = 20;
+
+		for (int i=0; i<count; i++) {
+
+			final byte type    = in.readByte();
+			final String uuid  = in.readUTF();
+			final int keyCount = in.readInt();
+			Set<String> keys   = null;
+
+			size += 1 + utfLength(uuid) + 4;
+
+			if (keyCount >= 0) {
+
+				keys = new LinkedHashSet<>();
+
+				for (int j=0; j<keyCount; j++) {
+
+					final String key = in.readUTF();
+
+					keys.add(key);
+					size += utfLength(key);
+				}
+			}
+
+			changes.add(new Change(type, uuid, keys));
+		}
+
+		final Entry entry = new Entry(sequence, timestamp, changes);
+
+		entry.size = size;
+
+		return entry;
+	}
+
+	private long utfLength(final String value) throws IOException {
+
+		// length of the modified UTF-8 encoding plus the two length bytes
+		long length = 2;
+
+		for (int i=0; i<value.length(); i++) {
+
+			final char c = value.charAt(i);
+
+			if (c >= 0x0001 && c <= 0x007F) {
+				length += 1;
+			} else if (c > 0x07FF) {
+				length += 3;
+			} else {
+				length += 2;
+			}
+		}
+
+		return length;
+	}
+
+	private void mapPropertyKeysToStrings(final Set<String> propertyKeys, final Set<PropertyKey> source) {
+
+		for (final PropertyKey key : source) {
+			propertyKeys.add(key.dbName());
+		}
+	}
+
+	// ----- nested classes -----
+	/**
+	 * A replicated transaction.
+	 */
+	public static class Entry {
+
+		private List<Change> changes = null;
+		private long sequence        = 0L;
+		private long timestamp       = 0L;
+		private long size            = 0L;
+
+		public Entry(final long sequence, final long timestamp, final List<Change> changes) {
+
+			this.sequence  = sequence;
+			this.timestamp = timestamp;
+			this.changes   = changes;
+		}
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public List<Change> getChanges() {
+			return changes;
+		}
+	}
+
+	/**
+	 * A single change of a replicated transaction.
+	 */
+	public static class Change {
+
+		private Set<String> propertyKeys = null;
+		private String uuid              = null;
+		private byte type                = 0;
+
+		public Change(final byte type, final String uuid, final Set<String> propertyKeys) {
+
+			this.type         = type;
+			this.uuid         = uuid;
+			this.propertyKeys = propertyKeys;
+		}
+
+		public String getUuid() {
+			return uuid;
+		}
+
+		public Set<String> getPropertyKeys() {
+			return propertyKeys;
+		}
+
+		public boolean isDeleted() {
+			return type == DELETE;
+		}
+
+		public boolean isNode() {
+			return type == NODE;
+		}
+	}
+
+	/**
+	 * The position of a replication host in the log.
+	 */
+	public static class Cursor {
+
+		private long sequence  = 0L;
+		private long timestamp = 0L;
+
+		public Cursor(final long sequence, final long timestamp) {
+
+			this.sequence  = sequence;
+			this.timestamp = timestamp;
+		}
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * A reset cursor has no valid position, the host needs a full update.
+		 *
+		 * @return whether this cursor was reset
+		 */
+		public boolean isReset() {
+			return timestamp == 0L;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.cloud.sync;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+import org.structr.core.app.StructrApp;
+
+/**
+ * The last sync timestamps of the masters of a replication slave.
+ *
+ * The timestamps are stored in a small file in sync.path instead of the
+ * global settings, which rewrite graph.properties on every change. A
+ * master without a stored position falls back to the global setting
+ * that was written by earlier versions.
+ *
+ *
+ */
+public class ReplicationPositions {
+
+	private static final Logger logger               = LoggerFactory.getLogger(ReplicationPositions.class.getName());
+	private static final String POSITION_FILE        = "replication.positions";
+	private static final Map<String, Long> positions = new LinkedHashMap<>();
+	private static Path positionFile                 = null;
+
+	/**
+	 * Returns the last sync timestamp of the given master.
+	 *
+	 * @param masterId
+	 * @return the last sync timestamp, or 0 if the master never synced
+	 */
+	public static synchronized long get(final String masterId) {
+
+		load();
+
+		final Long position = positions.get(masterId);
+		if (position != null) {
+
+			return position;
+		}
+
+		return StructrApp.getInstance().getGlobalSetting(masterId, 0L);
+	}
+
+	/**
+	 * Stores the last sync timestamp of the given master.
+	 *
+	 * @param masterId
+	 * @param lastSync
+	 */
+	public static synchronized void set(final String masterId, final long lastSync) {
+
+		load();
+
+		positions.put(masterId, lastSync);
+
+		try {
+
+			store();
+
+		} catch (IOException ioex) {
+			logger.warn("Unable to store replication position of master {}: {}", new Object[] { masterId, ioex.getMessage() } );
+		}
+	}
+
+	// ----- private static methods -----
+	private static void load() {
+
+		// stored relative to base path, like the replication log
+		final Path file = Paths.get(Settings.getBasePath(), Settings.getOrCreateStringSetting("sync", "path").getValue("sync")).resolve(POSITION_FILE);
+
+		if (file.equals(positionFile)) {
+			return;
+		}
+
+		positionFile = file;
+		positions.clear();
+
+		if (!Files.exists(positionFile)) {
+			return;
+		}
+
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(positionFile)))) {
+
+			final int count = in.readInt();
+
+			for (int i=0; i<count; i++) {
+
+				final String masterId = in.readUTF();
+				final long lastSync   = in.readLong();
+
+				positions.put(masterId, lastSync);
+			}
+
+		} catch (EOFException eof) {
+
+			// incomplete file, ignore
+
+		} catch (IOException ioex) {
+			logger.warn("Unable to read replication positions: {}", ioex.getMessage());
+		}
+	}
+
+	private static void store() throws IOException {
+
+		final Path tmp = positionFile.resolveSibling(POSITION_FILE + ".tmp");
+
+		Files.createDirectories(positionFile.getParent());
+
+		try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+
+			out.writeInt(positions.size());
+
+			for (final Map.Entry<String, Long> entry : positions.entrySet()) {
+
+				out.writeUTF(entry.getKey());
+				out.writeLong(entry.getValue());
+			}
+		}
+
+		Files.move(tmp, positionFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.cloud.sync;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.structr.api.service.Command;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.graph.MaintenanceCommand;
+
+/**
+ * Maintenance command that returns the replication state of each
+ * replication host, i.e. the number of pending transactions, the
+ * replication lag and the number of failed transmissions.
+ */
+public class ReplicationStatisticsCommand extends Command implements MaintenanceCommand {
+
+	private final Map<String, Object> statistics = new LinkedHashMap<>();
+
+	@Override
+	public Class getServiceClass() {
+		return SyncService.class;
+	}
+
+	@Override
+	public void execute(final Map<String, Object> attributes) throws FrameworkException {
+
+		statistics.clear();
+
+		final SyncService syncService = Services.getInstance().getService(SyncService.class);
+		if (syncService != null) {
+
+			statistics.putAll(syncService.getStatistics());
+		}
+	}
+
+	@Override
+	public Object getCommandResult() {
+		return statistics;
+	}
+
+	@Override
+	public boolean requiresEnclosingTransaction() {
+		return false;
+	}
+
+	@Override
+	public boolean requiresFlushingOfCaches() {
+		return false;
+	}
+}
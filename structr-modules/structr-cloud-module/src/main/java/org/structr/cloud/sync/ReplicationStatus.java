@@ -86,13 +86,13 @@ public class ReplicationStatus extends Message<ReplicationStatus> {
 
 			// this is not an error, we want the sync time for the
 			// given MASTER, since a slave can have multiple masters
-			app.setGlobalSetting(masterId, lastSync);
+			ReplicationPositions.set(masterId, lastSync);
 
 		} else {
 
 			// this is not an error, we want the sync time for the
 			// given MASTER, since a slave can have multiple masters
-			this.lastSync = app.getGlobalSetting(masterId, 0L);
+			this.lastSync = ReplicationPositions.get(masterId);
 			this.role     = Settings.getOrCreateStringSetting("sync", "role").getValue("slave");
 		}
 
@@ -18,14 +18,15 @@
  */
 package org.structr.cloud.sync;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Map;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +34,7 @@ import org.structr.api.config.Settings;
 import org.structr.api.service.Command;
 import org.structr.api.service.RunnableService;
 import org.structr.api.service.StructrServices;
+import org.structr.cloud.CloudConnection;
 import org.structr.cloud.CloudHost;
 import org.structr.cloud.CloudListener;
 import org.structr.cloud.CloudService;
@@ -41,11 +43,11 @@ import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.StructrTransactionListener;
 import org.structr.core.TransactionSource;
-import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
 import org.structr.core.graph.ModificationEvent;
 import org.structr.core.graph.TransactionCommand;
 import org.structr.core.graph.Tx;
+import org.structr.rest.resource.MaintenanceParameterResource;
 
 /**
  *
@@ -53,21 +55,29 @@ import org.structr.core.graph.Tx;
  */
 public class SyncService extends Thread  implements RunnableService, StructrTransactionListener {
 
-	private static final BlockingQueue<List<ModificationEvent>> syncQueue = new ArrayBlockingQueue<>(1000);
-	private static final Logger logger                                    = LoggerFactory.getLogger(CloudService.class.getName());
+	private static final Logger logger = LoggerFactory.getLogger(CloudService.class.getName());
+
+	static {
+
+		MaintenanceParameterResource.registerMaintenanceCommand("replicationStatistics", ReplicationStatisticsCommand.class);
+	}
 
 	public enum SyncRole {
 		master,
 		slave
 	};
 
-	private final List<SyncHostInfo> syncHosts = new LinkedList<>();
-	private boolean running                    = false;
-	private boolean active                     = false;
-	private String allowedMaster               = null;
-	private SyncRole role                      = null;
-	private int requiredSyncCount              = 0;
-	private int retryInterval                  = 60;
+	private final List<HostReplicator> replicators = new LinkedList<>();
+	private final List<SyncHostInfo> syncHosts     = new LinkedList<>();
+	private ReplicationLog replicationLog          = null;
+	private boolean running                        = false;
+	private boolean active                         = false;
+	private String allowedMaster                   = null;
+	private SyncRole role                          = null;
+	private int requiredSyncCount                  = 0;
+	private int retryInterval                      = 60;
+	private int pipelineDepth                      = 4;
+	private int batchSize                          = 100;
 
 	public SyncService() {
 
@@ -96,6 +106,9 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 
 			final String minimum = Settings.getOrCreateStringSetting("sync.minimum").getValue("1");
 			final String retry   = Settings.getOrCreateStringSetting("sync.retry").getValue("60");
+			final String batch   = Settings.getOrCreateStringSetting("sync.batchsize").getValue("100");
+			final String depth   = Settings.getOrCreateStringSetting("sync.pipeline").getValue("4");
+			final String pending = Settings.getOrCreateStringSetting("sync.maxpending").getValue("100000");
 			final String hosts   = Settings.getOrCreateStringSetting("sync.hosts").getValue();
 			final String users   = Settings.getOrCreateStringSetting("sync.users").getValue();
 			final String pwds    = Settings.getOrCreateStringSetting("sync.passwords").getValue();
@@ -159,6 +172,23 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 					logger.info("Adding slave host {}, user {}", new Object[] { syncHostInfo, port, user } );
 				}
 
+				if (StringUtils.isNotBlank(batch)) {
+					this.batchSize = Integer.valueOf(batch);
+				}
+
+				if (StringUtils.isNotBlank(depth)) {
+					this.pipelineDepth = Math.max(1, Integer.valueOf(depth));
+				}
+
+				try {
+
+					// open replication log, stored relative to base path
+					replicationLog = new ReplicationLog(Paths.get(Settings.getBasePath(), Settings.getOrCreateStringSetting("sync", "path").getValue("sync")), Long.valueOf(pending));
+
+				} catch (IOException ioex) {
+					throw new IllegalStateException("unable to open replication log, please check sync.path in structr.conf", ioex);
+				}
+
 				try {
 					// check and initialize sync hosts and policy
 					initializeSyncHosts(minimum);
@@ -183,7 +213,22 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 
 	@Override
 	public void shutdown() {
+
 		running = false;
+
+		for (final HostReplicator replicator : replicators) {
+			replicator.interrupt();
+		}
+
+		if (replicationLog != null) {
+
+			try {
+				replicationLog.close();
+
+			} catch (IOException ioex) {
+				logger.warn("Unable to close replication log: {}", ioex.getMessage());
+			}
+		}
 	}
 
 	@Override
@@ -205,57 +250,26 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 	@Override
 	public void run() {
 
-		while (running) {
-
-			try {
-
-				// wait to be notified when new data is available
-				synchronized (syncQueue) {
-
-					while (syncQueue.isEmpty()) {
-						syncQueue.wait();
-					}
-				}
-
-				// load the head of the queue without removing it
-				// (will be removed later if sync was successful)
-				final List<ModificationEvent> transaction = syncQueue.peek();
-				if (transaction != null) {
-
-					// define success as "at least one sync process was successful"
-					final SyncListener successListener = new SyncListener(requiredSyncCount);
+		if (replicationLog != null) {
 
-					final SyncTransmission transmission = new SyncTransmission(transaction);
+			// replicate to all hosts in parallel, each host has
+			// its own position in the log and retries on its own
+			for (final SyncHostInfo host : syncHosts) {
 
-					for (final SyncHostInfo info : syncHosts) {
+				final HostReplicator replicator = new HostReplicator(host);
 
-						try {
-
-							CloudService.doRemote(SecurityContext.getSuperUserInstance(), transmission, info, successListener);
-
-						} catch (FrameworkException fex) {
-							logger.warn("Unable to synchronize with host {}: {}", new Object[] { info, fex.getMessage() } );
-						}
-					}
-
-					// remove sync changeset from queue when sync
-					// was successful (see above)
-					if (successListener.wasSuccessful()) {
-
-						syncQueue.remove(transaction);
-
-					} else {
+				replicators.add(replicator);
+				replicator.start();
+			}
 
-						logger.warn("Unable to synchronize with required number of hosts, retrying in {} seconds..", retryInterval);
+			for (final HostReplicator replicator : replicators) {
 
-						// sleep
-						try { Thread.sleep(retryInterval * 1000); } catch (Throwable t) {}
-					}
+				try {
+					replicator.join();
 
+				} catch (InterruptedException iex) {
+					logger.warn("", iex);
 				}
-
-			} catch (Throwable t) {
-				logger.warn("", t);
 			}
 		}
 	}
@@ -304,32 +318,33 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 		}
 
 		// only react if desired
-		if (active && running && !modificationEvents.isEmpty()) {
+		if (active && running && replicationLog != null && !modificationEvents.isEmpty()) {
 
 			try {
-				// store last sync timestamp for the given instance ID
-				final App app = StructrApp.getInstance();
-				app.setGlobalSetting(app.getInstanceId() + ".lastModified", System.currentTimeMillis());
 
-			} catch (FrameworkException fex) {
+				// store transaction in replication log and return quickly
+				replicationLog.append(modificationEvents);
 
-				logger.error("Unable to store last modified date for current instance", fex);
+			} catch (IOException ioex) {
+				logger.error("Unable to store transaction in replication log", ioex);
 			}
+		}
+	}
 
+	/**
+	 * Returns the replication state for each replication host.
+	 *
+	 * @return a map of host name to replication state
+	 */
+	public Map<String, Object> getStatistics() {
 
-			try {
-
-				// copy all modification events and return quickly
-				syncQueue.put(new ArrayList<>(modificationEvents));
-
-				// notify sync queue of new input
-				synchronized (syncQueue) { syncQueue.notify(); }
-
-			} catch (InterruptedException iex) {
-				logger.warn("", iex);
-			}
+		final Map<String, Object> statistics = new LinkedHashMap<>();
 
+		for (final HostReplicator replicator : replicators) {
+			statistics.put(replicator.getHost().toString(), replicator.getStatistics());
 		}
+
+		return statistics;
 	}
 
 	// ----- private methods -----
@@ -399,6 +414,10 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 
 		logger.info("Synchronization to {} host{} required.", new Object[] { requiredSyncCount, requiredSyncCount == 1 ? "" : "s" } );
 
+		// transactions are kept in the log until all reachable hosts have received them
+		for (final SyncHostInfo host : syncHosts) {
+			replicationLog.registerHost(host.toString());
+		}
 
 		// prepare synchronization hosts
 		for (final SyncHostInfo host : syncHosts) {
@@ -410,9 +429,10 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 
 	private void checkAndInitializeSyncHost(final SyncHostInfo host) throws FrameworkException {
 
-		final String masterId         = StructrApp.getInstance().getInstanceId();
-		final SimpleDateFormat df     = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
-		final long localSyncTimestamp = StructrApp.getInstance().getGlobalSetting(masterId + ".lastModified", 0L);
+		final String masterId              = StructrApp.getInstance().getInstanceId();
+		final SimpleDateFormat df          = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
+		final ReplicationLog.Cursor cursor = replicationLog.getCursor(host.toString());
+		final long localSyncTimestamp      = cursor != null ? cursor.getTimestamp() : StructrApp.getInstance().getGlobalSetting(masterId + ".lastModified", 0L);
 
 		if (localSyncTimestamp == 0L) {
 
@@ -434,17 +454,27 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 			} else {
 
 				logger.info("Replication host {} is in sync, last update was {}", new Object[] { host, df.format(localSyncTimestamp) } );
+
+				if (cursor == null) {
+
+					// first start with a replication log, continue with the next transaction
+					acknowledge(host, replicationLog.getHeadSequence(), localSyncTimestamp);
+				}
 			}
 		}
 	}
 
-	private void synchronizeSlave(final SyncHostInfo info) {
+	private boolean synchronizeSlave(final SyncHostInfo info) {
 
 		logger.info("Establishing initial replication.");
 
+		final LoggingListener listener = new LoggingListener();
+		final long sequence            = replicationLog.beginUpdate(info.toString());
+		final long timestamp           = System.currentTimeMillis();
+
 		try (final Tx tx = StructrApp.getInstance().tx()) {
 
-			CloudService.doRemote(SecurityContext.getSuperUserInstance(), new UpdateTransmission(), info, new LoggingListener());
+			CloudService.doRemote(SecurityContext.getSuperUserInstance(), new UpdateTransmission(timestamp), info, listener);
 
 			tx.success();
 
@@ -452,7 +482,28 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 			logger.warn("", t);
 		}
 
+		if (listener.wasSuccessful()) {
+
+			// the slave contains all transactions up to the current head of the log
+			acknowledge(info, sequence, timestamp);
+		}
+
+		replicationLog.endUpdate(info.toString());
+
 		logger.info("Done.");
+
+		return listener.wasSuccessful();
+	}
+
+	private void acknowledge(final SyncHostInfo host, final long sequence, final long timestamp) {
+
+		try {
+
+			replicationLog.acknowledge(host.toString(), sequence, timestamp);
+
+		} catch (IOException ioex) {
+			logger.warn("Unable to store replication position of host {}: {}", new Object[] { host, ioex.getMessage() } );
+		}
 	}
 
 	// ----- nested classes -----
@@ -546,6 +597,8 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 
 	private class LoggingListener implements CloudListener {
 
+		private boolean finished = false;
+
 		@Override
 		public void transmissionStarted() {
 			logger.info("Transmission started");
@@ -554,6 +607,7 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 		@Override
 		public void transmissionFinished() {
 			logger.info("Transmission finished");
+			finished = true;
 		}
 
 		@Override
@@ -565,5 +619,371 @@ public class SyncService extends Thread  implements RunnableService, StructrTran
 		public void transmissionProgress(final String message) {
 			logger.info("Transmission progress {}", message );
 		}
+
+		public boolean wasSuccessful() {
+			return finished;
+		}
+	}
+
+	/**
+	 * Replicates the transactions from the replication log to a single
+	 * host over a persistent connection. Up to pipelineDepth batches of
+	 * batchSize transactions are sent without waiting for the remote end,
+	 * each batch is followed by a Commit message that is acknowledged
+	 * asynchronously. Hosts that do not support the Handshake message are
+	 * replicated with one connection per batch.
+	 */
+	private class HostReplicator extends Thread implements ReplicationListener {
+
+		private CloudConnection connection = null;
+		private SyncHostInfo host          = null;
+		private String lastError           = null;
+		private long lastProgress          = 0L;
+		private long lastSuccess           = 0L;
+		private long replicated            = 0L;
+		private long failures              = 0L;
+		private long committed             = 0L;
+		private long sent                  = 0L;
+		private boolean legacy             = false;
+		private int inFlight               = 0;
+
+		public HostReplicator(final SyncHostInfo host) {
+
+			super("SyncService " + host);
+			this.setDaemon(true);
+
+			this.host = host;
+		}
+
+		@Override
+		public void run() {
+
+			long backoff = 1000L;
+
+			while (running) {
+
+				try {
+
+					final ReplicationLog.Cursor cursor = replicationLog.getCursor(host.toString());
+					boolean success                    = true;
+
+					if (cursor == null || cursor.isReset()) {
+
+						disconnect();
+
+						// initial replication failed or host fell too far behind, try again
+						success = synchronizeSlave(host);
+
+					} else if (legacy) {
+
+						success = replicateBatch(cursor);
+
+					} else if (connection == null || !connection.isConnected()) {
+
+						disconnect();
+
+						connection = CloudService.connect(SecurityContext.getSuperUserInstance(), host, this);
+
+						if (negotiateVersion() < 1) {
+
+							logger.info("Host {} does not support pipelined replication, using one connection per batch", host);
+
+							disconnect();
+
+							legacy = true;
+							continue;
+						}
+
+						synchronized (this) {
+
+							// (re)start at the last acknowledged transaction
+							committed    = cursor.getSequence();
+							sent         = cursor.getSequence();
+							lastProgress = System.currentTimeMillis();
+							inFlight     = 0;
+						}
+
+					} else if (!waitForPipeline()) {
+
+						setLastError("Connection lost or no acknowledgement received");
+						success   = false;
+
+					} else {
+
+						final List<ReplicationLog.Entry> batch = replicationLog.read(sent, batchSize, 1000L);
+						if (!batch.isEmpty()) {
+
+							final ReplicationLog.Entry last = batch.get(batch.size() - 1);
+
+							new SyncTransmission(batch).send(connection);
+
+							synchronized (this) {
+
+								if (inFlight++ == 0) {
+									lastProgress = System.currentTimeMillis();
+								}
+
+								sent = last.getSequence();
+							}
+
+							// (we're sending our own instance ID (master) for the slave to store)
+							connection.send(new Commit(StructrApp.getInstance().getInstanceId(), last.getSequence(), last.getTimestamp()));
+						}
+					}
+
+					if (success) {
+
+						backoff = 1000L;
+
+					} else {
+
+						synchronized (this) {
+							failures++;
+						}
+
+						disconnect();
+
+						// negotiate again, the host may have been updated
+						legacy = false;
+
+						logger.warn("Unable to synchronize with host {}, retrying in {} ms..", new Object[] { host, backoff } );
+
+						Thread.sleep(backoff);
+
+						// exponential backoff up to the configured retry interval
+						backoff = Math.min(backoff * 2, retryInterval * 1000L);
+					}
+
+				} catch (FrameworkException | IOException ex) {
+
+					synchronized (this) {
+
+						lastError = ex.getMessage();
+						failures++;
+					}
+
+					disconnect();
+
+					// negotiate again, the host may have been updated
+					legacy = false;
+
+					logger.warn("Unable to synchronize with host {}, retrying in {} ms: {}", new Object[] { host, backoff, ex.getMessage() } );
+
+					try {
+						Thread.sleep(backoff);
+
+					} catch (InterruptedException iex) {
+						// shutdown
+					}
+
+					// exponential backoff up to the configured retry interval
+					backoff = Math.min(backoff * 2, retryInterval * 1000L);
+
+				} catch (InterruptedException iex) {
+
+					// shutdown
+
+				} catch (Throwable t) {
+					logger.warn("", t);
+				}
+			}
+
+			disconnect();
+		}
+
+		// ----- interface ReplicationListener -----
+		@Override
+		public void transactionsCommitted(final long sequence, final long timestamp) {
+
+			try {
+
+				if (replicationLog.advance(host.toString(), sequence, timestamp)) {
+
+					synchronized (this) {
+
+						replicated  += sequence - committed;
+						committed    = sequence;
+						lastSuccess  = System.currentTimeMillis();
+						lastProgress = lastSuccess;
+					}
+				}
+
+			} catch (IOException ioex) {
+				logger.warn("Unable to store replication position of host {}: {}", new Object[] { host, ioex.getMessage() } );
+			}
+
+			synchronized (this) {
+
+				inFlight = Math.max(0, inFlight - 1);
+				notifyAll();
+			}
+		}
+
+		@Override
+		public void transmissionStarted() {
+		}
+
+		@Override
+		public void transmissionFinished() {
+		}
+
+		@Override
+		public void transmissionAborted() {
+		}
+
+		@Override
+		public synchronized void transmissionProgress(final String message) {
+
+			// the remote end is still busy committing
+			lastProgress = System.currentTimeMillis();
+		}
+
+		public SyncHostInfo getHost() {
+			return host;
+		}
+
+		// ----- private methods -----
+		/**
+		 * Sends the Handshake message over the new connection and waits for
+		 * the answer.
+		 *
+		 * @return the replication protocol version of the host, 0 if the host closed the connection
+		 * @throws FrameworkException if the host did not answer in time
+		 * @throws IOException
+		 * @throws InterruptedException
+		 */
+		private int negotiateVersion() throws FrameworkException, IOException, InterruptedException {
+
+			final long abortTime = System.currentTimeMillis() + CloudService.DEFAULT_TIMEOUT;
+
+			connection.send(new Handshake(CloudService.REPLICATION_VERSION));
+
+			while (connection.isConnected()) {
+
+				final Object payload = connection.getPayload();
+				if (payload instanceof Handshake) {
+
+					return ((Handshake)payload).getVersion();
+				}
+
+				if (System.currentTimeMillis() > abortTime) {
+
+					throw new FrameworkException(504, "Timeout while waiting for handshake");
+				}
+
+				Thread.sleep(10);
+			}
+
+			// older hosts close the connection on unknown messages
+			return 0;
+		}
+
+		/**
+		 * Sends the next batch over a new connection and waits until the
+		 * host has committed it.
+		 *
+		 * @param cursor the position of the host
+		 * @return whether the batch was committed
+		 * @throws FrameworkException
+		 * @throws IOException
+		 * @throws InterruptedException
+		 */
+		private boolean replicateBatch(final ReplicationLog.Cursor cursor) throws FrameworkException, IOException, InterruptedException {
+
+			final List<ReplicationLog.Entry> batch = replicationLog.read(cursor.getSequence(), batchSize, 1000L);
+			if (batch.isEmpty()) {
+
+				return true;
+			}
+
+			final SyncListener listener = new SyncListener(1);
+
+			CloudService.doRemote(SecurityContext.getSuperUserInstance(), new SyncTransmission(batch), host, listener);
+
+			if (!listener.wasSuccessful()) {
+
+				setLastError("Transmission was not finished");
+				return false;
+			}
+
+			final ReplicationLog.Entry last = batch.get(batch.size() - 1);
+
+			replicationLog.acknowledge(host.toString(), last.getSequence(), last.getTimestamp());
+
+			synchronized (this) {
+
+				replicated  += batch.size();
+				lastSuccess  = System.currentTimeMillis();
+			}
+
+			return true;
+		}
+
+		/**
+		 * Waits until fewer than pipelineDepth batches are unacknowledged.
+		 *
+		 * @return false if the connection was lost or the remote end did not respond in time
+		 * @throws InterruptedException
+		 */
+		private synchronized boolean waitForPipeline() throws InterruptedException {
+
+			while (running && connection.isConnected()) {
+
+				if (inFlight > 0 && System.currentTimeMillis() - lastProgress > CloudService.DEFAULT_TIMEOUT) {
+					return false;
+				}
+
+				if (inFlight < pipelineDepth) {
+					return true;
+				}
+
+				wait(100L);
+			}
+
+			return false;
+		}
+
+		private synchronized void setLastError(final String error) {
+			lastError = error;
+		}
+
+		private void disconnect() {
+
+			if (connection != null) {
+
+				connection.close();
+				connection = null;
+			}
+
+			synchronized (this) {
+				inFlight = 0;
+			}
+		}
+
+		public Map<String, Object> getStatistics() {
+
+			final Map<String, Object> statistics = new LinkedHashMap<>();
+			final ReplicationLog.Cursor cursor   = replicationLog.getCursor(host.toString());
+			final long sequence                  = cursor != null ? cursor.getSequence() : 0L;
+			final ReplicationLog.Entry pending   = replicationLog.getFirstPendingEntry(sequence);
+
+			statistics.put("sequence",    sequence);
+			statistics.put("head",        replicationLog.getHeadSequence());
+			statistics.put("pending",     replicationLog.getPendingCount(sequence));
+			statistics.put("lag",         pending != null ? System.currentTimeMillis() - pending.getTimestamp() : 0L);
+			statistics.put("lastSync",    cursor != null ? cursor.getTimestamp() : 0L);
+			statistics.put("pipelined",   !legacy);
+
+			synchronized (this) {
+
+				statistics.put("inFlight",    inFlight);
+				statistics.put("lastSuccess", lastSuccess);
+				statistics.put("replicated",  replicated);
+				statistics.put("failures",    failures);
+				statistics.put("lastError",   lastError);
+			}
+
+			return statistics;
+		}
 	}
 }
@@ -19,7 +19,6 @@
 package org.structr.cloud.sync;
 
 import java.io.IOException;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import org.slf4j.Logger;
@@ -35,11 +34,11 @@ import org.structr.cloud.message.FileNodeEndChunk;
 import org.structr.cloud.message.NodeDataContainer;
 import org.structr.cloud.message.RelationshipDataContainer;
 import org.structr.common.error.FrameworkException;
-import org.structr.core.GraphObject;
+import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
-import org.structr.core.graph.ModificationEvent;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.RelationshipInterface;
 import org.structr.core.graph.Tx;
-import org.structr.core.property.PropertyKey;
 import org.structr.dynamic.File;
 
 /**
@@ -48,81 +47,109 @@ import org.structr.dynamic.File;
  */
 public class SyncTransmission implements CloudTransmission {
 
-	private static final Logger logger = LoggerFactory.getLogger(SyncTransmission.class.getName());
-	private List<ModificationEvent> transaction = null;
+	private static final Logger logger              = LoggerFactory.getLogger(SyncTransmission.class.getName());
+	private List<ReplicationLog.Entry> transactions = null;
 
-	public SyncTransmission(final List<ModificationEvent> transaction) {
+	public SyncTransmission(final List<ReplicationLog.Entry> transactions) {
 
-		this.transaction = transaction;
+		this.transactions = transactions;
 	}
 
 	@Override
 	public Boolean doRemote(final CloudConnection client) throws IOException, FrameworkException {
 
-		int count = 0;
+		final long lastSync = send(client);
 
-		try (final Tx tx = StructrApp.getInstance().tx()) {
+		// synchronize last sync timestamp with slave instance
+		// (we're sending out own instance ID (master) for the slave to store)
+		client.send(new ReplicationStatus(StructrApp.getInstance().getInstanceId(), lastSync));
+
+		// wait for end of transmission
+		client.waitForTransmission();
+
+		return true;
+	}
+
+	/**
+	 * Sends the data of all transactions of this batch over the given
+	 * connection without waiting for the remote end.
+	 *
+	 * @param client the client to send over
+	 * @return the timestamp of the last transaction
+	 * @throws IOException
+	 * @throws FrameworkException
+	 */
+	public long send(final CloudConnection client) throws IOException, FrameworkException {
 
-			for (final ModificationEvent event : transaction) {
+		final App app = StructrApp.getInstance();
+		long lastSync = 0L;
+		int count     = 0;
 
-				final GraphObject graphObject  = event.getGraphObject();
+		try (final Tx tx = app.tx()) {
 
-				if (event.isDeleted()) {
+			// send all transactions of this batch in a single transmission
+			for (final ReplicationLog.Entry transaction : transactions) {
 
-					final String id = event.getRemovedProperties().get(GraphObject.id);
-					if (id != null) {
+				for (final ReplicationLog.Change change : transaction.getChanges()) {
 
-						client.send(new Delete(id));
-					}
+					if (change.isDeleted()) {
+
+						client.send(new Delete(change.getUuid()));
+
+					} else {
+
+						try {
+
+							final Set<String> propertyKeys = change.getPropertyKeys();
 
-				} else {
+							if (change.isNode()) {
 
-					try {
+								final NodeInterface node = app.getNodeById(change.getUuid());
+								if (node != null) {
 
-						final Set<String> propertyKeys = new LinkedHashSet<>();
+									if (node instanceof File) {
 
-						// collect all possibly modified property keys
-						mapPropertyKeysToStrings(propertyKeys, event.getNewProperties().keySet());
-						mapPropertyKeysToStrings(propertyKeys, event.getModifiedProperties().keySet());
-						mapPropertyKeysToStrings(propertyKeys, event.getRemovedProperties().keySet());
+										sendFile(client, (File)node, CloudService.CHUNK_SIZE);
 
-						if (graphObject.isNode()) {
+									} else {
 
-							if (graphObject instanceof File) {
+										client.send(new NodeDataContainer(node.getSyncNode(), count, propertyKeys));
+									}
 
-								sendFile(client, (File)graphObject, CloudService.CHUNK_SIZE);
+								} else {
+
+									logger.info("Trying to synchronize deleted entity, ignoring");
+								}
 
 							} else {
 
-								client.send(new NodeDataContainer(graphObject.getSyncNode(), count, propertyKeys));
-							}
+								final RelationshipInterface relationship = app.getRelationshipById(change.getUuid());
+								if (relationship != null) {
 
-						} else {
+									client.send(new RelationshipDataContainer(relationship.getSyncRelationship(), count, propertyKeys));
 
-							client.send(new RelationshipDataContainer(graphObject.getSyncRelationship(), count, propertyKeys));
-						}
+								} else {
+
+									logger.info("Trying to synchronize deleted entity, ignoring");
+								}
+							}
 
-					} catch (NotFoundException nfex) {
+						} catch (NotFoundException nfex) {
 
-						logger.info("Trying to synchronize deleted entity, ignoring");
+							logger.info("Trying to synchronize deleted entity, ignoring");
+						}
 					}
+
+					count++;
 				}
 
-				count++;
+				lastSync = transaction.getTimestamp();
 			}
 
 			tx.success();
 		}
 
-		// synchronize last sync timestamp with slave instance
-		// (we're sending out own instance ID (master) for the slave to store)
-		final String masterId = StructrApp.getInstance().getInstanceId();
-		client.send(new ReplicationStatus(masterId, StructrApp.getInstance().getGlobalSetting(masterId + ".lastModified", 0L)));
-
-		// wait for end of transmission
-		client.waitForTransmission();
-
-		return true;
+		return lastSync;
 	}
 
 	/**
@@ -150,12 +177,4 @@ public class SyncTransmission implements CloudTransmission {
 		// mark end of file with special chunk
 		client.send(new FileNodeEndChunk(container.getSourceNodeId(), container.getFileSize()));
 	}
-
-	// ----- private methods -----
-	private void mapPropertyKeysToStrings(final Set<String> propertyKeys, final Set<PropertyKey> source) {
-
-		for (final PropertyKey key : source) {
-			propertyKeys.add(key.dbName());
-		}
-	}
 }
@@ -46,7 +46,21 @@ import org.structr.dynamic.File;
 public class UpdateTransmission implements CloudTransmission {
 
 	private static final Logger logger = LoggerFactory.getLogger(UpdateTransmission.class.getName());
+	private long lastSync              = 0L;
 
+	public UpdateTransmission() {
+		this(0L);
+	}
+
+	/**
+	 * Creates a full update transmission that stores the given
+	 * timestamp as the last sync time on the slave when done.
+	 *
+	 * @param lastSync the timestamp to store, or 0 to leave it unchanged
+	 */
+	public UpdateTransmission(final long lastSync) {
+		this.lastSync = lastSync;
+	}
 
 	@Override
 	public Boolean doRemote(final CloudConnection client) throws IOException, FrameworkException {
@@ -79,6 +93,12 @@ public class UpdateTransmission implements CloudTransmission {
 			client.send(new RelationshipDataContainer(relationshipInterface, 0));
 		}
 
+		if (lastSync > 0L) {
+
+			// synchronize last sync timestamp with slave instance
+			client.send(new ReplicationStatus(StructrApp.getInstance().getInstanceId(), lastSync));
+		}
+
 		// wait for end of transmission
 		client.waitForTransmission();
 
@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.cloud.sync;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ *
+ */
+public class ReplicationLogTest {
+
+	@Test
+	public void testReplayWithTruncatedTail() throws IOException, InterruptedException {
+
+		final Path directory = Paths.get("/tmp/" + System.nanoTime() + "/sync");
+		final Path journal   = directory.resolve("replication.log");
+
+		ReplicationLog log = new ReplicationLog(directory);
+
+		append(log, "a");
+		append(log, "b", "c");
+		append(log, "d");
+
+		log.close();
+
+		final long size = Files.size(journal);
+
+		// simulate a crash in the middle of writing an entry
+		try (final OutputStream out = Files.newOutputStream(journal, StandardOpenOption.APPEND)) {
+			out.write(new byte[] { 0, 0, 0, 0, 0, 0, 0, 4, 0, 0 });
+		}
+
+		log = new ReplicationLog(directory);
+
+		final List<ReplicationLog.Entry> entries = log.read(0L, 10, 1L);
+
+		assertEquals("Invalid number of replayed entries", 3, entries.size());
+		assertEquals("Invalid head sequence after replay", 3L, log.getHeadSequence());
+		assertEquals("Invalid replayed change", "b", entries.get(1).getChanges().get(0).getUuid());
+		assertEquals("Invalid replayed change", "c", entries.get(1).getChanges().get(1).getUuid());
+		assertEquals("Incomplete entry was not removed from journal", size, Files.size(journal));
+
+		assertEquals("Invalid sequence after replay", 4L, append(log, "e").getSequence());
+
+		log.close();
+	}
+
+	@Test
+	public void testCursorRestore() throws IOException {
+
+		final Path directory = Paths.get("/tmp/" + System.nanoTime() + "/sync");
+		ReplicationLog log   = new ReplicationLog(directory);
+
+		log.registerHost("host1");
+		log.registerHost("host2");
+
+		log.acknowledge("host1", 0L, 1000L);
+		log.acknowledge("host2", 0L, 1000L);
+
+		append(log, "a");
+		append(log, "b");
+
+		log.acknowledge("host1", 2L, 2000L);
+		log.close();
+
+		log = new ReplicationLog(directory);
+
+		final ReplicationLog.Cursor cursor1 = log.getCursor("host1");
+		final ReplicationLog.Cursor cursor2 = log.getCursor("host2");
+
+		assertNotNull("Cursor was not restored", cursor1);
+		assertNotNull("Cursor was not restored", cursor2);
+		assertNull("Unknown host must not have a cursor", log.getCursor("host3"));
+
+		assertEquals("Invalid restored cursor", 2L, cursor1.getSequence());
+		assertEquals("Invalid restored cursor", 2000L, cursor1.getTimestamp());
+		assertEquals("Invalid restored cursor", 0L, cursor2.getSequence());
+		assertEquals("Invalid restored cursor", 1000L, cursor2.getTimestamp());
+
+		assertEquals("Invalid number of pending entries", 0, log.getPendingCount(cursor1.getSequence()));
+		assertEquals("Invalid number of pending entries", 2, log.getPendingCount(cursor2.getSequence()));
+
+		log.close();
+	}
+
+	@Test
+	public void testPruneAfterAllHostsAcknowledged() throws IOException, InterruptedException {
+
+		final Path directory     = Paths.get("/tmp/" + System.nanoTime() + "/sync");
+		final ReplicationLog log = new ReplicationLog(directory, 10L);
+
+		log.registerHost("host1");
+		log.registerHost("host2");
+		log.registerHost("host3");
+
+		log.acknowledge("host1", 0L, 1000L);
+		log.acknowledge("host2", 0L, 1000L);
+
+		// host3 has no cursor and must not keep entries in the log
+		for (int i=0; i<5; i++) {
+			append(log, "node" + i);
+		}
+
+		log.acknowledge("host1", 5L, 2000L);
+		assertEquals("Entries must be kept until all hosts acknowledged them", 5, log.getPendingCount(0L));
+
+		log.acknowledge("host2", 3L, 2000L);
+		assertEquals("Acknowledged entries were not removed", 2, log.getPendingCount(0L));
+		assertEquals("Invalid first pending entry", 4L, log.getFirstPendingEntry(0L).getSequence());
+
+		log.acknowledge("host2", 5L, 2000L);
+		assertEquals("Acknowledged entries were not removed", 0, log.getPendingCount(0L));
+
+		// a running full update keeps the entries that follow it
+		assertEquals("Invalid update sequence", 5L, log.beginUpdate("host3"));
+
+		append(log, "node5");
+
+		log.acknowledge("host1", 6L, 3000L);
+		log.acknowledge("host2", 6L, 3000L);
+		assertEquals("Entries of a running update were removed", 1, log.getPendingCount(5L));
+
+		log.acknowledge("host3", 5L, 3000L);
+		assertEquals("Invalid first pending entry", 6L, log.getFirstPendingEntry(5L).getSequence());
+
+		log.acknowledge("host3", 6L, 3000L);
+		assertEquals("Acknowledged entries were not removed", 0, log.getPendingCount(0L));
+
+		// a host that falls behind too far loses its cursor
+		for (int i=0; i<11; i++) {
+
+			append(log, "node" + i);
+
+			log.acknowledge("host1", log.getHeadSequence(), 4000L);
+			log.acknowledge("host2", log.getHeadSequence(), 4000L);
+		}
+
+		assertTrue("Cursor of lagging host was not reset", log.getCursor("host3").isReset());
+		assertFalse("Cursor of lagging host was not reset", log.getCursor("host1").isReset());
+		assertFalse("Reset cursor must not be moved", log.advance("host3", 17L, 4000L));
+		assertEquals("Lagging host must not keep entries in the log", 0, log.getPendingCount(0L));
+
+		log.close();
+	}
+
+	@Test
+	public void testCompaction() throws IOException, InterruptedException {
+
+		final Path directory = Paths.get("/tmp/" + System.nanoTime() + "/sync");
+		final Path journal   = directory.resolve("replication.log");
+		ReplicationLog log   = new ReplicationLog(directory);
+
+		log.registerHost("host1");
+		log.acknowledge("host1", 0L, 1000L);
+
+		for (int i=0; i<1500; i++) {
+			append(log, "node" + i, "rel" + i);
+		}
+
+		final long size = Files.size(journal);
+
+		log.acknowledge("host1", 1500L, 2000L);
+
+		assertTrue("Journal was not compacted", Files.size(journal) < size);
+		assertEquals("Journal was not compacted", 0L, Files.size(journal));
+
+		append(log, "last");
+		log.close();
+
+		log = new ReplicationLog(directory);
+
+		final List<ReplicationLog.Entry> entries = log.read(1500L, 10, 1L);
+
+		assertEquals("Invalid number of entries after compaction", 1, entries.size());
+		assertEquals("Invalid sequence after compaction", 1501L, entries.get(0).getSequence());
+		assertEquals("Invalid change after compaction", "last", entries.get(0).getChanges().get(0).getUuid());
+		assertEquals("Invalid number of pending entries", 1, log.getPendingCount(0L));
+
+		log.close();
+	}
+
+	// ----- private methods -----
+	private ReplicationLog.Entry append(final ReplicationLog log, final String... uuids) throws IOException {
+
+		final List<ReplicationLog.Change> changes = new ArrayList<>();
+
+		for (final String uuid : uuids) {
+			changes.add(new ReplicationLog.Change((byte)'N', uuid, new LinkedHashSet<>(Arrays.asList("name", "type"))));
+		}
+
+		return log.append(changes);
+	}
+}
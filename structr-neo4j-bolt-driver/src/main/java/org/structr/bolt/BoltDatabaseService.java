@@ -27,6 +27,8 @@ import java.io.Writer;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -51,6 +53,7 @@ import org.structr.api.NotInTransactionException;
 import org.structr.api.QueryResult;
 import org.structr.api.Transaction;
 import org.structr.api.config.Settings;
+import org.structr.api.graph.Direction;
 import org.structr.api.graph.GraphProperties;
 import org.structr.api.graph.Label;
 import org.structr.api.graph.Node;
@@ -232,7 +235,13 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 		// make properties available to Cypher statement
 		map.put("properties", properties);
 
-		return NodeWrapper.newInstance(this, getCurrentTransaction().getNode(buf.toString(), map));
+		final SessionTransaction tx = getCurrentTransaction();
+		final NodeWrapper newNode   = NodeWrapper.newInstance(this, tx.getNode(buf.toString(), map));
+
+		// new nodes are locked by this transaction
+		tx.created(newNode);
+
+		return newNode;
 	}
 
 	@Override
@@ -241,22 +250,23 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 	}
 
 	@Override
-	public Relationship getRelationshipById(final long id) {
-
-		final SessionTransaction tx   = getCurrentTransaction();
-		final Map<String, Object> map = new HashMap<>();
-
-		map.put("id", id);
-
-		final org.neo4j.driver.v1.types.Relationship rel = tx.getRelationship("MATCH ()-[r]->() WHERE ID(r) = {id} RETURN r", map);
+	public List<Node> getNodesByIds(final long[] ids) {
+		return NodeWrapper.newInstances(this, ids);
+	}
 
-		return RelationshipWrapper.newInstance(this, rel);
+	@Override
+	public void prefetchRelationships(final Iterable<Node> nodes, final Direction direction, final RelationshipType relationshipType) {
+		NodeWrapper.prefetchRelationships(this, nodes, direction, relationshipType);
+	}
 
+	@Override
+	public Relationship getRelationshipById(final long id) {
+		return RelationshipWrapper.newInstance(this, id);
 	}
 
 	@Override
 	public QueryResult<Node> getAllNodes() {
-		return QueryUtils.map(new NodeNodeMapper(this), new NodeResultStream(this, new SimpleCypherQuery("MATCH (n) RETURN n")));
+		return QueryUtils.map(new NodeNodeMapper(this), new NodeResultStream(this, new SimpleCypherQuery("MATCH (n)", "n")));
 	}
 
 	@Override
@@ -266,7 +276,7 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 			return getAllNodes();
 		}
 
-		return QueryUtils.map(new NodeNodeMapper(this), new NodeResultStream(this, new SimpleCypherQuery("MATCH (n:" + type + ") RETURN n")));
+		return QueryUtils.map(new NodeNodeMapper(this), new NodeResultStream(this, new SimpleCypherQuery("MATCH (n:" + type + ")", "n")));
 	}
 
 	@Override
@@ -276,7 +286,7 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 			return getAllNodes();
 		}
 
-		final SimpleCypherQuery query = new SimpleCypherQuery("MATCH (n) WHERE n.type = {type} RETURN n");
+		final SimpleCypherQuery query = new SimpleCypherQuery("MATCH (n)", "n.type = {type}", "n");
 
 		query.getParameters().put("type", type);
 
@@ -286,7 +296,7 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 
 	@Override
 	public QueryResult<Relationship> getAllRelationships() {
-		return QueryUtils.map(new RelationshipRelationshipMapper(this), new RelationshipResultStream(this, new SimpleCypherQuery("MATCH ()-[r]->() RETURN r")));
+		return QueryUtils.map(new RelationshipRelationshipMapper(this), new RelationshipResultStream(this, new SimpleCypherQuery("MATCH ()-[r]->()", "r")));
 	}
 
 	@Override
@@ -296,7 +306,7 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 			return getAllRelationships();
 		}
 
-		return QueryUtils.map(new RelationshipRelationshipMapper(this), new RelationshipResultStream(this, new SimpleCypherQuery("MATCH ()-[r:" + type + "]->() RETURN r")));
+		return QueryUtils.map(new RelationshipRelationshipMapper(this), new RelationshipResultStream(this, new SimpleCypherQuery("MATCH ()-[r:" + type + "]->()", "r")));
 	}
 
 	@Override
@@ -346,6 +356,40 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 		}
 	}
 
+	/**
+	 * Removes the cached query results that depend on the given labels
+	 * and relationship types.
+	 *
+	 * @param labels the modified node labels
+	 * @param relationshipTags the modified relationship types and the labels that were added to or removed from nodes
+	 */
+	public void invalidateQueryCache(final Set<String> labels, final Set<String> relationshipTags) {
+
+		if (nodeIndex != null) {
+			nodeIndex.invalidateCache(labels);
+		}
+
+		if (relationshipIndex != null) {
+			relationshipIndex.invalidateCache(relationshipTags);
+		}
+	}
+
+	@Override
+	public Map<String, Map<String, Object>> getQueryCacheStatistics() {
+
+		final Map<String, Map<String, Object>> statistics = new LinkedHashMap<>();
+
+		if (nodeIndex != null) {
+			statistics.put("nodes", nodeIndex.getCacheStatistics());
+		}
+
+		if (relationshipIndex != null) {
+			statistics.put("relationships", relationshipIndex.getCacheStatistics());
+		}
+
+		return statistics;
+	}
+
 	public SessionTransaction getCurrentTransaction() {
 
 		final SessionTransaction tx = sessions.get();
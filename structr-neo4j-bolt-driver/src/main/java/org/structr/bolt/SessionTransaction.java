@@ -19,10 +19,16 @@
 package org.structr.bolt;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.regex.Pattern;
 import org.apache.commons.lang.StringUtils;
 import org.neo4j.driver.v1.Record;
 import org.neo4j.driver.v1.Session;
@@ -50,6 +56,8 @@ import org.structr.bolt.mapper.RecordLongMapper;
 import org.structr.bolt.mapper.RecordNodeMapper;
 import org.structr.bolt.mapper.RecordRelationshipMapper;
 import org.structr.bolt.wrapper.EntityWrapper;
+import org.structr.bolt.wrapper.NodeWrapper;
+import org.structr.bolt.wrapper.RelationshipWrapper;
 import org.structr.bolt.wrapper.StatementResultWrapper;
 
 /**
@@ -57,12 +65,19 @@ import org.structr.bolt.wrapper.StatementResultWrapper;
  */
 public class SessionTransaction implements org.structr.api.Transaction {
 
-	private final Set<EntityWrapper> modifiedEntities = new HashSet<>();
-	private BoltDatabaseService db                    = null;
-	private Session session                           = null;
-	private Transaction tx                            = null;
-	private boolean closed                            = false;
-	private boolean success                           = false;
+	private static final Pattern WRITE_CLAUSES = Pattern.compile("\\b(CREATE|MERGE|SET|DELETE|REMOVE|DROP|CALL|LOAD)\\b", Pattern.CASE_INSENSITIVE);
+
+	private final Map<String, Map<Long, Map<String, Object>>> pendingProperties = new LinkedHashMap<>();
+	private final Set<EntityWrapper> modifiedEntities                           = new HashSet<>();
+	private final Set<String> lockedEntities                                    = new HashSet<>();
+	private final Set<String> modifiedLabels                                    = new HashSet<>();
+	private final Set<String> changedLabels                                     = new HashSet<>();
+	private BoltDatabaseService db                                              = null;
+	private Session session                                                     = null;
+	private Transaction tx                                                      = null;
+	private boolean unknownModifications                                        = false;
+	private boolean closed                                                      = false;
+	private boolean success                                                     = false;
 
 	public SessionTransaction(final BoltDatabaseService db, final Session session) {
 
@@ -79,6 +94,10 @@ public class SessionTransaction implements org.structr.api.Transaction {
 	@Override
 	public void success() {
 
+		// write pending property changes before the transaction is
+		// marked successful so that errors cause a rollback
+		flush();
+
 		tx.success();
 
 		// transaction must be marked successfull explicitely
@@ -90,6 +109,9 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		if (!success) {
 
+			// discard pending property changes, they will never be written
+			pendingProperties.clear();
+
 			// We need to invalidate all existing references because we cannot
 			// be sure that they contain the correct values after a rollback.
 			for (final EntityWrapper entity : modifiedEntities) {
@@ -98,12 +120,6 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		} else {
 
-			if (!modifiedEntities.isEmpty()) {
-
-				// data was written, invalidate query cache
-				db.invalidateQueryCache();
-			}
-
 			// Notify all nodes that are modified in this transaction
 			// so that the relationship caches are rebuilt.
 			for (final EntityWrapper entity : modifiedEntities) {
@@ -131,9 +147,25 @@ public class SessionTransaction implements org.structr.api.Transaction {
 			if (session.isOpen()) {
 				session.close();
 			}
+
+			// Invalidate the query cache AFTER the commit so that queries of
+			// other transactions can not cache the old state afterwards.
+			if (success) {
+				invalidateQueryCache();
+			}
 		}
 	}
 
+	/**
+	 * Indicates whether this transaction has written data. Query results
+	 * of such transactions must not be cached.
+	 *
+	 * @return whether this transaction has written data
+	 */
+	public boolean hasModifications() {
+		return unknownModifications || !modifiedEntities.isEmpty();
+	}
+
 	public boolean isClosed() {
 		return closed;
 	}
@@ -168,6 +200,8 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
+
 			return tx.run(statement, map).next().get(0).asLong();
 
 		} catch (TransientException tex) {
@@ -188,6 +222,8 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
+
 			final StatementResult result = tx.run(statement, map);
 			if (result.hasNext()) {
 
@@ -208,6 +244,14 @@ public class SessionTransaction implements org.structr.api.Transaction {
 		return null;
 	}
 
+	/*
+	 * The following three methods don't write pending property changes
+	 * before the statement is executed. They are used to load or create
+	 * single entities by ID, which does not depend on pending changes,
+	 * and which happens while cache monitors are held, so we must not wait
+	 * for database locks here. Pending changes are applied to the loaded
+	 * entities by the wrappers instead, see getPendingProperties().
+	 */
 	public Entity getEntity(final String statement, final Map<String, Object> map) {
 
 		final long t0 = System.currentTimeMillis();
@@ -274,6 +318,8 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
+
 			return QueryUtils.map(new RecordNodeMapper(), new StatementIterable(tx.run(statement, map)));
 
 		} catch (TransientException tex) {
@@ -294,6 +340,8 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
+
 			return QueryUtils.map(new RecordRelationshipMapper(), new StatementIterable(tx.run(statement, map)));
 
 		} catch (TransientException tex) {
@@ -308,12 +356,40 @@ public class SessionTransaction implements org.structr.api.Transaction {
 		}
 	}
 
+	public QueryResult<Record> getRecords(final String statement, final Map<String, Object> map) {
+
+		final long t0 = System.currentTimeMillis();
+
+		try {
+
+			flush();
+
+			return new StatementIterable(tx.run(statement, map));
+
+		} catch (TransientException tex) {
+			closed = true;
+			throw new RetryException(tex);
+		} catch (NoSuchRecordException nex) {
+			throw new NotFoundException(nex);
+		} catch (ServiceUnavailableException ex) {
+			throw new NetworkException(ex.getMessage(), ex);
+		} catch (DatabaseException dex) {
+			throw SessionTransaction.translateDatabaseException(dex);
+		} catch (ClientException cex) {
+			throw SessionTransaction.translateClientException(cex);
+		} finally {
+			logQuery(statement, map, t0);
+		}
+	}
+
 	public QueryResult<Long> getIds(final String statement, final Map<String, Object> map) {
 
 		final long t0 = System.currentTimeMillis();
 
 		try {
 
+			flush();
+
 			return QueryUtils.map(new RecordLongMapper(), new StatementIterable(tx.run(statement, map)));
 
 		} catch (TransientException tex) {
@@ -334,6 +410,8 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
+
 			final StatementResult result = tx.run(statement, map);
 			final Record record = result.next();
 			final Value value = record.get(0);
@@ -369,6 +447,14 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
+
+			// we don't know what native queries do, so we assume that
+			// they write data if they contain a writing clause
+			if (WRITE_CLAUSES.matcher(statement).find()) {
+				unknownModifications = true;
+			}
+
 			return new StatementResultWrapper(db, tx.run(statement, map));
 
 		} catch (TransientException tex) {
@@ -393,6 +479,8 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
+
 			tx.run(statement, map).consume();
 
 		} catch (TransientException tex) {
@@ -435,14 +523,223 @@ public class SessionTransaction implements org.structr.api.Transaction {
 		}
 	}
 
-	public void modified(final EntityWrapper wrapper) {
+	/**
+	 * Registers a property change for the given entity. The first change
+	 * of an existing entity is sent to the database immediately so that
+	 * the write lock is acquired at the same time as before, all other
+	 * changes are merged with the pending changes of the same entity and
+	 * written in a single batch statement before the next statement runs
+	 * in this transaction or when the transaction is committed.
+	 *
+	 * @param wrapper the entity to update
+	 * @param key the property key
+	 * @param value the new value, or null to remove the property
+	 */
+	public void setProperty(final EntityWrapper wrapper, final String key, final Object value) {
+
+		final String prefix = wrapper.getQueryPrefix();
+		final long id       = wrapper.getId();
+
+		if (lockedEntities.add(prefix + id)) {
+
+			final Map<String, Object> map = new HashMap<>();
+
+			map.put("id", id);
+			map.put("value", value);
+
+			set(prefix + " WHERE ID(n) = {id} SET n.`" + key + "` = {value}", map);
+
+		} else {
+
+			getPendingProperties(prefix, id).put(key, value);
+		}
+	}
+
+	public void setProperties(final EntityWrapper wrapper, final Map<String, Object> values) {
+
+		final String prefix = wrapper.getQueryPrefix();
+		final long id       = wrapper.getId();
+
+		if (lockedEntities.add(prefix + id)) {
+
+			final Map<String, Object> map = new HashMap<>();
+
+			// overwrite a potential "id" property
+			map.put("id", id);
+			map.put("properties", values);
+
+			set(prefix + " WHERE ID(n) = {id} SET n += {properties}", map);
+
+		} else {
+
+			getPendingProperties(prefix, id).putAll(values);
+		}
+	}
+
+	/**
+	 * Registers an entity that was created in this transaction, so that
+	 * all property changes of that entity can be written in a batch.
+	 *
+	 * @param wrapper the new entity
+	 */
+	public void created(final EntityWrapper wrapper) {
 
-		// data was written, invalidate query cache
-		db.invalidateQueryCache();
+		lockedEntities.add(wrapper.getQueryPrefix() + wrapper.getId());
+		modified(wrapper);
+	}
+
+	public Map<String, Object> getPendingProperties(final EntityWrapper wrapper) {
+
+		final Map<Long, Map<String, Object>> entities = pendingProperties.get(wrapper.getQueryPrefix());
+		if (entities != null) {
+
+			final Map<String, Object> properties = entities.get(wrapper.getId());
+			if (properties != null) {
+
+				return properties;
+			}
+		}
+
+		return Collections.EMPTY_MAP;
+	}
+
+	public void discardProperties(final EntityWrapper wrapper) {
+
+		final Map<Long, Map<String, Object>> entities = pendingProperties.get(wrapper.getQueryPrefix());
+		if (entities != null) {
+
+			entities.remove(wrapper.getId());
+		}
+	}
+
+	/**
+	 * Writes all pending property changes of this transaction, using
+	 * one UNWIND statement per entity type.
+	 */
+	public void flush() {
+
+		if (pendingProperties.isEmpty()) {
+			return;
+		}
+
+		final Map<String, List<Map<String, Object>>> batches = new LinkedHashMap<>();
+
+		for (final Entry<String, Map<Long, Map<String, Object>>> entry : pendingProperties.entrySet()) {
+
+			final List<Map<String, Object>> list = new LinkedList<>();
+
+			for (final Entry<Long, Map<String, Object>> entity : entry.getValue().entrySet()) {
+
+				final Map<String, Object> update = new HashMap<>();
+
+				update.put("id", entity.getKey());
+				update.put("properties", entity.getValue());
+
+				list.add(update);
+			}
+
+			if (!list.isEmpty()) {
+				batches.put(entry.getKey(), list);
+			}
+		}
+
+		// clear pending changes before sending them to make sure
+		// that a failed flush is not repeated over and over again
+		pendingProperties.clear();
+
+		for (final Entry<String, List<Map<String, Object>>> entry : batches.entrySet()) {
+
+			final String statement        = "UNWIND {updates} AS update " + entry.getKey() + " WHERE ID(n) = update.id SET n += update.properties";
+			final Map<String, Object> map = new HashMap<>();
+			final long t0                 = System.currentTimeMillis();
+
+			map.put("updates", entry.getValue());
+
+			try {
 
+				tx.run(statement, map).consume();
+
+			} catch (TransientException tex) {
+				closed = true;
+				throw new RetryException(tex);
+			} catch (NoSuchRecordException nex) {
+				throw new NotFoundException(nex);
+			} catch (ServiceUnavailableException ex) {
+				throw new NetworkException(ex.getMessage(), ex);
+			} catch (DatabaseException dex) {
+				throw SessionTransaction.translateDatabaseException(dex);
+			} catch (ClientException cex) {
+				throw SessionTransaction.translateClientException(cex);
+			} finally {
+				logQuery(statement, map, t0);
+			}
+		}
+	}
+
+	public void modified(final EntityWrapper wrapper) {
 		modifiedEntities.add(wrapper);
 	}
 
+	/**
+	 * Registers a label that was added to or removed from a node in this
+	 * transaction. Such changes can affect the results of relationship
+	 * queries with source and target labels.
+	 *
+	 * @param label the label
+	 */
+	public void modifiedLabel(final String label) {
+
+		modifiedLabels.add(label);
+		changedLabels.add(label);
+	}
+
+	// ----- private methods -----
+	private void invalidateQueryCache() {
+
+		if (unknownModifications) {
+
+			db.invalidateQueryCache();
+
+		} else if (!modifiedEntities.isEmpty()) {
+
+			final Set<String> relationshipTags = new HashSet<>(changedLabels);
+
+			for (final EntityWrapper entity : modifiedEntities) {
+
+				if (entity instanceof NodeWrapper) {
+
+					modifiedLabels.addAll(((NodeWrapper)entity).getLabelNames());
+
+				} else if (entity instanceof RelationshipWrapper) {
+
+					relationshipTags.add(((RelationshipWrapper)entity).getType().name());
+				}
+			}
+
+			db.invalidateQueryCache(modifiedLabels, relationshipTags);
+		}
+	}
+
+	private Map<String, Object> getPendingProperties(final String prefix, final long id) {
+
+		Map<Long, Map<String, Object>> entities = pendingProperties.get(prefix);
+		if (entities == null) {
+
+			entities = new LinkedHashMap<>();
+			pendingProperties.put(prefix, entities);
+		}
+
+		Map<String, Object> properties = entities.get(id);
+		if (properties == null) {
+
+			// use HashMap here because null values signal property removal
+			properties = new HashMap<>();
+			entities.put(id, properties);
+		}
+
+		return properties;
+	}
+
 	// ----- public static methods -----
 	public static RuntimeException translateClientException(final ClientException cex) {
 
@@ -18,17 +18,22 @@
  */
 package org.structr.bolt.index;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.QueryResult;
+import org.structr.api.config.Settings;
 import org.structr.api.graph.PropertyContainer;
 import org.structr.api.index.Index;
 import org.structr.api.search.ArrayQuery;
@@ -42,9 +47,10 @@ import org.structr.api.search.RangeQuery;
 import org.structr.api.search.SpatialQuery;
 import org.structr.api.search.TypeConverter;
 import org.structr.api.search.TypeQuery;
+import org.structr.api.search.UnsupportedSeekException;
 import org.structr.api.search.UuidQuery;
+import org.structr.api.util.Cachable;
 import org.structr.api.util.FixedSizeCache;
-import org.structr.api.util.Iterables;
 import org.structr.bolt.*;
 import org.structr.bolt.index.converter.BooleanTypeConverter;
 import org.structr.bolt.index.converter.ByteTypeConverter;
@@ -106,6 +112,14 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 	}
 
 	protected final FixedSizeCache<Integer, CachedQueryResult> queryCache;
+	protected final Map<String, Set<Integer>> keysByTag = new HashMap<>();
+	protected final Set<Integer> untaggedKeys           = new HashSet<>();
+	protected final AtomicLong generation               = new AtomicLong();
+	protected final AtomicLong hits                     = new AtomicLong();
+	protected final AtomicLong misses                   = new AtomicLong();
+	protected final AtomicLong evictions                = new AtomicLong();
+	protected final AtomicLong invalidations            = new AtomicLong();
+	protected final AtomicLong uncacheable              = new AtomicLong();
 	protected final BoltDatabaseService db;
 
 	public AbstractCypherIndex(final BoltDatabaseService db, final int queryCacheSize) {
@@ -118,6 +132,16 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 	public abstract String getQueryPrefix(final String mainType, final String sourceTypeLabel, final String targetTypeLabel);
 	public abstract String getQuerySuffix();
 
+	/**
+	 * Returns the labels and relationship types the result of the given
+	 * query depends on, or an empty set if the result can be affected by
+	 * any modification.
+	 *
+	 * @param query the query
+	 * @return the set of labels and types
+	 */
+	public abstract Set<String> getCacheTags(final AdvancedCypherQuery query);
+
 	@Override
 	public void add(final PropertyContainer t, final String key, final Object value, final Class typeHint) {
 
@@ -159,17 +183,175 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 			query.sort(predicate.getSortType(), sortKey, predicate.sortDescending());
 		}
 
-		return getResult(query);
+		final int fetchSize = predicate.getFetchSize();
+		if (fetchSize > 0) {
+
+			query.setPageSize(fetchSize);
+		}
+
+		final Long seekId = predicate.getSeekId();
+		if (seekId != null) {
+
+			if (query.isSeekable()) {
+
+				query.seek(predicate.getSeekValue(), seekId);
+
+			} else {
+
+				// a UNION can not be continued after a given element
+				// in Cypher, the caller pages the complete result
+				throw new UnsupportedSeekException("Query " + query + " can not be continued after a given element");
+			}
+		}
+
+		// Transactions with modifications must neither use nor populate
+		// the cache since their results contain uncommitted data. Scans
+		// of all nodes of a type are not cached since their results are
+		// unbounded, and paged queries are not cached because each page
+		// would occupy its own cache entry.
+		if (db.getCurrentTransaction().hasModifications() || !query.hasPredicates() || query.hasSeek() || fetchSize > 0) {
+			return getResult(query);
+		}
+
+		final Integer key              = query.getHashCode();
+		final CachedQueryResult cached = queryCache.get(key);
+
+		if (cached != null && cached.matches(query)) {
+
+			hits.incrementAndGet();
+			return cached;
+		}
+
+		misses.incrementAndGet();
+
+		// Results are only stored if no invalidation happened while the
+		// query was running, otherwise they could contain outdated data.
+		final long currentGeneration = generation.get();
+		final int maxRows            = Settings.QueryCacheMaxRows.getValue();
+		final QueryResult<T> source  = getResult(query);
+		final Iterator<T> iterator   = source.iterator();
+		final List<T> rows           = new ArrayList<>();
+
+		while (rows.size() < maxRows && iterator.hasNext()) {
+			rows.add(iterator.next());
+		}
+
+		if (iterator.hasNext()) {
+
+			// result is too large to be cached, stream the remaining rows
+			// page by page instead of loading them into memory
+			uncacheable.incrementAndGet();
+
+			return new PrefetchedQueryResult(rows, iterator, source);
+		}
+
+		source.close();
+
+		final CachedQueryResult result = new CachedQueryResult(key, query, getCacheTags(query), rows);
+
+		synchronized (keysByTag) {
+
+			if (generation.get() == currentGeneration) {
+
+				queryCache.put(key, result);
+
+				if (result.tags.isEmpty()) {
+
+					untaggedKeys.add(key);
+
+				} else {
+
+					for (final String tag : result.tags) {
+
+						Set<Integer> keys = keysByTag.get(tag);
+						if (keys == null) {
+
+							keys = new HashSet<>();
+							keysByTag.put(tag, keys);
+						}
+
+						keys.add(key);
+					}
+				}
+			}
+		}
+
+		return result;
 	}
 
 	public void invalidateCache() {
 
-		if (!queryCache.isEmpty()) {
+		synchronized (keysByTag) {
+
+			generation.incrementAndGet();
+
+			if (!queryCache.isEmpty()) {
 
-			queryCache.clear();
+				invalidations.addAndGet(queryCache.size());
+				queryCache.clear();
+			}
+
+			keysByTag.clear();
+			untaggedKeys.clear();
 		}
 	}
 
+	/**
+	 * Removes all cached results that depend on at least one of the given
+	 * labels or relationship types, and all results that depend on any
+	 * modification.
+	 *
+	 * @param tags the labels and relationship types that were modified
+	 */
+	public void invalidateCache(final Set<String> tags) {
+
+		if (tags.isEmpty()) {
+			return;
+		}
+
+		synchronized (keysByTag) {
+
+			generation.incrementAndGet();
+
+			final Set<Integer> keys = new HashSet<>(untaggedKeys);
+
+			for (final String tag : tags) {
+
+				final Set<Integer> taggedKeys = keysByTag.get(tag);
+				if (taggedKeys != null) {
+
+					keys.addAll(taggedKeys);
+				}
+			}
+
+			for (final Integer key : keys) {
+
+				final CachedQueryResult result = queryCache.get(key);
+				if (result != null) {
+
+					queryCache.remove(key);
+					unregister(result);
+
+					invalidations.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	public Map<String, Object> getCacheStatistics() {
+
+		final Map<String, Object> statistics = new LinkedHashMap<>();
+
+		statistics.put("size",          queryCache.size());
+		statistics.put("hits",          hits.get());
+		statistics.put("misses",        misses.get());
+		statistics.put("evictions",     evictions.get());
+		statistics.put("invalidations", invalidations.get());
+		statistics.put("uncacheable",   uncacheable.get());
+
+		return statistics;
+	}
+
 	// ----- interface QueryFactory -----
 	@Override
 	public boolean createQuery(final QueryFactory parent, final QueryPredicate predicate, final AdvancedCypherQuery query, final boolean isFirst) {
@@ -191,23 +373,68 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 		return false;
 	}
 
-	// ----- nested classes -----
-	protected class CachedQueryResult implements QueryResult<T> {
+	// ----- private methods -----
+	private void unregister(final CachedQueryResult result) {
 
-		private Collection<T> result = null;
+		if (result.tags.isEmpty()) {
 
-		public CachedQueryResult(final Iterable<T> source) {
+			untaggedKeys.remove(result.key);
 
-			if (source instanceof Collection) {
+		} else {
 
-				this.result = (Collection)source;
+			for (final String tag : result.tags) {
 
-			} else {
+				final Set<Integer> keys = keysByTag.get(tag);
+				if (keys != null) {
 
-				this.result = Iterables.toList(source);
+					keys.remove(result.key);
 
+					if (keys.isEmpty()) {
+						keysByTag.remove(tag);
+					}
+				}
 			}
 		}
+	}
+
+	// ----- nested classes -----
+	protected class CachedQueryResult implements QueryResult<T>, Cachable {
+
+		private Map<String, Object> parameters = null;
+		private Collection<T> result           = null;
+		private Set<String> tags               = null;
+		private String statement               = null;
+		private Integer key                    = null;
+
+		public CachedQueryResult(final Integer key, final AdvancedCypherQuery query, final Set<String> tags, final Collection<T> result) {
+
+			this.parameters = new HashMap<>(query.getParameters());
+			this.statement  = query.getStatement();
+			this.result     = result;
+			this.tags       = tags;
+			this.key        = key;
+		}
+
+		/**
+		 * Compares the statement and parameters of the given query with
+		 * the ones this result was created from to protect against hash
+		 * collisions of the cache keys.
+		 *
+		 * @param query the query
+		 * @return whether this result is the result of the given query
+		 */
+		public boolean matches(final AdvancedCypherQuery query) {
+			return statement.equals(query.getStatement()) && parameters.equals(query.getParameters());
+		}
+
+		@Override
+		public void onRemoveFromCache() {
+
+			// called from within queryCache.put, i.e. when the keysByTag monitor is held
+			unregister(this);
+
+			evictions.incrementAndGet();
+		}
 
 		@Override
 		public void close() {
@@ -222,4 +449,51 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 			return result.isEmpty();
 		}
 	}
+
+	/**
+	 * The result of a query that was too large to be cached: the rows
+	 * that were already read, followed by the rest of the result stream.
+	 */
+	private class PrefetchedQueryResult implements QueryResult<T> {
+
+		private QueryResult<T> source = null;
+		private Iterator<T> remaining = null;
+		private List<T> rows          = null;
+
+		public PrefetchedQueryResult(final List<T> rows, final Iterator<T> remaining, final QueryResult<T> source) {
+
+			this.remaining = remaining;
+			this.source    = source;
+			this.rows      = rows;
+		}
+
+		@Override
+		public void close() {
+			source.close();
+		}
+
+		@Override
+		public Iterator<T> iterator() {
+
+			return new Iterator<T>() {
+
+				private final Iterator<T> prefetched = rows.iterator();
+
+				@Override
+				public boolean hasNext() {
+					return prefetched.hasNext() || remaining.hasNext();
+				}
+
+				@Override
+				public T next() {
+
+					if (prefetched.hasNext()) {
+						return prefetched.next();
+					}
+
+					return remaining.next();
+				}
+			};
+		}
+	}
 }
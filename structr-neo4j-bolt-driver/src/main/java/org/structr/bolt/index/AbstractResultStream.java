@@ -20,17 +20,19 @@ package org.structr.bolt.index;
 
 import java.util.Iterator;
 import java.util.Map;
+import org.neo4j.driver.v1.types.Entity;
 import org.structr.api.QueryResult;
 import org.structr.bolt.BoltDatabaseService;
 
 /**
  */
-public abstract class AbstractResultStream<T> implements QueryResult<T> {
+public abstract class AbstractResultStream<T extends Entity> implements QueryResult<T> {
 
 	private QueryResult<T> result             = null;
 	private PageableQuery query               = null;
 	private Iterator<T> current               = null;
 	private BoltDatabaseService db            = null;
+	private T last                            = null;
 
 	protected abstract QueryResult<T> fetchData(final BoltDatabaseService db, final String statement, final Map<String, Object> data);
 
@@ -71,6 +73,11 @@ public abstract class AbstractResultStream<T> implements QueryResult<T> {
 						// reset count
 						remaining = query.pageSize();
 
+						// advance page
+						if (last != null) {
+							query.nextPage(last);
+						}
+
 						final String statement            = query.getStatement();
 						final Map<String, Object> params  = query.getParameters();
 
@@ -79,9 +86,6 @@ public abstract class AbstractResultStream<T> implements QueryResult<T> {
 
 							current = result.iterator();
 
-							// advance page
-							query.nextPage();
-
 							// does the next result have elements?
 							if (!current.hasNext()) {
 
@@ -98,7 +102,9 @@ public abstract class AbstractResultStream<T> implements QueryResult<T> {
 			@Override
 			public T next() {
 				remaining--;
-				return current.next();
+				last = current.next();
+
+				return last;
 			}
 		};
 	}
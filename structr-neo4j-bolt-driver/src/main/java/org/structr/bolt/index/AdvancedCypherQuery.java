@@ -24,6 +24,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import org.neo4j.driver.v1.Value;
+import org.neo4j.driver.v1.types.Entity;
 import org.structr.api.search.SortType;
 
 /**
@@ -40,13 +42,19 @@ public class AdvancedCypherQuery implements PageableQuery {
 	private boolean sortDescending               = false;
 	private SortType sortType                    = null;
 	private String sortKey                       = null;
+	private Object seekValue                     = null;
+	private Long seekId                          = null;
 	private int page                             = 0;
 	private int pageSize                         = 0;
 	private int count                            = 0;
 
 	public AdvancedCypherQuery(final AbstractCypherIndex<?> index) {
+		this(index, 100000);
+	}
+
+	public AdvancedCypherQuery(final AbstractCypherIndex<?> index, final int pageSize) {
 		this.index    = index;
-		this.pageSize = 100000;
+		this.pageSize = pageSize;
 	}
 
 	@Override
@@ -74,8 +82,66 @@ public class AdvancedCypherQuery implements PageableQuery {
 	}
 
 	@Override
-	public void nextPage() {
-		page++;
+	public void nextPage(final Entity lastEntity) {
+
+		if (isSeekable()) {
+
+			final Value value = lastEntity.get(sortKey);
+
+			seek(value.isNull() ? null : value.asObject(), lastEntity.id());
+
+		} else {
+
+			page++;
+		}
+	}
+
+	/**
+	 * Lets this query start after the element with the given sort value
+	 * and internal id, i.e. the equivalent of
+	 * (sortValue, id(n)) > ({seekValue}, {seekId}) in the sort order of
+	 * the query. Must only be used if the query is seekable.
+	 *
+	 * @param value the raw sort value of the element, may be null
+	 * @param id the internal id of the element
+	 */
+	public void seek(final Object value, final long id) {
+
+		this.seekId = id;
+
+		if (value == null) {
+
+			// must match the COALESCE default of numeric sort types
+			seekValue = SortType.Default.equals(sortType) ? null : -1L;
+
+		} else {
+
+			seekValue = value;
+		}
+	}
+
+	/**
+	 * Indicates whether the next page of this query can be fetched by
+	 * continuing after the sort value and id of the last element (keyset
+	 * pagination). The internal id is used as a tie-breaker for equal
+	 * sort values, so the order is deterministic for every sort key. It
+	 * is not possible for UNION queries since ORDER BY and LIMIT only
+	 * apply to the last part of the UNION.
+	 *
+	 * @return whether this query uses keyset pagination
+	 */
+	public boolean isSeekable() {
+		return sortKey != null && typeLabels.size() <= 1;
+	}
+
+	/**
+	 * Indicates whether this query starts after a given element instead
+	 * of the first element of the result.
+	 *
+	 * @return whether a seek position is set
+	 */
+	public boolean hasSeek() {
+		return seekId != null;
 	}
 
 	@Override
@@ -83,6 +149,10 @@ public class AdvancedCypherQuery implements PageableQuery {
 		return this.pageSize;
 	}
 
+	public void setPageSize(final int pageSize) {
+		this.pageSize = pageSize;
+	}
+
 	@Override
 	public String getStatement() {
 
@@ -94,24 +164,14 @@ public class AdvancedCypherQuery implements PageableQuery {
 			case 0:
 
 				buf.append(index.getQueryPrefix(null, sourceTypeLabel, targetTypeLabel));
-
-				if (buffer.length() > 0) {
-					buf.append(" WHERE ");
-					buf.append(buffer);
-				}
-
+				appendWhereClause(buf);
 				buf.append(index.getQuerySuffix());
 				break;
 
 			case 1:
 
 				buf.append(index.getQueryPrefix(typeLabels.get(0), sourceTypeLabel, targetTypeLabel));
-
-				if (buffer.length() > 0) {
-					buf.append(" WHERE ");
-					buf.append(buffer);
-				}
-
+				appendWhereClause(buf);
 				buf.append(index.getQuerySuffix());
 				break;
 
@@ -136,48 +196,59 @@ public class AdvancedCypherQuery implements PageableQuery {
 				break;
 		}
 
-		if (sortKey != null) {
+		if (isSeekable()) {
+
+			buf.append(" ORDER BY ");
+			buf.append(getSortExpression());
 
-			switch (sortType) {
-
-				case Default:
-					// default is "String"
-					// no COALESCE needed => much faster
-					buf.append(" ORDER BY n.`");
-					buf.append(sortKey);
-					buf.append("` ");
-					
-					break;
-
-				default:
-					// other types are numeric
-					buf.append(" ORDER BY COALESCE(n.`");
-					buf.append(sortKey);
-					buf.append("`, ");
-					
-					// COALESCE needs a correctly typed minimum value,
-					// so we need to supply a value based on the sort
-					// type.
-					
-					buf.append("-1");
-					buf.append(")");
+			if (sortDescending) {
+				buf.append(" DESC");
 			}
 
+			// internal id as tie-breaker makes the order deterministic
+			buf.append(", id(n)");
+
 			if (sortDescending) {
 				buf.append(" DESC");
 			}
-		}
 
-		buf.append(" SKIP ");
-		buf.append(page * pageSize);
-		buf.append(" LIMIT ");
-		buf.append(pageSize);
+			buf.append(" LIMIT ");
+			buf.append(pageSize);
+
+		} else {
+
+			if (sortKey != null) {
+
+				buf.append(" ORDER BY ");
+				buf.append(getSortExpression());
+
+				if (sortDescending) {
+					buf.append(" DESC");
+				}
+			}
+
+			buf.append(" SKIP ");
+			buf.append(page * pageSize);
+			buf.append(" LIMIT ");
+			buf.append(pageSize);
+		}
 
 		return buf.toString();
 	}
 
 	@Override
 	public Map<String, Object> getParameters() {
+
+		if (seekId != null) {
+
+			final Map<String, Object> seekParameters = new HashMap<>(parameters);
+
+			seekParameters.put("seekId", seekId);
+			seekParameters.put("seekValue", seekValue);
+
+			return seekParameters;
+		}
+
 		return parameters;
 	}
 
@@ -341,6 +412,137 @@ public class AdvancedCypherQuery implements PageableQuery {
 		this.targetTypeLabel = targetTypeLabel;
 	}
 
+	/**
+	 * Indicates whether this query has a WHERE clause, i.e. whether it
+	 * is more than a scan of all nodes with the given labels.
+	 *
+	 * @return whether this query has predicates
+	 */
+	public boolean hasPredicates() {
+		return buffer.length() > 0;
+	}
+
+	public List<String> getTypeLabels() {
+		return typeLabels;
+	}
+
+	public String getSourceType() {
+		return sourceTypeLabel;
+	}
+
+	public String getTargetType() {
+		return targetTypeLabel;
+	}
+
+	// ----- private methods -----
+	private void appendWhereClause(final StringBuilder buf) {
+
+		final boolean hasConditions = buffer.length() > 0;
+		final boolean hasSeek       = seekId != null;
+
+		if (hasConditions || hasSeek) {
+
+			buf.append(" WHERE ");
+
+			if (hasConditions && hasSeek) {
+
+				buf.append("(");
+				buf.append(buffer);
+				buf.append(") AND ");
+
+			} else if (hasConditions) {
+
+				buf.append(buffer);
+			}
+
+			if (hasSeek) {
+				appendSeekCondition(buf);
+			}
+		}
+	}
+
+	/**
+	 * Appends the condition that selects all elements after the last
+	 * element of the previous page, i.e. the equivalent of
+	 * (sortValue, id(n)) > ({seekValue}, {seekId}) in the sort order
+	 * of the query. Note that null values are sorted last in ascending
+	 * and first in descending order.
+	 */
+	private void appendSeekCondition(final StringBuilder buf) {
+
+		final String expression = getSortExpression();
+		final String op         = sortDescending ? " < " : " > ";
+
+		if (seekValue == null) {
+
+			buf.append("((");
+			buf.append(expression);
+			buf.append(" IS NULL AND id(n)");
+			buf.append(op);
+			buf.append("{seekId})");
+
+			if (sortDescending) {
+
+				buf.append(" OR ");
+				buf.append(expression);
+				buf.append(" IS NOT NULL");
+			}
+
+			buf.append(")");
+
+		} else {
+
+			buf.append("(");
+			buf.append(expression);
+			buf.append(op);
+			buf.append("{seekValue} OR (");
+			buf.append(expression);
+			buf.append(" = {seekValue} AND id(n)");
+			buf.append(op);
+			buf.append("{seekId})");
+
+			if (!sortDescending && SortType.Default.equals(sortType)) {
+
+				buf.append(" OR ");
+				buf.append(expression);
+				buf.append(" IS NULL");
+			}
+
+			buf.append(")");
+		}
+	}
+
+	private String getSortExpression() {
+
+		final StringBuilder buf = new StringBuilder();
+
+		switch (sortType) {
+
+			case Default:
+				// default is "String"
+				// no COALESCE needed => much faster
+				buf.append("n.`");
+				buf.append(sortKey);
+				buf.append("`");
+				break;
+
+			default:
+				// other types are numeric
+				buf.append("COALESCE(n.`");
+				buf.append(sortKey);
+				buf.append("`, ");
+
+				// COALESCE needs a correctly typed minimum value,
+				// so we need to supply a value based on the sort
+				// type.
+
+				buf.append("-1");
+				buf.append(")");
+		}
+
+		return buf.toString();
+	}
+
 	private int deepHashCode(final Map<String, Object> map) {
 
 		final StringBuilder buf = new StringBuilder();
@@ -18,6 +18,8 @@
  */
 package org.structr.bolt.index;
 
+import java.util.HashSet;
+import java.util.Set;
 import org.structr.api.QueryResult;
 import org.structr.api.graph.Node;
 import org.structr.api.util.QueryUtils;
@@ -49,6 +51,13 @@ public class CypherNodeIndex extends AbstractCypherIndex<Node> {
 		return " RETURN DISTINCT n";
 	}
 
+	@Override
+	public Set<String> getCacheTags(final AdvancedCypherQuery query) {
+
+		// queries without type labels (MATCH (n:NodeInterface)) depend on all nodes
+		return new HashSet<>(query.getTypeLabels());
+	}
+
 	@Override
 	public QueryResult<Node> getResult(final PageableQuery query) {
 		return QueryUtils.map(new NodeNodeMapper(db), new NodeResultStream(db, query));
@@ -18,6 +18,8 @@
  */
 package org.structr.bolt.index;
 
+import java.util.HashSet;
+import java.util.Set;
 import org.structr.api.QueryResult;
 import org.structr.api.graph.Relationship;
 import org.structr.api.util.QueryUtils;
@@ -61,6 +63,27 @@ public class CypherRelationshipIndex extends AbstractCypherIndex<Relationship> {
 		return " RETURN DISTINCT n";
 	}
 
+	@Override
+	public Set<String> getCacheTags(final AdvancedCypherQuery query) {
+
+		final Set<String> tags = new HashSet<>(query.getTypeLabels());
+
+		// queries without relationship types depend on all relationships,
+		// source and target labels are only relevant for typed queries
+		if (!tags.isEmpty()) {
+
+			if (query.getSourceType() != null) {
+				tags.add(query.getSourceType());
+			}
+
+			if (query.getTargetType() != null) {
+				tags.add(query.getTargetType());
+			}
+		}
+
+		return tags;
+	}
+
 	@Override
 	public QueryResult<Relationship> getResult(final PageableQuery query) {
 		return QueryUtils.map(new RelationshipRelationshipMapper(db), new RelationshipResultStream(db, query));
@@ -19,12 +19,21 @@
 package org.structr.bolt.index;
 
 import java.util.Map;
+import org.neo4j.driver.v1.types.Entity;
 
 public interface PageableQuery {
 
 	int pageSize();
-	void nextPage();
 	String getStatement();
 	Map<String, Object> getParameters();
 
+	/**
+	 * Advances this query to the next page. Queries with a deterministic
+	 * sort order continue after the given entity (the last element of the
+	 * current page) instead of skipping over all previous pages.
+	 *
+	 * @param lastEntity the last entity of the current page
+	 */
+	void nextPage(final Entity lastEntity);
+
 }
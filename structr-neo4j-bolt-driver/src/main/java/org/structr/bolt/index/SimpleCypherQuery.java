@@ -20,26 +20,42 @@ package org.structr.bolt.index;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import org.neo4j.driver.v1.types.Entity;
 
 /**
- *
+ * A simple paged query that is ordered by internal id, so that each page
+ * continues after the last element of the previous page.
  */
 public class SimpleCypherQuery implements PageableQuery {
 
 	private final Map<String, Object> params = new LinkedHashMap<>();
-	private String base                      = null;
+	private String matchClause               = null;
+	private String condition                 = null;
+	private String identifier                = null;
+	private boolean seek                     = false;
 	private int pageSize                     = 0;
-	private int page                         = 0;
 
-	public SimpleCypherQuery(final String base) {
+	public SimpleCypherQuery(final String matchClause, final String identifier) {
+		this(matchClause, null, identifier);
+	}
 
-		this.pageSize = 10000;
-		this.base     = base;
+	public SimpleCypherQuery(final String matchClause, final String condition, final String identifier) {
+		this(matchClause, condition, identifier, 10000);
+	}
+
+	public SimpleCypherQuery(final String matchClause, final String condition, final String identifier, final int pageSize) {
+
+		this.pageSize    = pageSize;
+		this.matchClause = matchClause;
+		this.condition   = condition;
+		this.identifier  = identifier;
 	}
 
 	@Override
-	public void nextPage() {
-		page++;
+	public void nextPage(final Entity lastEntity) {
+
+		params.put("lastId", lastEntity.id());
+		seek = true;
 	}
 
 	@Override
@@ -50,11 +66,34 @@ public class SimpleCypherQuery implements PageableQuery {
 	@Override
 	public String getStatement() {
 
-		final StringBuilder buf = new StringBuilder(base);
+		final StringBuilder buf = new StringBuilder(matchClause);
+
+		if (condition != null || seek) {
+
+			buf.append(" WHERE ");
+
+			if (condition != null) {
+
+				buf.append(condition);
+
+				if (seek) {
+					buf.append(" AND ");
+				}
+			}
+
+			if (seek) {
+
+				buf.append("id(");
+				buf.append(identifier);
+				buf.append(") > {lastId}");
+			}
+		}
 
-		buf.append(" SKIP ");
-		buf.append(page * pageSize);
-		buf.append(" LIMIT ");
+		buf.append(" RETURN ");
+		buf.append(identifier);
+		buf.append(" ORDER BY id(");
+		buf.append(identifier);
+		buf.append(") LIMIT ");
 		buf.append(pageSize);
 
 		return buf.toString();
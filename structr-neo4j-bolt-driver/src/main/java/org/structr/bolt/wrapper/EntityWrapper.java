@@ -52,7 +52,7 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 		this.db   = db;
 	}
 
-	protected abstract String getQueryPrefix();
+	public abstract String getQueryPrefix();
 	public abstract void clearCaches();
 
 	@Override
@@ -123,14 +123,8 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 		// only update values if actually different from what is stored
 		if (differentValue(key, value)) {
 
-			final Map<String, Object> map = new HashMap<>();
-			final String query            = getQueryPrefix() + " WHERE ID(n) = {id} SET n.`" + key + "` = {value}";
-
-			map.put("id", id);
-			map.put("value", value);
-
-			// update entity handle
-			tx.set(query, map);
+			// register change, will be written in a batch
+			tx.setProperty(this, key, value);
 
 			// update data
 			update(key, value);
@@ -145,16 +139,10 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 
 		assertNotStale();
 
-		final Map<String, Object> map = new HashMap<>();
-		final SessionTransaction tx   = db.getCurrentTransaction();
-		final String query            = getQueryPrefix() + " WHERE ID(n) = {id} SET n += {properties}";
-
-		// overwrite a potential "id" property
-		map.put("id", id);
-		map.put("properties", values);
+		final SessionTransaction tx = db.getCurrentTransaction();
 
-		// execute query
-		tx.set(query, map);
+		// register changes, will be written in a batch
+		tx.setProperties(this, values);
 
 		// update data
 		update(values);
@@ -167,14 +155,10 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 
 		assertNotStale();
 
-		final SessionTransaction tx   = db.getCurrentTransaction();
-		final Map<String, Object> map = new HashMap<>();
-		final String query            = getQueryPrefix() + " WHERE ID(n) = {id} SET n.`" + key + "` = Null";
-
-		map.put("id", id);
+		final SessionTransaction tx = db.getCurrentTransaction();
 
-		// execute query
-		tx.set(query, map);
+		// register removal, will be written in a batch
+		tx.setProperty(this, key, null);
 
 		// remove key from data
 		data.remove(key);
@@ -200,6 +184,9 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 
 		map.put("id", id);
 
+		// pending changes of a deleted entity must not be written
+		tx.discardProperties(this);
+
 		tx.set(getQueryPrefix() + " WHERE ID(n) = {id} DELETE n", map);
 		tx.modified(this);
 
@@ -238,8 +225,10 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 			try {
 
 				// update data
-				data.clear();
-				update(tx.getEntity(getQueryPrefix() + " WHERE ID(n) = {id} RETURN n", map).asMap());
+				refresh((T)tx.getEntity(getQueryPrefix() + " WHERE ID(n) = {id} RETURN n", map));
+
+				// re-apply changes that are not written yet
+				applyPendingProperties(tx);
 
 			} catch (NoSuchRecordException nex) {
 				throw new NotFoundException(nex);
@@ -249,6 +238,16 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 		}
 	}
 
+	protected void refresh(final T entity) {
+
+		data.clear();
+		update(entity.asMap());
+	}
+
+	protected void applyPendingProperties(final SessionTransaction tx) {
+		update(tx.getPendingProperties(this));
+	}
+
 	// ----- private methods -----
 	private void update(final Map<String, Object> values) {
 
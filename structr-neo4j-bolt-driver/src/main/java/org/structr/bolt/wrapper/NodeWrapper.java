@@ -25,7 +25,12 @@ import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import org.neo4j.driver.v1.Record;
 import org.structr.api.graph.Direction;
 import org.structr.api.graph.Label;
 import org.structr.api.graph.Node;
@@ -35,7 +40,6 @@ import org.structr.api.util.FixedSizeCache;
 import org.structr.api.util.Iterables;
 import org.structr.bolt.BoltDatabaseService;
 import org.structr.bolt.SessionTransaction;
-import org.structr.bolt.mapper.RelationshipRelationshipMapper;
 
 /**
  *
@@ -43,10 +47,15 @@ import org.structr.bolt.mapper.RelationshipRelationshipMapper;
 public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> implements Node {
 
 	private final Map<String, Map<String, List<Relationship>>> relationshipCache = new HashMap<>();
+	private final Set<String> labels                                             = ConcurrentHashMap.newKeySet();
+	private static final Map<Long, CompletableFuture<NodeWrapper>> pendingNodes  = new ConcurrentHashMap<>();
 	private static FixedSizeCache<Long, NodeWrapper> nodeCache                   = null;
 
 	private NodeWrapper(final BoltDatabaseService db, final org.neo4j.driver.v1.types.Node node) {
+
 		super(db, node);
+
+		Iterables.addAll(labels, node.labels());
 	}
 
 	public static void initialize(final int cacheSize) {
@@ -54,10 +63,19 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 	}
 
 	@Override
-	protected String getQueryPrefix() {
+	public String getQueryPrefix() {
 		return "MATCH (n)";
 	}
 
+	@Override
+	protected void refresh(final org.neo4j.driver.v1.types.Node node) {
+
+		super.refresh(node);
+
+		labels.clear();
+		Iterables.addAll(labels, node.labels());
+	}
+
 	@Override
 	public void onRemoveFromCache() {
 		relationshipCache.clear();
@@ -100,7 +118,12 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 		((NodeWrapper)endNode).relationshipCache.clear();
 		relationshipCache.clear();
 
-		return RelationshipWrapper.newInstance(db, rel);
+		final RelationshipWrapper newRel = RelationshipWrapper.newInstance(db, rel);
+
+		// the relationship is locked by this transaction
+		tx.created(newRel);
+
+		return newRel;
 	}
 
 	@Override
@@ -114,7 +137,10 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 		map.put("id", id);
 
 		tx.set("MATCH (n) WHERE ID(n) = {id} SET n :" + label.name(), map);
+		tx.modifiedLabel(label.name());
 		tx.modified(this);
+
+		labels.add(label.name());
 	}
 
 	@Override
@@ -128,7 +154,10 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 		map.put("id", id);
 
 		tx.set("MATCH (n) WHERE ID(n) = {id} REMOVE n:" + label.name(), map);
+		tx.modifiedLabel(label.name());
 		tx.modified(this);
+
+		labels.remove(label.name());
 	}
 
 	@Override
@@ -197,17 +226,11 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 
 		assertNotStale();
 
-		final RelationshipRelationshipMapper mapper = new RelationshipRelationshipMapper(db);
 		List<Relationship> list                     = getList(null, null);
 
 		if (list == null) {
 
-			final SessionTransaction tx                 = db.getCurrentTransaction();
-			final Map<String, Object> map               = new HashMap<>();
-
-			map.put("id", id);
-
-			list = toList(Iterables.map(mapper, tx.getRelationships("MATCH (n)-[r]-() WHERE ID(n) = {id} RETURN r", map)));
+			list = fetchRelationships("(n)-[r]-(m)");
 
 			// store in cache
 			setList(null, null, list);
@@ -221,27 +244,21 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 
 		assertNotStale();
 
-		final RelationshipRelationshipMapper mapper = new RelationshipRelationshipMapper(db);
 		List<Relationship> list                     = getList(direction, null);
 
 		if (list == null) {
 
-			final SessionTransaction tx   = db.getCurrentTransaction();
-			final Map<String, Object> map = new HashMap<>();
-
-			map.put("id", id);
-
 			switch (direction) {
 
 				case BOTH:
 					return getRelationships();
 
 				case OUTGOING:
-					list = toList(Iterables.map(mapper, tx.getRelationships("MATCH (n)-[r]->() WHERE ID(n) = {id} RETURN r", map)));
+					list = fetchRelationships("(n)-[r]->(m)");
 					break;
 
 				case INCOMING:
-					list = toList(Iterables.map(mapper, tx.getRelationships("MATCH (n)<-[r]-() WHERE ID(n) = {id} RETURN r", map)));
+					list = fetchRelationships("(n)<-[r]-(m)");
 					break;
 			}
 
@@ -257,28 +274,22 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 
 		assertNotStale();
 
-		final RelationshipRelationshipMapper mapper = new RelationshipRelationshipMapper(db);
 		List<Relationship> list                     = getList(direction, relationshipType);
 
 		if (list == null) {
 
-			final SessionTransaction tx   = db.getCurrentTransaction();
-			final Map<String, Object> map = new HashMap<>();
-
-			map.put("id", id);
-
 			switch (direction) {
 
 				case BOTH:
-					list = toList(Iterables.map(mapper, tx.getRelationships("MATCH (n)-[r:" + relationshipType.name() + "]-() WHERE ID(n) = {id} RETURN r", map)));
+					list = fetchRelationships("(n)-[r:" + relationshipType.name() + "]-(m)");
 					break;
 
 				case OUTGOING:
-					list = toList(Iterables.map(mapper, tx.getRelationships("MATCH (n)-[r:" + relationshipType.name() + "]->() WHERE ID(n) = {id} RETURN r", map)));
+					list = fetchRelationships("(n)-[r:" + relationshipType.name() + "]->(m)");
 					break;
 
 				case INCOMING:
-					list = toList(Iterables.map(mapper, tx.getRelationships("MATCH (n)<-[r:" + relationshipType.name() + "]-() WHERE ID(n) = {id} RETURN r", map)));
+					list = fetchRelationships("(n)<-[r:" + relationshipType.name() + "]-(m)");
 					break;
 			}
 
@@ -295,46 +306,226 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 		nodeCache.remove(id);
 	}
 
+	/**
+	 * Returns the names of the labels of this node as they were known when
+	 * the node was loaded, without a database query.
+	 *
+	 * @return the label names
+	 */
+	public Set<String> getLabelNames() {
+		return labels;
+	}
+
 	public static void clearCache() {
 		nodeCache.clear();
 	}
 
+	public static int getCacheSize() {
+		return nodeCache.size();
+	}
+
 	// ----- public static methods -----
 	public static NodeWrapper newInstance(final BoltDatabaseService db, final org.neo4j.driver.v1.types.Node node) {
 
-		synchronized (nodeCache) {
+		NodeWrapper wrapper = nodeCache.get(node.id());
+		if (wrapper == null) {
+
+			// the lock only guards the check-and-put so that there is
+			// exactly one wrapper per node, no database access in here
+			synchronized (nodeCache) {
+
+				wrapper = nodeCache.get(node.id());
+				if (wrapper == null) {
 
-			NodeWrapper wrapper = nodeCache.get(node.id());
-			if (wrapper == null) {
+					wrapper = new NodeWrapper(db, node);
+					wrapper.applyPendingProperties(db.getCurrentTransaction());
 
-				wrapper = new NodeWrapper(db, node);
-				nodeCache.put(node.id(), wrapper);
+					nodeCache.put(node.id(), wrapper);
+				}
 			}
+		}
+
+		return wrapper;
+	}
+
+	public static NodeWrapper newInstance(final BoltDatabaseService db, final long id) {
+
+		final NodeWrapper wrapper = nodeCache.get(id);
+		if (wrapper != null) {
 
 			return wrapper;
 		}
+
+		final CompletableFuture<NodeWrapper> future = new CompletableFuture<>();
+		final CompletableFuture<NodeWrapper> other  = pendingNodes.putIfAbsent(id, future);
+
+		if (other != null) {
+
+			try {
+
+				return other.join();
+
+			} catch (CompletionException cex) {
+
+				// loading failed in the other thread (possibly because
+				// the node is not visible in its transaction), try again
+				// in the context of the current transaction
+				return newInstance(db, load(db, id));
+			}
+		}
+
+		try {
+
+			final NodeWrapper loaded = newInstance(db, load(db, id));
+
+			future.complete(loaded);
+
+			return loaded;
+
+		} catch (RuntimeException rex) {
+
+			future.completeExceptionally(rex);
+			throw rex;
+
+		} finally {
+
+			pendingNodes.remove(id);
+		}
 	}
 
-	public static NodeWrapper newInstance(final BoltDatabaseService db, final long id) {
+	/**
+	 * Returns the wrappers for the given node ids, loading all nodes that
+	 * are not in the cache with a single query. Nodes that do not exist
+	 * are omitted from the result.
+	 *
+	 * @param db
+	 * @param ids
+	 *
+	 * @return the nodes in the order of the given ids
+	 */
+	public static List<Node> newInstances(final BoltDatabaseService db, final long[] ids) {
 
-		synchronized (nodeCache) {
+		final Map<Long, NodeWrapper> wrappers = new HashMap<>();
+		final List<Long> missing              = new LinkedList<>();
+		final List<Node> result               = new LinkedList<>();
 
-			NodeWrapper wrapper = nodeCache.get(id);
-			if (wrapper == null) {
+		for (final long id : ids) {
 
-				final SessionTransaction tx   = db.getCurrentTransaction();
-				final Map<String, Object> map = new HashMap<>();
+			final NodeWrapper wrapper = nodeCache.get(id);
+			if (wrapper != null) {
 
-				map.put("id", id);
+				wrappers.put(id, wrapper);
 
-				wrapper = new NodeWrapper(db, tx.getNode("MATCH (n) WHERE ID(n) = {id} RETURN n", map));
-				nodeCache.put(id, wrapper);
+			} else {
+
+				missing.add(id);
 			}
+		}
 
-			return wrapper;
+		if (!missing.isEmpty()) {
+
+			final SessionTransaction tx   = db.getCurrentTransaction();
+			final Map<String, Object> map = new HashMap<>();
+
+			map.put("ids", missing);
+
+			for (final org.neo4j.driver.v1.types.Node node : tx.getNodes("UNWIND {ids} AS id MATCH (n) WHERE ID(n) = id RETURN n", map)) {
+
+				wrappers.put(node.id(), newInstance(db, node));
+			}
+		}
+
+		for (final long id : ids) {
+
+			final NodeWrapper wrapper = wrappers.get(id);
+			if (wrapper != null) {
+
+				result.add(wrapper);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Loads the relationships of the given type and direction for all
+	 * given nodes (and the nodes at the other end) with a single query
+	 * and stores them in the relationship caches of the nodes, so that
+	 * subsequent calls to getRelationships do not hit the database.
+	 *
+	 * @param db
+	 * @param nodes
+	 * @param direction
+	 * @param relationshipType the relationship type, or null for all types
+	 */
+	public static void prefetchRelationships(final BoltDatabaseService db, final Iterable<Node> nodes, final Direction direction, final RelationshipType relationshipType) {
+
+		final Map<Long, AssociationList> lists = new LinkedHashMap<>();
+		final Map<Long, NodeWrapper> wrappers  = new HashMap<>();
+
+		for (final Node node : nodes) {
+
+			final NodeWrapper wrapper = (NodeWrapper)node;
+			if (!wrapper.stale && wrapper.getList(direction, relationshipType) == null) {
+
+				lists.put(wrapper.getId(), wrapper.new AssociationList());
+				wrappers.put(wrapper.getId(), wrapper);
+			}
+		}
+
+		if (lists.isEmpty()) {
+			return;
+		}
+
+		final SessionTransaction tx   = db.getCurrentTransaction();
+		final Map<String, Object> map = new HashMap<>();
+		final String type             = relationshipType != null ? ":" + relationshipType.name() : "";
+		final String pattern;
+
+		switch (direction) {
+
+			case OUTGOING:
+				pattern = "(n)-[r" + type + "]->(m)";
+				break;
+
+			case INCOMING:
+				pattern = "(n)<-[r" + type + "]-(m)";
+				break;
+
+			default:
+				pattern = "(n)-[r" + type + "]-(m)";
+				break;
+		}
+
+		map.put("ids", new LinkedList<>(lists.keySet()));
+
+		for (final Record record : tx.getRecords("MATCH " + pattern + " WHERE ID(n) IN {ids} RETURN ID(n) AS id, r, m", map)) {
+
+			final AssociationList list = lists.get(record.get("id").asLong());
+			if (list != null) {
+
+				newInstance(db, record.get("m").asNode());
+				list.add(RelationshipWrapper.newInstance(db, record.get("r").asRelationship()));
+			}
+		}
+
+		for (final Entry<Long, AssociationList> entry : lists.entrySet()) {
+
+			wrappers.get(entry.getKey()).setList(direction, relationshipType, entry.getValue());
 		}
 	}
 
+	// ----- private static methods -----
+	private static org.neo4j.driver.v1.types.Node load(final BoltDatabaseService db, final long id) {
+
+		final SessionTransaction tx   = db.getCurrentTransaction();
+		final Map<String, Object> map = new HashMap<>();
+
+		map.put("id", id);
+
+		return tx.getNode("MATCH (n) WHERE ID(n) = {id} RETURN n", map);
+	}
+
 	// ----- private methods -----
 	private Map<String, List<Relationship>> getCache(final Direction direction) {
 
@@ -366,11 +557,22 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 		cache.put(key, list);
 	}
 
-	private AssociationList toList(final Iterable<Relationship> source) {
+	private List<Relationship> fetchRelationships(final String pattern) {
 
-		final AssociationList list = new AssociationList();
+		final SessionTransaction tx   = db.getCurrentTransaction();
+		final Map<String, Object> map = new HashMap<>();
+		final AssociationList list    = new AssociationList();
+
+		map.put("id", id);
 
-		Iterables.addAll(list, source);
+		// fetch the other node together with the relationship and put it
+		// into the node cache, so that traversals don't need an additional
+		// query per neighbour
+		for (final Record record : tx.getRecords("MATCH " + pattern + " WHERE ID(n) = {id} RETURN r, m", map)) {
+
+			newInstance(db, record.get("m").asNode());
+			list.add(RelationshipWrapper.newInstance(db, record.get("r").asRelationship()));
+		}
 
 		return list;
 	}
@@ -383,28 +585,33 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 		@Override
 		public boolean add(final Relationship toAdd) {
 
-			associations.add(cacheKey(toAdd.getStartNode(), toAdd.getType(), toAdd.getEndNode()));
+			final RelationshipWrapper rel = (RelationshipWrapper)toAdd;
+
+			associations.add(cacheKey(rel.getStartNodeId(), rel.getType(), rel.getEndNodeId()));
 
 			return super.add(toAdd);
 		}
 
 		public boolean containsAssociation(final Node sourceNode, final RelationshipType relType, final Node targetNode) {
-			return associations.contains(cacheKey(sourceNode, relType, targetNode));
+
+			if (sourceNode != null && targetNode != null) {
+
+				return associations.contains(cacheKey(sourceNode.getId(), relType, targetNode.getId()));
+			}
+
+			return false;
 		}
 
 		// ----- private methods -----
-		public String cacheKey(final Node sourceNode, final RelationshipType relType, final Node targetNode) {
+		public String cacheKey(final long sourceNodeId, final RelationshipType relType, final long targetNodeId) {
 
 			final StringBuilder buf = new StringBuilder();
 
-			if (sourceNode != null && targetNode != null) {
-
-				buf.append(sourceNode.getId());
-				buf.append("-");
-				buf.append(relType);
-				buf.append("-");
-				buf.append(targetNode.getId());
-			}
+			buf.append(sourceNodeId);
+			buf.append("-");
+			buf.append(relType);
+			buf.append("-");
+			buf.append(targetNodeId);
 
 			return buf.toString();
 		}
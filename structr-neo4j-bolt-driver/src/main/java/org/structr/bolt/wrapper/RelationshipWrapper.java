@@ -20,6 +20,9 @@ package org.structr.bolt.wrapper;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import org.structr.api.NotFoundException;
 import org.structr.api.graph.Node;
 import org.structr.api.graph.Relationship;
@@ -33,7 +36,8 @@ import org.structr.bolt.SessionTransaction;
  */
 public class RelationshipWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Relationship> implements Relationship {
 
-	private static FixedSizeCache<Long, RelationshipWrapper> relationshipCache = null;
+	private static final Map<Long, CompletableFuture<RelationshipWrapper>> pendingRelationships = new ConcurrentHashMap<>();
+	private static FixedSizeCache<Long, RelationshipWrapper> relationshipCache                  = null;
 
 	private long sourceNodeId = -1L;
 	private long targetNodeId = -1L;
@@ -53,7 +57,7 @@ public class RelationshipWrapper extends EntityWrapper<org.neo4j.driver.v1.types
 	}
 
 	@Override
-	protected String getQueryPrefix() {
+	public String getQueryPrefix() {
 		return "MATCH ()-[n]-()";
 	}
 
@@ -103,6 +107,24 @@ public class RelationshipWrapper extends EntityWrapper<org.neo4j.driver.v1.types
 		return null;
 	}
 
+	/**
+	 * Returns the id of the start node without loading the node.
+	 *
+	 * @return the start node id
+	 */
+	public long getStartNodeId() {
+		return sourceNodeId;
+	}
+
+	/**
+	 * Returns the id of the end node without loading the node.
+	 *
+	 * @return the end node id
+	 */
+	public long getEndNodeId() {
+		return targetNodeId;
+	}
+
 	@Override
 	public Node getOtherNode(final Node node) {
 
@@ -144,36 +166,79 @@ public class RelationshipWrapper extends EntityWrapper<org.neo4j.driver.v1.types
 	// ----- public static methods -----
 	public static RelationshipWrapper newInstance(final BoltDatabaseService db, final org.neo4j.driver.v1.types.Relationship relationship) {
 
-		synchronized (relationshipCache) {
+		RelationshipWrapper wrapper = relationshipCache.get(relationship.id());
+		if (wrapper == null) {
 
-			RelationshipWrapper wrapper = relationshipCache.get(relationship.id());
-			if (wrapper == null) {
+			// the lock only guards the check-and-put so that there is
+			// exactly one wrapper per relationship, no database access in here
+			synchronized (relationshipCache) {
 
-				wrapper = new RelationshipWrapper(db, relationship);
-				relationshipCache.put(relationship.id(), wrapper);
-			}
+				wrapper = relationshipCache.get(relationship.id());
+				if (wrapper == null) {
 
-			return wrapper;
+					wrapper = new RelationshipWrapper(db, relationship);
+					wrapper.applyPendingProperties(db.getCurrentTransaction());
+
+					relationshipCache.put(relationship.id(), wrapper);
+				}
+			}
 		}
+
+		return wrapper;
 	}
 
 	public static RelationshipWrapper newInstance(final BoltDatabaseService db, final long id) {
 
-		synchronized (relationshipCache) {
+		final RelationshipWrapper wrapper = relationshipCache.get(id);
+		if (wrapper != null) {
+
+			return wrapper;
+		}
 
-			RelationshipWrapper wrapper = relationshipCache.get(id);
-			if (wrapper == null) {
+		final CompletableFuture<RelationshipWrapper> future = new CompletableFuture<>();
+		final CompletableFuture<RelationshipWrapper> other  = pendingRelationships.putIfAbsent(id, future);
 
-				final SessionTransaction tx   = db.getCurrentTransaction();
-				final Map<String, Object> map = new HashMap<>();
+		if (other != null) {
 
-				map.put("id", id);
+			try {
 
-				wrapper = new RelationshipWrapper(db, tx.getRelationship("MATCH ()-[n]-() WHERE ID(n) = {id} RETURN n", map));
-				relationshipCache.put(id, wrapper);
+				return other.join();
+
+			} catch (CompletionException cex) {
+
+				// loading failed in the other thread, try again in the
+				// context of the current transaction
+				return newInstance(db, load(db, id));
 			}
+		}
 
-			return wrapper;
+		try {
+
+			final RelationshipWrapper loaded = newInstance(db, load(db, id));
+
+			future.complete(loaded);
+
+			return loaded;
+
+		} catch (RuntimeException rex) {
+
+			future.completeExceptionally(rex);
+			throw rex;
+
+		} finally {
+
+			pendingRelationships.remove(id);
 		}
 	}
+
+	// ----- private static methods -----
+	private static org.neo4j.driver.v1.types.Relationship load(final BoltDatabaseService db, final long id) {
+
+		final SessionTransaction tx   = db.getCurrentTransaction();
+		final Map<String, Object> map = new HashMap<>();
+
+		map.put("id", id);
+
+		return tx.getRelationship("MATCH ()-[n]-() WHERE ID(n) = {id} RETURN n", map);
+	}
 }
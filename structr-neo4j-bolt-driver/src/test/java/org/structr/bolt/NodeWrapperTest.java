@@ -20,19 +20,46 @@ package org.structr.bolt;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.Assert;
 import static org.junit.Assert.fail;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.NativeResult;
 import org.structr.api.Transaction;
+import org.structr.api.DatabaseService;
 import org.structr.api.config.Settings;
+import org.structr.api.graph.Direction;
 import org.structr.api.graph.Node;
 import org.structr.api.graph.Relationship;
 import org.structr.api.graph.RelationshipType;
+import org.structr.api.search.ExactQuery;
+import org.structr.api.search.GroupQuery;
+import org.structr.api.search.Occurrence;
+import org.structr.api.search.QueryPredicate;
+import org.structr.api.search.SortType;
+import org.structr.api.search.TypeQuery;
 import org.structr.api.util.Iterables;
+import org.structr.bolt.index.AdvancedCypherQuery;
+import org.structr.bolt.index.CypherNodeIndex;
+import org.structr.bolt.index.NodeResultStream;
+import org.structr.bolt.index.SimpleCypherQuery;
+import org.structr.bolt.wrapper.NodeWrapper;
 
 public class NodeWrapperTest {
 
@@ -167,4 +194,663 @@ public class NodeWrapperTest {
 		s.shutdown();
 	}
 
+
+	@Test
+	public void testBatchedPropertyWrites() {
+
+		try {
+
+			Settings.DatabasePath.setValue(Files.createTempDirectory("structr-test").toFile().getAbsolutePath());
+			Settings.ConnectionUrl.setValue(Settings.TestingConnectionUrl.getValue());
+
+		} catch (IOException ioex) {
+			logger.warn("", ioex);
+		}
+
+		final BoltDatabaseService s = new BoltDatabaseService();
+		s.initialize();
+
+		long id = 0L;
+
+		// create node and set properties, check that queries see the pending changes
+		try (final Transaction tx = s.beginTx()) {
+
+			final Node node = s.createNode(Collections.EMPTY_SET, Collections.EMPTY_MAP);
+
+			id = node.getId();
+
+			node.setProperty("name", "Test");
+			node.setProperty("key1", "value1");
+			node.setProperty("key2", 2L);
+			node.removeProperty("key1");
+
+			final Map<String, Object> params = new HashMap<>();
+			params.put("id", id);
+
+			try (final NativeResult result = s.execute("MATCH (n) WHERE ID(n) = {id} RETURN n.name AS name, n.key1 AS key1, n.key2 AS key2", params)) {
+
+				Assert.assertTrue("Pending property changes not visible to query", result.hasNext());
+
+				final Map<String, Object> row = result.next();
+
+				Assert.assertEquals("Invalid batched setProperty result", "Test", row.get("name"));
+				Assert.assertNull("Invalid batched removeProperty result", row.get("key1"));
+				Assert.assertEquals("Invalid batched setProperty result", 2L, row.get("key2"));
+			}
+
+			node.setProperty("name", "Committed");
+
+			tx.success();
+		}
+
+		// check that the last change was written on commit
+		try (final Transaction tx = s.beginTx()) {
+
+			final Map<String, Object> params = new HashMap<>();
+			params.put("id", id);
+
+			try (final NativeResult result = s.execute("MATCH (n) WHERE ID(n) = {id} RETURN n.name AS name", params)) {
+
+				Assert.assertTrue(result.hasNext());
+				Assert.assertEquals("Pending property changes not written on commit", "Committed", result.next().get("name"));
+			}
+
+			tx.success();
+		}
+
+		// set property and don't commit transaction
+		try (final Transaction tx = s.beginTx()) {
+
+			s.getNodeById(id).setProperty("name", "Fail");
+		}
+
+		try (final Transaction tx = s.beginTx()) {
+
+			final Map<String, Object> params = new HashMap<>();
+			params.put("id", id);
+
+			try (final NativeResult result = s.execute("MATCH (n) WHERE ID(n) = {id} RETURN n.name AS name", params)) {
+
+				Assert.assertTrue(result.hasNext());
+				Assert.assertEquals("Pending property changes written after rollback", "Committed", result.next().get("name"));
+			}
+
+			tx.success();
+		}
+
+		s.shutdown();
+	}
+
+	@Test
+	public void testConcurrentNodeLoading() {
+
+		try {
+
+			Settings.DatabasePath.setValue(Files.createTempDirectory("structr-test").toFile().getAbsolutePath());
+			Settings.ConnectionUrl.setValue(Settings.TestingConnectionUrl.getValue());
+
+		} catch (IOException ioex) {
+			logger.warn("", ioex);
+		}
+
+		final BoltDatabaseService s = new BoltDatabaseService();
+		s.initialize();
+
+		final List<Long> ids = new ArrayList<>();
+
+		try (final Transaction tx = s.beginTx()) {
+
+			for (int i=0; i<10; i++) {
+
+				final Node node = s.createNode(Collections.EMPTY_SET, Collections.EMPTY_MAP);
+				node.setProperty("name", "node" + i);
+
+				ids.add(node.getId());
+			}
+
+			tx.success();
+		}
+
+		NodeWrapper.clearCache();
+
+		// concurrent cache misses on the same id must yield the same instance
+		final ExecutorService executor   = Executors.newFixedThreadPool(8);
+		final List<Future<Node>> futures = new ArrayList<>();
+		final long firstId               = ids.get(0);
+
+		for (int i=0; i<8; i++) {
+
+			futures.add(executor.submit(() -> {
+
+				try (final Transaction tx = s.beginTx()) {
+
+					final Node node = s.getNodeById(firstId);
+
+					tx.success();
+
+					return node;
+				}
+			}));
+		}
+
+		try {
+
+			final Node first = futures.get(0).get();
+
+			for (final Future<Node> future : futures) {
+
+				Assert.assertSame("Concurrent loading of the same node must return the same instance", first, future.get());
+			}
+
+		} catch (InterruptedException | ExecutionException ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception");
+
+		} finally {
+
+			executor.shutdown();
+		}
+
+		NodeWrapper.clearCache();
+
+		// batched loading, partially cached, with a non-existing id
+		try (final Transaction tx = s.beginTx()) {
+
+			final Node cached      = s.getNodeById(ids.get(5));
+			final long[] query     = new long[] { ids.get(7), ids.get(5), Long.MAX_VALUE, ids.get(2) };
+			final List<Node> nodes = s.getNodesByIds(query);
+
+			Assert.assertEquals("Invalid getNodesByIds result size", 3, nodes.size());
+			Assert.assertEquals("Invalid getNodesByIds result order", (long)ids.get(7), nodes.get(0).getId());
+			Assert.assertSame("getNodesByIds must use cached nodes", cached, nodes.get(1));
+			Assert.assertEquals("Invalid getNodesByIds result order", (long)ids.get(2), nodes.get(2).getId());
+			Assert.assertEquals("Invalid property value", "node2", nodes.get(2).getProperty("name"));
+			Assert.assertSame("getNodesByIds must populate the node cache", nodes.get(0), s.getNodeById(ids.get(7)));
+
+			tx.success();
+		}
+
+		s.shutdown();
+	}
+
+	@Test
+	public void testKeysetPagination() {
+
+		try {
+
+			Settings.DatabasePath.setValue(Files.createTempDirectory("structr-test").toFile().getAbsolutePath());
+			Settings.ConnectionUrl.setValue(Settings.TestingConnectionUrl.getValue());
+
+		} catch (IOException ioex) {
+			logger.warn("", ioex);
+		}
+
+		final BoltDatabaseService s          = new BoltDatabaseService();
+		final Map<Long, String> uuidById     = new LinkedHashMap<>();
+		final Map<Long, String> nameById     = new LinkedHashMap<>();
+
+		s.initialize();
+
+		try (final Transaction tx = s.beginTx()) {
+
+			for (int i=0; i<23; i++) {
+
+				final Map<String, Object> properties = new HashMap<>();
+
+				// some nodes without id to test the handling of null values
+				final String uuid = i % 5 == 0 ? null : UUID.randomUUID().toString().replaceAll("\\-", "");
+
+				if (uuid != null) {
+					properties.put("id", uuid);
+				}
+
+				properties.put("name", "node" + (i % 3));
+
+				final Node node = s.createNode(Collections.singleton("PagingTest"), properties);
+
+				uuidById.put(node.getId(), uuid);
+				nameById.put(node.getId(), (String)properties.get("name"));
+			}
+
+			tx.success();
+		}
+
+		// nulls are sorted last in ascending order, the internal id is the tie-breaker
+		final Comparator<Long> byUuid = (a, b) -> {
+
+			final String u1 = uuidById.get(a);
+			final String u2 = uuidById.get(b);
+
+			if (u1 == null && u2 == null) { return a.compareTo(b); }
+			if (u1 == null) { return 1; }
+			if (u2 == null) { return -1; }
+
+			return u1.compareTo(u2);
+		};
+
+		try (final Transaction tx = s.beginTx()) {
+
+			final CypherNodeIndex index = (CypherNodeIndex)s.nodeIndex();
+
+			Assert.assertEquals("Invalid keyset pagination result", sorted(uuidById.keySet(), byUuid), getIds(index, "id", false));
+			Assert.assertEquals("Invalid keyset pagination result", sorted(uuidById.keySet(), byUuid.reversed()), getIds(index, "id", true));
+
+			// equal values of a non-unique sort key are ordered by the internal id
+			final Comparator<Long> byName = Comparator.comparing((Long id) -> nameById.get(id)).thenComparing(Comparator.naturalOrder());
+
+			Assert.assertEquals("Invalid keyset pagination result", sorted(uuidById.keySet(), byName), getIds(index, "name", false));
+			Assert.assertEquals("Invalid keyset pagination result", sorted(uuidById.keySet(), byName.reversed()), getIds(index, "name", true));
+
+			// unsorted queries fall back to SKIP / LIMIT
+			Assert.assertEquals("Invalid pagination result", uuidById.keySet(), new HashSet<>(getIds(index, null, false)));
+
+			// a query can start after a given element
+			final List<Long> sortedByUuid   = sorted(uuidById.keySet(), byUuid);
+			final AdvancedCypherQuery query = new AdvancedCypherQuery(index, 4);
+			final Long start                = sortedByUuid.get(10);
+			final List<Long> tail           = new ArrayList<>();
+
+			query.typeLabel("PagingTest");
+			query.sort(SortType.Default, "id", false);
+			query.seek(uuidById.get(start), start);
+
+			for (final Node node : index.getResult(query)) {
+				tail.add(node.getId());
+			}
+
+			Assert.assertEquals("Invalid keyset pagination result", sortedByUuid.subList(11, 23), tail);
+
+			// simple queries are ordered by id
+			final Set<Long> ids = new HashSet<>();
+			int count           = 0;
+
+			for (final org.neo4j.driver.v1.types.Node node : new NodeResultStream(s, new SimpleCypherQuery("MATCH (n:PagingTest)", null, "n", 4))) {
+
+				ids.add(node.id());
+				count++;
+			}
+
+			Assert.assertEquals("Invalid keyset pagination result", 23, count);
+			Assert.assertEquals("Invalid keyset pagination result", uuidById.keySet(), ids);
+
+			tx.success();
+		}
+
+		s.shutdown();
+	}
+
+	@Test
+	public void testQueryCache() {
+
+		try {
+
+			Settings.DatabasePath.setValue(Files.createTempDirectory("structr-test").toFile().getAbsolutePath());
+			Settings.ConnectionUrl.setValue(Settings.TestingConnectionUrl.getValue());
+
+		} catch (IOException ioex) {
+			logger.warn("", ioex);
+		}
+
+		final BoltDatabaseService s = new BoltDatabaseService();
+		final int maxRows           = Settings.QueryCacheMaxRows.getValue();
+
+		s.initialize();
+
+		try {
+
+			try (final Transaction tx = s.beginTx()) {
+
+				for (int i=0; i<5; i++) {
+					s.createNode(Collections.singleton("CacheTest"), Collections.singletonMap("name", "a"));
+				}
+
+				s.createNode(Collections.singleton("CacheTest"), Collections.singletonMap("name", "b"));
+
+				tx.success();
+			}
+
+			// results with more rows than the limit are not cached, but complete
+			Settings.QueryCacheMaxRows.setValue(3);
+
+			Assert.assertEquals("Invalid query result", 5, queryByName(s, "a"));
+			Assert.assertEquals("Results above the row limit must not be cached", 0, getQueryCacheSize(s));
+
+			Settings.QueryCacheMaxRows.setValue(maxRows);
+
+			Assert.assertEquals("Invalid query result", 5, queryByName(s, "a"));
+			Assert.assertEquals("Invalid query result", 1, queryByName(s, "b"));
+			Assert.assertEquals("Query results should be cached", 2, getQueryCacheSize(s));
+
+			// scans of all nodes of a type are not cached
+			try (final Transaction tx = s.beginTx()) {
+
+				Assert.assertEquals("Invalid query result", 6, Iterables.count(s.nodeIndex().query(new TestPredicate(TypeQuery.class, "type", String.class, "CacheTest"))));
+				tx.success();
+			}
+
+			Assert.assertEquals("Unbounded queries must not be cached", 2, getQueryCacheSize(s));
+
+			// writes to other labels must not invalidate the cached results
+			try (final Transaction tx = s.beginTx()) {
+
+				s.createNode(Collections.singleton("OtherLabel"), Collections.singletonMap("name", "a"));
+				tx.success();
+			}
+
+			Assert.assertEquals("Unrelated writes must not invalidate cached results", 2, getQueryCacheSize(s));
+
+			// writes to nodes with the label must drop the cached results
+			try (final Transaction tx = s.beginTx()) {
+
+				s.createNode(Collections.singleton("CacheTest"), Collections.singletonMap("name", "a"));
+				tx.success();
+			}
+
+			Assert.assertEquals("Writes must invalidate cached results", 0, getQueryCacheSize(s));
+			Assert.assertEquals("Invalid query result after invalidation", 6, queryByName(s, "a"));
+
+		} finally {
+
+			Settings.QueryCacheMaxRows.setValue(maxRows);
+		}
+
+		s.shutdown();
+	}
+
+	@Test
+	public void testRelationshipsPrimeNodeCache() {
+
+		try {
+
+			Settings.DatabasePath.setValue(Files.createTempDirectory("structr-test").toFile().getAbsolutePath());
+			Settings.ConnectionUrl.setValue(Settings.TestingConnectionUrl.getValue());
+
+		} catch (IOException ioex) {
+			logger.warn("", ioex);
+		}
+
+		final BoltDatabaseService s = new BoltDatabaseService();
+		long id                     = 0L;
+
+		s.initialize();
+
+		try (final Transaction tx = s.beginTx()) {
+
+			final Node node = s.createNode(Collections.singleton("PrimeTest"), Collections.emptyMap());
+
+			for (int i=0; i<3; i++) {
+				node.createRelationshipTo(s.createNode(Collections.singleton("PrimeTest"), Collections.emptyMap()), s.forName(RelationshipType.class, "TEST"));
+			}
+
+			id = node.getId();
+
+			tx.success();
+		}
+
+		NodeWrapper.clearCache();
+
+		try (final Transaction tx = s.beginTx()) {
+
+			final Node node = s.getNodeById(id);
+
+			Assert.assertEquals("Only the loaded node should be cached", 1, NodeWrapper.getCacheSize());
+
+			final List<Relationship> rels = Iterables.toList(node.getRelationships());
+
+			Assert.assertEquals("Invalid number of relationships", 3, rels.size());
+			Assert.assertEquals("Neighbour nodes should be cached together with the relationships", 4, NodeWrapper.getCacheSize());
+
+			for (final Relationship rel : rels) {
+				Assert.assertNotEquals("Invalid neighbour node", id, rel.getEndNode().getId());
+			}
+
+			tx.success();
+		}
+
+		s.shutdown();
+	}
+
+	@Test
+	public void testPrefetchRelationships() {
+
+		try {
+
+			Settings.DatabasePath.setValue(Files.createTempDirectory("structr-test").toFile().getAbsolutePath());
+			Settings.ConnectionUrl.setValue(Settings.TestingConnectionUrl.getValue());
+
+		} catch (IOException ioex) {
+			logger.warn("", ioex);
+		}
+
+		final BoltDatabaseService s = new BoltDatabaseService();
+		final List<Long> ids        = new ArrayList<>();
+
+		s.initialize();
+
+		try (final Transaction tx = s.beginTx()) {
+
+			final RelationshipType typeA = s.forName(RelationshipType.class, "PREFETCH_A");
+			final RelationshipType typeB = s.forName(RelationshipType.class, "PREFETCH_B");
+			final Node hub               = s.createNode(Collections.singleton("PrefetchTest"), Collections.emptyMap());
+			final Node a                 = s.createNode(Collections.singleton("PrefetchTest"), Collections.emptyMap());
+			final Node b                 = s.createNode(Collections.singleton("PrefetchTest"), Collections.emptyMap());
+			final Node c                 = s.createNode(Collections.singleton("PrefetchTest"), Collections.emptyMap());
+			final Node empty             = s.createNode(Collections.singleton("PrefetchTest"), Collections.emptyMap());
+
+			hub.createRelationshipTo(a, typeA);
+			hub.createRelationshipTo(b, typeA);
+			hub.createRelationshipTo(c, typeB);
+			hub.createRelationshipTo(hub, typeB);
+			c.createRelationshipTo(hub, typeA);
+			a.createRelationshipTo(b, typeB);
+
+			for (final Node node : Arrays.asList(hub, a, b, c, empty)) {
+				ids.add(node.getId());
+			}
+
+			tx.success();
+		}
+
+		for (final Direction direction : Direction.values()) {
+
+			for (final String typeName : Arrays.asList("PREFETCH_A", "PREFETCH_B", null)) {
+
+				final Map<Long, List<Long>> expected = new LinkedHashMap<>();
+				final Map<Long, List<Long>> actual   = new LinkedHashMap<>();
+
+				NodeWrapper.clearCache();
+
+				try (final Transaction tx = s.beginTx()) {
+
+					final RelationshipType type = typeName != null ? s.forName(RelationshipType.class, typeName) : null;
+
+					for (final Long id : ids) {
+						expected.put(id, getRelationshipIds(s.getNodeById(id), direction, type));
+					}
+
+					tx.success();
+				}
+
+				NodeWrapper.clearCache();
+
+				try (final Transaction tx = s.beginTx()) {
+
+					final RelationshipType type = typeName != null ? s.forName(RelationshipType.class, typeName) : null;
+					final DatabaseService db    = s;
+					final List<Node> nodes      = new ArrayList<>();
+
+					for (final Long id : ids) {
+						nodes.add(s.getNodeById(id));
+					}
+
+					db.prefetchRelationships(nodes, direction, type);
+
+					for (final Node node : nodes) {
+						actual.put(node.getId(), getRelationshipIds(node, direction, type));
+					}
+
+					tx.success();
+				}
+
+				Assert.assertEquals("Prefetched relationships should match lazily loaded relationships for direction " + direction + " and type " + typeName, expected, actual);
+				Assert.assertTrue("Node without relationships should have no prefetched relationships", actual.get(ids.get(4)).isEmpty());
+			}
+		}
+
+		s.shutdown();
+	}
+
+	// ----- private methods -----
+	private List<Long> getRelationshipIds(final Node node, final Direction direction, final RelationshipType type) {
+
+		final List<Long> relIds = new ArrayList<>();
+
+		for (final Relationship rel : type != null ? node.getRelationships(direction, type) : node.getRelationships(direction)) {
+			relIds.add(rel.getId());
+		}
+
+		Collections.sort(relIds);
+
+		return relIds;
+	}
+
+	private List<Long> getIds(final CypherNodeIndex index, final String sortKey, final boolean sortDescending) {
+
+		final AdvancedCypherQuery query = new AdvancedCypherQuery(index, 4);
+		final List<Long> ids            = new ArrayList<>();
+
+		query.typeLabel("PagingTest");
+
+		if (sortKey != null) {
+			query.sort(SortType.Default, sortKey, sortDescending);
+		}
+
+		Assert.assertEquals("Keyset pagination should be used for every sort key", sortKey != null, query.isSeekable());
+
+		for (final Node node : index.getResult(query)) {
+			ids.add(node.getId());
+		}
+
+		return ids;
+	}
+
+	private List<Long> sorted(final Set<Long> ids, final Comparator<Long> comparator) {
+
+		final List<Long> list = new ArrayList<>(ids);
+
+		Collections.sort(list, comparator);
+
+		return list;
+	}
+
+	private int queryByName(final BoltDatabaseService s, final String name) {
+
+		try (final Transaction tx = s.beginTx()) {
+
+			final List<QueryPredicate> predicates = new ArrayList<>();
+
+			predicates.add(new TestPredicate(TypeQuery.class, "type", String.class, "CacheTest"));
+			predicates.add(new TestPredicate(ExactQuery.class, "name", String.class, name));
+
+			final int count = (int)Iterables.count(s.nodeIndex().query(new TestGroupPredicate(predicates)));
+
+			tx.success();
+
+			return count;
+		}
+	}
+
+	private int getQueryCacheSize(final BoltDatabaseService s) {
+		return (Integer)s.getQueryCacheStatistics().get("nodes").get("size");
+	}
+
+	// ----- nested classes -----
+	private static class TestPredicate implements TypeQuery, ExactQuery {
+
+		private Class queryType = null;
+		private String name     = null;
+		private Class type      = null;
+		private Object value    = null;
+
+		public TestPredicate(final Class queryType, final String name, final Class type, final Object value) {
+
+			this.queryType = queryType;
+			this.name      = name;
+			this.type      = type;
+			this.value     = value;
+		}
+
+		@Override
+		public Class getQueryType() {
+			return queryType;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public Class getType() {
+			return type;
+		}
+
+		@Override
+		public Object getValue() {
+			return value;
+		}
+
+		@Override
+		public Occurrence getOccurrence() {
+			return Occurrence.REQUIRED;
+		}
+
+		@Override
+		public boolean isExactMatch() {
+			return true;
+		}
+
+		@Override
+		public String getSortKey() {
+			return null;
+		}
+
+		@Override
+		public SortType getSortType() {
+			return null;
+		}
+
+		@Override
+		public boolean sortDescending() {
+			return false;
+		}
+
+		@Override
+		public Class getSourceType() {
+			return null;
+		}
+
+		@Override
+		public Class getTargetType() {
+			return null;
+		}
+	}
+
+	private static class TestGroupPredicate extends TestPredicate implements GroupQuery {
+
+		private List<QueryPredicate> predicates = null;
+
+		public TestGroupPredicate(final List<QueryPredicate> predicates) {
+
+			super(GroupQuery.class, null, null, null);
+
+			this.predicates = predicates;
+		}
+
+		@Override
+		public List<QueryPredicate> getQueryPredicates() {
+			return predicates;
+		}
+	}
 }
@@ -63,6 +63,7 @@ public class ResultGSONAdapter implements JsonSerializer<Result>, JsonDeserializ
 		Integer page = src.getPage();
 		Integer pageCount = src.getPageCount();
 		Integer pageSize = src.getPageSize();
+		String nextCursor = src.getNextCursor();
 		String queryTime = src.getQueryTime();
 		Integer resultCount = src.getRawResultCount();
 		String searchString = src.getSearchString();
@@ -70,6 +71,10 @@ public class ResultGSONAdapter implements JsonSerializer<Result>, JsonDeserializ
 		String sortOrder = src.getSortOrder();
 		GraphObject metaData = src.getMetaData();
 
+		if(nextCursor != null) {
+			result.add("next_cursor", new JsonPrimitive(nextCursor));
+		}
+
 		if(page != null) {
 			result.add("page", new JsonPrimitive(page));
 		}
@@ -20,6 +20,7 @@ package org.structr.rest.auth;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +33,7 @@ import org.structr.core.entity.AbstractUser;
 import org.structr.core.entity.Principal;
 import org.structr.core.entity.SuperUser;
 import org.structr.core.property.PropertyKey;
+import org.structr.rest.service.LocalSessionDataStore;
 import org.structr.schema.action.Actions;
 
 
@@ -175,6 +177,24 @@ public class AuthHelper {
 	 */
 	public static Principal getPrincipalForSessionId(final String sessionId) {
 
+		// the local session data store knows the owner of each session, which avoids the index lookup
+		final String principalId = LocalSessionDataStore.getPrincipalIdForSession(sessionId);
+		if (principalId != null) {
+
+			try {
+
+				final Principal principal = StructrApp.getInstance().get(Principal.class, principalId);
+				if (principal != null && ArrayUtils.contains(principal.getProperty(Principal.sessionIds), sessionId)) {
+
+					return principal;
+				}
+
+			} catch (FrameworkException fex) {
+
+				logger.warn("Error while searching for principal: {}", fex.getMessage());
+			}
+		}
+
 		return getPrincipalForCredential(Principal.sessionIds, new String[]{ sessionId });
 
 	}
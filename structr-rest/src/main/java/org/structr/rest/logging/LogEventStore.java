@@ -0,0 +1,986 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.logging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+import org.structr.core.graph.NodeServiceCommand;
+import org.structr.core.graph.TransactionCommand;
+
+/**
+ * Append-only, time-partitioned store for log events.
+ *
+ * Events are stored in one partition per hour. Each partition consists
+ * of a file of fixed-width records (timestamp, dictionary id of the
+ * action, visibility flags, hashes of subject, object and owner, and the
+ * position of the data) and a file that contains the UTF-8 encoded
+ * subject, object, message and owner of each event. Actions are dictionary-encoded and subjects and objects
+ * are hashed, so filtering compares numbers and the data is only decoded
+ * for matching records. Record files are scanned via read-only memory
+ * mappings.
+ *
+ * The records are stored row by row, not column by column: all columns
+ * of a record fit into 52 bytes, so a scan reads the same pages either
+ * way, and an append stays a single write to a single file instead of
+ * one write per column file.
+ *
+ * Like LogEvent nodes, events are visible to admins, to their owner, and
+ * to public or authenticated users if the respective flag is set. Other
+ * events are filtered out while scanning, without any graph lookups.
+ *
+ * For each partition, rollups with the number of events per action (for
+ * all events, for the events visible to public users and for the events
+ * visible to authenticated users) and bloom filters of the subjects,
+ * objects and owners are kept in memory. The filters
+ * are sized for a false positive rate of 1% at the expected number of
+ * events of the partition: the actual number for existing partitions, and
+ * the number of events in the most recent partition for new ones. The
+ * overview is answered from the rollups, only the partitions that may
+ * contain events owned by a non-admin caller are scanned for them, and
+ * partitions that can not contain matching events are skipped when
+ * scanning. The dictionary is
+ * limited to 10000 different actions.
+ */
+public class LogEventStore {
+
+	private static final Logger logger             = LoggerFactory.getLogger(LogEventStore.class.getName());
+	private static final String RECORD_SUFFIX      = ".rec";
+	private static final String MESSAGE_SUFFIX     = ".msg";
+	private static final String DICTIONARY_FILE    = "dictionary.dat";
+	private static final long PARTITION_INTERVAL   = TimeUnit.HOURS.toMillis(1);
+	private static final int MAX_OPEN_PARTITIONS   = 4;
+	private static final int MAX_ACTIONS           = 10000;
+	private static final int MIN_EXPECTED_EVENTS   = 1024;
+	private static final int MAX_FILTER_BITS       = 1 << 26;
+	private static final double FILTER_FPP         = 0.01;
+	private static final int RECORD_SIZE           = 52;
+	private static final int VISIBLE_TO_PUBLIC     = 1;
+	private static final int VISIBLE_TO_AUTH       = 2;
+	private static final int NULL_ID               = -1;
+	private static LogEventStore instance          = null;
+
+	private final ConcurrentSkipListMap<Long, Partition> partitions = new ConcurrentSkipListMap<>();
+	private final Map<String, Integer> dictionaryIds                = new ConcurrentHashMap<>();
+	private final List<String> dictionary                           = Collections.synchronizedList(new ArrayList<>());
+	private final Map<Long, Partition> openPartitions               = new LinkedHashMap<>();
+	private FileChannel dictionaryChannel                           = null;
+	private Path directory                                          = null;
+
+	private LogEventStore(final Path directory) throws IOException {
+
+		this.directory = directory;
+
+		Files.createDirectories(directory);
+
+		loadDictionary();
+		loadPartitions();
+	}
+
+	/**
+	 * Returns the store in the configured event log directory.
+	 *
+	 * @return the store
+	 * @throws IOException
+	 */
+	public static synchronized LogEventStore getInstance() throws IOException {
+
+		final Path configuredDirectory = Paths.get(Settings.getFullSettingPath(Settings.EventLogPath)).toAbsolutePath();
+
+		if (instance == null || !instance.directory.equals(configuredDirectory)) {
+
+			if (instance != null) {
+				instance.close();
+			}
+
+			instance = new LogEventStore(configuredDirectory);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Appends a log event.
+	 *
+	 * @param timestamp
+	 * @param action
+	 * @param subjectId
+	 * @param objectId
+	 * @param message
+	 * @param ownerId the id of the user that owns the event, or null
+	 * @param visibleToPublicUsers
+	 * @param visibleToAuthenticatedUsers
+	 * @throws IOException
+	 */
+	public synchronized void append(final long timestamp, final String action, final String subjectId, final String objectId, final String message, final String ownerId, final boolean visibleToPublicUsers, final boolean visibleToAuthenticatedUsers) throws IOException {
+
+		final Partition partition = openForAppend(timestamp - (timestamp % PARTITION_INTERVAL));
+		final int actionId        = getOrCreateId(action);
+		final int flags           = (visibleToPublicUsers ? VISIBLE_TO_PUBLIC : 0) | (visibleToAuthenticatedUsers ? VISIBLE_TO_AUTH : 0);
+		final long subjectHash    = hash(subjectId);
+		final long objectHash     = hash(objectId);
+		final long ownerHash      = hash(ownerId);
+		final long dataOffset     = partition.messageSize;
+		final ByteBuffer data     = encode(subjectId, objectId, message, ownerId);
+		final int dataLength      = data.remaining();
+
+		writeFully(partition.messageChannel, data, dataOffset);
+		partition.messageSize += dataLength;
+
+		final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+
+		record.putLong(timestamp);
+		record.putInt(actionId);
+		record.putInt(flags);
+		record.putLong(subjectHash);
+		record.putLong(objectHash);
+		record.putLong(ownerHash);
+		record.putLong(dataOffset);
+		record.putInt(dataLength);
+		record.flip();
+
+		writeFully(partition.recordChannel, record, partition.count * RECORD_SIZE);
+
+		partition.add(timestamp, actionId, flags, subjectHash, objectHash, ownerHash);
+	}
+
+	/**
+	 * Appends a log event after the current transaction has been committed,
+	 * so that events of failed transactions are not logged, like the
+	 * LogEvent nodes they replace. Outside of a transaction, the event is
+	 * appended immediately.
+	 *
+	 * @param timestamp
+	 * @param action
+	 * @param subjectId
+	 * @param objectId
+	 * @param message
+	 * @param ownerId the id of the user that owns the event, or null
+	 * @param visibleToPublicUsers
+	 * @param visibleToAuthenticatedUsers
+	 * @throws IOException
+	 */
+	public static void appendAfterCommit(final long timestamp, final String action, final String subjectId, final String objectId, final String message, final String ownerId, final boolean visibleToPublicUsers, final boolean visibleToAuthenticatedUsers) throws IOException {
+
+		if (TransactionCommand.inTransaction()) {
+
+			TransactionCommand.afterCommit("logEvent." + NodeServiceCommand.getNextUuid(), () -> {
+
+				try {
+
+					getInstance().append(timestamp, action, subjectId, objectId, message, ownerId, visibleToPublicUsers, visibleToAuthenticatedUsers);
+
+				} catch (IOException ioex) {
+					logger.warn("Unable to store log event: {}", ioex.getMessage());
+				}
+			});
+
+		} else {
+
+			getInstance().append(timestamp, action, subjectId, objectId, message, ownerId, visibleToPublicUsers, visibleToAuthenticatedUsers);
+		}
+	}
+
+	/**
+	 * Returns the events that match the given values and are visible to
+	 * the given viewer, null values match everything. The events are read
+	 * lazily, partition by partition.
+	 *
+	 * @param action
+	 * @param subjectId
+	 * @param objectId
+	 * @param from the start of the time range (inclusive)
+	 * @param to the end of the time range (inclusive)
+	 * @param viewer
+	 * @return the matching events
+	 */
+	public Iterable<LogEntry> query(final String action, final String subjectId, final String objectId, final long from, final long to, final Viewer viewer) {
+
+		final Integer actionId = action != null ? dictionaryIds.get(action) : null;
+
+		// actions that were never stored can not match
+		if (action != null && actionId == null) {
+			return Collections.emptyList();
+		}
+
+		if (to < from) {
+			return Collections.emptyList();
+		}
+
+		final Long firstKey = partitions.floorKey(from);
+		final Map<Long, Partition> candidates = partitions.subMap(firstKey != null ? firstKey : Long.MIN_VALUE, true, to, true);
+
+		return () -> new PartitionIterator(candidates.values().iterator(), actionId, subjectId, objectId, from, to, viewer);
+	}
+
+	/**
+	 * Returns the number of events per action and the time range of all
+	 * events in the store that are visible to the given viewer, calculated
+	 * from the partition rollups. For a user that is not an admin, the
+	 * partitions that may contain events owned by the user are scanned for
+	 * the owned events that are not visible through their flags.
+	 *
+	 * @param viewer
+	 * @return the overview
+	 */
+	public Overview getOverview(final Viewer viewer) {
+
+		final Overview overview = new Overview();
+
+		for (final Partition partition : partitions.values()) {
+
+			final boolean scanOwned;
+
+			synchronized (partition) {
+
+				if (viewer.admin) {
+
+					overview.add(partition.all, dictionary);
+
+				} else {
+
+					overview.add(viewer.userId != null ? partition.authenticated : partition.visible, dictionary);
+				}
+
+				scanOwned = !viewer.admin && viewer.userId != null && partition.count > 0 && partition.filterContains(partition.owners, viewer.userHash);
+			}
+
+			if (scanOwned) {
+
+				try {
+
+					for (final LogEntry entry : partition.scan(null, null, null, Long.MIN_VALUE, Long.MAX_VALUE, viewer, true)) {
+						overview.add(entry.getTimestamp(), entry.getAction(), 1);
+					}
+
+				} catch (IOException ioex) {
+					logger.warn("Unable to read event log partition {}: {}", partition.start, ioex.getMessage());
+				}
+			}
+		}
+
+		return overview;
+	}
+
+	public synchronized void close() {
+
+		for (final Partition partition : openPartitions.values()) {
+			partition.close();
+		}
+
+		openPartitions.clear();
+
+		if (dictionaryChannel != null) {
+
+			try {
+
+				dictionaryChannel.close();
+
+			} catch (IOException ioex) {
+				logger.warn("Unable to close event log dictionary: {}", ioex.getMessage());
+			}
+		}
+	}
+
+	// ----- private methods -----
+	private void loadDictionary() throws IOException {
+
+		dictionaryChannel = FileChannel.open(directory.resolve(DICTIONARY_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		final long size = dictionaryChannel.size();
+		if (size > 0) {
+
+			final MappedByteBuffer buffer = dictionaryChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+			while (buffer.remaining() >= 4) {
+
+				final int length = buffer.getInt();
+				if (length < 0 || length > buffer.remaining()) {
+
+					// incomplete entry at the end of the file
+					break;
+				}
+
+				final byte[] bytes = new byte[length];
+				buffer.get(bytes);
+
+				final String value = new String(bytes, StandardCharsets.UTF_8);
+
+				dictionaryIds.put(value, dictionary.size());
+				dictionary.add(value);
+			}
+
+			dictionaryChannel.truncate(buffer.position());
+		}
+
+		dictionaryChannel.position(dictionaryChannel.size());
+	}
+
+	private void loadPartitions() throws IOException {
+
+		try (final DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + RECORD_SUFFIX)) {
+
+			for (final Path file : stream) {
+
+				final String name = file.getFileName().toString();
+
+				try {
+
+					final long start          = Long.parseLong(name.substring(0, name.length() - RECORD_SUFFIX.length()));
+					final Partition partition = new Partition(start, Files.size(file) / RECORD_SIZE);
+
+					partition.rebuildRollup();
+					partitions.put(start, partition);
+
+				} catch (NumberFormatException nfex) {
+					logger.warn("Ignoring unknown file {} in event log directory", name);
+				}
+			}
+		}
+	}
+
+	private Partition openForAppend(final long start) throws IOException {
+
+		Partition partition = openPartitions.remove(start);
+		if (partition == null) {
+
+			partition = partitions.computeIfAbsent(start, s -> new Partition(s, getExpectedCount()));
+			partition.open();
+
+			// keep only the most recently used partitions open
+			if (openPartitions.size() >= MAX_OPEN_PARTITIONS) {
+
+				final Iterator<Partition> iterator = openPartitions.values().iterator();
+
+				iterator.next().close();
+				iterator.remove();
+			}
+		}
+
+		openPartitions.put(start, partition);
+
+		return partition;
+	}
+
+	/**
+	 * Returns the expected number of events of a new partition, which is
+	 * the number of events in the most recent partition.
+	 */
+	private long getExpectedCount() {
+
+		final Entry<Long, Partition> last = partitions.lastEntry();
+
+		return last != null ? last.getValue().count : 0L;
+	}
+
+	private int getOrCreateId(final String value) throws IOException {
+
+		if (value == null) {
+			return NULL_ID;
+		}
+
+		Integer id = dictionaryIds.get(value);
+		if (id == null) {
+
+			if (dictionary.size() >= MAX_ACTIONS) {
+				throw new IOException("Event log dictionary is full, unable to store more than " + MAX_ACTIONS + " different actions");
+			}
+
+			final byte[] bytes      = value.getBytes(StandardCharsets.UTF_8);
+			final ByteBuffer buffer = ByteBuffer.allocate(4 + bytes.length);
+
+			buffer.putInt(bytes.length);
+			buffer.put(bytes);
+			buffer.flip();
+
+			while (buffer.hasRemaining()) {
+				dictionaryChannel.write(buffer);
+			}
+
+			id = dictionary.size();
+
+			dictionary.add(value);
+			dictionaryIds.put(value, id);
+		}
+
+		return id;
+	}
+
+	private String lookup(final int id) {
+		return id != NULL_ID ? dictionary.get(id) : null;
+	}
+
+	private static ByteBuffer encode(final String... values) {
+
+		final byte[][] bytes = new byte[values.length][];
+		int length           = 0;
+
+		for (int i=0; i<values.length; i++) {
+
+			bytes[i] = values[i] != null ? values[i].getBytes(StandardCharsets.UTF_8) : null;
+			length  += 4 + (bytes[i] != null ? bytes[i].length : 0);
+		}
+
+		final ByteBuffer buffer = ByteBuffer.allocate(length);
+
+		for (final byte[] value : bytes) {
+
+			if (value != null) {
+
+				buffer.putInt(value.length);
+				buffer.put(value);
+
+			} else {
+
+				buffer.putInt(-1);
+			}
+		}
+
+		buffer.flip();
+
+		return buffer;
+	}
+
+	private static String decode(final ByteBuffer buffer) {
+
+		if (buffer.remaining() < 4) {
+			return null;
+		}
+
+		final int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining()) {
+			return null;
+		}
+
+		final String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+
+		buffer.position(buffer.position() + length);
+
+		return value;
+	}
+
+	/**
+	 * 64-bit FNV-1a hash of the UTF-8 bytes of the given value.
+	 */
+	private static long hash(final String value) {
+
+		if (value == null) {
+			return 0L;
+		}
+
+		long hash = 0xcbf29ce484222325L;
+
+		for (final byte b : value.getBytes(StandardCharsets.UTF_8)) {
+
+			hash ^= (b & 0xff);
+			hash *= 0x100000001b3L;
+		}
+
+		return hash;
+	}
+
+	private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+
+		long current = position;
+
+		while (buffer.hasRemaining()) {
+			current += channel.write(buffer, current);
+		}
+	}
+
+	// ----- nested classes -----
+	/**
+	 * The number of events per action and the time range of all events.
+	 */
+	public static class Overview {
+
+		private final Map<String, Integer> actions = new HashMap<>();
+		private long first                         = Long.MAX_VALUE;
+		private long last                          = 0L;
+		private int total                          = 0;
+
+		public Map<String, Integer> getActions() {
+			return actions;
+		}
+
+		public long getFirst() {
+			return first;
+		}
+
+		public long getLast() {
+			return last;
+		}
+
+		public int getTotal() {
+			return total;
+		}
+
+		private void add(final Rollup rollup, final List<String> dictionary) {
+
+			for (final Entry<Integer, Integer> entry : rollup.actionCounts.entrySet()) {
+
+				final Integer id    = entry.getKey();
+				final String action = id != NULL_ID ? dictionary.get(id) : "null";
+
+				actions.merge(action, entry.getValue(), Integer::sum);
+			}
+
+			if (rollup.total > 0) {
+
+				first  = Math.min(first, rollup.first);
+				last   = Math.max(last, rollup.last);
+				total += rollup.total;
+			}
+		}
+
+		private void add(final long timestamp, final String action, final int count) {
+
+			actions.merge(action != null ? action : "null", count, Integer::sum);
+
+			first  = Math.min(first, timestamp);
+			last   = Math.max(last, timestamp);
+			total += count;
+		}
+	}
+
+	/**
+	 * The caller of a query, which determines the visible events.
+	 */
+	public static class Viewer {
+
+		private String userId  = null;
+		private long userHash  = 0L;
+		private boolean admin  = false;
+
+		private Viewer(final String userId, final boolean admin) {
+
+			this.userId   = userId;
+			this.userHash = hash(userId);
+			this.admin    = admin;
+		}
+
+		/**
+		 * Returns a viewer that can see all events.
+		 *
+		 * @return the viewer
+		 */
+		public static Viewer admin() {
+			return new Viewer(null, true);
+		}
+
+		/**
+		 * Returns a viewer that can see the events of the given user and the
+		 * events that are visible to public or authenticated users.
+		 *
+		 * @param userId the id of the user, or null for anonymous users
+		 * @return the viewer
+		 */
+		public static Viewer user(final String userId) {
+			return new Viewer(userId, false);
+		}
+
+		private boolean canSee(final int flags, final long ownerHash) {
+
+			return admin
+				|| (flags & VISIBLE_TO_PUBLIC) != 0
+				|| (userId != null && (flags & VISIBLE_TO_AUTH) != 0)
+				|| (userId != null && ownerHash == userHash);
+		}
+
+		private boolean canSeeOnlyAsOwner(final int flags) {
+			return !admin && (flags & VISIBLE_TO_PUBLIC) == 0 && (userId == null || (flags & VISIBLE_TO_AUTH) == 0);
+		}
+	}
+
+	/**
+	 * The number of events per action and the time range of a set of events.
+	 */
+	private static class Rollup {
+
+		private final Map<Integer, Integer> actionCounts = new HashMap<>();
+		private long first                               = Long.MAX_VALUE;
+		private long last                                = 0L;
+		private int total                                = 0;
+
+		public void add(final long timestamp, final int actionId) {
+
+			actionCounts.merge(actionId, 1, Integer::sum);
+
+			first = Math.min(first, timestamp);
+			last  = Math.max(last, timestamp);
+
+			total++;
+		}
+	}
+
+	private static class Record implements LogEntry {
+
+		private long timestamp   = 0L;
+		private String action    = null;
+		private String message   = null;
+		private String subjectId = null;
+		private String objectId  = null;
+
+		public Record(final long timestamp, final String action, final String message, final String subjectId, final String objectId) {
+
+			this.timestamp = timestamp;
+			this.action    = action;
+			this.message   = message;
+			this.subjectId = subjectId;
+			this.objectId  = objectId;
+		}
+
+		@Override
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		@Override
+		public String getAction() {
+			return action;
+		}
+
+		@Override
+		public String getMessage() {
+			return message;
+		}
+
+		@Override
+		public String getSubjectId() {
+			return subjectId;
+		}
+
+		@Override
+		public String getObjectId() {
+			return objectId;
+		}
+	}
+
+	private class Partition {
+
+		private final Rollup all           = new Rollup();
+		private final Rollup visible       = new Rollup();
+		private final Rollup authenticated = new Rollup();
+		private BitSet subjects            = null;
+		private BitSet objects             = null;
+		private BitSet owners              = null;
+		private int filterBits             = 0;
+		private int hashFunctions          = 0;
+		private FileChannel recordChannel  = null;
+		private FileChannel messageChannel = null;
+		private volatile long count        = 0L;
+		private long messageSize           = 0L;
+		private long start                 = 0L;
+
+		public Partition(final long start, final long expectedCount) {
+
+			final long n = Math.max(MIN_EXPECTED_EVENTS, expectedCount);
+
+			// optimal size and number of hash functions for the target false positive rate
+			this.filterBits    = (int)Math.min(MAX_FILTER_BITS, (long)Math.ceil(-n * Math.log(FILTER_FPP) / (Math.log(2) * Math.log(2))));
+			this.hashFunctions = Math.max(1, (int)Math.round((double)filterBits / n * Math.log(2)));
+			this.subjects      = new BitSet(filterBits);
+			this.objects       = new BitSet(filterBits);
+			this.owners        = new BitSet(filterBits);
+			this.start         = start;
+		}
+
+		public Path getRecordFile() {
+			return directory.resolve(start + RECORD_SUFFIX);
+		}
+
+		public Path getMessageFile() {
+			return directory.resolve(start + MESSAGE_SUFFIX);
+		}
+
+		public void open() throws IOException {
+
+			recordChannel  = FileChannel.open(getRecordFile(),  StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			messageChannel = FileChannel.open(getMessageFile(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			messageSize    = messageChannel.size();
+		}
+
+		public void close() {
+
+			try {
+
+				if (recordChannel != null) {
+					recordChannel.close();
+				}
+
+				if (messageChannel != null) {
+					messageChannel.close();
+				}
+
+			} catch (IOException ioex) {
+				logger.warn("Unable to close event log partition {}: {}", start, ioex.getMessage());
+			}
+
+			recordChannel  = null;
+			messageChannel = null;
+		}
+
+		public synchronized void add(final long timestamp, final int actionId, final int flags, final long subjectHash, final long objectHash, final long ownerHash) {
+
+			all.add(timestamp, actionId);
+
+			if ((flags & VISIBLE_TO_PUBLIC) != 0) {
+				visible.add(timestamp, actionId);
+			}
+
+			if ((flags & (VISIBLE_TO_PUBLIC | VISIBLE_TO_AUTH)) != 0) {
+				authenticated.add(timestamp, actionId);
+			}
+
+			addToFilter(subjects, subjectHash);
+			addToFilter(objects, objectHash);
+			addToFilter(owners, ownerHash);
+
+			// publish the record only after it was written completely
+			count++;
+		}
+
+		public synchronized boolean mayContain(final Integer actionId, final String subjectId, final String objectId, final long from, final long to, final Viewer viewer) {
+
+			// events of other users can only be visible through their flags
+			final Rollup rollup = viewer.admin || (viewer.userId != null && filterContains(owners, viewer.userHash)) ? all : (viewer.userId != null ? authenticated : visible);
+
+			return rollup.total > 0 && rollup.first <= to && rollup.last >= from
+				&& (actionId  == null || rollup.actionCounts.containsKey(actionId))
+				&& (subjectId == null || filterContains(subjects, hash(subjectId)))
+				&& (objectId  == null || filterContains(objects, hash(objectId)));
+		}
+
+		public void rebuildRollup() throws IOException {
+
+			try (final FileChannel channel = FileChannel.open(getRecordFile(), StandardOpenOption.READ)) {
+
+				// ignore an incomplete record at the end of the file
+				final long records = channel.size() / RECORD_SIZE;
+
+				if (records > 0) {
+
+					final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, records * RECORD_SIZE);
+
+					for (long i=0; i<records; i++) {
+
+						final long timestamp   = buffer.getLong();
+						final int actionId     = buffer.getInt();
+						final int flags        = buffer.getInt();
+						final long subjectHash = buffer.getLong();
+						final long objectHash  = buffer.getLong();
+						final long ownerHash   = buffer.getLong();
+
+						// skip data position
+						buffer.position(buffer.position() + 12);
+
+						add(timestamp, actionId, flags, subjectHash, objectHash, ownerHash);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Scans the records of this partition and returns the matching events
+		 * that are visible to the given viewer, or only those that are visible
+		 * to the viewer as their owner.
+		 */
+		public List<LogEntry> scan(final Integer actionId, final String subjectId, final String objectId, final long from, final long to, final Viewer viewer, final boolean ownedOnly) throws IOException {
+
+			final List<LogEntry> result = new ArrayList<>();
+			final long subjectHash      = hash(subjectId);
+			final long objectHash       = hash(objectId);
+			final long records          = count;
+
+			if (records == 0) {
+				return result;
+			}
+
+			try (final FileChannel recordFile = FileChannel.open(getRecordFile(), StandardOpenOption.READ);
+			     final FileChannel messages = FileChannel.open(getMessageFile(), StandardOpenOption.READ)) {
+
+				final MappedByteBuffer buffer = recordFile.map(FileChannel.MapMode.READ_ONLY, 0, records * RECORD_SIZE);
+
+				for (long i=0; i<records; i++) {
+
+					final long timestamp  = buffer.getLong();
+					final int action      = buffer.getInt();
+					final int flags       = buffer.getInt();
+					final long subject    = buffer.getLong();
+					final long object     = buffer.getLong();
+					final long owner      = buffer.getLong();
+					final long offset     = buffer.getLong();
+					final int length      = buffer.getInt();
+					final boolean asOwner = viewer.canSeeOnlyAsOwner(flags);
+
+					if (timestamp < from || timestamp > to) {
+						continue;
+					}
+
+					if (!viewer.canSee(flags, owner) || (ownedOnly && !asOwner)) {
+						continue;
+					}
+
+					if ((actionId != null && actionId != action) || (subjectId != null && subjectHash != subject) || (objectId != null && objectHash != object)) {
+						continue;
+					}
+
+					final ByteBuffer data = ByteBuffer.allocate(length);
+					long position         = offset;
+
+					while (data.hasRemaining()) {
+
+						final int read = messages.read(data, position);
+						if (read < 0) {
+							break;
+						}
+
+						position += read;
+					}
+
+					data.flip();
+
+					final String storedSubject = decode(data);
+					final String storedObject  = decode(data);
+					final String message       = decode(data);
+					final String storedOwner   = decode(data);
+
+					// hashes may collide, compare the actual values
+					if ((subjectId != null && !subjectId.equals(storedSubject)) || (objectId != null && !objectId.equals(storedObject)) || (asOwner && !viewer.userId.equals(storedOwner))) {
+						continue;
+					}
+
+					result.add(new Record(timestamp, lookup(action), message, storedSubject, storedObject));
+				}
+			}
+
+			return result;
+		}
+
+		// ----- private methods -----
+		private void addToFilter(final BitSet filter, final long hash) {
+
+			for (int i=0; i<hashFunctions; i++) {
+				filter.set(bit(hash, i));
+			}
+		}
+
+		private boolean filterContains(final BitSet filter, final long hash) {
+
+			for (int i=0; i<hashFunctions; i++) {
+
+				if (!filter.get(bit(hash, i))) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * Double hashing, derives the bit positions of all hash functions
+		 * from the two halves of the 64-bit hash.
+		 */
+		private int bit(final long hash, final int index) {
+
+			final int h1 = (int)hash;
+			final int h2 = (int)(hash >>> 32);
+
+			return ((h1 + index * h2) & Integer.MAX_VALUE) % filterBits;
+		}
+	}
+
+	private class PartitionIterator implements Iterator<LogEntry> {
+
+		private Iterator<Partition> partitionIterator = null;
+		private Iterator<LogEntry> current            = Collections.emptyIterator();
+		private Integer actionId                      = null;
+		private String subjectId                      = null;
+		private String objectId                       = null;
+		private Viewer viewer                         = null;
+		private long from                             = 0L;
+		private long to                               = 0L;
+
+		public PartitionIterator(final Iterator<Partition> partitionIterator, final Integer actionId, final String subjectId, final String objectId, final long from, final long to, final Viewer viewer) {
+
+			this.partitionIterator = partitionIterator;
+			this.actionId          = actionId;
+			this.subjectId         = subjectId;
+			this.objectId          = objectId;
+			this.from              = from;
+			this.to                = to;
+			this.viewer            = viewer;
+		}
+
+		@Override
+		public boolean hasNext() {
+
+			while (!current.hasNext() && partitionIterator.hasNext()) {
+
+				final Partition partition = partitionIterator.next();
+
+				if (partition.mayContain(actionId, subjectId, objectId, from, to, viewer)) {
+
+					try {
+
+						current = partition.scan(actionId, subjectId, objectId, from, to, viewer, false).iterator();
+
+					} catch (IOException ioex) {
+						logger.warn("Unable to read event log partition {}: {}", partition.start, ioex.getMessage());
+					}
+				}
+			}
+
+			return current.hasNext();
+		}
+
+		@Override
+		public LogEntry next() {
+
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			return current.next();
+		}
+	}
+}
@@ -25,12 +25,13 @@ import org.structr.core.entity.AbstractNode;
 import org.structr.core.property.ISO8601DateProperty;
 import org.structr.core.property.Property;
 import org.structr.core.property.StringProperty;
+import org.structr.rest.logging.LogEntry;
 
 /**
  *
  *
  */
-public class LogEvent extends AbstractNode {
+public class LogEvent extends AbstractNode implements LogEntry {
 
 	public static final Property<String> messageProperty   = new StringProperty("message");
 	public static final Property<String> actionProperty    = new StringProperty("action").indexed();
@@ -58,6 +58,7 @@ import org.structr.core.GraphObjectMap;
 import org.structr.core.Result;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
+import org.structr.core.entity.Principal;
 import org.structr.core.graph.Tx;
 import org.structr.core.property.GenericProperty;
 import org.structr.core.property.ISO8601DateProperty;
@@ -68,6 +69,8 @@ import org.structr.core.property.PropertyMap;
 import org.structr.core.property.StringProperty;
 import org.structr.rest.RestMethodResult;
 import org.structr.rest.exception.IllegalMethodException;
+import org.structr.rest.logging.LogEntry;
+import org.structr.rest.logging.LogEventStore;
 import org.structr.rest.logging.entity.LogEvent;
 
 /**
@@ -148,8 +151,19 @@ public class LogResource extends Resource {
 			final String objectId            = request.getParameter(objectProperty.jsonName());
 			final GraphObjectMap overviewMap = new GraphObjectMap();
 			final LogState logState          = new LogState(request);
+			final boolean segmentStore       = Settings.EventLogSegmentStore.getValue();
 
-			if (StringUtils.isNotEmpty(subjectId) && StringUtils.isNotEmpty(objectId)) {
+			if (segmentStore && StringUtils.isNotEmpty(subjectId)) {
+
+				processData(logState, queryLogEventStore(logState.logAction, subjectId, StringUtils.isNotEmpty(objectId) ? objectId : null, logState.range));
+
+			} else if (segmentStore && StringUtils.isNotEmpty(objectId)) {
+
+				logState.inverse(true);
+
+				processData(logState, queryLogEventStore(logState.logAction, null, objectId, logState.range));
+
+			} else if (StringUtils.isNotEmpty(subjectId) && StringUtils.isNotEmpty(objectId)) {
 
 				processData(logState, StructrApp.getInstance(securityContext)
 					.nodeQuery(LogEvent.class)
@@ -186,6 +200,20 @@ public class LogResource extends Resource {
 
 				processData(logState);
 
+			} else if (segmentStore) {
+
+				// create overview from the rollups of the event store
+				logState.overview(true);
+
+				final LogEventStore.Overview overview = getLogEventStore().getOverview(getViewer());
+
+				for (final Entry<String, Integer> entry : overview.getActions().entrySet()) {
+					logState.countAction(entry.getKey(), entry.getValue());
+				}
+
+				logState.beginTimestamp(overview.getFirst());
+				logState.endTimestamp(overview.getLast());
+
 			} else {
 
 				// create overview of existing logs
@@ -256,7 +284,34 @@ public class LogResource extends Resource {
 			final String action    = (String) propertySet.get(actionProperty.jsonName());
 			final String message   = (String) propertySet.get(messageProperty.jsonName());
 
-			if (subjectId != null && objectId != null && action != null) {
+			if (subjectId != null && objectId != null && action != null && Settings.EventLogSegmentStore.getValue()) {
+
+				final long timestamp = System.currentTimeMillis();
+				final Principal user = securityContext.getUser(false);
+
+				try {
+
+					// visible to everyone, like the LogEvent nodes created below
+					LogEventStore.appendAfterCommit(timestamp, action, subjectId, objectId, message, user != null ? user.getUuid() : null, true, true);
+
+				} catch (IOException ioex) {
+					throw new FrameworkException(500, "Unable to store log event: " + ioex.getMessage());
+				}
+
+				final GraphObjectMap event = new GraphObjectMap();
+
+				event.put(LogEvent.timestampProperty, new Date(timestamp));
+				event.put(LogEvent.actionProperty,    action);
+				event.put(LogEvent.subjectProperty,   subjectId);
+				event.put(LogEvent.objectProperty,    objectId);
+				event.put(LogEvent.messageProperty,   message);
+
+				final RestMethodResult result = new RestMethodResult(201);
+				result.addContent(event);
+
+				return result;
+
+			} else if (subjectId != null && objectId != null && action != null) {
 
 				final App app  = StructrApp.getInstance(securityContext);
 				LogEvent event = null;
@@ -370,15 +425,27 @@ public class LogResource extends Resource {
 
 	private void processData(final LogState state) throws FrameworkException {
 
+		final boolean segmentStore = Settings.EventLogSegmentStore.getValue();
+
 		if (state.doCorrelate()) {
 
 			// get the basic correlation set (pds_click in the test case)
-			final List<LogEvent> correlationResult = StructrApp.getInstance(securityContext)
-				.nodeQuery(LogEvent.class)
-				.and(LogEvent.actionProperty, state.correlationAction)
-				.getAsList();
+			final Iterable<? extends LogEntry> correlationResult;
+
+			if (segmentStore) {
+
+				// restrict the correlation set to the requested time range so that only the partitions of that range are scanned
+				correlationResult = queryLogEventStore(state.correlationAction, null, null, state.range);
+
+			} else {
+
+				correlationResult = StructrApp.getInstance(securityContext)
+					.nodeQuery(LogEvent.class)
+					.and(LogEvent.actionProperty, state.correlationAction)
+					.getAsList();
+			}
 
-			for (final LogEvent entry : correlationResult) {
+			for (final LogEntry entry : correlationResult) {
 
 				final String pathSubjectId = state.inverse() ? entry.getObjectId() : entry.getSubjectId();
 				final String pathObjectId  = state.inverse() ? entry.getSubjectId() : entry.getObjectId();
@@ -402,19 +469,26 @@ public class LogResource extends Resource {
 
 		logger.debug("No. of correlations: {}", state.getCorrelations().entrySet().size());
 
-		final List<LogEvent> result = StructrApp.getInstance(securityContext).nodeQuery(LogEvent.class)
-			.and(LogEvent.actionProperty, state.logAction)
-			.andRange(LogEvent.timestampProperty, new Date(state.beginTimestamp()), new Date(state.endTimestamp()))
-			.getAsList();
+		if (segmentStore) {
+
+			processData(state, queryLogEventStore(state.logAction, null, null, state.range));
 
-		processData(state, result);
+		} else {
+
+			final List<LogEvent> result = StructrApp.getInstance(securityContext).nodeQuery(LogEvent.class)
+				.and(LogEvent.actionProperty, state.logAction)
+				.andRange(LogEvent.timestampProperty, new Date(state.beginTimestamp()), new Date(state.endTimestamp()))
+				.getAsList();
+
+			processData(state, result);
+		}
 	}
 
-	private void processData(final LogState state, final Iterable<LogEvent> result) throws FrameworkException {
+	private void processData(final LogState state, final Iterable<? extends LogEntry> result) throws FrameworkException {
 
 		int count = 0;
 
-		for (final LogEvent event : result) {
+		for (final LogEntry event : result) {
 
 			if ((++count % 100000) == 0) {
 				System.out.println(count);
@@ -466,11 +540,48 @@ public class LogResource extends Resource {
 		}
 	}
 
+	private LogEventStore getLogEventStore() throws FrameworkException {
+
+		try {
+
+			return LogEventStore.getInstance();
+
+		} catch (IOException ioex) {
+			throw new FrameworkException(500, "Unable to open event log store: " + ioex.getMessage());
+		}
+	}
+
+	/**
+	 * Queries the event log store for the events that are visible to the
+	 * caller.
+	 */
+	private Iterable<LogEntry> queryLogEventStore(final String action, final String subjectId, final String objectId, final Range range) throws FrameworkException {
+
+		final long from = range != null ? range.start : 0L;
+		final long to   = range != null ? range.end   : Long.MAX_VALUE;
+
+		return getLogEventStore().query(action, subjectId, objectId, from, to, getViewer());
+	}
+
+	private LogEventStore.Viewer getViewer() {
+
+		final Principal user = securityContext.getUser(false);
+
+		if (securityContext.isSuperUser() || (user != null && user.isAdmin())) {
+
+			return LogEventStore.Viewer.admin();
+		}
+
+		return LogEventStore.Viewer.user(user != null ? user.getUuid() : null);
+	}
+
 	private int storeLogEntry(final Path path) throws IOException, FrameworkException {
 
-		final App app          = StructrApp.getInstance(securityContext);
-		final String fileName  = path.getFileName().toString();
-		int count              = 0;
+		final App app               = StructrApp.getInstance(securityContext);
+		final String fileName       = path.getFileName().toString();
+		final boolean segmentStore  = Settings.EventLogSegmentStore.getValue();
+		final LogEventStore store   = segmentStore ? getLogEventStore() : null;
+		int count                   = 0;
 
 		if (fileName.length() == 64) {
 
@@ -489,6 +600,14 @@ public class LogResource extends Resource {
 				final String action          = part1;
 				final String message         = part2;
 
+				if (segmentStore) {
+
+					store.append(timestamp, action, subjectId, objectId, message, null, true, true);
+					count++;
+
+					continue;
+				}
+
 				final PropertyMap properties = new PropertyMap();
 
 				properties.put(LogEvent.messageProperty,             message);
@@ -842,7 +961,7 @@ public class LogResource extends Resource {
 
 		private final Map<String, Pattern> aggregationPatterns       = new HashMap<>();
 		private final List<Map<String, Object>> entries              = new LinkedList<>();
-		private final Map<String, LinkedList<LogEvent>> correlations = new ConcurrentHashMap<>();
+		private final Map<String, LinkedList<LogEntry>> correlations = new ConcurrentHashMap<>();
 		private final Map<String, Integer> actions                   = new HashMap<>();
 		private long beginTimestamp                                  = Long.MAX_VALUE;
 		private long endTimestamp                                    = 0L;
@@ -902,11 +1021,11 @@ public class LogResource extends Resource {
 			entries.add(entry);
 		}
 
-		public void addCorrelationEntry(final String key, final LogEvent event) {
+		public void addCorrelationEntry(final String key, final LogEntry event) {
 
 			logger.debug("No. of correllation entry lists: {}, adding action: {} {}", new Object[]{correlations.keySet().size(), key, event.getMessage()});
 
-			LinkedList<LogEvent> existingEventList = correlations.get(key);
+			LinkedList<LogEntry> existingEventList = correlations.get(key);
 
 			if (existingEventList == null) {
 				existingEventList = new LinkedList<>();
@@ -917,7 +1036,7 @@ public class LogResource extends Resource {
 			correlations.put(key, existingEventList);
 		}
 
-		public Map<String, LinkedList<LogEvent>> getCorrelations() {
+		public Map<String, LinkedList<LogEntry>> getCorrelations() {
 			return correlations;
 		}
 
@@ -930,18 +1049,22 @@ public class LogResource extends Resource {
 		}
 
 		public void countAction(final String action) {
+			countAction(action, 1);
+		}
+
+		public void countAction(final String action, final int count) {
 
 			Integer actionCount = actions.get(action);
 			if (actionCount == null) {
 
-				actions.put(action, 1);
+				actions.put(action, count);
 
 			} else {
 
-				actions.put(action, actionCount + 1);
+				actions.put(action, actionCount + count);
 			}
 
-			this.actionCount++;
+			this.actionCount += count;
 		}
 
 		public int actionCount() {
@@ -1029,7 +1152,7 @@ public class LogResource extends Resource {
 				return true;
 			}
 
-			LinkedList<LogEvent> correlationEntries;
+			LinkedList<LogEntry> correlationEntries;
 
 			if (correlationOp != null && correlationPattern != null) {
 
@@ -1051,7 +1174,7 @@ public class LogResource extends Resource {
 
 							if (correlationEntries != null) {
 
-								for (LogEvent correlationEntry : correlationEntries) {
+								for (LogEntry correlationEntry : correlationEntries) {
 
 									if (correlationEntry.getSubjectId().equals(pathSubjectId)) {
 
@@ -1071,7 +1194,7 @@ public class LogResource extends Resource {
 
 							if (correlationEntries != null) {
 
-								for (LogEvent correlationEntry : correlationEntries) {
+								for (LogEntry correlationEntry : correlationEntries) {
 
 									if (correlationEntry.getObjectId().equals(pathObjectId)) {
 
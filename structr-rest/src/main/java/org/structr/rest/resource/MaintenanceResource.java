@@ -119,6 +119,14 @@ public class MaintenanceResource extends Resource {
 							result.addHeader(headerName, headerValue);
 						});
 						cmd.getCustomHeaders().clear();
+
+						// return the result of the command, if any
+						final Object commandResult = cmd.getCommandResult();
+						if (commandResult != null) {
+
+							result.setNonGraphObjectResult(commandResult);
+						}
+
 						return result;
 
 					} else {
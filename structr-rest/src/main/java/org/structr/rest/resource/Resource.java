@@ -30,6 +30,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.common.CaseHelper;
 import org.structr.common.GraphObjectComparator;
+import org.structr.common.PagingHelper;
 import org.structr.common.Permission;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
@@ -90,6 +91,23 @@ public abstract class Resource {
 		return getClass().getName() + "(" + getResourceSignature() + ")";
 	}
 
+	/**
+	 * Returns the page of this resource that follows the element the given
+	 * cursor points to. The default implementation fetches the complete
+	 * result and locates the element in memory, resources that support
+	 * keyset pagination in the database should override this method.
+	 *
+	 * @param sortKey
+	 * @param sortDescending
+	 * @param pageSize
+	 * @param cursor
+	 * @return the page after the cursor
+	 * @throws FrameworkException
+	 */
+	public Result doGet(final PropertyKey sortKey, final boolean sortDescending, final int pageSize, final String cursor) throws FrameworkException {
+		return PagingHelper.subResult(doGet(sortKey, sortDescending, NodeFactory.DEFAULT_PAGE_SIZE, NodeFactory.DEFAULT_PAGE), pageSize, cursor);
+	}
+
 	public RestMethodResult doHead() throws FrameworkException {
 		Thread.dumpStack();
 		throw new IllegalStateException("Resource.doHead() called, this should not happen.");
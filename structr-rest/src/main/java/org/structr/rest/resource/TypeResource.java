@@ -25,6 +25,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.search.UnsupportedSeekException;
 import org.structr.common.GraphObjectComparator;
 import org.structr.common.PagingHelper;
 import org.structr.common.ResultTransformer;
@@ -135,26 +136,8 @@ public class TypeResource extends SortableResource {
 			// default sort key & order
 			if (actualSortKey == null) {
 
-				try {
-
-					GraphObject templateEntity  = ((GraphObject)entityClass.newInstance());
-					PropertyKey sortKeyProperty = templateEntity.getDefaultSortKey();
-					actualSortOrder             = GraphObjectComparator.DESCENDING.equals(templateEntity.getDefaultSortOrder());
-
-					if (sortKeyProperty != null) {
-
-						actualSortKey = sortKeyProperty;
-
-					} else {
-
-						actualSortKey = AbstractNode.name;
-					}
-
-				} catch(Throwable t) {
-
-					// fallback to name
-					actualSortKey = AbstractNode.name;
-				}
+				actualSortKey   = getDefaultSortKey();
+				actualSortOrder = getDefaultSortOrder(sortDescending);
 			}
 
 			if (virtualType != null) {
@@ -191,6 +174,54 @@ public class TypeResource extends SortableResource {
 		return new Result(emptyList, null, isCollectionResource(), isPrimitiveArray());
 	}
 
+	@Override
+	public Result doGet(final PropertyKey sortKey, final boolean sortDescending, final int pageSize, final String cursor) throws FrameworkException {
+
+		final PropertyKey actualSortKey = sortKey != null ? sortKey : getDefaultSortKey();
+
+		// virtual types are transformed in memory, and the database can
+		// only continue after the cursor element in a sorted result
+		if (rawType == null || entityClass == null || virtualType != null || pageSize <= 0 || actualSortKey == null) {
+			return super.doGet(sortKey, sortDescending, pageSize, cursor);
+		}
+
+		final String uuid      = PagingHelper.getCursorUuid(cursor);
+		GraphObject startAfter = null;
+
+		if (uuid != null) {
+
+			startAfter = StructrApp.getInstance(securityContext).get(entityClass, uuid);
+			if (startAfter == null) {
+
+				// element does not exist any more, use the offset stored in the cursor
+				return super.doGet(sortKey, sortDescending, pageSize, cursor);
+			}
+		}
+
+		collectSearchAttributes(query);
+
+		try {
+
+			// fetch one additional element to find out whether there is a next page
+			final Result result = query
+				.includeDeletedAndHidden(true)
+				.publicOnly(false)
+				.sort(actualSortKey)
+				.order(sortKey != null ? sortDescending : getDefaultSortOrder(sortDescending))
+				.startAfter(startAfter)
+				.pageSize(pageSize < Integer.MAX_VALUE ? pageSize + 1 : pageSize)
+				.page(1)
+				.getResult();
+
+			return PagingHelper.cursorResult(result, pageSize, cursor);
+
+		} catch (UnsupportedSeekException usex) {
+
+			// the query spans several types, page the complete result in memory
+			return super.doGet(sortKey, sortDescending, pageSize, cursor);
+		}
+	}
+
 	@Override
 	public RestMethodResult doPost(final Map<String, Object> propertySet) throws FrameworkException {
 
@@ -342,6 +373,36 @@ public class TypeResource extends SortableResource {
 		return false;
 	}
 
+	private PropertyKey getDefaultSortKey() {
+
+		try {
+
+			final PropertyKey sortKeyProperty = ((GraphObject)entityClass.newInstance()).getDefaultSortKey();
+			if (sortKeyProperty != null) {
+
+				return sortKeyProperty;
+			}
+
+		} catch(Throwable t) {
+			// fallback to name
+		}
+
+		return AbstractNode.name;
+	}
+
+	private boolean getDefaultSortOrder(final boolean fallback) {
+
+		try {
+
+			return GraphObjectComparator.DESCENDING.equals(((GraphObject)entityClass.newInstance()).getDefaultSortOrder());
+
+		} catch(Throwable t) {
+			// keep the requested order
+		}
+
+		return fallback;
+	}
+
 	public void collectSearchAttributes(final Query query) throws FrameworkException {
 
 		// first step: extract searchable attributes from request
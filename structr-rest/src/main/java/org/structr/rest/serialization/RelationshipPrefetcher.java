@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.serialization;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.structr.api.DatabaseService;
+import org.structr.api.graph.Direction;
+import org.structr.api.graph.Node;
+import org.structr.core.GraphObject;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.Relation;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.property.PropertyKey;
+import org.structr.core.property.RelationProperty;
+
+/**
+ * Loads the related nodes of the relationship properties in a view for a
+ * whole result page at once, before the page is serialized.
+ *
+ * Without prefetching, every EndNodes / StartNodes / EndNode / StartNode
+ * property is resolved separately for each object of the page, which
+ * costs at least one query per object and property. The prefetched
+ * relationships end up in the relationship caches of the database nodes,
+ * where the endpoints pick them up.
+ */
+public class RelationshipPrefetcher {
+
+	public static void prefetch(final List<? extends GraphObject> objects, final String view) {
+
+		final Map<Class, List<NodeInterface>> nodesByType = new LinkedHashMap<>();
+
+		for (final GraphObject obj : objects) {
+
+			if (obj instanceof NodeInterface) {
+
+				nodesByType.computeIfAbsent(obj.getClass(), k -> new LinkedList<>()).add((NodeInterface)obj);
+			}
+		}
+
+		final DatabaseService db = StructrApp.getInstance().getDatabaseService();
+
+		for (final Entry<Class, List<NodeInterface>> entry : nodesByType.entrySet()) {
+
+			final List<NodeInterface> nodes = entry.getValue();
+
+			// nothing to gain for a single object
+			if (nodes.size() > 1) {
+
+				final List<Node> dbNodes = new LinkedList<>();
+
+				for (final NodeInterface node : nodes) {
+					dbNodes.add(node.getNode());
+				}
+
+				for (final PropertyKey key : nodes.get(0).getPropertyKeys(view)) {
+
+					if (key instanceof RelationProperty) {
+
+						final RelationProperty property = (RelationProperty)key;
+						final Relation relation         = property.getRelation();
+
+						if (relation != null) {
+
+							db.prefetchRelationships(dbNodes, "out".equals(property.getDirectionKey()) ? Direction.OUTGOING : Direction.INCOMING, relation);
+						}
+					}
+				}
+			}
+		}
+	}
+}
@@ -141,6 +141,7 @@ public abstract class StreamingWriter {
 		Integer page                        = result.getPage();
 		Integer pageCount                   = result.getPageCount();
 		Integer pageSize                    = result.getPageSize();
+		String nextCursor                   = result.getNextCursor();
 		String queryTime                    = result.getQueryTime();
 		Integer resultCount                 = result.getRawResultCount();
 		String searchString                 = result.getSearchString();
@@ -153,6 +154,10 @@ public abstract class StreamingWriter {
 		// open result set
 		writer.beginObject();
 
+		if (nextCursor != null) {
+			writer.name("next_cursor").value(nextCursor);
+		}
+
 		if (outputNestingDepth != null) {
 			writer.name("output_nesting_depth").value(outputNestingDepth);
 		}
@@ -253,6 +258,11 @@ public abstract class StreamingWriter {
 
 				if (result.isCollection()) {
 
+					// load related nodes for the whole page at once instead of once per object
+					if (this.outputNestingDepth > 0) {
+						RelationshipPrefetcher.prefetch(results, localPropertyView);
+					}
+
 					writer.name(resultKeyName).beginArray();
 
 					// serialize list of results
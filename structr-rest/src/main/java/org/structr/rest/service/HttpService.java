@@ -22,6 +22,7 @@ import ch.qos.logback.access.jetty.RequestLogImpl;
 import ch.qos.logback.access.servlet.TeeFilter;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.EnumSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -53,6 +54,7 @@ import org.eclipse.jetty.server.handler.HandlerCollection;
 import org.eclipse.jetty.server.handler.RequestLogHandler;
 import org.eclipse.jetty.server.handler.ResourceHandler;
 import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.server.session.AbstractSessionDataStore;
 import org.eclipse.jetty.server.session.DefaultSessionCache;
 import org.eclipse.jetty.server.session.DefaultSessionIdManager;
 import org.eclipse.jetty.server.session.SessionCache;
@@ -278,7 +280,7 @@ public class HttpService implements RunnableService {
 			
 		}
 		
-		final StructrSessionDataStore sessionDataStore = new StructrSessionDataStore();
+		final AbstractSessionDataStore sessionDataStore = createSessionDataStore();
 		//sessionDataStore.setSavePeriodSec(60);
 	
 		sessionCache.setSessionDataStore(sessionDataStore);
@@ -631,6 +633,45 @@ public class HttpService implements RunnableService {
 		return servlets;
 	}
 
+	private AbstractSessionDataStore createSessionDataStore() {
+
+		final String sessionStore = Settings.SessionStore.getValue();
+
+		switch (sessionStore) {
+
+			case "graph":
+				return new StructrSessionDataStore();
+
+			case "local":
+				break;
+
+			default:
+
+				try {
+
+					return (AbstractSessionDataStore)Class.forName(sessionStore).newInstance();
+
+				} catch (Throwable t) {
+
+					// unknown names fall back to the default store
+					logger.warn("Unable to instantiate session data store {}, storing sessions in the graph: {}", sessionStore, t.getMessage());
+
+					return new StructrSessionDataStore();
+				}
+		}
+
+		try {
+
+			return new LocalSessionDataStore(Paths.get(Settings.getFullSettingPath(Settings.SessionsPath)));
+
+		} catch (IOException ioex) {
+
+			logger.warn("Unable to create local session data store, storing sessions in the graph: {}", ioex.getMessage());
+		}
+
+		return new StructrSessionDataStore();
+	}
+
 	private void removeDir(final String basePath, final String directoryName) {
 
 		final String strippedBasePath = StringUtils.stripEnd(basePath, "/");
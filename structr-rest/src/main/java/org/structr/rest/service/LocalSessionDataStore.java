@@ -0,0 +1,585 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.SerializationUtils;
+import org.eclipse.jetty.server.session.AbstractSessionDataStore;
+import org.eclipse.jetty.server.session.SessionData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.Tx;
+import org.structr.rest.auth.AuthHelper;
+import org.structr.rest.auth.SessionHelper;
+
+/**
+ * Session data store that keeps the session data of authenticated users
+ * in memory and persists it to a local file, without writing to the graph.
+ *
+ * The session data is stored in a compact binary encoding, together with
+ * the UUID of the principal the session belongs to, so the principal is
+ * looked up in the graph only once per session. Changes are written to
+ * an append-only file by a background thread (write-behind) in regular
+ * intervals and when the store is stopped. The file is replayed when the
+ * store is created, and rewritten without obsolete records when it grows
+ * too large.
+ */
+public class LocalSessionDataStore extends AbstractSessionDataStore {
+
+	private static final Logger logger                    = LoggerFactory.getLogger(LocalSessionDataStore.class.getName());
+	private static final String SESSIONS_FILE             = "sessions.dat";
+	private static final byte RECORD_STORE                = 'S';
+	private static final byte RECORD_DELETE               = 'D';
+	private static final byte TYPE_NULL                   = 0;
+	private static final byte TYPE_STRING                 = 1;
+	private static final byte TYPE_LONG                   = 2;
+	private static final byte TYPE_INTEGER                = 3;
+	private static final byte TYPE_BOOLEAN                = 4;
+	private static final byte TYPE_OBJECT                 = 5;
+	private static volatile LocalSessionDataStore current = null;
+
+	private final Map<String, StoredSession> sessions = new ConcurrentHashMap<>();
+	private final Set<String> dirty                  = ConcurrentHashMap.newKeySet();
+	private final App app                            = StructrApp.getInstance();
+	private ScheduledExecutorService flusher         = null;
+	private DataOutputStream out                     = null;
+	private Path file                                = null;
+	private long records                             = 0L;
+
+	public LocalSessionDataStore(final Path directory) throws IOException {
+
+		Files.createDirectories(directory);
+
+		this.file = directory.resolve(SESSIONS_FILE);
+
+		replay();
+		compact();
+	}
+
+	@Override
+	protected void doStart() throws Exception {
+
+		super.doStart();
+
+		final int interval = Settings.SessionFlushInterval.getValue();
+
+		flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+
+			final Thread thread = new Thread(r, "LocalSessionDataStore");
+			thread.setDaemon(true);
+
+			return thread;
+		});
+
+		flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.SECONDS);
+
+		current = this;
+	}
+
+	@Override
+	protected void doStop() throws Exception {
+
+		if (current == this) {
+			current = null;
+		}
+
+		if (flusher != null) {
+
+			flusher.shutdown();
+			flusher.awaitTermination(10, TimeUnit.SECONDS);
+		}
+
+		flush();
+
+		synchronized (this) {
+
+			if (out != null) {
+
+				out.close();
+				out = null;
+			}
+		}
+
+		super.doStop();
+	}
+
+	@Override
+	public void doStore(final String id, final SessionData data, final long lastSaveTime) throws Exception {
+
+		final StoredSession existing = sessions.get(id);
+		String principalId           = existing != null ? existing.principalId : null;
+
+		if (principalId == null) {
+
+			try (final Tx tx = app.tx(false, false, false)) {
+
+				final Principal user = AuthHelper.getPrincipalForSessionId(id);
+				if (user != null) {
+
+					principalId = user.getUuid();
+				}
+
+				tx.success();
+
+			} catch (FrameworkException ex) {
+
+				logger.info("Unable to store session data for session id " + id + ".", ex);
+			}
+		}
+
+		// store sessions only for authenticated users
+		if (principalId != null) {
+
+			sessions.put(id, new StoredSession(principalId, data.getExpiry(), encode(data)));
+			dirty.add(id);
+		}
+	}
+
+	@Override
+	public Set<String> doGetExpired(final Set<String> candidates) {
+
+		final Set<String> expired = new LinkedHashSet<>(candidates);
+		final long now            = System.currentTimeMillis();
+
+		for (final Map.Entry<String, StoredSession> entry : sessions.entrySet()) {
+
+			if (entry.getValue().isExpiredAt(now)) {
+				expired.add(entry.getKey());
+			}
+		}
+
+		return expired;
+	}
+
+	@Override
+	public boolean isPassivating() {
+		return true;
+	}
+
+	@Override
+	public boolean exists(final String id) throws Exception {
+
+		final StoredSession session = sessions.get(id);
+
+		return session != null && !session.isExpiredAt(System.currentTimeMillis());
+	}
+
+	@Override
+	public SessionData load(final String id) throws Exception {
+
+		final StoredSession session = sessions.get(id);
+		if (session != null) {
+
+			return decode(session.data);
+		}
+
+		return null;
+	}
+
+	@Override
+	public boolean delete(final String id) throws Exception {
+
+		if (sessions.remove(id) != null) {
+			dirty.add(id);
+		}
+
+		try (final Tx tx = app.tx(false, false, false)) {
+
+			SessionHelper.clearSession(id);
+
+			tx.success();
+
+			return true;
+
+		} catch (FrameworkException ex) {
+
+			logger.info("Unable to delete session data for session id " + id + ".", ex);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the UUID of the principal the given session belongs to, or
+	 * null if the session is not stored.
+	 *
+	 * @param id the session id
+	 * @return the UUID of the principal
+	 */
+	public String getPrincipalId(final String id) {
+
+		final StoredSession session = sessions.get(id);
+		if (session != null) {
+
+			return session.principalId;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the UUID of the principal the given session belongs to, as
+	 * known by the running local session data store, or null.
+	 *
+	 * @param id the session id
+	 * @return the UUID of the principal
+	 */
+	public static String getPrincipalIdForSession(final String id) {
+
+		final LocalSessionDataStore store = current;
+		if (store != null && id != null) {
+
+			return store.getPrincipalId(id);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Writes all changes since the last flush to the sessions file.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException {
+
+		if (dirty.isEmpty()) {
+			return;
+		}
+
+		if (records > 1000 && records > 4 * sessions.size()) {
+
+			dirty.clear();
+			compact();
+
+			return;
+		}
+
+		if (out == null) {
+			out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+		}
+
+		for (final String id : dirty) {
+
+			dirty.remove(id);
+
+			final StoredSession session = sessions.get(id);
+			if (session != null) {
+
+				writeStoreRecord(out, id, session);
+
+			} else {
+
+				out.writeByte(RECORD_DELETE);
+				out.writeUTF(id);
+			}
+
+			records++;
+		}
+
+		out.flush();
+	}
+
+	// ----- private methods -----
+	private void flushQuietly() {
+
+		try {
+
+			flush();
+
+		} catch (Throwable t) {
+			logger.warn("Unable to write session data: {}", t.getMessage());
+		}
+	}
+
+	private void replay() throws IOException {
+
+		if (!Files.exists(file)) {
+			return;
+		}
+
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+
+			while (true) {
+
+				final byte type = in.readByte();
+				final String id = in.readUTF();
+
+				if (type == RECORD_STORE) {
+
+					final String principalId = in.readUTF();
+					final long expiry        = in.readLong();
+					final byte[] data        = new byte[in.readInt()];
+
+					in.readFully(data);
+
+					sessions.put(id, new StoredSession(principalId, expiry, data));
+
+				} else {
+
+					sessions.remove(id);
+				}
+			}
+
+		} catch (EOFException eof) {
+			// end of file or incomplete record
+		}
+	}
+
+	private synchronized void compact() throws IOException {
+
+		final Path tmp = file.resolveSibling(SESSIONS_FILE + ".tmp");
+		final long now = System.currentTimeMillis();
+
+		if (out != null) {
+
+			out.close();
+			out = null;
+		}
+
+		// remove expired sessions
+		sessions.values().removeIf(session -> session.isExpiredAt(now));
+
+		try (final DataOutputStream tmpOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+
+			for (final Map.Entry<String, StoredSession> entry : sessions.entrySet()) {
+				writeStoreRecord(tmpOut, entry.getKey(), entry.getValue());
+			}
+		}
+
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		records = sessions.size();
+	}
+
+	private void writeStoreRecord(final DataOutputStream out, final String id, final StoredSession session) throws IOException {
+
+		out.writeByte(RECORD_STORE);
+		out.writeUTF(id);
+		out.writeUTF(session.principalId);
+		out.writeLong(session.expiry);
+		out.writeInt(session.data.length);
+		out.write(session.data);
+	}
+
+	private byte[] encode(final SessionData data) throws IOException {
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		try (final DataOutputStream out = new DataOutputStream(bytes)) {
+
+			writeString(out, data.getId());
+			writeString(out, data.getContextPath());
+			writeString(out, data.getVhost());
+			writeString(out, data.getLastNode());
+
+			out.writeLong(data.getCreated());
+			out.writeLong(data.getAccessed());
+			out.writeLong(data.getLastAccessed());
+			out.writeLong(data.getMaxInactiveMs());
+			out.writeLong(data.getCookieSet());
+			out.writeLong(data.getExpiry());
+			out.writeLong(data.getLastSaved());
+
+			final Map<String, Object> attributes = data.getAllAttributes();
+
+			out.writeInt(attributes.size());
+
+			for (final Map.Entry<String, Object> entry : attributes.entrySet()) {
+
+				writeString(out, entry.getKey());
+				writeValue(out, entry.getValue());
+			}
+		}
+
+		return bytes.toByteArray();
+	}
+
+	private SessionData decode(final byte[] bytes) throws IOException {
+
+		try (final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+
+			final String id          = readString(in);
+			final String contextPath = readString(in);
+			final String vhost       = readString(in);
+			final String lastNode    = readString(in);
+			final long created       = in.readLong();
+			final long accessed      = in.readLong();
+			final long lastAccessed  = in.readLong();
+			final long maxInactiveMs = in.readLong();
+			final long cookieSet     = in.readLong();
+			final long expiry        = in.readLong();
+			final long lastSaved     = in.readLong();
+			final int count          = in.readInt();
+
+			final Map<String, Object> attributes = new HashMap<>();
+
+			for (int i=0; i<count; i++) {
+				attributes.put(readString(in), readValue(in));
+			}
+
+			final SessionData data = new SessionData(id, contextPath, vhost, created, accessed, lastAccessed, maxInactiveMs);
+
+			data.setLastNode(lastNode);
+			data.setCookieSet(cookieSet);
+			data.setExpiry(expiry);
+			data.setLastSaved(lastSaved);
+			data.putAllAttributes(attributes);
+			data.setDirty(false);
+
+			return data;
+		}
+	}
+
+	private void writeString(final DataOutputStream out, final String value) throws IOException {
+
+		if (value != null) {
+
+			final byte[] bytes = value.getBytes("UTF-8");
+
+			out.writeInt(bytes.length);
+			out.write(bytes);
+
+		} else {
+
+			out.writeInt(-1);
+		}
+	}
+
+	private String readString(final DataInputStream in) throws IOException {
+
+		final int length = in.readInt();
+		if (length >= 0) {
+
+			final byte[] bytes = new byte[length];
+			in.readFully(bytes);
+
+			return new String(bytes, "UTF-8");
+		}
+
+		return null;
+	}
+
+	private void writeValue(final DataOutputStream out, final Object value) throws IOException {
+
+		if (value == null) {
+
+			out.writeByte(TYPE_NULL);
+
+		} else if (value instanceof String) {
+
+			out.writeByte(TYPE_STRING);
+			writeString(out, (String)value);
+
+		} else if (value instanceof Long) {
+
+			out.writeByte(TYPE_LONG);
+			out.writeLong((Long)value);
+
+		} else if (value instanceof Integer) {
+
+			out.writeByte(TYPE_INTEGER);
+			out.writeInt((Integer)value);
+
+		} else if (value instanceof Boolean) {
+
+			out.writeByte(TYPE_BOOLEAN);
+			out.writeBoolean((Boolean)value);
+
+		} else {
+
+			final byte[] bytes = SerializationUtils.serialize((Serializable)value);
+
+			out.writeByte(TYPE_OBJECT);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private Object readValue(final DataInputStream in) throws IOException {
+
+		final byte type = in.readByte();
+
+		switch (type) {
+
+			case TYPE_STRING:
+				return readString(in);
+
+			case TYPE_LONG:
+				return in.readLong();
+
+			case TYPE_INTEGER:
+				return in.readInt();
+
+			case TYPE_BOOLEAN:
+				return in.readBoolean();
+
+			case TYPE_OBJECT:
+				final byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				return SerializationUtils.deserialize(bytes);
+
+			default:
+				return null;
+		}
+	}
+
+	// ----- nested classes -----
+	private static class StoredSession {
+
+		private String principalId = null;
+		private byte[] data        = null;
+		private long expiry        = 0L;
+
+		public StoredSession(final String principalId, final long expiry, final byte[] data) {
+
+			this.principalId = principalId;
+			this.expiry      = expiry;
+			this.data        = data;
+		}
+
+		public boolean isExpiredAt(final long time) {
+			return expiry > 0 && expiry <= time;
+		}
+	}
+}
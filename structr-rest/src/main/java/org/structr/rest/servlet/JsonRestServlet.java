@@ -80,6 +80,7 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 
 	public static final int DEFAULT_VALUE_PAGE_SIZE                     = 20;
 	public static final String DEFAULT_VALUE_SORT_ORDER                 = "asc";
+	public static final String REQUEST_PARAMETER_CURSOR                 = "cursor";
 	public static final String REQUEST_PARAMETER_LOOSE_SEARCH           = "loose";
 	public static final String REQUEST_PARAMETER_PAGE_NUMBER            = "page";
 	public static final String REQUEST_PARAMETER_PAGE_SIZE              = "pageSize";
@@ -91,6 +92,7 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 
 	static {
 
+		commonRequestParameters.add(REQUEST_PARAMETER_CURSOR);
 		commonRequestParameters.add(REQUEST_PARAMETER_LOOSE_SEARCH);
 		commonRequestParameters.add(REQUEST_PARAMETER_PAGE_NUMBER);
 		commonRequestParameters.add(REQUEST_PARAMETER_PAGE_SIZE);
@@ -800,6 +802,8 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 			String sortOrder         = request.getParameter(REQUEST_PARAMETER_SORT_ORDER);
 			String sortKeyName       = request.getParameter(REQUEST_PARAMETER_SORT_KEY);
 			String outputDepth       = request.getParameter(REQUEST_PARAMTER_OUTPUT_DEPTH);
+			String cursor            = request.getParameter(REQUEST_PARAMETER_CURSOR);
+			boolean useCursor        = cursor != null && resource.isCollectionResource();
 			boolean sortDescending   = (sortOrder != null && "desc".equals(sortOrder.toLowerCase()));
 			int pageSize             = Services.parseInt(pageSizeParameter, NodeFactory.DEFAULT_PAGE_SIZE);
 			int page                 = Services.parseInt(pageParameter, NodeFactory.DEFAULT_PAGE);
@@ -826,7 +830,20 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 			while (retry) {
 
 				try (final Tx tx = app.tx()) {
-					result = resource.doGet(sortKey, sortDescending, pageSize, page);
+
+					if (useCursor) {
+
+						// the cursor determines the position, not the page,
+						// and there is no need to count the whole result
+						securityContext.ignoreResultCount(true);
+
+						result = resource.doGet(sortKey, sortDescending, pageSize, cursor);
+
+					} else {
+
+						result = resource.doGet(sortKey, sortDescending, pageSize, page);
+					}
+
 					tx.success();
 					retry = false;
 
@@ -849,7 +866,9 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 
 				}
 
-				PagingHelper.addPagingParameter(result, pageSize, page);
+				if (!useCursor) {
+					PagingHelper.addPagingParameter(result, pageSize, page);
+				}
 
 				// timing..
 				double queryTimeEnd = System.nanoTime();
@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.test;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import java.io.IOException;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.structr.api.config.Settings;
+import org.structr.rest.logging.LogEntry;
+import org.structr.rest.logging.LogEventStore;
+import org.structr.rest.common.StructrRestTest;
+
+/**
+ *
+ *
+ */
+public class LogResourceTest extends StructrRestTest {
+
+	@Test
+	public void test01LogEventStore() {
+
+		// the store is disabled by default
+		Settings.EventLogSegmentStore.setValue(true);
+
+		try {
+
+			postLogEvent("subject1", "object1", "read",   "first message");
+			postLogEvent("subject1", "object2", "read",   "second message");
+			postLogEvent("subject2", "object1", "update", "third message");
+
+			// query by subject
+			RestAssured
+				.given()
+					.contentType("application/json; charset=UTF-8")
+					.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+				.expect()
+					.statusCode(200)
+					.body("result_count",     equalTo(2))
+					.body("result.message",   containsInAnyOrder("first message", "second message"))
+				.when()
+					.get("/log?subject=subject1");
+
+			// query by subject and object
+			RestAssured
+				.given()
+					.contentType("application/json; charset=UTF-8")
+					.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+				.expect()
+					.statusCode(200)
+					.body("result_count",     equalTo(1))
+					.body("result[0].action", equalTo("read"))
+					.body("result[0].message", equalTo("second message"))
+				.when()
+					.get("/log?subject=subject1&object=object2");
+
+			// query by object, subject and object are swapped in the result
+			RestAssured
+				.given()
+					.contentType("application/json; charset=UTF-8")
+					.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+				.expect()
+					.statusCode(200)
+					.body("result_count",     equalTo(2))
+					.body("result.object",    containsInAnyOrder("subject1", "subject2"))
+				.when()
+					.get("/log?object=object1");
+
+			// unknown values
+			RestAssured
+				.given()
+					.contentType("application/json; charset=UTF-8")
+					.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+				.expect()
+					.statusCode(200)
+					.body("result_count",     equalTo(0))
+				.when()
+					.get("/log?subject=subject3");
+
+			// overview
+			RestAssured
+				.given()
+					.contentType("application/json; charset=UTF-8")
+					.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+				.expect()
+					.statusCode(200)
+					.body("result[0].entryCount", equalTo(3))
+				.when()
+					.get("/log");
+
+		} finally {
+
+			Settings.EventLogSegmentStore.setValue(false);
+		}
+	}
+
+	@Test
+	public void test02LogEventStoreVisibility() {
+
+		final String path = Settings.EventLogPath.getValue();
+
+		// use a separate store so that the events of other tests are not counted
+		Settings.EventLogPath.setValue(path + "visibility");
+
+		try {
+
+			final LogEventStore store = LogEventStore.getInstance();
+			final long now            = System.currentTimeMillis();
+
+			store.append(now, "visibility", "subject1", "object1", "owned",         "user1", false, false);
+			store.append(now, "visibility", "subject1", "object1", "public",        null,    true,  true);
+			store.append(now, "visibility", "subject1", "object1", "authenticated", null,    false, true);
+			store.append(now, "visibility", "subject1", "object1", "private",       null,    false, false);
+
+			assertEquals(4, count(store, LogEventStore.Viewer.admin()));
+			assertEquals(3, count(store, LogEventStore.Viewer.user("user1")));
+			assertEquals(2, count(store, LogEventStore.Viewer.user("user2")));
+			assertEquals(1, count(store, LogEventStore.Viewer.user(null)));
+
+			assertEquals(Integer.valueOf(4), store.getOverview(LogEventStore.Viewer.admin()).getActions().get("visibility"));
+			assertEquals(Integer.valueOf(3), store.getOverview(LogEventStore.Viewer.user("user1")).getActions().get("visibility"));
+			assertEquals(Integer.valueOf(2), store.getOverview(LogEventStore.Viewer.user("user2")).getActions().get("visibility"));
+			assertEquals(Integer.valueOf(1), store.getOverview(LogEventStore.Viewer.user(null)).getActions().get("visibility"));
+
+		} catch (IOException ioex) {
+
+			ioex.printStackTrace();
+			fail("Unexpected exception");
+
+		} finally {
+
+			Settings.EventLogPath.setValue(path);
+		}
+	}
+
+	// ----- private methods -----
+	private int count(final LogEventStore store, final LogEventStore.Viewer viewer) {
+
+		int count = 0;
+
+		for (final LogEntry entry : store.query("visibility", null, null, 0L, Long.MAX_VALUE, viewer)) {
+			count++;
+		}
+
+		return count;
+	}
+
+	private void postLogEvent(final String subject, final String object, final String action, final String message) {
+
+		RestAssured
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(422))
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+				.body("{ subject: '" + subject + "', object: '" + object + "', action: '" + action + "', message: '" + message + "' }")
+			.expect()
+				.statusCode(201)
+			.when()
+				.post("/log");
+	}
+}
@@ -20,10 +20,16 @@ package org.structr.rest.test;
 
 import com.jayway.restassured.RestAssured;
 import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import com.jayway.restassured.response.Response;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
@@ -372,6 +378,208 @@ public class PagingAndSortingTest extends StructrRestTest {
 
 	}
 
+	/**
+	 * Test cursor-based paging
+	 */
+	@Test
+	public void test04CursorPaging() {
+
+		try (final Tx tx = app.tx()) {
+
+			for (int i=0; i<6; i++) {
+				app.create(TestOne.class, "TestOne-" + i);
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+		}
+
+		final String resource = "/test_one";
+
+		// page-based requests provide a cursor for the next page
+		final String cursor = RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result",			hasSize(2))
+				.body("result[0].name ",	equalTo("TestOne-0"))
+				.body("result[1].name ",	equalTo("TestOne-1"))
+			.when()
+				.get(resource + "?sort=name&pageSize=2&page=1")
+				.path("next_cursor");
+
+		assertNotNull(cursor);
+
+		final String nextCursor = RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result",			hasSize(2))
+				.body("result[0].name ",	equalTo("TestOne-2"))
+				.body("result[1].name ",	equalTo("TestOne-3"))
+			.when()
+				.get(resource + "?sort=name&pageSize=2&cursor=" + cursor)
+				.path("next_cursor");
+
+		assertNotNull(nextCursor);
+
+		// last page has no cursor
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result",			hasSize(2))
+				.body("result[0].name ",	equalTo("TestOne-4"))
+				.body("result[1].name ",	equalTo("TestOne-5"))
+				.body("next_cursor",		equalTo(null))
+			.when()
+				.get(resource + "?sort=name&pageSize=2&cursor=" + nextCursor);
+
+		// remove an element in front of the cursor position
+		try (final Tx tx = app.tx()) {
+
+			app.delete(app.nodeQuery(TestOne.class).andName("TestOne-0").getFirst());
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+		}
+
+		// cursor position is stable
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result",			hasSize(2))
+				.body("result[0].name ",	equalTo("TestOne-2"))
+				.body("result[1].name ",	equalTo("TestOne-3"))
+			.when()
+				.get(resource + "?sort=name&pageSize=2&cursor=" + cursor);
+
+		// empty cursor starts at the first element
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result",			hasSize(2))
+				.body("result[0].name ",	equalTo("TestOne-1"))
+				.body("result[1].name ",	equalTo("TestOne-2"))
+			.when()
+				.get(resource + "?sort=name&pageSize=2&cursor=");
+
+		// descending order
+		final String descendingCursor = RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result",			hasSize(2))
+				.body("result[0].name ",	equalTo("TestOne-5"))
+				.body("result[1].name ",	equalTo("TestOne-4"))
+			.when()
+				.get(resource + "?sort=name&order=desc&pageSize=2&page=1")
+				.path("next_cursor");
+
+		final String nextDescendingCursor = RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result",			hasSize(2))
+				.body("result[0].name ",	equalTo("TestOne-3"))
+				.body("result[1].name ",	equalTo("TestOne-2"))
+			.when()
+				.get(resource + "?sort=name&order=desc&pageSize=2&cursor=" + descendingCursor)
+				.path("next_cursor");
+
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+				.body("result",			hasSize(1))
+				.body("result[0].name ",	equalTo("TestOne-1"))
+				.body("next_cursor",		equalTo(null))
+			.when()
+				.get(resource + "?sort=name&order=desc&pageSize=2&cursor=" + nextDescendingCursor);
+
+		RestAssured
+
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(400)
+			.when()
+				.get(resource + "?sort=name&pageSize=2&cursor=invalid");
+	}
+
+	/**
+	 * Test cursor-based paging over equal sort values
+	 */
+	@Test
+	public void test05CursorPagingWithEqualSortValues() {
+
+		final Set<String> expected = new HashSet<>();
+
+		try (final Tx tx = app.tx()) {
+
+			for (int i=0; i<7; i++) {
+				expected.add(app.create(TestOne.class, "equal").getUuid());
+			}
+
+			app.create(TestOne.class, "first");
+			app.create(TestOne.class, "last");
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+		}
+
+		final List<String> names = new ArrayList<>();
+		final List<String> ids   = new ArrayList<>();
+		String cursor            = "";
+
+		// follow the cursors until the last page
+		for (int i=0; i<10 && cursor != null; i++) {
+
+			final Response response = RestAssured
+
+				.given()
+					.contentType("application/json; charset=UTF-8")
+				.expect()
+					.statusCode(200)
+				.when()
+					.get("/test_one?sort=name&pageSize=2&cursor=" + cursor);
+
+			names.addAll(response.getBody().jsonPath().getList("result.name"));
+			ids.addAll(response.getBody().jsonPath().getList("result.id"));
+
+			cursor = response.getBody().jsonPath().get("next_cursor");
+		}
+
+		assertEquals("Invalid number of elements", 9, ids.size());
+		assertEquals("Elements must not be returned twice", 9, new HashSet<>(ids).size());
+		assertTrue("Elements with equal sort values must not be skipped", ids.containsAll(expected));
+		assertEquals("Invalid first element", "first", names.get(0));
+		assertEquals("Invalid last element", "last", names.get(8));
+	}
+
 	@Test
 	public void testRelationshipResourcePagingOnCollectionResource() {
 
@@ -0,0 +1,218 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.structr.common.PropertyView;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.graph.FlushCachesCommand;
+import org.structr.core.graph.Tx;
+import org.structr.core.property.PropertyKey;
+import org.structr.rest.common.StructrRestTest;
+import org.structr.rest.entity.TestFour;
+import org.structr.rest.entity.TestOne;
+import org.structr.rest.entity.TestThree;
+import org.structr.rest.serialization.RelationshipPrefetcher;
+
+/**
+ * Makes sure that prefetched relationships resolve to the same related
+ * nodes as lazily loaded ones.
+ */
+public class RelationshipPrefetcherTest extends StructrRestTest {
+
+	private static final List<PropertyKey> keys = Arrays.asList(
+		TestFour.manyToManyTestOnes,
+		TestFour.oneToManyTestOnes,
+		TestFour.oneToOneTestThree,
+		TestFour.manyToOneTestThree
+	);
+
+	@Test
+	public void testPrefetchedRelationshipsMatchLazilyLoadedRelationships() {
+
+		try (final Tx tx = app.tx()) {
+
+			final List<TestFour> fours   = createTestNodes(TestFour.class, 4);
+			final List<TestOne> ones     = createTestNodes(TestOne.class, 6);
+			final List<TestThree> threes = createTestNodes(TestThree.class, 3);
+
+			// the first node is connected on all properties
+			fours.get(0).setProperty(TestFour.manyToManyTestOnes, Arrays.asList(ones.get(0), ones.get(1), ones.get(2)));
+			fours.get(0).setProperty(TestFour.oneToManyTestOnes,  Arrays.asList(ones.get(0), ones.get(1)));
+			fours.get(0).setProperty(TestFour.oneToOneTestThree,  threes.get(0));
+			fours.get(0).setProperty(TestFour.manyToOneTestThree, threes.get(2));
+
+			// the second node shares some of the related nodes with the first one
+			fours.get(1).setProperty(TestFour.manyToManyTestOnes, Arrays.asList(ones.get(2), ones.get(3)));
+			fours.get(1).setProperty(TestFour.oneToManyTestOnes,  Arrays.asList(ones.get(4)));
+			fours.get(1).setProperty(TestFour.manyToOneTestThree, threes.get(2));
+
+			// the third node is connected on a single property only
+			fours.get(2).setProperty(TestFour.oneToOneTestThree,  threes.get(1));
+
+			// the fourth node has no relationships at all
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		FlushCachesCommand.flushAll();
+
+		final Map<String, Map<String, Object>> expected = new LinkedHashMap<>();
+
+		try (final Tx tx = app.tx()) {
+
+			for (final TestFour four : app.nodeQuery(TestFour.class).getAsList()) {
+				expected.put(four.getUuid(), getRelatedUuids(four));
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		FlushCachesCommand.flushAll();
+
+		final Map<String, Map<String, Object>> actual = new LinkedHashMap<>();
+
+		try (final Tx tx = app.tx()) {
+
+			final List<TestFour> fours = app.nodeQuery(TestFour.class).getAsList();
+
+			RelationshipPrefetcher.prefetch(fours, PropertyView.All);
+
+			for (final TestFour four : fours) {
+				actual.put(four.getUuid(), getRelatedUuids(four));
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		assertEquals("Invalid number of test nodes", 4, expected.size());
+		assertEquals("Prefetched relationships should resolve to the same nodes as lazily loaded relationships", expected, actual);
+
+		// the node without relationships must not get any from the prefetch
+		final long emptyCount = actual.values().stream().filter(values -> values.values().stream().allMatch(RelationshipPrefetcherTest::isEmpty)).count();
+
+		assertEquals("Node without relationships should have no related nodes after prefetching", 1, emptyCount);
+	}
+
+	@Test
+	public void testPrefetchWithSingleObject() {
+
+		String uuid = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final TestFour four = createTestNodes(TestFour.class, 1).get(0);
+
+			four.setProperty(TestFour.oneToManyTestOnes, createTestNodes(TestOne.class, 2));
+
+			uuid = four.getUuid();
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		FlushCachesCommand.flushAll();
+
+		try (final Tx tx = app.tx()) {
+
+			final List<TestFour> fours = app.nodeQuery(TestFour.class).getAsList();
+
+			RelationshipPrefetcher.prefetch(fours, PropertyView.All);
+
+			assertEquals("Invalid number of test nodes", 1, fours.size());
+			assertEquals("Invalid node", uuid, fours.get(0).getUuid());
+			assertEquals("Invalid number of related nodes", 2, fours.get(0).getProperty(TestFour.oneToManyTestOnes).size());
+			assertTrue("Node without relationship should have no related node", fours.get(0).getProperty(TestFour.oneToOneTestThree) == null);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	// ----- private methods -----
+	private Map<String, Object> getRelatedUuids(final TestFour four) {
+
+		final Map<String, Object> values = new LinkedHashMap<>();
+
+		for (final PropertyKey key : keys) {
+
+			final Object value = four.getProperty(key);
+
+			if (value instanceof Iterable) {
+
+				final List<String> uuids = new ArrayList<>();
+
+				for (final Object obj : (Iterable)value) {
+					uuids.add(((GraphObject)obj).getUuid());
+				}
+
+				Collections.sort(uuids);
+
+				values.put(key.jsonName(), uuids);
+
+			} else if (value instanceof GraphObject) {
+
+				values.put(key.jsonName(), ((GraphObject)value).getUuid());
+
+			} else {
+
+				values.put(key.jsonName(), null);
+			}
+		}
+
+		return values;
+	}
+
+	private static boolean isEmpty(final Object value) {
+		return value == null || (value instanceof List && ((List)value).isEmpty());
+	}
+}
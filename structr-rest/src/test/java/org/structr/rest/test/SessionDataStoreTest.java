@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import org.eclipse.jetty.server.session.SessionData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.Tx;
+import org.structr.core.graph.attribute.Name;
+import org.structr.rest.common.StructrRestTest;
+import org.structr.rest.entity.TestUser;
+import org.structr.rest.service.LocalSessionDataStore;
+
+/**
+ *
+ *
+ */
+public class SessionDataStoreTest extends StructrRestTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(SessionDataStoreTest.class.getName());
+
+	@Test
+	public void test01LocalSessionDataStore() {
+
+		final String sessionId = "localsessiondatastoretest";
+		TestUser tester        = null;
+
+		try (final Tx tx = app.tx()) {
+
+			tester = app.create(TestUser.class, new Name("tester"), new NodeAttribute<>(Principal.password, "test"));
+			tester.addSessionId(sessionId);
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			logger.warn("", t);
+			fail("Unexpected exception");
+		}
+
+		try {
+
+			final Path directory              = Files.createTempDirectory("structr-sessions");
+			final LocalSessionDataStore store = new LocalSessionDataStore(directory);
+			final long now                    = System.currentTimeMillis();
+			final SessionData data            = new SessionData(sessionId, "/structr", "0.0.0.0", now, now, now, 60000L);
+			final SessionData anonymous       = new SessionData("anonymous", "/structr", "0.0.0.0", now, now, now, 60000L);
+			final List<String> list           = new LinkedList<>(Arrays.asList("one", "two"));
+
+			data.setAttribute("string", "value");
+			data.setAttribute("long",   42L);
+			data.setAttribute("list",   list);
+			data.setExpiry(now + 60000L);
+
+			store.doStore(sessionId, data, 0L);
+			store.doStore("anonymous", anonymous, 0L);
+
+			assertTrue("Session of authenticated user should be stored", store.exists(sessionId));
+			assertFalse("Session of anonymous user should not be stored", store.exists("anonymous"));
+
+			store.flush();
+
+			// read sessions from file
+			final LocalSessionDataStore reloaded = new LocalSessionDataStore(directory);
+			final SessionData loaded             = reloaded.load(sessionId);
+
+			assertNotNull("Session should be loaded from file", loaded);
+			assertNull("Session of anonymous user should not be stored", reloaded.load("anonymous"));
+
+			assertEquals("Invalid principal of stored session", tester.getUuid(), reloaded.getPrincipalId(sessionId));
+			assertEquals("Invalid session attribute", "value", loaded.getAttribute("string"));
+			assertEquals("Invalid session attribute", 42L,     loaded.getAttribute("long"));
+			assertEquals("Invalid session attribute", list,    loaded.getAttribute("list"));
+			assertEquals("Invalid session data", "/structr",   loaded.getContextPath());
+			assertEquals("Invalid session data", 60000L,       loaded.getMaxInactiveMs());
+			assertEquals("Invalid session data", now + 60000L, loaded.getExpiry());
+
+			// deleted sessions must not be restored
+			reloaded.delete(sessionId);
+			reloaded.flush();
+
+			assertNull("Deleted session should not be restored", new LocalSessionDataStore(directory).load(sessionId));
+
+		} catch (Exception ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception");
+		}
+	}
+}
@@ -136,8 +136,8 @@ public class FileHelper {
 
 		setFileData(newFile, fileStream, contentType);
 
-		// schedule indexing
-		newFile.notifyUploadCompletion();
+		// schedule indexing, metadata was collected while writing the file
+		newFile.notifyUploadCompletion(false);
 
 		return newFile;
 
@@ -175,8 +175,8 @@ public class FileHelper {
 
 		setFileData(newFile, fileStream, contentType);
 
-		// schedule indexing
-		newFile.notifyUploadCompletion();
+		// schedule indexing, metadata was collected while writing the file
+		newFile.notifyUploadCompletion(false);
 
 		return newFile;
 
@@ -206,8 +206,8 @@ public class FileHelper {
 
 		setFileData(newFile, fileData, contentType);
 
-		// schedule indexing
-		newFile.notifyUploadCompletion();
+		// schedule indexing, metadata was collected while writing the file
+		newFile.notifyUploadCompletion(false);
 
 		return newFile;
 	}
@@ -257,8 +257,7 @@ public class FileHelper {
 	 */
 	public static void setFileData(final FileBase file, final byte[] fileData, final String contentType) throws FrameworkException, IOException {
 
-		FileHelper.writeToFile(file, fileData);
-		setFileProperties(file, contentType);
+		setFileProperties(file, contentType, write(file, fileData));
 	}
 
 	/**
@@ -272,8 +271,7 @@ public class FileHelper {
 	 */
 	public static void setFileData(final FileBase file, final InputStream fileStream, final String contentType) throws FrameworkException, IOException {
 
-		FileHelper.writeToFile(file, fileStream);
-		setFileProperties(file, contentType);
+		setFileProperties(file, contentType, write(file, fileStream));
 	}
 
 	/**
@@ -286,16 +284,36 @@ public class FileHelper {
 	 */
 	public static void setFileProperties (final FileBase file, final String contentType) throws IOException, FrameworkException {
 
+		setFileProperties(file, contentType, FileMetadataCollector.read(file, file.getFileOnDisk(false)));
+	}
+
+	/**
+	 * Set the contentType, checksum, size and version properties of the given fileNode
+	 * from the metadata that was collected while the file was written.
+	 *
+	 * @param file
+	 * @param contentType if null, try to auto-detect content type
+	 * @param metadata the collected metadata
+	 * @throws FrameworkException
+	 * @throws IOException
+	 */
+	public static void setFileProperties (final FileBase file, final String contentType, final FileMetadataCollector metadata) throws IOException, FrameworkException {
+
 		final java.io.File fileOnDisk = file.getFileOnDisk(false);
 		final PropertyMap map         = new PropertyMap();
+		final String _contentType     = contentType != null ? contentType : metadata.getContentMimeType(fileOnDisk, file.getProperty(FileBase.name));
 
-		map.put(FileBase.contentType, contentType != null ? contentType : FileHelper.getContentMimeType(fileOnDisk, file.getProperty(FileBase.name)));
+		map.put(FileBase.contentType, _contentType);
 
-		map.putAll(getChecksums(file, fileOnDisk));
+		map.putAll(metadata.getChecksums());
 
-		map.put(FileBase.size,        FileHelper.getSize(fileOnDisk));
-		map.put(FileBase.version,     1);
+		map.put(FileBase.size,                 metadata.getSize());
+		map.put(FileBase.version,              1);
+		map.put(FileBase.fileModificationDate, fileOnDisk.lastModified());
 
+		setImageType(map, _contentType);
+
+		file.unlockSystemPropertiesOnce();
 		file.setProperties(file.getSecurityContext(), map);
 	}
 
@@ -325,16 +343,13 @@ public class FileHelper {
 	}
 
 	/**
-	 * Calculate checksums that are configured in settings of parent folder.
+	 * Return the checksums that are configured in settings of parent folder,
+	 * or the default checksums.
 	 *
 	 * @param file
-	 * @param fileOnDisk
-	 * @return
-	 * @throws IOException
+	 * @return the list of checksums, e.g. "crc32, md5"
 	 */
-	private static PropertyMap getChecksums(final FileBase file, final java.io.File fileOnDisk) throws IOException {
-
-		final PropertyMap propreriesWithChecksums = new PropertyMap();
+	public static String getEnabledChecksums(final FileBase file) {
 
 		Folder parentFolder = file.getProperty(FileBase.parent);
 		String checksums = null;
@@ -349,23 +364,7 @@ public class FileHelper {
 			checksums = Settings.DefaultChecksums.getValue();
 		}
 
-		if (StringUtils.contains(checksums, "crc32"))	{
-			propreriesWithChecksums.put(FileBase.checksum,    FileHelper.getChecksum(fileOnDisk));
-		}
-
-		if (StringUtils.contains(checksums, "md5"))	{
-			propreriesWithChecksums.put(FileBase.md5,         FileHelper.getMD5Checksum(file));
-		}
-
-		if (StringUtils.contains(checksums, "sha1"))	{
-			propreriesWithChecksums.put(FileBase.sha1,        FileHelper.getSHA1Checksum(file));
-		}
-
-		if (StringUtils.contains(checksums, "sha512"))	{
-			propreriesWithChecksums.put(FileBase.sha512,      FileHelper.getSHA512Checksum(file));
-		}
-
-		return propreriesWithChecksums;
+		return checksums;
 	}
 	/**
 	 * Update checksums, content type, size and additional properties of the given file
@@ -394,47 +393,61 @@ public class FileHelper {
 
 			try {
 
-				String contentType = file.getContentType();
+				// read the file only once for all checksums
+				updateMetadata(file, map, calcChecksums ? FileMetadataCollector.read(file, fileOnDisk) : null);
 
-				// Don't overwrite existing MIME type
-				if (StringUtils.isBlank(contentType)) {
+			} catch (IOException ioex) {
+				logger.warn("Unable to access {} on disk: {}", fileOnDisk, ioex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Update checksums (if metadata is given), content type, size and additional
+	 * properties of the given file.
+	 *
+	 * @param file the file
+	 * @param map  additional properties
+	 * @param metadata the metadata collected while the file was written, or null
+	 * @throws FrameworkException
+	 */
+	public static void updateMetadata(final FileBase file, final PropertyMap map, final FileMetadataCollector metadata) throws FrameworkException {
 
-					try {
+		final java.io.File fileOnDisk = file.getFileOnDisk(false);
 
-						contentType = getContentMimeType(file);
-						map.put(FileBase.contentType, contentType);
+		if (fileOnDisk != null && fileOnDisk.exists()) {
 
-					} catch (IOException ex) {
-						logger.debug("Unable to detect content MIME type", ex);
-					}
-				}
+			String contentType = file.getContentType();
 
-				map.put(FileBase.fileModificationDate, fileOnDisk.lastModified());
+			// Don't overwrite existing MIME type
+			if (StringUtils.isBlank(contentType)) {
 
-				if (calcChecksums) {
-					map.putAll(getChecksums(file, fileOnDisk));
-				}
+				try {
 
-				if (contentType != null) {
+					contentType = metadata != null ? metadata.getContentMimeType(fileOnDisk, file.getProperty(AbstractNode.name)) : getContentMimeType(file);
+					map.put(FileBase.contentType, contentType);
 
-					// modify type when image type is detected
-					if (contentType.startsWith("image/")) {
-						map.put(FileBase.type, Image.class.getSimpleName());
-					}
+				} catch (IOException ex) {
+					logger.debug("Unable to detect content MIME type", ex);
 				}
+			}
 
-				long fileSize = FileHelper.getSize(fileOnDisk);
-				if (fileSize > 0) {
+			map.put(FileBase.fileModificationDate, fileOnDisk.lastModified());
 
-					map.put(size, fileSize);
-				}
+			if (metadata != null) {
+				map.putAll(metadata.getChecksums());
+			}
 
-				file.unlockSystemPropertiesOnce();
-				file.setProperties(file.getSecurityContext(), map);
+			setImageType(map, contentType);
 
-			} catch (IOException ioex) {
-				logger.warn("Unable to access {} on disk: {}", fileOnDisk, ioex.getMessage());
+			long fileSize = FileHelper.getSize(fileOnDisk);
+			if (fileSize > 0) {
+
+				map.put(size, fileSize);
 			}
+
+			file.unlockSystemPropertiesOnce();
+			file.setProperties(file.getSecurityContext(), map);
 		}
 	}
 
@@ -537,10 +550,7 @@ public class FileHelper {
 	 */
 	public static void writeToFile(final FileBase fileNode, final byte[] data) throws FrameworkException, IOException {
 
-		setFileProperties(fileNode);
-
-		FileUtils.writeByteArrayToFile(fileNode.getFileOnDisk(), data);
-
+		updateMetadata(fileNode, new PropertyMap(), write(fileNode, data));
 	}
 
 	/**
@@ -554,14 +564,61 @@ public class FileHelper {
 	 */
 	public static void writeToFile(final FileBase fileNode, final InputStream data) throws FrameworkException, IOException {
 
+		updateMetadata(fileNode, new PropertyMap(), write(fileNode, data));
+	}
+
+	/**
+	 * Write the given data to the file on disk of the given file node and
+	 * collect checksums, size and the first bytes of the content on the way.
+	 */
+	private static FileMetadataCollector write(final FileBase fileNode, final byte[] data) throws FrameworkException, IOException {
+
+		final FileMetadataCollector metadata = new FileMetadataCollector(getEnabledChecksums(fileNode));
+
+		setFileProperties(fileNode);
+
+		FileUtils.writeByteArrayToFile(fileNode.getFileOnDisk(), data);
+
+		metadata.update(data, 0, data.length);
+
+		return metadata;
+	}
+
+	/**
+	 * Write the given stream to the file on disk of the given file node and
+	 * collect checksums, size and the first bytes of the content on the way.
+	 */
+	private static FileMetadataCollector write(final FileBase fileNode, final InputStream data) throws FrameworkException, IOException {
+
+		final FileMetadataCollector metadata = new FileMetadataCollector(getEnabledChecksums(fileNode));
+		final byte[] buffer                  = new byte[65536];
+
 		setFileProperties(fileNode);
 
 		try (final FileOutputStream out = new FileOutputStream(fileNode.getFileOnDisk())) {
 
-			IOUtils.copy(data, out);
+			int count = 0;
+
+			while ((count = data.read(buffer)) != -1) {
+
+				out.write(buffer, 0, count);
+				metadata.update(buffer, 0, count);
+			}
 
 			data.close();
 		}
+
+		return metadata;
+	}
+
+	/**
+	 * Changes the type of a file to Image if an image content type was detected.
+	 */
+	private static void setImageType(final PropertyMap map, final String contentType) {
+
+		if (contentType != null && contentType.startsWith("image/")) {
+			map.put(FileBase.type, Image.class.getSimpleName());
+		}
 	}
 
 	/**
@@ -585,6 +642,22 @@ public class FileHelper {
 	 */
 	public static String getContentMimeType(final java.io.File file, final String name) throws IOException {
 
+		try (final InputStream is = new BufferedInputStream(new FileInputStream(file))) {
+
+			return getContentMimeType(is, name);
+		}
+	}
+
+	/**
+	 * Return mime type of the given content
+	 *
+	 * @param content the content, or its first bytes
+	 * @param name
+	 * @return content type
+	 * @throws java.io.IOException
+	 */
+	public static String getContentMimeType(final InputStream content, final String name) throws IOException {
+
 		String mimeType;
 
 		// try name first, if not null
@@ -595,7 +668,7 @@ public class FileHelper {
 			}
 		}
 
-		final MediaType mediaType = new DefaultDetector().detect(new BufferedInputStream(new FileInputStream(file)), new Metadata());
+		final MediaType mediaType = new DefaultDetector().detect(content, new Metadata());
 
 		mimeType = mediaType.toString();
 		if (mimeType != null) {
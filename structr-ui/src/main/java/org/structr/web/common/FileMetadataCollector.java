@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.structr.core.property.PropertyMap;
+import org.structr.web.entity.FileBase;
+
+/**
+ * Collects the configured checksums, the size and the first bytes (for
+ * content type detection) of a file while its content streams through,
+ * so that the file does not have to be read again afterwards.
+ */
+public class FileMetadataCollector {
+
+	private static final int PREFIX_SIZE = 64 * 1024;
+
+	// container formats whose detection may need more than the first bytes
+	private static final Set<String> INCONCLUSIVE_TYPES = new HashSet<>(Arrays.asList(new String[] {
+		"application/octet-stream", "application/zip", "application/x-tika-ooxml", "application/x-tika-msoffice", "application/x-tika-ooxml-protected"
+	}));
+
+	private final ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+	private MessageDigest sha512               = null;
+	private MessageDigest sha1                 = null;
+	private MessageDigest md5                  = null;
+	private CRC32 crc32                        = null;
+	private long size                          = 0L;
+
+	/**
+	 * Creates a new collector for the given checksums.
+	 *
+	 * @param checksums the list of checksums, e.g. "crc32, md5"
+	 */
+	public FileMetadataCollector(final String checksums) {
+
+		if (StringUtils.contains(checksums, "crc32")) {
+			crc32 = new CRC32();
+		}
+
+		if (StringUtils.contains(checksums, "md5")) {
+			md5 = DigestUtils.getMd5Digest();
+		}
+
+		if (StringUtils.contains(checksums, "sha1")) {
+			sha1 = DigestUtils.getSha1Digest();
+		}
+
+		if (StringUtils.contains(checksums, "sha512")) {
+			sha512 = DigestUtils.getSha512Digest();
+		}
+	}
+
+	/**
+	 * Reads the file on disk of the given file node once and collects
+	 * the checksums configured for it.
+	 *
+	 * @param file the file node
+	 * @param fileOnDisk the file on disk
+	 *
+	 * @return the collector
+	 *
+	 * @throws IOException
+	 */
+	public static FileMetadataCollector read(final FileBase file, final java.io.File fileOnDisk) throws IOException {
+
+		final FileMetadataCollector collector = new FileMetadataCollector(FileHelper.getEnabledChecksums(file));
+		final byte[] buffer                   = new byte[8192];
+
+		try (final InputStream is = FileUtils.openInputStream(fileOnDisk)) {
+
+			int count = 0;
+
+			while ((count = is.read(buffer)) != -1) {
+				collector.update(buffer, 0, count);
+			}
+		}
+
+		return collector;
+	}
+
+	public void update(final int b) {
+
+		if (crc32 != null) {
+			crc32.update(b);
+		}
+
+		if (md5 != null) {
+			md5.update((byte)b);
+		}
+
+		if (sha1 != null) {
+			sha1.update((byte)b);
+		}
+
+		if (sha512 != null) {
+			sha512.update((byte)b);
+		}
+
+		if (size < PREFIX_SIZE) {
+			prefix.write(b);
+		}
+
+		size++;
+	}
+
+	public void update(final byte[] data, final int offset, final int length) {
+
+		if (crc32 != null) {
+			crc32.update(data, offset, length);
+		}
+
+		if (md5 != null) {
+			md5.update(data, offset, length);
+		}
+
+		if (sha1 != null) {
+			sha1.update(data, offset, length);
+		}
+
+		if (sha512 != null) {
+			sha512.update(data, offset, length);
+		}
+
+		if (size < PREFIX_SIZE) {
+			prefix.write(data, offset, (int)Math.min(length, PREFIX_SIZE - size));
+		}
+
+		size += length;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the collected checksums. Can only be called once because
+	 * the message digests are reset.
+	 *
+	 * @return a property map with the checksum properties
+	 */
+	public PropertyMap getChecksums() {
+
+		final PropertyMap checksums = new PropertyMap();
+
+		if (crc32 != null) {
+			checksums.put(FileBase.checksum, crc32.getValue());
+		}
+
+		if (md5 != null) {
+			checksums.put(FileBase.md5, Hex.encodeHexString(md5.digest()));
+		}
+
+		if (sha1 != null) {
+			checksums.put(FileBase.sha1, Hex.encodeHexString(sha1.digest()));
+		}
+
+		if (sha512 != null) {
+			checksums.put(FileBase.sha512, Hex.encodeHexString(sha512.digest()));
+		}
+
+		return checksums;
+	}
+
+	/**
+	 * Returns the content type for the given file name or, if the name
+	 * is not conclusive, for the first bytes of the content. If the first
+	 * bytes only identify a container format (e.g. a zip file), the whole
+	 * file is examined.
+	 *
+	 * @param fileOnDisk the file on disk
+	 * @param name the file name
+	 *
+	 * @return the content type
+	 *
+	 * @throws IOException
+	 */
+	public String getContentMimeType(final java.io.File fileOnDisk, final String name) throws IOException {
+
+		final String mimeType = FileHelper.getContentMimeType(new ByteArrayInputStream(prefix.toByteArray()), name);
+
+		if (size > PREFIX_SIZE && fileOnDisk != null && INCONCLUSIVE_TYPES.contains(mimeType)) {
+
+			return FileHelper.getContentMimeType(fileOnDisk, name);
+		}
+
+		return mimeType;
+	}
+}
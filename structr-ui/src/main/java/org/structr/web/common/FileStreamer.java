@@ -0,0 +1,446 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.server.HttpOutput;
+import org.structr.api.config.Settings;
+import org.structr.common.SecurityContext;
+import org.structr.web.entity.AbstractFile;
+import org.structr.web.entity.FileBase;
+
+/**
+ * Delivers the content of a file to an HTTP response.
+ *
+ * Files are sent from a read-only memory mapping of the file on disk,
+ * so the content is handed to the connector without being copied
+ * through heap buffers. Single and multiple byte ranges are supported,
+ * the latter as a multipart/byteranges response. The strong ETag is
+ * derived from the stored crc32 or md5 checksum of the file. If enabled
+ * (HtmlServlet.precompressedfiles) and the client accepts it, a
+ * precompressed variant of the file (name.br or name.gz in the same
+ * folder) is sent instead of the file itself.
+ *
+ * Template files are rendered on access and are always sent in full.
+ */
+public class FileStreamer {
+
+	private static final Pattern RangeSpecPattern   = Pattern.compile("\\s*(?<start>\\d*)\\s*-\\s*(?<end>\\d*)\\s*");
+	private static final Pattern ZeroQualityPattern = Pattern.compile(".*;\\s*q\\s*=\\s*0(\\.0*)?\\s*");
+	private static final String[][] Encodings       = { { "br", ".br" }, { "gzip", ".gz" } };
+	private static final String Boundary            = "STRUCTR_BYTERANGES_BOUNDARY";
+	private static final long MAX_CHUNK_SIZE        = 4 * 1024 * 1024;
+	private static final int MAX_RANGES             = 32;
+
+	/**
+	 * Sends the content of the given file and returns the status code of
+	 * the response.
+	 *
+	 * @param securityContext
+	 * @param file
+	 * @param request
+	 * @param response
+	 * @return the status code
+	 * @throws IOException
+	 */
+	public static int stream(final SecurityContext securityContext, final FileBase file, final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+
+		final String contentType = file.getContentType();
+		if (contentType != null) {
+
+			response.setContentType(contentType);
+
+		} else {
+
+			// Default
+			response.setContentType("application/octet-stream");
+		}
+
+		if (file.getProperty(FileBase.isTemplate)) {
+
+			return streamRenderedContent(file, response);
+		}
+
+		final String range   = request.getHeader("Range");
+		final boolean ranged = StringUtils.isNotBlank(range);
+		FileBase source      = file;
+
+		if (!ranged && Settings.HtmlPrecompressedFiles.getValue()) {
+
+			response.setHeader("Vary", "Accept-Encoding");
+
+			final FileBase variant = getPrecompressedVariant(securityContext, file, request, response);
+			if (variant != null) {
+
+				source = variant;
+			}
+		}
+
+		final java.io.File fileOnDisk = source.getFileOnDisk(false);
+		if (fileOnDisk == null || !fileOnDisk.isFile()) {
+
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return HttpServletResponse.SC_NOT_FOUND;
+		}
+
+		// validators describe the representation that is actually sent
+		final Date lastModified = source.getLastModifiedDate();
+		if (lastModified != null) {
+
+			response.setDateHeader("Last-Modified", lastModified.getTime());
+		}
+
+		final String etag = getETag(source, fileOnDisk.length());
+		if (etag != null) {
+
+			response.setHeader("ETag", etag);
+
+			if (matchesETag(request.getHeader("If-None-Match"), etag)) {
+
+				response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return HttpServletResponse.SC_NOT_MODIFIED;
+			}
+		}
+
+		// Tell the client that we support byte ranges
+		response.setHeader("Accept-Ranges", "bytes");
+
+		try (final FileChannel channel = FileChannel.open(fileOnDisk.toPath(), StandardOpenOption.READ)) {
+
+			final long length = channel.size();
+
+			if (ranged && isRangeApplicable(request, file, etag)) {
+
+				final List<long[]> ranges = parseRanges(range, length);
+				if (ranges != null) {
+
+					if (ranges.isEmpty()) {
+
+						response.setHeader("Content-Range", "bytes */" + length);
+						response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+
+						return HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
+					}
+
+					if (ranges.size() == 1) {
+
+						final long start = ranges.get(0)[0];
+						final long end   = ranges.get(0)[1];
+
+						response.setHeader("Content-Range", String.format("bytes %s-%s/%s", start, end, length));
+						response.setContentLengthLong(end - start + 1);
+						response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+
+						send(channel, start, end - start + 1, response.getOutputStream());
+
+					} else {
+
+						streamRanges(channel, ranges, response.getContentType(), response);
+					}
+
+					return HttpServletResponse.SC_PARTIAL_CONTENT;
+				}
+			}
+
+			response.setContentLengthLong(length);
+			response.setStatus(HttpServletResponse.SC_OK);
+
+			send(channel, 0, length, response.getOutputStream());
+		}
+
+		return HttpServletResponse.SC_OK;
+	}
+
+	// ----- private methods -----
+	private static int streamRenderedContent(final FileBase file, final HttpServletResponse response) throws IOException {
+
+		response.setStatus(HttpServletResponse.SC_OK);
+
+		try (final InputStream in = file.getInputStream()) {
+
+			if (in != null) {
+
+				IOUtils.copyLarge(in, response.getOutputStream());
+			}
+		}
+
+		return HttpServletResponse.SC_OK;
+	}
+
+	private static void streamRanges(final FileChannel channel, final List<long[]> ranges, final String contentType, final HttpServletResponse response) throws IOException {
+
+		final List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+		final long length              = channel.size();
+		long contentLength             = 0L;
+
+		for (final long[] range : ranges) {
+
+			final byte[] partHeader = ("\r\n--" + Boundary + "\r\nContent-Type: " + contentType + "\r\nContent-Range: bytes " + range[0] + "-" + range[1] + "/" + length + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+			partHeaders.add(partHeader);
+			contentLength += partHeader.length + range[1] - range[0] + 1;
+		}
+
+		final byte[] trailer = ("\r\n--" + Boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+		contentLength += trailer.length;
+
+		response.setContentType("multipart/byteranges; boundary=" + Boundary);
+		response.setContentLengthLong(contentLength);
+		response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+
+		final OutputStream out = response.getOutputStream();
+
+		for (int i=0; i<ranges.size(); i++) {
+
+			final long[] range = ranges.get(i);
+
+			out.write(partHeaders.get(i));
+			send(channel, range[0], range[1] - range[0] + 1, out);
+		}
+
+		out.write(trailer);
+	}
+
+	/**
+	 * Sends the given region of the file to the output stream. Jetty's
+	 * output stream accepts mapped buffers directly, other streams are
+	 * written using {@link FileChannel#transferTo}.
+	 */
+	private static void send(final FileChannel channel, final long start, final long count, final OutputStream out) throws IOException {
+
+		final long end = start + count;
+		long position  = start;
+
+		if (out instanceof HttpOutput) {
+
+			final HttpOutput httpOutput = (HttpOutput)out;
+
+			while (position < end) {
+
+				final long chunkSize = Math.min(end - position, MAX_CHUNK_SIZE);
+
+				httpOutput.write(channel.map(FileChannel.MapMode.READ_ONLY, position, chunkSize));
+				position += chunkSize;
+			}
+
+		} else {
+
+			final WritableByteChannel target = Channels.newChannel(out);
+
+			while (position < end) {
+
+				final long transferred = channel.transferTo(position, end - position, target);
+				if (transferred <= 0) {
+
+					throw new IOException("Unexpected end of file at position " + position);
+				}
+
+				position += transferred;
+			}
+		}
+	}
+
+	/**
+	 * Parses the given Range header. Returns null if the header is
+	 * malformed or requests too many ranges, in which case it must be
+	 * ignored, and an empty list if none of the ranges is satisfiable.
+	 */
+	private static List<long[]> parseRanges(final String header, final long length) {
+
+		if (!header.startsWith("bytes=")) {
+			return null;
+		}
+
+		final String[] specs = header.substring(6).split(",");
+		if (specs.length > MAX_RANGES) {
+			return null;
+		}
+
+		final List<long[]> ranges = new ArrayList<>(specs.length);
+
+		try {
+
+			for (final String spec : specs) {
+
+				final Matcher matcher = RangeSpecPattern.matcher(spec);
+				if (!matcher.matches()) {
+					return null;
+				}
+
+				final String startGroup = matcher.group("start");
+				final String endGroup   = matcher.group("end");
+
+				if (startGroup.isEmpty()) {
+
+					if (endGroup.isEmpty()) {
+						return null;
+					}
+
+					// suffix range, the last n bytes of the file
+					final long suffixLength = Long.parseLong(endGroup);
+					if (suffixLength > 0 && length > 0) {
+
+						ranges.add(new long[] { Math.max(0, length - suffixLength), length - 1 });
+					}
+
+				} else {
+
+					final long start = Long.parseLong(startGroup);
+					final long last  = endGroup.isEmpty() ? length - 1 : Long.parseLong(endGroup);
+
+					if (last < start && !endGroup.isEmpty()) {
+						return null;
+					}
+
+					if (start < length) {
+
+						ranges.add(new long[] { start, Math.min(last, length - 1) });
+					}
+				}
+			}
+
+		} catch (NumberFormatException nfex) {
+			return null;
+		}
+
+		return ranges;
+	}
+
+	/**
+	 * Checks the If-Range precondition: a range request is only answered
+	 * with partial content if the representation is unchanged.
+	 */
+	private static boolean isRangeApplicable(final HttpServletRequest request, final FileBase file, final String etag) {
+
+		final String ifRange = request.getHeader("If-Range");
+		if (ifRange == null) {
+
+			return true;
+		}
+
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+
+			// strong comparison, weak tags never match
+			return etag != null && etag.equals(ifRange.trim());
+		}
+
+		try {
+
+			final Date lastModified = file.getLastModifiedDate();
+			final long date         = request.getDateHeader("If-Range");
+
+			return lastModified != null && date >= 0 && lastModified.getTime() / 1000 <= date / 1000;
+
+		} catch (IllegalArgumentException iaex) {
+			return false;
+		}
+	}
+
+	private static boolean matchesETag(final String header, final String etag) {
+
+		if (header == null) {
+			return false;
+		}
+
+		for (final String part : header.split(",")) {
+
+			final String tag = part.trim();
+
+			// weak comparison
+			if ("*".equals(tag) || etag.equals(tag) || etag.equals(StringUtils.removeStart(tag, "W/"))) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static String getETag(final FileBase file, final long length) {
+
+		final Long checksum = file.getChecksum();
+		if (checksum != null) {
+
+			return "\"" + Long.toHexString(checksum) + "-" + Long.toHexString(length) + "\"";
+		}
+
+		final String md5 = file.getProperty(FileBase.md5);
+		if (md5 != null) {
+
+			return "\"" + md5 + "\"";
+		}
+
+		return null;
+	}
+
+	private static FileBase getPrecompressedVariant(final SecurityContext securityContext, final FileBase file, final HttpServletRequest request, final HttpServletResponse response) {
+
+		final String acceptEncoding = request.getHeader("Accept-Encoding");
+		final String path           = file.getProperty(AbstractFile.path);
+
+		if (acceptEncoding == null || path == null) {
+			return null;
+		}
+
+		for (final String[] encoding : Encodings) {
+
+			if (acceptsEncoding(acceptEncoding, encoding[0])) {
+
+				final AbstractFile variant = FileHelper.getFileByAbsolutePath(securityContext, path + encoding[1]);
+				if (variant instanceof FileBase && !variant.getProperty(FileBase.isTemplate)) {
+
+					response.setHeader("Content-Encoding", encoding[0]);
+
+					return (FileBase)variant;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	private static boolean acceptsEncoding(final String acceptEncoding, final String encoding) {
+
+		for (final String part : acceptEncoding.split(",")) {
+
+			final String name = StringUtils.substringBefore(part, ";").trim();
+
+			if (encoding.equalsIgnoreCase(name) && !ZeroQualityPattern.matcher(part).matches()) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,524 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.lang3.StringUtils;
+import org.structr.api.config.Settings;
+import org.structr.api.util.Cachable;
+import org.structr.api.util.FixedSizeCache;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.TransactionSource;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.CacheStatisticsCommand;
+import org.structr.core.graph.FlushCachesCommand;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.graph.RelationshipInterface;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.graph.search.SearchCommand;
+import org.structr.web.common.RenderContext.EditMode;
+import org.structr.web.entity.dom.DOMNode;
+
+/**
+ * Server-side cache for the rendered output of pages and DOM subtrees.
+ *
+ * The output of a node with a positive renderCacheForSeconds value is
+ * stored together with the ids of all DOM nodes and data objects that
+ * were rendered, the types of the data objects and the types that node
+ * queries asked for while the output was rendered, including queries
+ * with an empty result and queries in scripts. An entry expires after
+ * the configured number of seconds, and it is removed as soon as a
+ * transaction modifies one of the recorded nodes or creates, modifies or
+ * deletes an object of one of the recorded types. The invalidation runs
+ * as an after-commit action of the transaction, so it also happens when
+ * transaction notifications are disabled. Output that was
+ * rendered while another transaction was committed is not stored, since
+ * it may already be outdated, and neither is output that sets response
+ * headers, since they would be missing when the output is replayed.
+ *
+ * Entries are keyed by node, request path, locale, request parameters,
+ * data context and user, so output is only shared between anonymous
+ * requests. Output is never cached for admin users or in edit modes.
+ */
+public class RenderCache implements StructrTransactionListener {
+
+	private static final FixedSizeCache<String, CacheEntry> cache   = new FixedSizeCache<>(Settings.HtmlRenderCacheSize.getValue());
+	private static final Map<String, Set<CacheEntry>> entriesByUuid = new ConcurrentHashMap<>();
+	private static final Map<String, Set<CacheEntry>> entriesByType = new ConcurrentHashMap<>();
+	private static final AtomicBoolean registered                   = new AtomicBoolean(false);
+	private static final AtomicLong generation                      = new AtomicLong(0L);
+	private static final ThreadLocal<List<Recording>> active        = new ThreadLocal<>();
+	private static final String AFTER_COMMIT_KEY                    = RenderCache.class.getName();
+
+	/**
+	 * Registers the invalidation listener, must be called before the
+	 * cache is used.
+	 */
+	public static void register() {
+
+		if (registered.compareAndSet(false, true)) {
+
+			TransactionCommand.registerTransactionListener(new RenderCache());
+			SearchCommand.registerTypeListener(RenderCache::recordQueryTypes);
+			FlushCachesCommand.registerCache(RenderCache::clear);
+			CacheStatisticsCommand.registerStatistics("render", RenderCache::getStatistics);
+		}
+	}
+
+	/**
+	 * Renders the given node, either by replaying cached output or by
+	 * calling the renderer and storing the output if the node is
+	 * configured for server-side caching.
+	 *
+	 * @param node
+	 * @param renderContext
+	 * @param renderer
+	 *
+	 * @throws FrameworkException
+	 */
+	public static void render(final DOMNode node, final RenderContext renderContext, final Renderer renderer) throws FrameworkException {
+
+		// the output of enclosing cached nodes depends on this node
+		for (final Recording recording : renderContext.getRecordings()) {
+			recording.add(node);
+		}
+
+		final Integer seconds = node.getProperty(DOMNode.renderCacheForSeconds);
+		if (seconds == null || seconds <= 0 || !registered.get() || !isCacheable(renderContext)) {
+
+			renderer.render();
+			return;
+		}
+
+		final String key       = getKey(node, renderContext);
+		final CacheEntry entry = cache.get(key);
+
+		if (entry != null) {
+
+			if (entry.expires > System.currentTimeMillis()) {
+
+				// let enclosing recordings know what the cached output depends on
+				for (final Recording recording : renderContext.getRecordings()) {
+					recording.addAll(entry);
+				}
+
+				renderContext.getBuffer().append(entry.content);
+				return;
+			}
+
+			cache.remove(key);
+			entry.unregister();
+		}
+
+		final AsyncBuffer buffer       = renderContext.getBuffer();
+		final RecordingBuffer recorded = new RecordingBuffer(buffer);
+		final Recording recording      = new Recording();
+		final long start               = generation.get();
+		boolean success                = false;
+
+		recording.add(node);
+
+		final GraphObject details = renderContext.getDetailsDataObject();
+		if (details != null) {
+
+			recording.add(details);
+		}
+
+		final List<Recording> previous = active.get();
+
+		renderContext.setBuffer(recorded);
+		renderContext.getRecordings().add(recording);
+
+		// let queries of this thread report their types to the recordings
+		active.set(renderContext.getRecordings());
+
+		try {
+
+			renderer.render();
+			success = true;
+
+		} finally {
+
+			active.set(previous);
+
+			renderContext.getRecordings().remove(recording);
+			renderContext.setBuffer(buffer);
+		}
+
+		// a transaction that was committed in the meantime may have modified the
+		// rendered objects before the entry could be registered for invalidation
+		if (success && recording.cacheable && start == generation.get()) {
+
+			final CacheEntry newEntry = new CacheEntry(key, recorded.toString(), System.currentTimeMillis() + seconds * 1000L, recording);
+
+			newEntry.register(start);
+		}
+
+		// enclosing recordings depend on everything this node depends on
+		for (final Recording enclosing : renderContext.getRecordings()) {
+			enclosing.addAll(recording);
+		}
+	}
+
+	/**
+	 * Prevents the output of all nodes that are currently being rendered
+	 * from being cached, e.g. because the rendering run has modified the
+	 * response in a way that can not be replayed.
+	 *
+	 * @param renderContext
+	 */
+	public static void skip(final RenderContext renderContext) {
+
+		for (final Recording recording : renderContext.getRecordings()) {
+			recording.cacheable = false;
+		}
+	}
+
+	public static void clear() {
+
+		generation.incrementAndGet();
+
+		cache.clear();
+		entriesByUuid.clear();
+		entriesByType.clear();
+	}
+
+	public static int size() {
+		return cache.size();
+	}
+
+	public static long getHitCount() {
+		return cache.getHitCount();
+	}
+
+	public static long getMissCount() {
+		return cache.getMissCount();
+	}
+
+	public static Map<String, Object> getStatistics() {
+
+		final Map<String, Object> statistics = new LinkedHashMap<>();
+
+		statistics.put("size",      size());
+		statistics.put("hits",      getHitCount());
+		statistics.put("misses",    getMissCount());
+		statistics.put("evictions", cache.getEvictionCount());
+
+		return statistics;
+	}
+
+	// ----- interface StructrTransactionListener -----
+	@Override
+	public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) throws FrameworkException {
+
+		// after-commit actions run regardless of whether notifications are enabled, the
+		// collection is evaluated when the action runs and then contains all modifications
+		TransactionCommand.afterCommit(AFTER_COMMIT_KEY, () -> invalidate(modificationEvents));
+	}
+
+	@Override
+	public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
+	}
+
+	// ----- private methods -----
+	private static void invalidate(final Collection<ModificationEvent> modificationEvents) {
+
+		if (!modificationEvents.isEmpty()) {
+			generation.incrementAndGet();
+		}
+
+		for (final ModificationEvent event : modificationEvents) {
+
+			final GraphObject obj = event.getGraphObject();
+
+			if (event.isNode()) {
+
+				invalidate(entriesByUuid.remove(event.getUuid()));
+
+				if (obj != null) {
+
+					// invalidate entries that depend on the type or one of its supertypes
+					for (Class type = obj.getClass(); type != null && !Object.class.equals(type); type = type.getSuperclass()) {
+
+						invalidate(entriesByType.remove(type.getSimpleName()));
+					}
+				}
+
+			} else if (obj instanceof RelationshipInterface) {
+
+				final RelationshipInterface rel = (RelationshipInterface)obj;
+
+				// a new or removed relationship changes the children of a DOM node
+				// or the related objects of a data object
+				invalidate(entriesByUuid.remove(rel.getSourceNodeId()));
+				invalidate(entriesByUuid.remove(rel.getTargetNodeId()));
+			}
+		}
+	}
+
+	private static void recordQueryTypes(final Set<String> types) {
+
+		final List<Recording> recordings = active.get();
+		if (recordings != null) {
+
+			for (final Recording recording : recordings) {
+				recording.types.addAll(types);
+			}
+		}
+	}
+
+	private static boolean isCacheable(final RenderContext renderContext) {
+
+		final SecurityContext securityContext = renderContext.getSecurityContext();
+		final Principal user                  = securityContext.getUser(false);
+
+		if (renderContext.getRequest() == null || securityContext.isSuperUser() || (user != null && user.isAdmin())) {
+			return false;
+		}
+
+		return EditMode.NONE.equals(renderContext.getEditMode(user));
+	}
+
+	private static String getKey(final DOMNode node, final RenderContext renderContext) {
+
+		final HttpServletRequest request = renderContext.getRequest();
+		final String parameterNames      = node.getProperty(DOMNode.renderCacheParameters);
+		final StringBuilder buf          = new StringBuilder(node.getUuid());
+
+		buf.append("|").append(request.getPathInfo());
+		buf.append("|").append(renderContext.getLocale());
+		buf.append("|").append(getUserId(renderContext));
+		buf.append("|");
+
+		if (StringUtils.isBlank(parameterNames)) {
+
+			buf.append(request.getQueryString());
+
+		} else {
+
+			for (final String name : parameterNames.split("[, ]+")) {
+
+				final String[] values = request.getParameterValues(name);
+				if (values != null) {
+
+					buf.append(name).append("=").append(StringUtils.join(values, ",")).append("&");
+				}
+			}
+		}
+
+		// the output of a node inside a repeater depends on the data context
+		for (final GraphObject dataObject : renderContext.getDataObjects()) {
+
+			if (dataObject != null) {
+				buf.append("|").append(dataObject.getUuid());
+			}
+		}
+
+		final GraphObject currentDataObject = renderContext.getDataObject();
+		if (currentDataObject != null) {
+
+			buf.append("|").append(currentDataObject.getUuid());
+		}
+
+		return buf.toString();
+	}
+
+	private static String getUserId(final RenderContext renderContext) {
+
+		final Principal user = renderContext.getSecurityContext().getUser(false);
+		if (user != null) {
+
+			return user.getUuid();
+		}
+
+		return "public";
+	}
+
+	private static void invalidate(final Set<CacheEntry> entries) {
+
+		if (entries != null) {
+
+			for (final CacheEntry entry : entries) {
+
+				cache.remove(entry.key);
+				entry.unregister();
+			}
+		}
+	}
+
+	private static void addEntry(final Map<String, Set<CacheEntry>> index, final String key, final CacheEntry entry) {
+		index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(entry);
+	}
+
+	private static void removeEntry(final Map<String, Set<CacheEntry>> index, final String key, final CacheEntry entry) {
+
+		index.computeIfPresent(key, (k, set) -> {
+
+			set.remove(entry);
+
+			return set.isEmpty() ? null : set;
+		});
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Renders the (uncached) output of a node.
+	 */
+	public interface Renderer {
+
+		void render() throws FrameworkException;
+	}
+
+	/**
+	 * Collects the ids and types of the objects that contribute to the
+	 * output of a cached node, and the types of the queries that were
+	 * made, while the node is being rendered.
+	 */
+	public static class Recording {
+
+		private final Set<String> uuids = new HashSet<>();
+		private final Set<String> types = new HashSet<>();
+		private boolean cacheable       = true;
+
+		public void add(final GraphObject obj) {
+
+			uuids.add(obj.getUuid());
+
+			// DOM nodes are tracked by id only, every DOM modification
+			// would invalidate all entries otherwise
+			if (!(obj instanceof DOMNode)) {
+				types.add(obj.getType());
+			}
+		}
+
+		private void addAll(final CacheEntry entry) {
+
+			uuids.addAll(entry.uuids);
+			types.addAll(entry.types);
+		}
+
+		private void addAll(final Recording recording) {
+
+			uuids.addAll(recording.uuids);
+			types.addAll(recording.types);
+
+			// output that contains uncacheable output is not cacheable either
+			cacheable &= recording.cacheable;
+		}
+	}
+
+	private static class RecordingBuffer extends AsyncBuffer {
+
+		private final StringBuilder buf = new StringBuilder();
+		private AsyncBuffer delegate    = null;
+
+		public RecordingBuffer(final AsyncBuffer delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public AsyncBuffer append(final String s) {
+
+			if (s != null) {
+
+				buf.append(s);
+				delegate.append(s);
+			}
+
+			return this;
+		}
+
+		@Override
+		public String toString() {
+			return buf.toString();
+		}
+	}
+
+	private static class CacheEntry implements Cachable {
+
+		private String key        = null;
+		private String content    = null;
+		private long expires      = 0L;
+		private Set<String> uuids = null;
+		private Set<String> types = null;
+
+		public CacheEntry(final String key, final String content, final long expires, final Recording recording) {
+
+			this.key     = key;
+			this.content = content;
+			this.expires = expires;
+			this.uuids   = recording.uuids;
+			this.types   = recording.types;
+		}
+
+		@Override
+		public void onRemoveFromCache() {
+			unregister();
+		}
+
+		/**
+		 * Registers this entry for invalidation and stores it in the
+		 * cache, unless a transaction was committed since the given
+		 * generation. The generation is checked again after the entry
+		 * is visible, since an invalidation that ran before could not
+		 * have found it.
+		 */
+		private void register(final long start) {
+
+			for (final String uuid : uuids) {
+				addEntry(entriesByUuid, uuid, this);
+			}
+
+			for (final String type : types) {
+				addEntry(entriesByType, type, this);
+			}
+
+			cache.put(key, this);
+
+			if (start != generation.get()) {
+
+				cache.remove(key);
+				unregister();
+			}
+		}
+
+		private void unregister() {
+
+			for (final String uuid : uuids) {
+				removeEntry(entriesByUuid, uuid, this);
+			}
+
+			for (final String type : types) {
+				removeEntry(entriesByType, type, this);
+			}
+		}
+	}
+}
@@ -18,7 +18,10 @@
  */
 package org.structr.web.common;
 
+import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import javax.servlet.http.HttpServletRequest;
@@ -48,25 +51,26 @@ import org.structr.web.entity.html.relation.ResourceLink;
  */
 public class RenderContext extends ActionContext {
 
-	private final Map<String, GraphObject> dataObjects = new LinkedHashMap<>();
-	private final Stack<SecurityContext> scStack       = new Stack<>();
-	private EditMode editMode                          = EditMode.NONE;
-	private AsyncBuffer buffer                         = new AsyncBuffer();
-	private int depth                                  = 0;
-	private boolean inBody                             = false;
-	private boolean appLibRendered                     = false;
-	private GraphObject detailsDataObject              = null;
-	private GraphObject currentDataObject              = null;
-	private GraphObject sourceDataObject               = null;
-	private Iterable<GraphObject> listSource           = null;
-	private PropertyKey relatedProperty                = null;
-	private Page page                                  = null;
-	private HttpServletRequest request                 = null;
-	private HttpServletResponse response               = null;
-	private ResourceProvider resourceProvider          = null;
-	private Result result                              = null;
-	private boolean anyChildNodeCreatesNewLine         = false;
-	private boolean indentHtml                         = true;
+	private final List<RenderCache.Recording> recordings = new LinkedList<>();
+	private final Map<String, GraphObject> dataObjects   = new LinkedHashMap<>();
+	private final Stack<SecurityContext> scStack         = new Stack<>();
+	private EditMode editMode                            = EditMode.NONE;
+	private AsyncBuffer buffer                           = new AsyncBuffer();
+	private int depth                                    = 0;
+	private boolean inBody                               = false;
+	private boolean appLibRendered                       = false;
+	private GraphObject detailsDataObject                = null;
+	private GraphObject currentDataObject                = null;
+	private GraphObject sourceDataObject                 = null;
+	private Iterable<GraphObject> listSource             = null;
+	private PropertyKey relatedProperty                  = null;
+	private Page page                                    = null;
+	private HttpServletRequest request                   = null;
+	private HttpServletResponse response                 = null;
+	private ResourceProvider resourceProvider            = null;
+	private Result result                                = null;
+	private boolean anyChildNodeCreatesNewLine           = false;
+	private boolean indentHtml                           = true;
 
 	public enum EditMode {
 
@@ -90,6 +94,7 @@ public class RenderContext extends ActionContext {
 		super(other);
 
 		this.dataObjects.putAll(other.dataObjects);
+		this.recordings.addAll(other.recordings);
 		this.editMode = other.editMode;
 		this.inBody = other.inBody;
 		this.appLibRendered = other.appLibRendered;
@@ -137,6 +142,7 @@ public class RenderContext extends ActionContext {
 
 	public void setDetailsDataObject(GraphObject detailsDataObject) {
 		this.detailsDataObject = detailsDataObject;
+		record(detailsDataObject);
 	}
 
 	public GraphObject getDetailsDataObject() {
@@ -145,6 +151,7 @@ public class RenderContext extends ActionContext {
 
 	public void setDataObject(GraphObject currentDataObject) {
 		this.currentDataObject = currentDataObject;
+		record(currentDataObject);
 	}
 
 	public GraphObject getDataObject() {
@@ -300,6 +307,10 @@ public class RenderContext extends ActionContext {
 		return buffer;
 	}
 
+	public List<RenderCache.Recording> getRecordings() {
+		return recordings;
+	}
+
 	public void setInBody(final boolean inBody) {
 		this.inBody = inBody;
 	}
@@ -326,6 +337,10 @@ public class RenderContext extends ActionContext {
 
 	}
 
+	public Collection<GraphObject> getDataObjects() {
+		return dataObjects.values();
+	}
+
 	public void clearDataObject(String key) {
 		dataObjects.remove(key);
 		setDataObject(null);
@@ -515,6 +530,17 @@ public class RenderContext extends ActionContext {
 		indentHtml = Settings.HtmlIndentation.getValue();
 	}
 
+	private void record(final GraphObject obj) {
+
+		if (obj != null) {
+
+			// let the render cache know which objects contributed to the output
+			for (final RenderCache.Recording recording : recordings) {
+				recording.add(obj);
+			}
+		}
+	}
+
 	public boolean shouldIndentHtml() {
 		return indentHtml;
 	}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import javax.servlet.ServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Render buffer that encodes the rendered output as UTF-8 and writes it
+ * directly to the output stream of a servlet response.
+ *
+ * Output is kept in memory until it exceeds the buffer size of the
+ * response, so response headers can still be set and rendering errors
+ * can still be reported with an error status for all pages that fit
+ * into the response buffer. After that, output goes through a fixed-size
+ * buffer that is reused for the rest of the page, so memory usage does
+ * not grow with the size of the page, and rendering blocks when the
+ * client does not consume the output fast enough. Once writing has
+ * failed (usually because the client went away), all further output is
+ * discarded and the error is reported by {@link #close()}.
+ *
+ *
+ */
+public class StreamingRenderBuffer extends AsyncBuffer {
+
+	private static final Logger logger   = LoggerFactory.getLogger(StreamingRenderBuffer.class.getName());
+	private static final int BUFFER_SIZE = 8192;
+
+	private final StringBuilder pending = new StringBuilder();
+	private ServletResponse response    = null;
+	private Writer writer               = null;
+	private IOException error           = null;
+	private int threshold               = 0;
+
+	public StreamingRenderBuffer(final ServletResponse response) {
+
+		this.response  = response;
+		this.threshold = response.getBufferSize() > 0 ? response.getBufferSize() : BUFFER_SIZE;
+	}
+
+	@Override
+	public synchronized AsyncBuffer append(final String s) {
+
+		if (s != null && error == null) {
+
+			try {
+
+				if (writer != null) {
+
+					writer.write(s);
+
+				} else {
+
+					pending.append(s);
+
+					if (pending.length() > threshold) {
+						commit();
+					}
+				}
+
+			} catch (IOException ioex) {
+
+				logger.debug("Unable to write rendered output: {}", ioex.getMessage());
+				error = ioex;
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * Indicates whether output has already been written to the response,
+	 * i.e. whether the status and the headers of the response can no
+	 * longer be changed.
+	 *
+	 * @return whether output has been written to the response
+	 */
+	public synchronized boolean isCommitted() {
+		return writer != null || response.isCommitted();
+	}
+
+	/**
+	 * Writes all buffered output to the underlying stream and closes it.
+	 *
+	 * The stream is not flushed before it is closed, so the container
+	 * can still send pages that fit into its response buffer with a
+	 * Content-Length header.
+	 *
+	 * @throws IOException if writing the output failed
+	 */
+	public synchronized void close() throws IOException {
+
+		if (error != null) {
+			throw error;
+		}
+
+		if (writer == null) {
+			commit();
+		}
+
+		writer.close();
+	}
+
+	// ----- private methods -----
+	private void commit() throws IOException {
+
+		writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8), BUFFER_SIZE);
+
+		writer.append(pending);
+		pending.setLength(0);
+	}
+}
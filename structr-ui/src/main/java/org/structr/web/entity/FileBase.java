@@ -84,6 +84,7 @@ import org.structr.schema.action.ActionContext;
 import org.structr.schema.action.Function;
 import org.structr.schema.action.JavaScriptSource;
 import org.structr.web.common.FileHelper;
+import org.structr.web.common.FileMetadataCollector;
 import org.structr.web.common.ImageHelper;
 import org.structr.web.common.RenderContext;
 import org.structr.web.entity.relation.Folders;
@@ -230,6 +231,15 @@ public class FileBase extends AbstractFile implements Indexable, Linkable, JavaS
 	}
 
 	public void notifyUploadCompletion() {
+		notifyUploadCompletion(true);
+	}
+
+	/**
+	 * Updates the metadata of this file and schedules fulltext indexing.
+	 *
+	 * @param calcChecksums whether to read the file to calculate the checksums, false if they were collected while writing
+	 */
+	public void notifyUploadCompletion(final boolean calcChecksums) {
 
 		try {
 
@@ -237,7 +247,7 @@ public class FileBase extends AbstractFile implements Indexable, Linkable, JavaS
 
 				synchronized (tx) {
 
-					FileHelper.updateMetadata(this, new PropertyMap(), true);
+					FileHelper.updateMetadata(this, new PropertyMap(), calcChecksums);
 
 					tx.success();
 				}
@@ -854,6 +864,7 @@ public class FileBase extends AbstractFile implements Indexable, Linkable, JavaS
 
 	private class ClosingFileOutputStream extends FileOutputStream {
 
+		private FileMetadataCollector metadata    = null;
 		private boolean notifyIndexerAfterClosing = false;
 		private boolean closed                    = false;
 		private java.io.File file                 = null;
@@ -864,6 +875,46 @@ public class FileBase extends AbstractFile implements Indexable, Linkable, JavaS
 
 			this.notifyIndexerAfterClosing = notifyIndexerAfterClosing;
 			this.file                      = file;
+
+			// collect metadata while writing, unless only a part of the file is written
+			if (!append) {
+
+				try (final Tx tx = StructrApp.getInstance().tx()) {
+
+					// the crc32 checksum has always been set when the stream is closed
+					this.metadata = new FileMetadataCollector("crc32, " + FileHelper.getEnabledChecksums(FileBase.this));
+
+					tx.success();
+
+				} catch (FrameworkException fex) {
+					logger.warn("Unable to determine checksums for {}: {}", path, fex.getMessage());
+				}
+			}
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+
+			super.write(b);
+
+			if (metadata != null) {
+				metadata.update(b);
+			}
+		}
+
+		@Override
+		public void write(final byte[] b) throws IOException {
+			write(b, 0, b.length);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+
+			super.write(b, off, len);
+
+			if (metadata != null) {
+				metadata.update(b, off, len);
+			}
 		}
 
 		@Override
@@ -877,11 +928,25 @@ public class FileBase extends AbstractFile implements Indexable, Linkable, JavaS
 
 				super.close();
 
-				final String _contentType = FileHelper.getContentMimeType(FileBase.this);
-
 				final PropertyMap changedProperties = new PropertyMap();
-				changedProperties.put(checksum, FileHelper.getChecksum(file));
-				changedProperties.put(size, FileHelper.getSize(file));
+				final String _contentType;
+
+				if (metadata != null) {
+
+					_contentType = metadata.getContentMimeType(file, getProperty(name));
+
+					changedProperties.putAll(metadata.getChecksums());
+					changedProperties.put(size, metadata.getSize());
+					changedProperties.put(fileModificationDate, file.lastModified());
+
+				} else {
+
+					_contentType = FileHelper.getContentMimeType(FileBase.this);
+
+					changedProperties.put(checksum, FileHelper.getChecksum(file));
+					changedProperties.put(size, FileHelper.getSize(file));
+				}
+
 				changedProperties.put(contentType, _contentType);
 
 				if (StringUtils.startsWith(_contentType, "image") || ImageHelper.isImageType(getProperty(name))) {
@@ -894,7 +959,7 @@ public class FileBase extends AbstractFile implements Indexable, Linkable, JavaS
 				increaseVersion();
 
 				if (notifyIndexerAfterClosing) {
-					notifyUploadCompletion();
+					notifyUploadCompletion(metadata == null);
 				}
 
 				tx.success();
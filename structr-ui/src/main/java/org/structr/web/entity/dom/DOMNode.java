@@ -69,6 +69,7 @@ import org.structr.core.property.StringProperty;
 import org.structr.core.script.Scripting;
 import org.structr.web.common.AsyncBuffer;
 import org.structr.web.common.GraphDataSource;
+import org.structr.web.common.RenderCache;
 import org.structr.web.common.RenderContext;
 import org.structr.web.common.RenderContext.EditMode;
 import org.structr.web.common.StringRenderBuffer;
@@ -139,6 +140,8 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 	public static final Property<String> restQuery                    = new StringProperty("restQuery").category(QUERY_CATEGORY);
 	public static final Property<String> functionQuery                = new StringProperty("functionQuery").category(QUERY_CATEGORY);
 	public static final Property<Boolean> renderDetails               = new BooleanProperty("renderDetails").category(QUERY_CATEGORY);
+	public static final Property<Integer> renderCacheForSeconds       = new IntProperty("renderCacheForSeconds").category(PAGE_CATEGORY).hint("Number of seconds the rendered output of this element is cached on the server. Output is cached separately for each user and shared between anonymous requests.");
+	public static final Property<String> renderCacheParameters        = new StringProperty("renderCacheParameters").category(PAGE_CATEGORY).hint("Comma-separated list of request parameters the cached output of this element depends on. If empty, the whole query string is used.");
 
 	public static final Property<List<DOMNode>> syncedNodes           = new EndNodes("syncedNodes", Sync.class, new PropertyNotion(id)).category(PAGE_CATEGORY);
 	public static final Property<DOMNode> sharedComponent             = new StartNode("sharedComponent", Sync.class, new PropertyNotion(id)).category(PAGE_CATEGORY);
@@ -169,7 +172,7 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 	public static final Property<Integer> domSortPosition             = new IntProperty("domSortPosition").category(PAGE_CATEGORY);
 
 	public static final Property[] rawProps = new Property[] {
-		dataKey, restQuery, cypherQuery, xpathQuery, functionQuery, hideOnIndex, hideOnDetail, showForLocales, hideForLocales, showConditions, hideConditions
+		dataKey, restQuery, cypherQuery, xpathQuery, functionQuery, hideOnIndex, hideOnDetail, showForLocales, hideForLocales, showConditions, hideConditions, renderCacheForSeconds, renderCacheParameters
 	};
 
 	private static final Set<PropertyKey> cloneBlacklist = new LinkedHashSet<>(Arrays.asList(new Property[] {
@@ -319,6 +322,22 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 			return;
 		}
 
+		RenderCache.render(this, renderContext, () -> renderNode(renderContext, depth));
+	}
+
+	/**
+	 * Render the node including data binding, called by the render cache
+	 * if there is no cached output for this node.
+	 *
+	 * @param renderContext
+	 * @param depth
+	 * @throws FrameworkException
+	 */
+	private void renderNode(final RenderContext renderContext, final int depth) throws FrameworkException {
+
+		final GraphObject details = renderContext.getDetailsDataObject();
+		final boolean detailMode  = details != null;
+
 		final EditMode editMode = renderContext.getEditMode(securityContext.getUser(false));
 
 		if (EditMode.RAW.equals(editMode) || EditMode.WIDGET.equals(editMode) || EditMode.DEPLOYMENT.equals(editMode)) {
@@ -53,6 +53,7 @@ import org.structr.core.property.StartNode;
 import org.structr.core.property.StartNodes;
 import org.structr.core.property.StringProperty;
 import org.structr.schema.SchemaService;
+import org.structr.web.common.RenderCache;
 import org.structr.web.common.RenderContext;
 import org.structr.web.common.StringRenderBuffer;
 import org.structr.web.diff.InvertibleModificationOperation;
@@ -113,11 +114,13 @@ public class Page extends DOMNode implements Linkable, Document, DOMImplementati
 	public static final Property<Site> site  = new StartNode<>("site", Pages.class, new UiNotion()).indexedWhenEmpty();
 
 	public static final org.structr.common.View publicView = new org.structr.common.View(Page.class, PropertyView.Public,
-		name, path, children, linkingElements, contentType, owner, cacheForSeconds, version, position, showOnErrorCodes, isPage, site, dontCache, pageCreatesRawData, enableBasicAuth, basicAuthRealm, category
+		name, path, children, linkingElements, contentType, owner, cacheForSeconds, version, position, showOnErrorCodes, isPage, site, dontCache, pageCreatesRawData, enableBasicAuth, basicAuthRealm, category,
+		renderCacheForSeconds, renderCacheParameters
 	);
 
 	public static final org.structr.common.View uiView = new org.structr.common.View(Page.class, PropertyView.Ui,
-		name, path, children, linkingElements, contentType, owner, cacheForSeconds, version, position, showOnErrorCodes, isPage, site, dontCache, pageCreatesRawData, enableBasicAuth, basicAuthRealm, category
+		name, path, children, linkingElements, contentType, owner, cacheForSeconds, version, position, showOnErrorCodes, isPage, site, dontCache, pageCreatesRawData, enableBasicAuth, basicAuthRealm, category,
+		renderCacheForSeconds, renderCacheParameters
 	);
 
 	public static final org.structr.common.View categoryView = new org.structr.common.View(Page.class, "category",
@@ -713,31 +716,7 @@ public class Page extends DOMNode implements Linkable, Document, DOMImplementati
 
 		renderContext.setPage(this);
 
-		// Skip DOCTYPE node
-		DOMNode subNode = (DOMNode) this.getFirstChild().getNextSibling();
-
-		if (subNode == null) {
-
-			subNode = (DOMNode) super.getFirstChild();
-
-
-		} else {
-
-			renderContext.getBuffer().append("<!DOCTYPE html>\n");
-
-		}
-
-		while (subNode != null) {
-
-			if (subNode.isNotDeleted() && securityContext.isVisible(subNode)) {
-
-				subNode.render(renderContext, depth);
-			}
-
-			subNode = (DOMNode) subNode.getNextSibling();
-
-		}
-
+		RenderCache.render(this, renderContext, () -> renderPage(renderContext, depth));
 	}
 
 	@Override
@@ -906,6 +885,35 @@ public class Page extends DOMNode implements Linkable, Document, DOMImplementati
 	}
 
 	// ----- private methods -----
+	private void renderPage(final RenderContext renderContext, final int depth) throws FrameworkException {
+
+		// Skip DOCTYPE node
+		DOMNode subNode = (DOMNode) this.getFirstChild().getNextSibling();
+
+		if (subNode == null) {
+
+			subNode = (DOMNode) super.getFirstChild();
+
+
+		} else {
+
+			renderContext.getBuffer().append("<!DOCTYPE html>\n");
+
+		}
+
+		while (subNode != null) {
+
+			if (subNode.isNotDeleted() && securityContext.isVisible(subNode)) {
+
+				subNode.render(renderContext, depth);
+			}
+
+			subNode = (DOMNode) subNode.getNextSibling();
+
+		}
+
+	}
+
 	private Node importNode(final Node node, final boolean deep, final boolean removeParentFromSourceNode) throws DOMException {
 
 		if (node instanceof DOMNode) {
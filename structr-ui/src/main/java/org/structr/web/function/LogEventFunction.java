@@ -18,18 +18,26 @@
  */
 package org.structr.web.function;
 
+import java.io.IOException;
 import java.util.Date;
 import java.util.Map;
+import org.structr.api.config.Settings;
 import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObjectMap;
 import org.structr.core.app.StructrApp;
+import org.structr.core.entity.Principal;
 import org.structr.core.graph.NodeAttribute;
 import org.structr.core.property.PropertyMap;
+import org.structr.rest.logging.LogEventStore;
 import org.structr.rest.logging.entity.LogEvent;
 import org.structr.schema.action.ActionContext;
 import org.structr.web.entity.dom.DOMNode;
 
 /**
- *
+ * Logs an event. Returns the LogEvent node that was created, or, if the
+ * event log store is enabled (application.eventlog.segmentstore), a map
+ * with the same properties, since the event is not stored as a node then.
+ * Events in the store are owned by the current user.
  */
 public class LogEventFunction extends UiFunction {
 
@@ -49,6 +57,14 @@ public class LogEventFunction extends UiFunction {
 			final String action = sources[0].toString();
 			final String message = sources[1].toString();
 
+			if (Settings.EventLogSegmentStore.getValue()) {
+
+				final String subject = sources.length > 2 ? sources[2].toString() : null;
+				final String object  = sources.length > 3 ? sources[3].toString() : null;
+
+				return appendToLogEventStore(ctx, action, message, subject, object);
+			}
+
 			final LogEvent logEvent = StructrApp.getInstance().create(LogEvent.class,
 				new NodeAttribute(LogEvent.actionProperty, action),
 				new NodeAttribute(LogEvent.messageProperty, message),
@@ -79,6 +95,11 @@ public class LogEventFunction extends UiFunction {
 			final String subject = DOMNode.objectToString(map.get("subject"));
 			final String object = DOMNode.objectToString(map.get("object"));
 
+			if (Settings.EventLogSegmentStore.getValue()) {
+
+				return appendToLogEventStore(ctx, action, message, subject, object);
+			}
+
 			return StructrApp.getInstance().create(LogEvent.class,
 				new NodeAttribute(LogEvent.actionProperty, action),
 				new NodeAttribute(LogEvent.messageProperty, message),
@@ -103,6 +124,35 @@ public class LogEventFunction extends UiFunction {
 
 	@Override
 	public String shortDescription() {
-		return "Logs an event to the Structr log";
+		return "Logs an event to the Structr log and returns the LogEvent node, or a map with its properties if the event log store is enabled";
+	}
+
+	// ----- private methods -----
+	/**
+	 * Stores the given event in the event log store instead of creating a
+	 * LogEvent node, after the current transaction has been committed.
+	 */
+	private GraphObjectMap appendToLogEventStore(final ActionContext ctx, final String action, final String message, final String subject, final String object) {
+
+		final Principal user = ctx.getSecurityContext().getUser(false);
+		final long timestamp = System.currentTimeMillis();
+
+		try {
+
+			LogEventStore.appendAfterCommit(timestamp, action, subject, object, message, user != null ? user.getUuid() : null, false, false);
+
+		} catch (IOException ioex) {
+			logger.warn("Unable to store log event: {}", ioex.getMessage());
+		}
+
+		final GraphObjectMap event = new GraphObjectMap();
+
+		event.put(LogEvent.timestampProperty, new Date(timestamp));
+		event.put(LogEvent.actionProperty,    action);
+		event.put(LogEvent.subjectProperty,   subject);
+		event.put(LogEvent.objectProperty,    object);
+		event.put(LogEvent.messageProperty,   message);
+
+		return event;
 	}
 }
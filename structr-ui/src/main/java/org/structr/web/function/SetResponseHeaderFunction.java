@@ -21,6 +21,8 @@ package org.structr.web.function;
 import javax.servlet.http.HttpServletResponse;
 import org.structr.common.SecurityContext;
 import org.structr.schema.action.ActionContext;
+import org.structr.web.common.RenderCache;
+import org.structr.web.common.RenderContext;
 
 /**
  *
@@ -49,7 +51,20 @@ public class SetResponseHeaderFunction extends UiFunction {
 				final HttpServletResponse response = securityContext.getResponse();
 				if (response != null) {
 
-					response.addHeader(name, value);
+					if (response.isCommitted()) {
+
+						// output of large pages is streamed, headers must be set before the response buffer is full
+						logger.warn("Unable to set response header {}, response has already been committed.", name);
+
+					} else {
+
+						response.addHeader(name, value);
+
+						// the header would be missing if the output was replayed from the render cache
+						if (ctx instanceof RenderContext) {
+							RenderCache.skip((RenderContext)ctx);
+						}
+					}
 				}
 			}
 
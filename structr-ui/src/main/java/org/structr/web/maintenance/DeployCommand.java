@@ -1107,6 +1107,8 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 			putIf(config, "pageCreatesRawData",      node.getProperty(Page.pageCreatesRawData));
 			putIf(config, "basicAuthRealm",          node.getProperty(Page.basicAuthRealm));
 			putIf(config, "enableBasicAuth",         node.getProperty(Page.enableBasicAuth));
+			putIf(config, "renderCacheForSeconds",   node.getProperty(Page.renderCacheForSeconds));
+			putIf(config, "renderCacheParameters",   node.getProperty(Page.renderCacheParameters));
 		}
 
 		// export all dynamic properties
@@ -19,7 +19,6 @@
 package org.structr.web.servlet;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.text.DateFormat;
@@ -36,18 +35,15 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
-import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -55,6 +51,7 @@ import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateUtils;
+import org.eclipse.jetty.server.Request;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.config.Settings;
@@ -86,9 +83,11 @@ import org.structr.schema.ConfigurationProvider;
 import org.structr.util.Base64;
 import org.structr.web.auth.UiAuthenticator;
 import org.structr.web.common.FileHelper;
+import org.structr.web.common.FileStreamer;
+import org.structr.web.common.RenderCache;
 import org.structr.web.common.RenderContext;
 import org.structr.web.common.RenderContext.EditMode;
-import org.structr.web.common.StringRenderBuffer;
+import org.structr.web.common.StreamingRenderBuffer;
 import org.structr.web.entity.AbstractFile;
 import org.structr.web.entity.FileBase;
 import org.structr.web.entity.Linkable;
@@ -151,6 +150,9 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 		}
 
 		this.isAsync = Settings.Async.getValue();
+
+		// enable server-side caching of rendered output
+		RenderCache.register();
 	}
 
 	@Override
@@ -457,10 +459,11 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 						// async or not?
 						if (isAsync && !createsRawData) {
 
-							final AsyncContext async = request.startAsync();
-							final ServletOutputStream out = async.getResponse().getOutputStream();
-							final AtomicBoolean finished = new AtomicBoolean(false);
-							final DOMNode rootNode = rootElement;
+							final AsyncContext async           = request.startAsync();
+							final StreamingRenderBuffer buffer = new StreamingRenderBuffer(async.getResponse());
+							final DOMNode rootNode             = rootElement;
+
+							renderContext.setBuffer(buffer);
 
 							threadPool.submit(new Runnable() {
 
@@ -471,90 +474,65 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 										// render
 										rootNode.render(renderContext, 0);
-										finished.set(true);
+										buffer.close();
 
 										tx.success();
 
 									} catch (Throwable t) {
 
-										t.printStackTrace();
 										logger.warn("Error while rendering page {}: {}", rootNode.getName(), t.getMessage());
 
 										try {
 
-											response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-											finished.set(true);
-
-										} catch (IOException ex) {
-											logger.warn("", ex);
-										}
-									}
-								}
-
-							});
-
-							// start output write listener
-							out.setWriteListener(new WriteListener() {
-
-								@Override
-								public void onWritePossible() throws IOException {
-
-									try {
-
-										final Queue<String> queue = renderContext.getBuffer().getQueue();
-										while (out.isReady()) {
-
-											String buffer = null;
-
-											synchronized (queue) {
-												buffer = queue.poll();
-											}
-
-											if (buffer != null) {
+											if (buffer.isCommitted()) {
 
-												out.print(buffer);
+												abortResponse(request, t);
 
 											} else {
 
-												if (finished.get()) {
-
-													async.complete();
-
-													// prevent this block from being called again
-													break;
-												}
-
-												Thread.sleep(1);
+												response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
 											}
+
+										} catch (IOException ex) {
+											logger.warn("", ex);
 										}
 
-									} catch (Throwable t) {
-										logger.warn("", t);
+									} finally {
+
+										async.complete();
 									}
 								}
 
-								@Override
-								public void onError(Throwable t) {
-									logger.warn("", t);
-								}
 							});
 
 						} else {
 
-							final StringRenderBuffer buffer = new StringRenderBuffer();
+							final StreamingRenderBuffer buffer = new StreamingRenderBuffer(response);
 							renderContext.setBuffer(buffer);
 
-							// render
-							rootElement.render(renderContext, 0);
-
 							try {
 
-								response.getOutputStream().write(buffer.getBuffer().toString().getBytes("utf-8"));
-								response.getOutputStream().flush();
-								response.getOutputStream().close();
+								// render
+								rootElement.render(renderContext, 0);
+
+								buffer.close();
 
 							} catch (IOException ioex) {
+
 								logger.warn("", ioex);
+
+							} catch (FrameworkException | RuntimeException ex) {
+
+								if (buffer.isCommitted()) {
+
+									// an error response can not be sent any more
+									logger.warn("Error while rendering page {}: {}", rootElement.getName(), ex.getMessage());
+									abortResponse(request, ex);
+
+									return;
+								}
+
+								throw ex;
 							}
 						}
 					}
@@ -1329,6 +1307,20 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 	}
 
+	/**
+	 * Aborts the connection of a response that has already been partially
+	 * sent, so the client does not mistake the partial output of a failed
+	 * rendering run for a complete page.
+	 */
+	private static void abortResponse(final HttpServletRequest request, final Throwable t) {
+
+		final Request baseRequest = Request.getBaseRequest(request);
+		if (baseRequest != null) {
+
+			baseRequest.getHttpChannel().abort(t);
+		}
+	}
+
 	private static void setCustomResponseHeaders(final HttpServletResponse response) {
 
 		for (final String header : customResponseHeaders) {
@@ -1457,81 +1449,23 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 			} else {
 
 				// 2b: stream file to response
-				final InputStream in = file.getInputStream();
-				final String contentType = file.getContentType();
-
-				if (contentType != null) {
-
-					response.setContentType(contentType);
-
-				} else {
-
-					// Default
-					response.setContentType("application/octet-stream");
-				}
-
-				final String range = request.getHeader("Range");
-
 				try {
 
-					if (StringUtils.isNotEmpty(range)) {
-
-						final long len = file.getSize();
-						long start     = 0;
-						long end       = len - 1;
-
-						final Matcher matcher = Pattern.compile("bytes=(?<start>\\d*)-(?<end>\\d*)").matcher(range);
-
-						if (matcher.matches()) {
-							String startGroup = matcher.group("start");
-							start = startGroup.isEmpty() ? start : Long.valueOf(startGroup);
-							start = Math.max(0, start);
-
-							String endGroup = matcher.group("end");
-							end = endGroup.isEmpty() ? end : Long.valueOf(endGroup);
-							end = end > len - 1 ? len - 1 : end;
-						}
-
-						long contentLength = end - start + 1;
-
-						// Tell the client that we support byte ranges
-						response.setHeader("Accept-Ranges", "bytes");
-						response.setHeader("Content-Range", String.format("bytes %s-%s/%s", start, end, len));
-						response.setHeader("Content-Length", String.format("%s", contentLength));
-
-						response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
-						callbackMap.put("statusCode", HttpServletResponse.SC_PARTIAL_CONTENT);
-
-						IOUtils.copyLarge(in, out, start, contentLength);
-
-					} else {
-
-						response.setStatus(HttpServletResponse.SC_OK);
-						callbackMap.put("statusCode", HttpServletResponse.SC_OK);
-
-						IOUtils.copyLarge(in, out);
-					}
+					callbackMap.put("statusCode", FileStreamer.stream(securityContext, file, request, response));
 
 				} catch (Throwable t) {
 
-				} finally {
-
-					if (out != null) {
+					logger.debug("Unable to stream file {}: {}", file.getUuid(), t.getMessage());
 
-						try {
-							// 3: output content
-							out.flush();
-							out.close();
+				} finally {
 
-						} catch (Throwable t) {
-						}
-					}
+					try {
+						// 3: output content
+						out.flush();
+						out.close();
 
-					if (in != null) {
-						in.close();
+					} catch (Throwable t) {
 					}
-
-					response.setStatus(HttpServletResponse.SC_OK);
 				}
 			}
 		}
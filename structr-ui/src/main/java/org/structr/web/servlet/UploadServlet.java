@@ -314,8 +314,8 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 						// only the actual existing file creates a UUID output
 						if (newFile != null) {
 
-							// upload trigger
-							newFile.notifyUploadCompletion();
+							// upload trigger, metadata was collected while writing the file
+							newFile.notifyUploadCompletion(false);
 
 							// send redirect to allow form-based file upload without JavaScript..
 							if (StringUtils.isNotBlank(redirectUrl)) {
@@ -433,8 +433,8 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 							FileHelper.writeToFile(file, fileItem.openStream());
 							file.increaseVersion();
 
-							// upload trigger
-							file.notifyUploadCompletion();
+							// upload trigger, metadata was collected while writing the file
+							file.notifyUploadCompletion(false);
 
 						} else {
 
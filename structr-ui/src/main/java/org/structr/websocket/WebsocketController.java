@@ -19,31 +19,44 @@
 package org.structr.websocket;
 
 import com.google.gson.Gson;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.eclipse.jetty.util.URIUtil;
 import org.eclipse.jetty.websocket.api.Session;
-import org.eclipse.jetty.websocket.api.WebSocketException;
+import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
 import org.structr.api.graph.RelationshipType;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.StructrTransactionListener;
 import org.structr.core.TransactionSource;
+import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.graph.ModificationEvent;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.graph.RelationshipInterface;
+import org.structr.core.graph.Tx;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
 import org.structr.web.entity.AbstractFile;
@@ -53,25 +66,51 @@ import org.structr.websocket.message.MessageBuilder;
 import org.structr.websocket.message.WebSocketMessage;
 
 /**
+ * Broadcasts modifications to the connected websocket clients.
  *
- *
+ * Messages are created in the committing thread and handed over to a
+ * dedicated broadcast thread which coalesces updates of the same entity
+ * within a short window, serializes each message once per distinct
+ * filtered result, and sends it asynchronously. Every client has a
+ * bounded queue; a client that falls behind loses its pending messages
+ * and is asked to resync instead.
  */
 public class WebsocketController implements StructrTransactionListener {
 
 	private static final Logger logger                 = LoggerFactory.getLogger(WebsocketController.class.getName());
 	private static final Set<String> BroadcastCommands = new HashSet<>(Arrays.asList(new String[] { "UPDATE", "ADD", "CREATE" } ));
+	private static final int MAX_PENDING_BROADCASTS    = 100000;
 
-	private final Set<StructrWebSocket> clients = ConcurrentHashMap.newKeySet();
-	private Gson gson                           = null;
+	private final BlockingQueue<Broadcast> broadcasts        = new LinkedBlockingQueue<>(MAX_PENDING_BROADCASTS);
+	private final Map<StructrWebSocket, ClientQueue> clients = new ConcurrentHashMap<>();
+	private final ExecutorService sendExecutor               = Executors.newFixedThreadPool(2, r -> newDaemonThread(r, "WebsocketSender"));
+	private Thread broadcaster                               = null;
+	private Gson gson                                        = null;
 
 	public WebsocketController(final Gson gson) {
 
-		this.gson = gson;
+		this.gson        = gson;
+		this.broadcaster = newDaemonThread(this::processBroadcasts, "WebsocketBroadcaster");
+
+		broadcaster.start();
+	}
+
+	/**
+	 * Stops the broadcast thread and the sender threads and removes all
+	 * clients. Pending messages are discarded.
+	 */
+	public void shutdown() {
+
+		broadcaster.interrupt();
+		sendExecutor.shutdownNow();
+
+		clients.clear();
+		broadcasts.clear();
 	}
 
 	public void registerClient(final StructrWebSocket client) {
 
-		clients.add(client);
+		clients.put(client, new ClientQueue(client));
 	}
 
 	public void unregisterClient(final StructrWebSocket client) {
@@ -86,20 +125,119 @@ public class WebsocketController implements StructrTransactionListener {
 
 	private void broadcast(final WebSocketMessage webSocketData, final String exemptedSessionId) {
 
+		if (!broadcasts.offer(new Broadcast(webSocketData, exemptedSessionId))) {
+
+			// the broadcast thread cannot keep up, so all clients need to resync
+			logger.warn("Broadcast queue full, dropping pending messages and requesting resync from all clients");
+
+			broadcasts.clear();
+
+			for (final ClientQueue queue : clients.values()) {
+				queue.resync();
+			}
+		}
+	}
+
+	private void processBroadcasts() {
+
+		final long window = Settings.WebsocketBroadcastWindow.getValue();
+
+		while (!Thread.currentThread().isInterrupted()) {
+
+			try {
+
+				final List<Broadcast> pending = new ArrayList<>();
+
+				pending.add(broadcasts.take());
+
+				// wait a short time to collect more messages
+				if (window > 0) {
+					Thread.sleep(window);
+				}
+
+				broadcasts.drainTo(pending);
+
+				// visibility checks and serialization need a transaction
+				try (final Tx tx = StructrApp.getInstance().tx(false, false, false)) {
+
+					for (final Broadcast broadcast : coalesce(pending)) {
+
+						try {
+
+							send(broadcast.message, broadcast.exemptedSessionId);
+
+						} catch (Throwable t) {
+
+							logger.debug("Unable to broadcast message.", t);
+						}
+					}
+
+					tx.success();
+				}
+
+			} catch (InterruptedException iex) {
+
+				return;
+
+			} catch (Throwable t) {
+
+				logger.warn("Error in websocket broadcast: {}", t.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Merges UPDATE messages for the same entity into the first of them,
+	 * unless another message for that entity lies between them.
+	 */
+	static List<Broadcast> coalesce(final List<Broadcast> pending) {
+
+		final Map<String, Broadcast> updates = new HashMap<>();
+		final List<Broadcast> result         = new ArrayList<>(pending.size());
+
+		for (final Broadcast broadcast : pending) {
+
+			final WebSocketMessage message = broadcast.message;
+			final String id                = message.getId();
+
+			if (id != null && "UPDATE".equals(message.getCommand()) && broadcast.exemptedSessionId == null) {
+
+				final Broadcast existing = updates.get(id);
+				if (existing != null && Objects.equals(existing.message.getCallback(), message.getCallback())) {
+
+					existing.merge(message);
+					continue;
+				}
+
+				updates.put(id, broadcast);
+
+			} else if (id != null) {
+
+				updates.remove(id);
+			}
+
+			result.add(broadcast);
+		}
+
+		return result;
+	}
+
+	private void send(final WebSocketMessage webSocketData, final String exemptedSessionId) {
+
 		// session must be valid to be received by the client
 		webSocketData.setSessionValid(true);
 
-		final String pagePath                        = (String) webSocketData.getNodeData().get("pagePath");
-		final String encodedPath                     = URIUtil.encodePath(pagePath);
-		final List<StructrWebSocket> clientsToRemove = new LinkedList<>();
-		final List<? extends GraphObject> result     = webSocketData.getResult();
-		final String command                         = webSocketData.getCommand();
-		final GraphObject obj                        = webSocketData.getGraphObject();
+		final String pagePath                    = (String) webSocketData.getNodeData().get("pagePath");
+		final String encodedPath                 = URIUtil.encodePath(pagePath);
+		final List<? extends GraphObject> result = webSocketData.getResult();
+		final String command                     = webSocketData.getCommand();
+		final GraphObject obj                    = webSocketData.getGraphObject();
+		final boolean filterResult               = result != null && !result.isEmpty() && BroadcastCommands.contains(command);
+		final Map<List<String>, String> messages = new HashMap<>();
 
-		String message;
+		for (final ClientQueue queue : clients.values()) {
 
-		// create message
-		for (StructrWebSocket socket : clients) {
+			final StructrWebSocket socket = queue.socket;
 
 			String clientPagePath = socket.getPagePath();
 			if (clientPagePath != null && !clientPagePath.equals(encodedPath)) {
@@ -135,44 +273,29 @@ public class WebsocketController implements StructrTransactionListener {
 					}
 				}
 
-				if (result != null && !result.isEmpty() && BroadcastCommands.contains(command)) {
+				final String message;
 
-					final WebSocketMessage clientData = webSocketData.copy();
+				if (filterResult) {
 
-					clientData.setResult(filter(securityContext, result));
+					final List<? extends GraphObject> filtered = filter(securityContext, result);
 
-					message = gson.toJson(clientData, WebSocketMessage.class);
+					// clients that see the same result get the same message
+					message = messages.computeIfAbsent(getUuids(filtered), k -> {
 
-				} else {
+						final WebSocketMessage clientData = webSocketData.copy();
 
-					message = gson.toJson(webSocketData, WebSocketMessage.class);
-				}
+						clientData.setResult(filtered);
 
-				try {
+						return gson.toJson(clientData, WebSocketMessage.class);
+					});
 
-					session.getRemote().sendString(message);
-
-				} catch (Throwable t) {
-
-					if (t instanceof WebSocketException) {
-
-						WebSocketException wse = (WebSocketException) t;
-
-						if ("RemoteEndpoint unavailable, current state [CLOSED], expecting [OPEN or CONNECTED]".equals(wse.getMessage())) {
-							clientsToRemove.add(socket);
-						}
-					}
+				} else {
 
-					logger.debug("Error sending message to client.", t);
+					message = messages.computeIfAbsent(Collections.emptyList(), k -> gson.toJson(webSocketData, WebSocketMessage.class));
 				}
-			}
-		}
-
-		for (StructrWebSocket s : clientsToRemove) {
-
-			unregisterClient(s);
 
-			logger.warn("Client removed from broadcast list: {}", s);
+				queue.send(message);
+			}
 		}
 	}
 
@@ -191,6 +314,26 @@ public class WebsocketController implements StructrTransactionListener {
 
 	}
 
+	private List<String> getUuids(final List<? extends GraphObject> objects) {
+
+		final List<String> uuids = new ArrayList<>(objects.size());
+
+		for (final GraphObject obj : objects) {
+			uuids.add(obj.getUuid());
+		}
+
+		return uuids;
+	}
+
+	private static Thread newDaemonThread(final Runnable runnable, final String name) {
+
+		final Thread thread = new Thread(runnable, name);
+
+		thread.setDaemon(true);
+
+		return thread;
+	}
+
 	// ----- interface StructrTransactionListener -----
 	@Override
 	public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
@@ -408,4 +551,184 @@ public class WebsocketController implements StructrTransactionListener {
 
 		return newMessage;
 	}
+
+	// ----- nested classes -----
+	static class Broadcast {
+
+		private WebSocketMessage message = null;
+		private String exemptedSessionId = null;
+
+		public Broadcast(final WebSocketMessage message, final String exemptedSessionId) {
+
+			this.message           = message;
+			this.exemptedSessionId = exemptedSessionId;
+		}
+
+		public WebSocketMessage getMessage() {
+			return message;
+		}
+
+		public void merge(final WebSocketMessage newer) {
+
+			final Set<PropertyKey> modified = message.getModifiedProperties();
+			final Set<PropertyKey> removed  = message.getRemovedProperties();
+
+			// the newer message determines the final state of a property
+			modified.removeAll(newer.getRemovedProperties());
+			removed.removeAll(newer.getModifiedProperties());
+
+			for (final PropertyKey key : newer.getRemovedProperties()) {
+				message.getNodeData().remove(key.jsonName());
+			}
+
+			modified.addAll(newer.getModifiedProperties());
+			removed.addAll(newer.getRemovedProperties());
+
+			message.getNodeData().putAll(newer.getNodeData());
+			message.getRelData().putAll(newer.getRelData());
+		}
+	}
+
+	/**
+	 * Bounded queue of serialized messages for a single client, with at
+	 * most one asynchronous send in flight. The pending messages are
+	 * guarded by the queue's monitor, so that a resync replaces them
+	 * atomically with respect to concurrent sends.
+	 */
+	class ClientQueue implements WriteCallback {
+
+		private final Queue<String> messages = new LinkedList<>();
+		private final AtomicBoolean sending  = new AtomicBoolean();
+		private StructrWebSocket socket      = null;
+
+		public ClientQueue(final StructrWebSocket socket) {
+			this.socket = socket;
+		}
+
+		public void send(final String message) {
+
+			synchronized (this) {
+
+				if (messages.size() >= Settings.WebsocketClientQueueSize.getValue()) {
+
+					logger.info("Client {} cannot keep up with broadcast messages, requesting resync", socket);
+
+					replaceWithResync();
+
+				} else {
+
+					messages.add(message);
+				}
+			}
+
+			sendNext();
+		}
+
+		public void resync() {
+
+			synchronized (this) {
+				replaceWithResync();
+			}
+
+			sendNext();
+		}
+
+		@Override
+		public void writeSuccess() {
+
+			sending.set(false);
+
+			// continue in a different thread, the callback may run in the sending thread
+			sendNextAsync();
+		}
+
+		@Override
+		public void writeFailed(final Throwable t) {
+
+			sending.set(false);
+
+			logger.debug("Error sending message to client.", t);
+
+			final Session session = socket.getSession();
+			if (session == null || !session.isOpen()) {
+
+				unregisterClient(socket);
+
+				logger.warn("Client removed from broadcast list: {}", socket);
+
+			} else {
+
+				sendNextAsync();
+			}
+		}
+
+		private void sendNextAsync() {
+
+			if (!sendExecutor.isShutdown()) {
+				sendExecutor.execute(this::sendNext);
+			}
+		}
+
+		private void sendNext() {
+
+			while (sending.compareAndSet(false, true)) {
+
+				final String message;
+
+				synchronized (this) {
+					message = messages.poll();
+				}
+
+				if (message != null) {
+
+					final Session session = socket.getSession();
+					if (session == null || !session.isOpen()) {
+
+						synchronized (this) {
+							messages.clear();
+						}
+
+						sending.set(false);
+
+						return;
+					}
+
+					try {
+
+						session.getRemote().sendString(message, this);
+
+					} catch (Throwable t) {
+
+						writeFailed(t);
+					}
+
+					return;
+				}
+
+				sending.set(false);
+
+				// a message may have been added after the poll, but before the flag was reset
+				synchronized (this) {
+
+					if (messages.isEmpty()) {
+						return;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Replaces all pending messages with a single RESYNC message. The
+		 * caller must hold the monitor of this queue.
+		 */
+		private void replaceWithResync() {
+
+			final WebSocketMessage resync = MessageBuilder.forName("RESYNC").build();
+
+			resync.setSessionValid(true);
+
+			messages.clear();
+			messages.add(gson.toJson(resync, WebSocketMessage.class));
+		}
+	}
 }
@@ -500,6 +500,10 @@ function wsConnect() {
 
 				_Schema.processSchemaRecompileNotification();
 
+			} else if (command === 'RESYNC') {
+
+				Structr.refreshUi();
+
 			} else if (command === 'GENERIC_MESSAGE') {
 
 				Structr.handleGenericMessage(data.data);
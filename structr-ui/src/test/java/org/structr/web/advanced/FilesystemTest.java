@@ -18,7 +18,14 @@
  */
 package org.structr.web.advanced;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.codec.digest.DigestUtils;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 import org.junit.Test;
@@ -27,7 +34,11 @@ import org.slf4j.LoggerFactory;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.graph.NodeAttribute;
 import org.structr.core.graph.Tx;
+import org.structr.dynamic.File;
+import org.structr.util.Base64;
 import org.structr.web.StructrUiTest;
+import org.structr.web.common.FileHelper;
+import org.structr.web.entity.FileBase;
 import org.structr.web.entity.Image;
 
 public class FilesystemTest extends StructrUiTest {
@@ -109,4 +120,61 @@ public class FilesystemTest extends StructrUiTest {
 			fail("Unexpected exception.");
 		}
 	}
+
+	@Test
+	public void test03FileMetadataCollection() {
+
+		final byte[] data = new byte[100000];
+
+		new Random(42L).nextBytes(data);
+
+		try (final Tx tx = app.tx()) {
+
+			final File file = FileHelper.createFile(securityContext, data, "application/octet-stream", File.class, "test03.bin");
+
+			assertEquals("File size does not match",     Long.valueOf(data.length),  file.getProperty(FileBase.size));
+			assertEquals("MD5 checksum does not match",  DigestUtils.md5Hex(data),   file.getProperty(FileBase.md5));
+
+			// content type is detected from the first bytes if the name is not conclusive
+			final File image = FileHelper.createFile(securityContext, Base64.decode(Base64ImageData), null, File.class, "test03");
+
+			assertEquals("Content type of the image does not match", "image/png", image.getProperty(FileBase.contentType));
+			assertEquals("Type of the image does not match",         "Image",     image.getProperty(FileBase.type));
+
+			// the first bytes of a container format are not conclusive
+			final File archive = FileHelper.createFile(securityContext, createZip(data), null, File.class, "test03-archive");
+
+			assertEquals("Content type of a large archive should be detected from the whole file",
+				FileHelper.getContentMimeType(archive.getFileOnDisk(), "test03-archive"),
+				archive.getProperty(FileBase.contentType)
+			);
+
+			tx.success();
+
+		} catch (FrameworkException | IOException ex) {
+			logger.warn("", ex);
+			fail("Unexpected exception.");
+		}
+	}
+
+	// ----- private methods -----
+	private byte[] createZip(final byte[] data) throws IOException {
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		try (final ZipOutputStream zip = new ZipOutputStream(bytes)) {
+
+			zip.setLevel(Deflater.NO_COMPRESSION);
+
+			zip.putNextEntry(new ZipEntry("data.bin"));
+			zip.write(data);
+			zip.closeEntry();
+
+			zip.putNextEntry(new ZipEntry("[Content_Types].xml"));
+			zip.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\"/>".getBytes("utf-8"));
+			zip.closeEntry();
+		}
+
+		return bytes.toByteArray();
+	}
 }
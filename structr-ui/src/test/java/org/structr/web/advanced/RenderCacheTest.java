@@ -0,0 +1,302 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.advanced;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import org.hamcrest.Matchers;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.Collections;
+import java.util.Map;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.CacheStatisticsCommand;
+import org.structr.core.graph.FlushCachesCommand;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.Tx;
+import org.structr.web.StructrUiTest;
+import org.structr.web.common.RenderCache;
+import org.structr.web.entity.TestOne;
+import org.structr.web.entity.User;
+import org.structr.web.entity.dom.Content;
+import org.structr.web.entity.dom.DOMElement;
+import org.structr.web.entity.dom.DOMNode;
+import org.structr.web.entity.dom.Page;
+
+/**
+ *
+ */
+public class RenderCacheTest extends StructrUiTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(RenderCacheTest.class.getName());
+
+	@Test
+	public void test01RenderCacheInvalidation() {
+
+		DOMElement div  = null;
+		Content content = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final Page page = makeVisible(Page.createSimplePage(securityContext, "page1"));
+
+			div     = (DOMElement)page.getElementsByTagName("div").item(0);
+			content = (Content)div.getFirstChild();
+
+			div.setProperty(DOMNode.renderCacheForSeconds, 60);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+		}
+
+		RestAssured.basePath = "/";
+
+		final long hits = RenderCache.getHitCount();
+
+		assertBody("Initial body text");
+		assertBody("Initial body text");
+
+		assertEquals("Cached output should be used for the second request", hits + 1, RenderCache.getHitCount());
+
+		// modification of a rendered node
+		try (final Tx tx = app.tx()) {
+
+			content.setProperty(Content.content, "Modified body text");
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+		}
+
+		assertBody("Modified body text");
+
+		// removal of the relationship between the cached element and its child
+		try (final Tx tx = app.tx()) {
+
+			div.removeChild(content);
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+		}
+
+		assertBody("");
+
+		assertEquals("Render cache should contain one entry", 1, RenderCache.size());
+
+		FlushCachesCommand.flushAll();
+
+		assertEquals("Render cache should be cleared by FlushCachesCommand", 0, RenderCache.size());
+	}
+
+	@Test
+	public void test02RenderCacheIsKeyedByUser() {
+
+		try (final Tx tx = app.tx()) {
+
+			final Page page       = makeVisible(Page.createSimplePage(securityContext, "page1"));
+			final DOMElement div  = (DOMElement)page.getElementsByTagName("div").item(0);
+			final Content content = (Content)div.getFirstChild();
+
+			div.setProperty(DOMNode.renderCacheForSeconds, 60);
+			content.setProperty(Content.content, "User ${me.name}");
+
+			createTestNode(User.class, new NodeAttribute<>(User.name, "tester1"), new NodeAttribute<>(User.password, "test"));
+			createTestNode(User.class, new NodeAttribute<>(User.name, "tester2"), new NodeAttribute<>(User.password, "test"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+		}
+
+		RestAssured.basePath = "/";
+
+		assertBody("User");
+		assertBody("tester1", "User tester1");
+		assertBody("tester2", "User tester2");
+		assertBody("tester1", "User tester1");
+		assertBody("User");
+	}
+
+	@Test
+	public void test03OutputWithResponseHeadersIsNotCached() {
+
+		try (final Tx tx = app.tx()) {
+
+			final Page page       = makeVisible(Page.createSimplePage(securityContext, "page1"));
+			final DOMElement div  = (DOMElement)page.getElementsByTagName("div").item(0);
+			final Content content = (Content)div.getFirstChild();
+
+			div.setProperty(DOMNode.renderCacheForSeconds, 60);
+			content.setProperty(Content.content, "${set_response_header('X-Structr-Test', 'header')}With header");
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+		}
+
+		RestAssured.basePath = "/";
+
+		FlushCachesCommand.flushAll();
+
+		final long hits = RenderCache.getHitCount();
+
+		// the header must be sent with every response
+		for (int i=0; i<2; i++) {
+
+			RestAssured
+				.given()
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+				.expect()
+				.statusCode(200)
+				.header("X-Structr-Test", "header")
+				.body("html.body.div", Matchers.equalTo("With header"))
+				.when()
+				.get("/html/page1");
+		}
+
+		assertEquals("Output that sets response headers should not be cached", 0, RenderCache.size());
+		assertEquals("Output that sets response headers should not be replayed", hits, RenderCache.getHitCount());
+
+		try {
+
+			final CacheStatisticsCommand cmd = app.command(CacheStatisticsCommand.class);
+
+			cmd.execute(Collections.emptyMap());
+
+			final Map<String, Object> render = (Map<String, Object>)((Map<String, Object>)cmd.getCommandResult()).get("render");
+
+			assertNotNull("Cache statistics should contain the render cache", render);
+			assertEquals("Invalid render cache hit count", hits, render.get("hits"));
+			assertEquals("Invalid render cache size", 0, render.get("size"));
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+		}
+	}
+
+	@Test
+	public void test04EmptyQueryResultIsInvalidated() {
+
+		try (final Tx tx = app.tx()) {
+
+			final Page page       = makeVisible(Page.createSimplePage(securityContext, "page1"));
+			final DOMElement div  = (DOMElement)page.getElementsByTagName("div").item(0);
+			final Content content = (Content)div.getFirstChild();
+
+			div.setProperty(DOMNode.renderCacheForSeconds, 60);
+			content.setProperty(Content.content, "Count ${size(find('TestOne'))}");
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+		}
+
+		RestAssured.basePath = "/";
+
+		assertBody("Count 0");
+		assertBody("Count 0");
+
+		// the type of the empty query result must be recorded, and the
+		// invalidation must happen even without transaction notifications
+		try (final Tx tx = app.tx(true, true, false)) {
+
+			createTestNode(TestOne.class, new NodeAttribute<>(TestOne.visibleToPublicUsers, true));
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+		}
+
+		assertBody("Count 1");
+	}
+
+	// ----- private methods -----
+	private void assertBody(final String expected) {
+
+		RestAssured
+			.given()
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.expect()
+			.statusCode(200)
+			.body("html.body.div", Matchers.equalTo(expected))
+			.when()
+			.get("/html/page1");
+	}
+
+	private void assertBody(final String username, final String expected) {
+
+		RestAssured
+			.given()
+			.header("X-User",     username)
+			.header("X-Password", "test")
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.expect()
+			.statusCode(200)
+			.body("html.body.div", Matchers.equalTo(expected))
+			.when()
+			.get("/html/page1");
+	}
+
+	private <T extends DOMNode> T makeVisible(final T src) {
+
+		try {
+
+			src.setProperty(DOMNode.visibleToAuthenticatedUsers, true);
+			src.setProperty(DOMNode.visibleToPublicUsers, true);
+
+		} catch (FrameworkException fex) {}
+
+		src.getAllChildNodes().stream().forEach((n) -> {
+
+			try {
+				n.setProperty(DOMNode.visibleToAuthenticatedUsers, true);
+				n.setProperty(DOMNode.visibleToPublicUsers, true);
+
+			} catch (FrameworkException fex) {}
+		} );
+
+		return src;
+	}
+}
@@ -20,13 +20,25 @@ package org.structr.web.advanced;
 
 import com.jayway.restassured.RestAssured;
 import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.lang3.StringUtils;
 import org.hamcrest.Matchers;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import org.junit.Test;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.graph.NodeAttribute;
 import org.structr.core.graph.Tx;
 import org.structr.web.StructrUiTest;
+import org.structr.web.common.StreamingRenderBuffer;
 import org.structr.web.entity.User;
 import org.structr.web.entity.dom.Content;
 import org.structr.web.entity.dom.Page;
@@ -101,6 +113,152 @@ public class RendererTest extends StructrUiTest {
 			.get("/html/page1");
 	}
 
+	@Test
+	public void testResponseHeadersOfStreamedPages() {
+
+		Content content = null;
+
+		try (final Tx tx = app.tx()) {
+
+			createTestNode(User.class,
+				new NodeAttribute<>(User.name,     "admin"),
+				new NodeAttribute<>(User.password, "admin"),
+				new NodeAttribute<>(User.isAdmin, true)
+			);
+
+			final Page page1 = Page.createSimplePage(securityContext, "page1");
+
+			final Element div = (Element)page1.getElementsByTagName("div").item(0);
+			content           = (Content)div.getFirstChild();
+
+			// header is set after the page content has been rendered
+			content.setProperty(Content.content, "Test${set_response_header('X-Structr-Test', 'late')}");
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fail("Unexpected exception");
+			logger.warn("", fex);
+		}
+
+		RestAssured.basePath = "/";
+
+		// pages that fit into the response buffer are sent with all headers
+		RestAssured
+			.given()
+			.header("X-User",     "admin")
+			.header("X-Password", "admin")
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.expect()
+			.statusCode(200)
+			.header("X-Structr-Test",   "late")
+			.body("html.head.title",    Matchers.equalTo("Page1"))
+			.body("html.body.div",      Matchers.equalTo("Test"))
+			.when()
+			.get("/html/page1");
+
+		try (final Tx tx = app.tx()) {
+
+			content.setProperty(Content.content, StringUtils.repeat("Test", 50000) + "${set_response_header('X-Structr-Test', 'late')}");
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fail("Unexpected exception");
+			logger.warn("", fex);
+		}
+
+		// larger pages are streamed, so the header comes too late, but the page must be complete
+		RestAssured
+			.given()
+			.header("X-User",     "admin")
+			.header("X-Password", "admin")
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.expect()
+			.statusCode(200)
+			.header("X-Structr-Test",   Matchers.nullValue())
+			.body("html.head.title",    Matchers.equalTo("Page1"))
+			.body("html.body.div",      Matchers.equalTo(StringUtils.repeat("Test", 50000)))
+			.when()
+			.get("/html/page1");
+	}
+
+	@Test
+	public void testStreamingRenderBuffer() {
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ServletResponse response    = createResponse(bytes, 16);
+
+		try {
+
+			// output is kept back until it exceeds the response buffer size
+			final StreamingRenderBuffer buffer1 = new StreamingRenderBuffer(response);
+
+			buffer1.append("<html>").append("<body>");
+			assertFalse("Output should not be committed before the buffer size is reached", buffer1.isCommitted());
+
+			buffer1.append("Test").append("</body>").append("</html>");
+			assertTrue("Output should be committed after the buffer size is exceeded", buffer1.isCommitted());
+
+			buffer1.close();
+			assertEquals("Invalid streamed output", "<html><body>Test</body></html>", bytes.toString("utf-8"));
+
+			bytes.reset();
+
+			// output of a rendering run that fails before the buffer is full is never sent
+			final StreamingRenderBuffer buffer2 = new StreamingRenderBuffer(response);
+
+			buffer2.append("<html>").append("Error");
+			assertFalse("Output should not be committed before the buffer size is reached", buffer2.isCommitted());
+			assertEquals("Output should not be sent before the buffer is closed", 0, bytes.size());
+
+		} catch (IOException ioex) {
+
+			fail("Unexpected exception");
+			logger.warn("", ioex);
+		}
+	}
+
+	// ----- private methods -----
+	private ServletResponse createResponse(final ByteArrayOutputStream bytes, final int bufferSize) {
+
+		final ServletOutputStream out = new ServletOutputStream() {
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setWriteListener(final WriteListener writeListener) {
+			}
+
+			@Override
+			public void write(final int b) throws IOException {
+				bytes.write(b);
+			}
+		};
+
+		return (ServletResponse)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { HttpServletResponse.class }, (proxy, method, args) -> {
+
+			switch (method.getName()) {
+
+				case "getBufferSize":
+					return bufferSize;
+
+				case "getOutputStream":
+					return out;
+
+				case "isCommitted":
+					return false;
+			}
+
+			return null;
+		});
+	}
+
 	/*
 	@Test
 	public void testTextileRenderer() {
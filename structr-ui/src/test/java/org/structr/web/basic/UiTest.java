@@ -18,6 +18,7 @@
  */
 package org.structr.web.basic;
 
+import com.jayway.restassured.RestAssured;
 import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -28,6 +29,7 @@ import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import org.hamcrest.Matchers;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,6 +50,7 @@ import org.structr.web.entity.FileBase;
 import org.structr.web.entity.Folder;
 import org.structr.web.entity.Image;
 import org.structr.web.entity.TestImage;
+import org.structr.web.entity.User;
 
 
 public class UiTest extends StructrUiTest {
@@ -667,4 +670,92 @@ public class UiTest extends StructrUiTest {
 
 
 	}
+
+	@Test
+	public void testFileStreaming() {
+
+		try (final Tx tx = app.tx()) {
+
+			createTestNode(User.class,
+				new NodeAttribute<>(User.name,     "admin"),
+				new NodeAttribute<>(User.password, "admin"),
+				new NodeAttribute<>(User.isAdmin,  true)
+			);
+
+			FileHelper.createFile(securityContext, "0123456789abcdefghij".getBytes("utf-8"), "text/plain", File.class, "stream.txt");
+
+			tx.success();
+
+		} catch (FrameworkException | IOException ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception");
+		}
+
+		RestAssured.basePath = "/";
+
+		// full content
+		RestAssured
+			.given()
+			.header("X-User",     "admin")
+			.header("X-Password", "admin")
+			.expect()
+			.statusCode(200)
+			.header("Accept-Ranges", "bytes")
+			.body(Matchers.equalTo("0123456789abcdefghij"))
+			.when()
+			.get("/stream.txt");
+
+		// single range
+		RestAssured
+			.given()
+			.header("X-User",     "admin")
+			.header("X-Password", "admin")
+			.header("Range",      "bytes=2-5")
+			.expect()
+			.statusCode(206)
+			.header("Content-Range", "bytes 2-5/20")
+			.body(Matchers.equalTo("2345"))
+			.when()
+			.get("/stream.txt");
+
+		// suffix range
+		RestAssured
+			.given()
+			.header("X-User",     "admin")
+			.header("X-Password", "admin")
+			.header("Range",      "bytes=-3")
+			.expect()
+			.statusCode(206)
+			.header("Content-Range", "bytes 17-19/20")
+			.body(Matchers.equalTo("hij"))
+			.when()
+			.get("/stream.txt");
+
+		// multiple ranges
+		RestAssured
+			.given()
+			.header("X-User",     "admin")
+			.header("X-Password", "admin")
+			.header("Range",      "bytes=0-1,10-11")
+			.expect()
+			.statusCode(206)
+			.contentType(Matchers.startsWith("multipart/byteranges"))
+			.body(Matchers.containsString("Content-Range: bytes 0-1/20"))
+			.body(Matchers.containsString("Content-Range: bytes 10-11/20"))
+			.when()
+			.get("/stream.txt");
+
+		// unsatisfiable range
+		RestAssured
+			.given()
+			.header("X-User",     "admin")
+			.header("X-Password", "admin")
+			.header("Range",      "bytes=100-200")
+			.expect()
+			.statusCode(416)
+			.header("Content-Range", "bytes */20")
+			.when()
+			.get("/stream.txt");
+	}
 }
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.websocket;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+import org.structr.core.GraphObject;
+import org.structr.core.entity.AbstractNode;
+import org.structr.web.StructrUiTest;
+import org.structr.websocket.WebsocketController.Broadcast;
+import org.structr.websocket.WebsocketController.ClientQueue;
+import org.structr.websocket.message.WebSocketMessage;
+
+/**
+ *
+ */
+public class WebsocketControllerTest extends StructrUiTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(WebsocketControllerTest.class.getName());
+
+	@Test
+	public void testCoalescingOfUpdates() {
+
+		final WebSocketMessage update1 = createUpdate("a");
+		final WebSocketMessage update2 = createUpdate("a");
+		final WebSocketMessage update3 = createUpdate("b");
+		final WebSocketMessage delete  = new WebSocketMessage();
+		final WebSocketMessage update4 = createUpdate("b");
+		final WebSocketMessage update5 = createUpdate("a");
+
+		update1.getModifiedProperties().add(AbstractNode.name);
+		update1.getNodeData().put("name", "test");
+
+		// property is removed after it was modified
+		update2.getRemovedProperties().add(AbstractNode.name);
+
+		update3.getModifiedProperties().add(AbstractNode.name);
+
+		delete.setCommand("DELETE");
+		delete.setId("b");
+
+		update4.getModifiedProperties().add(AbstractNode.name);
+
+		update5.getModifiedProperties().add(GraphObject.visibleToPublicUsers);
+		update5.getNodeData().put("visibleToPublicUsers", true);
+
+		final List<Broadcast> result = WebsocketController.coalesce(Arrays.asList(
+			new Broadcast(update1, null),
+			new Broadcast(update2, null),
+			new Broadcast(update3, null),
+			new Broadcast(delete, null),
+			new Broadcast(update4, null),
+			new Broadcast(update5, null),
+			new Broadcast(createUpdate("a"), "exempted")
+		));
+
+		assertEquals("Invalid number of coalesced messages", 5, result.size());
+		assertEquals("Invalid coalesced message", update1, result.get(0).getMessage());
+		assertEquals("Invalid coalesced message", update3, result.get(1).getMessage());
+		assertEquals("Updates must not be merged across other messages for the same entity", delete, result.get(2).getMessage());
+		assertEquals("Updates must not be merged across other messages for the same entity", update4, result.get(3).getMessage());
+
+		assertFalse("Removed property must not be reported as modified", update1.getModifiedProperties().contains(AbstractNode.name));
+		assertTrue("Removed property must be reported as removed", update1.getRemovedProperties().contains(AbstractNode.name));
+		assertTrue("Modified property of merged message is missing", update1.getModifiedProperties().contains(GraphObject.visibleToPublicUsers));
+		assertFalse("Value of removed property must not be sent", update1.getNodeData().containsKey("name"));
+		assertEquals("Value of modified property is missing", true, update1.getNodeData().get("visibleToPublicUsers"));
+	}
+
+	@Test
+	public void testResyncOfSlowClients() {
+
+		final Gson gson                       = new GsonBuilder().registerTypeAdapter(WebSocketMessage.class, new WebSocketDataGSONAdapter(3)).create();
+		final WebsocketController controller  = new WebsocketController(gson);
+		final List<String> sent               = Collections.synchronizedList(new ArrayList<>());
+		final List<WriteCallback> callbacks   = Collections.synchronizedList(new ArrayList<>());
+		final int queueSize                   = Settings.WebsocketClientQueueSize.getValue();
+
+		try {
+
+			Settings.WebsocketClientQueueSize.setValue(5);
+
+			final StructrWebSocket socket = new StructrWebSocket(controller, gson, null);
+			final ClientQueue queue       = controller.new ClientQueue(socket);
+
+			// the client never acknowledges a message until told so
+			final RemoteEndpoint remote = proxy(RemoteEndpoint.class, (proxy, method, args) -> {
+
+				if ("sendString".equals(method.getName()) && args.length == 2) {
+
+					sent.add((String)args[0]);
+					callbacks.add((WriteCallback)args[1]);
+				}
+
+				return null;
+			});
+
+			socket.setRequest(proxy(HttpServletRequest.class, (proxy, method, args) -> null));
+			socket.onWebSocketConnect(proxy(Session.class, (proxy, method, args) -> {
+
+				switch (method.getName()) {
+
+					case "isOpen":
+						return true;
+
+					case "getRemote":
+						return remote;
+				}
+
+				return null;
+			}));
+
+			for (int i=0; i<10; i++) {
+				queue.send("message" + i);
+			}
+
+			// only one message is in flight, the pending messages were replaced
+			assertEquals("Only one message should be in flight", Arrays.asList("message0"), sent);
+
+			callbacks.get(0).writeSuccess();
+
+			for (int i=0; i<100 && sent.size() < 2; i++) {
+				Thread.sleep(10);
+			}
+
+			assertEquals("Client should have received a resync message", 2, sent.size());
+			assertTrue("Client should have received a resync message", sent.get(1).contains("RESYNC"));
+
+		} catch (InterruptedException iex) {
+
+			logger.warn("", iex);
+
+		} finally {
+
+			Settings.WebsocketClientQueueSize.setValue(queueSize);
+			controller.shutdown();
+		}
+	}
+
+	// ----- private methods -----
+	private WebSocketMessage createUpdate(final String id) {
+
+		final WebSocketMessage message = new WebSocketMessage();
+
+		message.setCommand("UPDATE");
+		message.setId(id);
+
+		return message;
+	}
+
+	private <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+		return (T)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { type }, handler);
+	}
+}